@@ -0,0 +1,285 @@
+package nl.qbusict.cupboard;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.test.AndroidTestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class AsyncDatabaseCompartmentTest extends AndroidTestCase {
+
+    private Cupboard mCupboard;
+    private SQLiteDatabase mDatabase;
+    private AsyncDatabaseCompartment mAsync;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mCupboard = new Cupboard();
+        mCupboard.register(TestEntity.class);
+        getContext().deleteDatabase("test_async.db");
+        mDatabase = new DBHelper(getContext()).getWritableDatabase();
+        mAsync = new AsyncDatabaseCompartment(mCupboard, mDatabase);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mAsync.shutdown();
+        mDatabase.close();
+        super.tearDown();
+    }
+
+    public void testPutAndGet() throws Exception {
+        List<Future<Long>> ids = new ArrayList<Future<Long>>();
+        for (int i = 0; i < 50; i++) {
+            TestEntity entity = new TestEntity();
+            entity.intProperty = i;
+            ids.add(mAsync.put(entity));
+        }
+        for (int i = 0; i < ids.size(); i++) {
+            TestEntity stored = mAsync.get(TestEntity.class, ids.get(i).get()).get();
+            assertNotNull(stored);
+            assertEquals(i, stored.intProperty);
+        }
+        assertEquals(50, mCupboard.withDatabase(mDatabase).query(TestEntity.class).list().size());
+    }
+
+    public void testFailingWriteDoesNotAffectOthers() throws Exception {
+        TestEntity first = new TestEntity();
+        Future<Long> ok = mAsync.put(first);
+        Future<Integer> failing = mAsync.write(new AsyncDatabaseCompartment.Operation<Integer>() {
+            @Override
+            public Integer execute(DatabaseCompartment compartment) {
+                throw new IllegalStateException("expected");
+            }
+        });
+        Future<Long> ok2 = mAsync.put(new TestEntity());
+        assertTrue(ok.get() > 0);
+        assertTrue(ok2.get() > 0);
+        try {
+            failing.get();
+            fail("Expected an exception");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        assertEquals(2, mCupboard.withDatabase(mDatabase).query(TestEntity.class).list().size());
+    }
+
+    public void testDeleteAfterPut() throws Exception {
+        TestEntity entity = new TestEntity();
+        mAsync.put(entity);
+        // executed in order on the writer thread, so the id is set when the delete executes
+        Future<Boolean> deleted = mAsync.delete(entity);
+        assertTrue(deleted.get());
+        assertNull(mAsync.get(TestEntity.class, entity._id).get());
+    }
+
+    public void testFailedBatchOnlyRetriesEarlierOperations() throws Exception {
+        InMemoryCupboardDatabase database = new InMemoryCupboardDatabase();
+        mCupboard.withDatabase(database).createTables();
+        AsyncDatabaseCompartment async = new AsyncDatabaseCompartment(mCupboard, database);
+        final CountDownLatch blocked = new CountDownLatch(1);
+        async.write(new AsyncDatabaseCompartment.Operation<Void>() {
+            @Override
+            public Void execute(DatabaseCompartment compartment) {
+                try {
+                    blocked.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                return null;
+            }
+        });
+        final AtomicInteger before = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+        final AtomicInteger after = new AtomicInteger();
+        final AtomicInteger callbacks = new AtomicInteger();
+        final TestEntity entity = new TestEntity();
+        AsyncDatabaseCompartment.Callback<Long> callback = new AsyncDatabaseCompartment.Callback<Long>() {
+            @Override
+            public void onSuccess(Long result) {
+                callbacks.incrementAndGet();
+            }
+
+            @Override
+            public void onFailure(Throwable error) {
+                callbacks.incrementAndGet();
+            }
+        };
+        // queued while the writer is blocked, so these are executed in a single transaction
+        Future<Long> first = async.write(new AsyncDatabaseCompartment.Operation<Long>() {
+            @Override
+            public Long execute(DatabaseCompartment compartment) {
+                before.incrementAndGet();
+                return compartment.put(entity);
+            }
+        }, callback);
+        Future<Long> failing = async.write(new AsyncDatabaseCompartment.Operation<Long>() {
+            @Override
+            public Long execute(DatabaseCompartment compartment) {
+                failed.incrementAndGet();
+                throw new IllegalStateException("expected");
+            }
+        }, callback);
+        Future<Long> last = async.write(new AsyncDatabaseCompartment.Operation<Long>() {
+            @Override
+            public Long execute(DatabaseCompartment compartment) {
+                after.incrementAndGet();
+                return compartment.put(new TestEntity());
+            }
+        }, callback);
+        blocked.countDown();
+        Long id = first.get(5, TimeUnit.SECONDS);
+        assertEquals(entity._id, id);
+        try {
+            failing.get(5, TimeUnit.SECONDS);
+            fail("Expected an exception");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        assertTrue(last.get(5, TimeUnit.SECONDS) > entity._id);
+        async.shutdown();
+        // the rolled back operation before the failure runs again, the others run once
+        assertEquals(2, before.get());
+        assertEquals(1, failed.get());
+        assertEquals(1, after.get());
+        assertEquals(3, callbacks.get());
+        assertEquals(2, mCupboard.withDatabase(database).query(TestEntity.class).count());
+    }
+
+    public void testConcurrentWriteAndShutdown() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            InMemoryCupboardDatabase database = new InMemoryCupboardDatabase();
+            mCupboard.withDatabase(database).createTables();
+            final AsyncDatabaseCompartment async = new AsyncDatabaseCompartment(mCupboard, database);
+            final List<Future<Long>> futures = Collections.synchronizedList(new ArrayList<Future<Long>>());
+            Thread[] writers = new Thread[4];
+            for (int w = 0; w < writers.length; w++) {
+                writers[w] = new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            for (int n = 0; n < 100; n++) {
+                                futures.add(async.put(new TestEntity()));
+                            }
+                        } catch (RejectedExecutionException expected) {
+                        }
+                    }
+                };
+                writers[w].start();
+            }
+            async.shutdown();
+            for (Thread writer : writers) {
+                writer.join();
+            }
+            // every accepted write completes
+            for (Future<Long> future : futures) {
+                assertTrue(future.get(5, TimeUnit.SECONDS) > 0);
+            }
+        }
+    }
+
+    public void testOperationError() throws Exception {
+        Future<Integer> failing = mAsync.write(new AsyncDatabaseCompartment.Operation<Integer>() {
+            @Override
+            public Integer execute(DatabaseCompartment compartment) {
+                throw new AssertionError("expected");
+            }
+        });
+        try {
+            failing.get(5, TimeUnit.SECONDS);
+            fail("Expected an exception");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof AssertionError);
+        }
+        // the writer thread survives
+        assertTrue(mAsync.put(new TestEntity()).get(5, TimeUnit.SECONDS) > 0);
+    }
+
+    public void testWriterThreadDies() throws Exception {
+        InMemoryCupboardDatabase database = new InMemoryCupboardDatabase();
+        mCupboard.withDatabase(database).createTables();
+        AsyncDatabaseCompartment async = new AsyncDatabaseCompartment(mCupboard, database);
+        // an uncaught error would otherwise crash the test process
+        Thread.UncaughtExceptionHandler handler = Thread.getDefaultUncaughtExceptionHandler();
+        final CountDownLatch died = new CountDownLatch(1);
+        Thread.setDefaultUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+            @Override
+            public void uncaughtException(Thread thread, Throwable ex) {
+                died.countDown();
+            }
+        });
+        try {
+            final CountDownLatch blocked = new CountDownLatch(1);
+            async.write(new AsyncDatabaseCompartment.Operation<Void>() {
+                @Override
+                public Void execute(DatabaseCompartment compartment) {
+                    try {
+                        blocked.await();
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                    return null;
+                }
+            });
+            // a callback that throws an error kills the writer thread, while the next write waits in the same batch
+            async.write(new AsyncDatabaseCompartment.Operation<Long>() {
+                @Override
+                public Long execute(DatabaseCompartment compartment) {
+                    return compartment.put(new TestEntity());
+                }
+            }, new AsyncDatabaseCompartment.Callback<Long>() {
+                @Override
+                public void onSuccess(Long result) {
+                    throw new AssertionError("expected");
+                }
+
+                @Override
+                public void onFailure(Throwable error) {
+                }
+            });
+            Future<Long> pending = async.put(new TestEntity());
+            blocked.countDown();
+            try {
+                pending.get(5, TimeUnit.SECONDS);
+                fail("Expected an exception");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+            assertTrue(died.await(5, TimeUnit.SECONDS));
+            try {
+                async.put(new TestEntity());
+                fail("Expected RejectedExecutionException");
+            } catch (RejectedExecutionException expected) {
+            }
+        } finally {
+            Thread.setDefaultUncaughtExceptionHandler(handler);
+        }
+    }
+
+    private class DBHelper extends SQLiteOpenHelper {
+
+        public DBHelper(Context context) {
+            super(context, "test_async.db", null, 1);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            mCupboard.withDatabase(db).createTables();
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            mCupboard.withDatabase(db).upgradeTables();
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package nl.qbusict.cupboard;
+
+import android.content.ContentValues;
+import android.database.SQLException;
+import android.test.AndroidTestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+public class BlobStoreTest extends AndroidTestCase {
+
+    private InMemoryCupboardDatabase mDatabase;
+    private DatabaseCompartment mCompartment;
+    private BlobStore mBlobs;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        Cupboard cupboard = new Cupboard();
+        cupboard.register(Message.class);
+        mDatabase = new InMemoryCupboardDatabase();
+        mCompartment = cupboard.withDatabase(mDatabase);
+        mCompartment.createTables();
+        mBlobs = mCompartment.blobs(10);
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[7];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+    public void testWriteAndRead() throws IOException {
+        byte[] data = new byte[95];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        Message message = new Message();
+        message.attachment = mBlobs.create(new ByteArrayInputStream(data));
+        mCompartment.put(message);
+        message = mCompartment.get(Message.class, message._id);
+        assertEquals(95, mBlobs.length(message.attachment));
+        assertTrue(Arrays.equals(data, readAll(mBlobs.openInputStream(message.attachment))));
+        assertEquals(1, mCompartment.query(Message.class).count());
+    }
+
+    public void testReplaceAndClose() throws IOException {
+        ChunkedBlob blob = mBlobs.create(new ByteArrayInputStream(new byte[15]));
+        BlobStore.BlobOutputStream out = mBlobs.openOutputStream(blob);
+        out.write(1);
+        out.close();
+        assertEquals(15, readAll(mBlobs.openInputStream(blob)).length);
+        out = mBlobs.openOutputStream(blob);
+        out.write(new byte[20]);
+        out.write(5);
+        out.commit();
+        out.close();
+        byte[] content = readAll(mBlobs.openInputStream(blob));
+        assertEquals(21, content.length);
+        assertEquals(5, content[20]);
+        assertEquals(21, mBlobs.length(blob));
+    }
+
+    public void testFailedCreateStoresNothing() {
+        InputStream failing = new InputStream() {
+            private int mRead;
+
+            @Override
+            public int read() throws IOException {
+                if (mRead++ > 30) {
+                    throw new IOException();
+                }
+                return 1;
+            }
+        };
+        ChunkedBlob empty = mBlobs.create();
+        try {
+            mBlobs.create(failing);
+            fail("Expected IOException");
+        } catch (IOException expected) {
+        }
+        assertEquals(-1, mBlobs.length(new ChunkedBlob(empty.getId() + 1)));
+    }
+
+    public void testFailedCopyKeepsContent() throws IOException {
+        ChunkedBlob blob = mBlobs.create(new ByteArrayInputStream(new byte[15]));
+        InputStream failing = new InputStream() {
+            private int mRead;
+
+            @Override
+            public int read() throws IOException {
+                if (mRead++ > 30) {
+                    throw new IOException();
+                }
+                return 1;
+            }
+        };
+        BlobStore.BlobOutputStream out = mBlobs.openOutputStream(blob);
+        try {
+            int b;
+            while ((b = failing.read()) != -1) {
+                out.write(b);
+            }
+            out.commit();
+            fail("Expected IOException");
+        } catch (IOException expected) {
+        } finally {
+            out.close();
+        }
+        assertEquals(15, mBlobs.length(blob));
+        assertEquals(15, readAll(mBlobs.openInputStream(blob)).length);
+        try {
+            out.commit();
+            fail("Expected IOException");
+        } catch (IOException expected) {
+        }
+    }
+
+    public void testFailedWriteIsNotCommitted() throws IOException {
+        ChunkedBlob blob = mBlobs.create(new ByteArrayInputStream(new byte[15]));
+        // a chunk with the sequence number of the first chunk of the new content makes the insert fail
+        BlobStore.BlobOutputStream out = mBlobs.openOutputStream(blob);
+        ContentValues values = new ContentValues();
+        values.put("blob", blob.getId());
+        values.put("seq", 0);
+        values.put("data", new byte[1]);
+        mDatabase.insertOrThrow(BlobStore.CHUNKS_TABLE, null, values);
+        try {
+            out.write(new byte[10]);
+            fail("Expected SQLException");
+        } catch (SQLException expected) {
+        }
+        try {
+            out.commit();
+            fail("Expected IOException");
+        } catch (IOException expected) {
+        }
+        assertEquals(15, readAll(mBlobs.openInputStream(blob)).length);
+    }
+
+    public void testDelete() throws IOException {
+        ChunkedBlob blob = mBlobs.create(new ByteArrayInputStream(new byte[25]));
+        assertTrue(mBlobs.delete(blob));
+        assertFalse(mBlobs.delete(blob));
+        assertEquals(-1, mBlobs.length(blob));
+        try {
+            mBlobs.openInputStream(blob);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+        }
+        ChunkedBlob empty = mBlobs.create();
+        assertEquals(0, mBlobs.length(empty));
+        assertEquals(-1, mBlobs.openInputStream(empty).read());
+    }
+
+    public void testReadingDoesNotCreateTables() {
+        Cupboard cupboard = new Cupboard();
+        cupboard.register(Message.class);
+        InMemoryCupboardDatabase database = new InMemoryCupboardDatabase() {
+            @Override
+            public void execSQL(String sql) {
+                if (sql.contains(BlobStore.BLOBS_TABLE) || sql.contains(BlobStore.CHUNKS_TABLE)) {
+                    throw new SQLException("attempt to write a readonly database");
+                }
+                super.execSQL(sql);
+            }
+        };
+        DatabaseCompartment compartment = cupboard.withDatabase(database);
+        compartment.createTables();
+        BlobStore blobs = compartment.blobs();
+        assertEquals(-1, blobs.length(new ChunkedBlob(1)));
+        assertFalse(blobs.delete(new ChunkedBlob(1)));
+        try {
+            blobs.openInputStream(new ChunkedBlob(1));
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            blobs.create();
+            fail("Expected SQLException");
+        } catch (SQLException expected) {
+        }
+    }
+
+    public void testTablesAreCreatedOnFirstWrite() throws IOException {
+        assertEquals(-1, mBlobs.length(new ChunkedBlob(1)));
+        ChunkedBlob blob = mBlobs.create(new ByteArrayInputStream(new byte[3]));
+        assertEquals(3, mCompartment.blobs().length(blob));
+    }
+
+    public static class Message {
+        public Long _id;
+        public ChunkedBlob attachment;
+    }
+}
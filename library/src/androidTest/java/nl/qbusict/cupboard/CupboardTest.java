@@ -345,6 +345,66 @@ public class CupboardTest extends AndroidTestCase {
         db.close();
     }
 
+    public void testCountAndAggregates() {
+        DBHelper helper = new DBHelper(getContext(), 1);
+        SQLiteDatabase db = helper.getWritableDatabase();
+        DatabaseCompartment compartment = mStore.withDatabase(db);
+        assertEquals(0, compartment.query(TestEntity.class).count());
+        assertFalse(compartment.query(TestEntity.class).exists());
+        assertNull(compartment.query(TestEntity.class).max("intProperty"));
+        for (int i = 1; i <= 5; i++) {
+            TestEntity te = new TestEntity();
+            te.intProperty = i;
+            te.doubleProperty = i / 2d;
+            te.stringProperty = i % 2 == 0 ? "even" : "odd";
+            compartment.put(te);
+        }
+        assertEquals(5, compartment.query(TestEntity.class).count());
+        assertEquals(2, compartment.query(TestEntity.class).withSelection("stringProperty = ?", "even").count());
+        assertEquals(2, compartment.query(TestEntity.class).withProjection("stringProperty").distinct().count());
+        assertEquals(3, compartment.query(TestEntity.class).limit(3).count());
+        assertTrue(compartment.query(TestEntity.class).where(Criteria.gt("intProperty", 4)).exists());
+        assertFalse(compartment.query(TestEntity.class).where(Criteria.gt("intProperty", 5)).exists());
+        assertEquals(1L, compartment.query(TestEntity.class).min("intProperty"));
+        assertEquals(5L, compartment.query(TestEntity.class).max("intProperty"));
+        assertEquals(15L, compartment.query(TestEntity.class).sum("intProperty"));
+        assertEquals(7.5d, compartment.query(TestEntity.class).sum("doubleProperty"));
+        assertEquals(4, compartment.query(TestEntity.class).queryForLong("max(length(stringProperty))"));
+        try {
+            compartment.query(TestEntity.class).sum("stringProperty");
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+        }
+        db.close();
+    }
+
+    public void testSingleColumnQueries() {
+        DBHelper helper = new DBHelper(getContext(), 1);
+        SQLiteDatabase db = helper.getWritableDatabase();
+        DatabaseCompartment compartment = mStore.withDatabase(db);
+        assertEquals(0, compartment.query(TestEntity.class).queryLongs("_id").length);
+        for (int i = 1; i <= 3; i++) {
+            TestEntity te = new TestEntity();
+            te.intProperty = i;
+            te.doubleProperty = i / 2d;
+            te.stringProperty = i == 2 ? null : "test" + i;
+            compartment.put(te);
+        }
+        long[] longs = compartment.query(TestEntity.class).orderBy("intProperty desc").queryLongs("intProperty");
+        assertEquals(3, longs.length);
+        assertEquals(3, longs[0]);
+        assertEquals(1, longs[2]);
+        double[] doubles = compartment.query(TestEntity.class).where(Criteria.gt("intProperty", 1)).orderBy("intProperty").queryDoubles("doubleProperty");
+        assertEquals(2, doubles.length);
+        assertEquals(1d, doubles[0], 0d);
+        assertEquals(1.5d, doubles[1], 0d);
+        List<String> strings = compartment.query(TestEntity.class).orderBy("intProperty").queryStrings("stringProperty");
+        assertEquals(3, strings.size());
+        assertEquals("test1", strings.get(0));
+        assertNull(strings.get(1));
+        db.close();
+    }
+
     public void testCreateKeywordTable() {
         mStore.register(Group.class);
         DBHelper helper = new DBHelper(getContext(), 1);
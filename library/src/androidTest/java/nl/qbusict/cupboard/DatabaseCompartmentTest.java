@@ -6,6 +6,8 @@ import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.test.AndroidTestCase;
 
+import java.util.List;
+
 import nl.qbusict.cupboard.annotation.Index;
 
 public class DatabaseCompartmentTest extends AndroidTestCase {
@@ -69,6 +71,70 @@ public class DatabaseCompartmentTest extends AndroidTestCase {
         cursor.close();
     }
 
+    public void testUpgradeStatements() {
+        TestDatabaseHelper helper = new TestDatabaseHelper(getContext(), 1);
+        SQLiteDatabase db = helper.getWritableDatabase();
+        DatabaseCompartment compartment = mCupboard.withDatabase(db);
+        assertTrue(compartment.getUpgradeStatements().isEmpty());
+
+        db.execSQL("drop index _cbTestIndexedEntity_indexedProperty");
+        // the index was dropped outside of cupboard, so the fingerprint still matches
+        compartment.upgradeTables();
+        assertEquals(1, compartment.getUpgradeStatements().size());
+
+        db.execSQL("drop table AnotherIndexedEntity");
+        List<String> statements = compartment.getUpgradeStatements();
+        assertEquals(3, statements.size());
+        String all = statements.toString();
+        assertTrue(all.contains("create index if not exists _cbTestIndexedEntity_indexedProperty"));
+        assertTrue(all.contains("create table 'AnotherIndexedEntity'"));
+        assertTrue(all.contains("create index if not exists _cbAnotherIndexedEntity_indexedProperty"));
+
+        // a missing table is noticed even though the fingerprint matches
+        compartment.upgradeTables();
+        assertTrue(compartment.getUpgradeStatements().isEmpty());
+
+        db.execSQL("drop index _cbTestIndexedEntity_indexedProperty");
+        compartment.clearSchemaFingerprint();
+        compartment.upgradeTables();
+        assertTrue(compartment.getUpgradeStatements().isEmpty());
+        db.close();
+    }
+
+    public void testCreateTablesAfterDropTable() {
+        TestDatabaseHelper helper = new TestDatabaseHelper(getContext(), 1);
+        SQLiteDatabase db = helper.getWritableDatabase();
+        DatabaseCompartment compartment = mCupboard.withDatabase(db);
+        db.execSQL("drop table AnotherIndexedEntity");
+        compartment.createTables();
+        assertTrue(compartment.getUpgradeStatements().isEmpty());
+        db.close();
+    }
+
+    public void testSchemaFingerprint() {
+        TestDatabaseHelper helper = new TestDatabaseHelper(getContext(), 1);
+        SQLiteDatabase db = helper.getWritableDatabase();
+        String fingerprint = mCupboard.withDatabase(db).getSchemaFingerprint();
+        assertEquals(fingerprint, mCupboard.withDatabase(db).getSchemaFingerprint());
+
+        Cupboard cupboard = new CupboardBuilder().useAnnotations().build();
+        cupboard.register(TestIndexedEntity.class);
+        assertFalse(fingerprint.equals(cupboard.withDatabase(db).getSchemaFingerprint()));
+        cupboard.register(AnotherIndexedEntity.class);
+        assertEquals(fingerprint, cupboard.withDatabase(db).getSchemaFingerprint());
+
+        // without annotations there are no indexes
+        cupboard = new Cupboard();
+        cupboard.register(TestIndexedEntity.class);
+        cupboard.register(AnotherIndexedEntity.class);
+        assertFalse(fingerprint.equals(cupboard.withDatabase(db).getSchemaFingerprint()));
+        cupboard.withDatabase(db).upgradeTables();
+        Cursor cursor = db.rawQuery("select name from sqlite_master where type = 'index' and tbl_name = 'TestIndexedEntity'", null);
+        assertEquals(0, cursor.getCount());
+        cursor.close();
+        db.close();
+    }
+
     public static class TestIndexedEntity {
         public Long _id;
 
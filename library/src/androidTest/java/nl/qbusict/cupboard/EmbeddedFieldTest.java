@@ -0,0 +1,185 @@
+package nl.qbusict.cupboard;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.test.AndroidTestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import nl.qbusict.cupboard.annotation.CompositeIndex;
+import nl.qbusict.cupboard.annotation.Embedded;
+import nl.qbusict.cupboard.annotation.Index;
+import nl.qbusict.cupboard.convert.EntityConverter.Column;
+
+public class EmbeddedFieldTest extends AndroidTestCase {
+
+    private Cupboard mCupboard;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mCupboard = new CupboardBuilder().useAnnotations().build();
+        mCupboard.register(Person.class);
+        getContext().deleteDatabase("test_embedded_field.db");
+    }
+
+    public void testColumns() {
+        List<String> columns = new ArrayList<String>();
+        for (Column column : mCupboard.getEntityConverter(Person.class).getColumns()) {
+            columns.add(column.name);
+        }
+        assertEquals("[_id, name, home_street, home_city, home_geo_lat, home_geo_lng, work_street, work_city, work_geo_lat, work_geo_lng]",
+                columns.toString());
+    }
+
+    public void testPutAndGet() {
+        SQLiteDatabase db = new DBHelper(getContext()).getWritableDatabase();
+        Person person = new Person();
+        person.name = "Jane";
+        person.home = new Address();
+        person.home.city = "Amsterdam";
+        person.home.location = new Geo();
+        person.home.location.lat = 52.37;
+        person.home.location.lng = 4.89;
+        long id = mCupboard.withDatabase(db).put(person);
+
+        Cursor cursor = db.rawQuery("select home_city, home_geo_lat, work_city from Person", null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals("Amsterdam", cursor.getString(0));
+            assertEquals(52.37, cursor.getDouble(1), 0.0);
+            assertTrue(cursor.isNull(2));
+        } finally {
+            cursor.close();
+        }
+
+        person = mCupboard.withDatabase(db).get(Person.class, id);
+        assertEquals("Jane", person.name);
+        assertEquals("Amsterdam", person.home.city);
+        assertNull(person.home.street);
+        assertEquals(4.89, person.home.location.lng, 0.0);
+        // all columns are null
+        assertNull(person.work);
+
+        assertEquals(id, mCupboard.withDatabase(db).query(Person.class).withSelection("home_city = ?", "Amsterdam").get()._id.longValue());
+        person.home = null;
+        mCupboard.withDatabase(db).put(person);
+        assertNull(mCupboard.withDatabase(db).get(Person.class, id).home);
+        db.close();
+    }
+
+    public void testEmbeddingItself() {
+        mCupboard.register(Node.class);
+        try {
+            mCupboard.getEntityConverter(Node.class);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testIndexSqlInEmbeddedClass() {
+        mCupboard.register(Indexed.class);
+        Column column = mCupboard.getEntityConverter(Indexed.class).getColumns().get(1);
+        assertEquals("plain_code", column.name);
+        assertNotNull(column.index);
+        for (Class<?> entity : new Class<?>[]{ExpressionIndexed.class, PartialIndexed.class, CompositeExpressionIndexed.class}) {
+            mCupboard.register(entity);
+            try {
+                mCupboard.getEntityConverter(entity);
+                fail("Expected IllegalArgumentException for " + entity.getSimpleName());
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    public static class Geo {
+        public double lat;
+        public double lng;
+    }
+
+    public static class Address {
+        public String street;
+        public String city;
+        @Embedded("geo_")
+        public Geo location;
+    }
+
+    public static class Person {
+        public Long _id;
+        public String name;
+        @Embedded
+        public Address home;
+        @Embedded("work_")
+        public Address work;
+    }
+
+    public static class Node {
+        public Long _id;
+        @Embedded
+        public Node next;
+    }
+
+    public static class Code {
+        @Index
+        public String code;
+    }
+
+    public static class ExpressionCode {
+        @Index(expression = "lower(code)")
+        public String code;
+    }
+
+    public static class PartialCode {
+        @Index(where = "code is not null")
+        public String code;
+    }
+
+    public static class CompositeExpressionCode {
+        @Index(indexNames = @CompositeIndex(indexName = "code_index", expression = "lower(code)"))
+        public String code;
+    }
+
+    public static class Indexed {
+        public Long _id;
+        @Embedded
+        public Code plain;
+    }
+
+    public static class ExpressionIndexed {
+        public Long _id;
+        @Embedded
+        public ExpressionCode code;
+    }
+
+    public static class PartialIndexed {
+        public Long _id;
+        @Embedded
+        public PartialCode code;
+    }
+
+    public static class CompositeExpressionIndexed {
+        public Long _id;
+        @Embedded
+        public CompositeExpressionCode code;
+    }
+
+    private class DBHelper extends SQLiteOpenHelper {
+
+        public DBHelper(Context context) {
+            super(context, "test_embedded_field.db", null, 1);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            mCupboard.withDatabase(db).createTables();
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            mCupboard.withDatabase(db).upgradeTables();
+        }
+    }
+}
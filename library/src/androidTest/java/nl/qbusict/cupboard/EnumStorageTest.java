@@ -0,0 +1,173 @@
+package nl.qbusict.cupboard;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.test.AndroidTestCase;
+
+import nl.qbusict.cupboard.annotation.EnumStorage;
+import nl.qbusict.cupboard.annotation.EnumStorage.Mode;
+import nl.qbusict.cupboard.convert.CodedEnum;
+
+public class EnumStorageTest extends AndroidTestCase {
+
+    private Cupboard mCupboard;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mCupboard = new CupboardBuilder().useAnnotations().build();
+        mCupboard.register(Task.class);
+        getContext().deleteDatabase("test_enum_storage.db");
+    }
+
+    public void testStorageModes() {
+        SQLiteDatabase db = new DBHelper(getContext()).getWritableDatabase();
+        Task task = new Task();
+        task.state = State.DONE;
+        task.priority = Priority.HIGH;
+        long id = mCupboard.withDatabase(db).put(task);
+        Cursor cursor = db.rawQuery("select state, typeof(priority), priority from Task", null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals("DONE", cursor.getString(0));
+            assertEquals("integer", cursor.getString(1));
+            assertEquals(30, cursor.getInt(2));
+        } finally {
+            cursor.close();
+        }
+        task = mCupboard.withDatabase(db).get(Task.class, id);
+        assertEquals(State.DONE, task.state);
+        assertEquals(Priority.HIGH, task.priority);
+        db.close();
+    }
+
+    public void testRegisteredStorageAndMigration() {
+        SQLiteDatabase db = new DBHelper(getContext()).getWritableDatabase();
+        for (State state : State.values()) {
+            Task task = new Task();
+            task.state = state;
+            mCupboard.withDatabase(db).put(task);
+        }
+        mCupboard.withDatabase(db).put(new Task());
+
+        Cupboard ordinal = new CupboardBuilder(mCupboard).registerEnumStorage(State.class, Mode.ORDINAL).build();
+        DatabaseCompartment compartment = ordinal.withDatabase(db);
+        assertEquals(State.values().length, compartment.migrateEnumColumn(Task.class, "state", State.class, Mode.NAME, Mode.ORDINAL));
+        assertEquals(1, compartment.query(Task.class).withSelection("state = ?", "1").count());
+        assertEquals(State.RUNNING, compartment.query(Task.class).withSelection("state = ?", "1").get().state);
+        assertNull(compartment.query(Task.class).withSelection("state is null").get().state);
+
+        compartment.migrateEnumColumn(Task.class, "state", State.class, Mode.ORDINAL, Mode.NAME);
+        assertEquals(State.DONE, mCupboard.withDatabase(db).query(Task.class).withSelection("state = ?", "DONE").get().state);
+        db.close();
+    }
+
+    public void testCriteriaBindStoredValue() {
+        SQLiteDatabase db = new DBHelper(getContext()).getWritableDatabase();
+        Task task = new Task();
+        task.state = State.DONE;
+        task.priority = Priority.HIGH;
+        mCupboard.withDatabase(db).put(task);
+        assertEquals(1, mCupboard.withDatabase(db).query(Task.class).where(Criteria.eq("priority", Priority.HIGH)).count());
+        assertEquals(0, mCupboard.withDatabase(db).query(Task.class).where(Criteria.eq("priority", Priority.LOW)).count());
+        assertEquals(1, mCupboard.withDatabase(db).query(Task.class).where(Criteria.in("state", State.NEW, State.DONE)).count());
+
+        Cupboard ordinal = new CupboardBuilder(mCupboard).registerEnumStorage(State.class, Mode.ORDINAL).build();
+        ordinal.withDatabase(db).migrateEnumColumn(Task.class, "state", State.class, Mode.NAME, Mode.ORDINAL);
+        assertEquals(1, ordinal.withDatabase(db).query(Task.class).where(Criteria.and(Criteria.eq("state", State.DONE),
+                Criteria.gt("priority", Priority.NORMAL))).count());
+        db.close();
+    }
+
+    public void testPreparedQueryBindsStoredValue() {
+        SQLiteDatabase db = new DBHelper(getContext()).getWritableDatabase();
+        Cupboard ordinal = new CupboardBuilder(mCupboard).registerEnumStorage(State.class, Mode.ORDINAL).build();
+        for (State state : State.values()) {
+            Task task = new Task();
+            task.state = state;
+            task.priority = Priority.values()[state.ordinal()];
+            ordinal.withDatabase(db).put(task);
+        }
+        PreparedQuery<Task> byState = ordinal.withDatabase(db).query(Task.class).where(Criteria.eq("state", State.NEW)).prepare();
+        assertEquals(State.NEW, byState.get().state);
+        assertEquals(State.RUNNING, byState.get(State.RUNNING).state);
+        assertEquals(State.DONE, byState.get(State.DONE).state);
+        PreparedQuery<Task> byPriority = ordinal.withDatabase(db).query(Task.class).where(Criteria.eq("priority", Priority.LOW)).prepare();
+        assertEquals(Priority.LOW, byPriority.get().priority);
+        assertEquals(Priority.NORMAL, byPriority.get(Priority.NORMAL).priority);
+        assertEquals(Priority.HIGH, byPriority.get(Priority.HIGH).priority);
+        db.close();
+    }
+
+    public void testDuplicateCodes() {
+        Cupboard cupboard = new CupboardBuilder().registerEnumStorage(Duplicate.class, Mode.CODE).build();
+        try {
+            cupboard.getFieldConverter(Duplicate.class);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testCodeRequiresCodedEnum() {
+        Cupboard cupboard = new CupboardBuilder().registerEnumStorage(State.class, Mode.CODE).build();
+        try {
+            cupboard.getFieldConverter(State.class);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public enum State {
+        NEW, RUNNING, DONE
+    }
+
+    public enum Priority implements CodedEnum {
+        LOW(10), NORMAL(20), HIGH(30);
+
+        private final int mCode;
+
+        Priority(int code) {
+            mCode = code;
+        }
+
+        @Override
+        public int getCode() {
+            return mCode;
+        }
+    }
+
+    public enum Duplicate implements CodedEnum {
+        A, B;
+
+        @Override
+        public int getCode() {
+            return 1;
+        }
+    }
+
+    public static class Task {
+        public Long _id;
+        public State state;
+        @EnumStorage(Mode.CODE)
+        public Priority priority;
+    }
+
+    private class DBHelper extends SQLiteOpenHelper {
+
+        public DBHelper(Context context) {
+            super(context, "test_enum_storage.db", null, 1);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            mCupboard.withDatabase(db).createTables();
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            mCupboard.withDatabase(db).upgradeTables();
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package nl.qbusict.cupboard;
+
+import android.test.AndroidTestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import nl.qbusict.cupboard.annotation.EnumStorage;
+import nl.qbusict.cupboard.annotation.EnumStorage.Mode;
+import nl.qbusict.cupboard.annotation.Lazy;
+import nl.qbusict.cupboard.annotation.TimeStorage;
+import nl.qbusict.cupboard.internal.convert.CollectionFieldConverterFactory;
+
+public class LazyColumnTest extends AndroidTestCase {
+
+    private DatabaseCompartment mCompartment;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        Cupboard cupboard = new CupboardBuilder().useAnnotations().build();
+        cupboard.register(Photo.class);
+        mCompartment = cupboard.withDatabase(new InMemoryCupboardDatabase());
+        mCompartment.createTables();
+    }
+
+    private long putPhoto(String title) {
+        Photo photo = new Photo();
+        photo.title = title;
+        photo.thumbnail = new byte[]{1, 2, 3};
+        photo.notes = "notes";
+        return mCompartment.put(photo);
+    }
+
+    public void testLazyColumnsAreNotQueried() {
+        long id = putPhoto("a");
+        Photo photo = mCompartment.get(Photo.class, id);
+        assertEquals("a", photo.title);
+        assertNull(photo.thumbnail);
+        assertNull(photo.notes);
+        photo = mCompartment.query(Photo.class).includeLazyColumns().get();
+        assertEquals(3, photo.thumbnail.length);
+        assertEquals("notes", photo.notes);
+        assertEquals("notes", mCompartment.query(Photo.class).withProjection("_id", "notes").get().notes);
+    }
+
+    public void testObserveIncludesLazyColumns() {
+        putPhoto("a");
+        final List<List<Photo>> results = new ArrayList<List<Photo>>();
+        Subscription subscription = mCompartment.query(Photo.class).includeLazyColumns().observe(new QueryObserver<Photo>() {
+            @Override
+            public void onQueryResult(List<Photo> result) {
+                results.add(result);
+            }
+
+            @Override
+            public void onQueryError(RuntimeException error) {
+                fail(error.toString());
+            }
+        });
+        putPhoto("b");
+        subscription.unsubscribe();
+        assertEquals(2, results.size());
+        for (List<Photo> result : results) {
+            for (Photo photo : result) {
+                assertEquals("notes", photo.notes);
+                assertEquals(3, photo.thumbnail.length);
+            }
+        }
+        assertEquals(2, results.get(1).size());
+    }
+
+    public void testPutKeepsUnloadedColumns() {
+        long id = putPhoto("a");
+        Photo photo = mCompartment.get(Photo.class, id);
+        photo.title = "b";
+        mCompartment.put(photo);
+        mCompartment.put(Arrays.asList(photo));
+        photo = mCompartment.query(Photo.class).includeLazyColumns().get();
+        assertEquals("b", photo.title);
+        assertEquals(3, photo.thumbnail.length);
+
+        // an entity with an id that doesn't exist yet is inserted
+        Photo inserted = new Photo();
+        inserted._id = 100L;
+        inserted.title = "c";
+        mCompartment.put(inserted);
+        assertEquals("c", mCompartment.get(Photo.class, 100L).title);
+    }
+
+    public void testPutClearsLoadedColumns() {
+        long id = putPhoto("a");
+        Photo photo = mCompartment.query(Photo.class).includeLazyColumns().get();
+        photo.notes = null;
+        mCompartment.put(photo);
+        photo = mCompartment.query(Photo.class).includeLazyColumns().get();
+        assertNull(photo.notes);
+        assertEquals(3, photo.thumbnail.length);
+
+        // only the columns left out of the projection are kept
+        photo = mCompartment.query(Photo.class).withProjection("_id", "title", "thumbnail").get();
+        photo.thumbnail = null;
+        mCompartment.put(photo);
+        LazyColumn<byte[]> thumbnails = mCompartment.lazyColumn(Photo.class, "thumbnail", byte[].class);
+        assertNull(thumbnails.get(id));
+
+        // an entity that wasn't queried has no unloaded columns
+        Photo replacement = new Photo();
+        replacement._id = putPhoto("b");
+        mCompartment.put(replacement);
+        assertNull(thumbnails.get(replacement._id));
+    }
+
+    public void testLoadAndStoreWithColumnConverter() {
+        Cupboard cupboard = new CupboardBuilder().useAnnotations().registerFieldConverterFactory(new CollectionFieldConverterFactory()).build();
+        cupboard.register(Annotated.class);
+        DatabaseCompartment compartment = cupboard.withDatabase(new InMemoryCupboardDatabase());
+        compartment.createTables();
+        Annotated annotated = new Annotated();
+        annotated.state = State.DONE;
+        annotated.day = new Date(86400000L);
+        annotated.tags = Arrays.asList("a", "b");
+        long id = compartment.put(annotated);
+
+        LazyColumn<State> states = compartment.lazyColumn(Annotated.class, "state", State.class);
+        assertEquals(State.DONE, states.get(id));
+        assertTrue(states.set(id, State.NEW));
+        assertEquals(0, compartment.query(Annotated.class).withSelection("state = 0").count());
+        assertEquals(1, compartment.query(Annotated.class).withSelection("state = 1").count());
+        LazyColumn<Date> days = compartment.lazyColumn(Annotated.class, "day", Date.class);
+        assertEquals(new Date(86400000L), days.get(id));
+        assertEquals(1, compartment.query(Annotated.class).withSelection("day = 86400").count());
+        LazyColumn<List> tags = compartment.lazyColumn(Annotated.class, "tags", List.class);
+        assertEquals(Arrays.asList("a", "b"), tags.get(id));
+        assertTrue(tags.set(id, Arrays.asList("c")));
+        assertEquals(Arrays.asList("c"), compartment.query(Annotated.class).includeLazyColumns().get().tags);
+    }
+
+    public void testLazyPrimitiveIsRejected() {
+        Cupboard cupboard = new CupboardBuilder().useAnnotations().build();
+        cupboard.register(LazyPrimitive.class);
+        try {
+            cupboard.getEntityConverter(LazyPrimitive.class);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testLoadAndStore() {
+        long id = putPhoto("a");
+        LazyColumn<byte[]> thumbnails = mCompartment.lazyColumn(Photo.class, "thumbnail", byte[].class);
+        assertTrue(Arrays.equals(new byte[]{1, 2, 3}, thumbnails.get(id)));
+        assertNull(thumbnails.get(id + 1));
+        assertTrue(thumbnails.set(id, new byte[]{4}));
+        assertTrue(Arrays.equals(new byte[]{4}, thumbnails.get(id)));
+        assertTrue(thumbnails.set(id, null));
+        assertNull(thumbnails.get(id));
+        assertFalse(thumbnails.set(id + 1, null));
+        try {
+            mCompartment.lazyColumn(Photo.class, "missing", byte[].class);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public static class Photo {
+        public Long _id;
+        public String title;
+        @Lazy
+        public byte[] thumbnail;
+        @Lazy
+        public String notes;
+    }
+
+    public enum State {
+        UNUSED, NEW, DONE
+    }
+
+    public static class Annotated {
+        public Long _id;
+        @Lazy
+        @EnumStorage(Mode.ORDINAL)
+        public State state;
+        @Lazy
+        @TimeStorage(TimeStorage.Mode.SECONDS)
+        public Date day;
+        @Lazy
+        public List<String> tags;
+    }
+
+    public static class LazyPrimitive {
+        public Long _id;
+        @Lazy
+        public long size;
+    }
+}
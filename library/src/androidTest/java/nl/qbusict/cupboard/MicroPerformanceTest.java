@@ -7,10 +7,13 @@ import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.test.AndroidTestCase;
 import android.test.RenamingDelegatingContext;
+import android.util.Log;
 
 import java.io.File;
 import java.util.Date;
 
+import nl.qbusict.cupboard.annotation.Index;
+
 import static nl.qbusict.cupboard.CupboardFactory.cupboard;
 
 public class MicroPerformanceTest extends AndroidTestCase {
@@ -109,4 +112,62 @@ public class MicroPerformanceTest extends AndroidTestCase {
         //Debug.stopMethodTracing();
         itr.close();
     }
+
+    public void testBulkLoadWithDeferredIndexes() {
+        Cupboard cupboard = new CupboardBuilder().useAnnotations().build();
+        cupboard.register(BulkEntity.class);
+        SQLiteDatabase db = mHelper.getWritableDatabase();
+        DatabaseCompartment compartment = cupboard.withDatabase(db);
+        compartment.createTables();
+        int indexCount = countIndexes(db);
+        assertEquals(2, indexCount);
+
+        long start = System.nanoTime();
+        loadBulkEntities(compartment, 20000);
+        long indexed = System.nanoTime() - start;
+
+        compartment.delete(BulkEntity.class, null);
+        start = System.nanoTime();
+        compartment.beginBulkLoad(BulkEntity.class);
+        assertEquals(0, countIndexes(db));
+        loadBulkEntities(compartment, 20000);
+        compartment.endBulkLoad(BulkEntity.class);
+        long deferred = System.nanoTime() - start;
+        assertEquals(indexCount, countIndexes(db));
+
+        Log.i("MicroPerformanceTest", "bulk load with indexes: " + indexed / 1000000 + " ms, with deferred indexes: " + deferred / 1000000 + " ms");
+    }
+
+    private void loadBulkEntities(DatabaseCompartment compartment, int count) {
+        BulkEntity entity = new BulkEntity();
+        compartment.beginTransaction();
+        try {
+            for (int i = 0; i < count; i++) {
+                entity._id = null;
+                entity.name = "name" + (i * 7919 % count);
+                entity.value = i * 31 % count;
+                compartment.put(entity);
+            }
+            compartment.setTransactionSuccessful();
+        } finally {
+            compartment.endTransaction();
+        }
+    }
+
+    private int countIndexes(SQLiteDatabase db) {
+        Cursor cursor = db.rawQuery("select name from sqlite_master where type = 'index' and tbl_name = 'BulkEntity'", null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public static class BulkEntity {
+        public Long _id;
+        @Index
+        public String name;
+        @Index
+        public long value;
+    }
 }
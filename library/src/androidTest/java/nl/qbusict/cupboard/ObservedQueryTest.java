@@ -0,0 +1,153 @@
+package nl.qbusict.cupboard;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.test.AndroidTestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ObservedQueryTest extends AndroidTestCase {
+
+    private Cupboard mCupboard;
+    private SQLiteDatabase mDatabase;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mCupboard = new Cupboard();
+        mCupboard.register(TestEntity.class);
+        mCupboard.register(ReferencedEntity.class);
+        getContext().deleteDatabase("test_observe.db");
+        mDatabase = new DBHelper(getContext()).getWritableDatabase();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mDatabase.close();
+        super.tearDown();
+    }
+
+    public void testObserveReceivesInitialResultAndChanges() {
+        RecordingObserver<TestEntity> observer = new RecordingObserver<TestEntity>();
+        DatabaseCompartment compartment = mCupboard.withDatabase(mDatabase);
+        Subscription subscription = compartment.query(TestEntity.class).observe(observer);
+        assertEquals(1, observer.mResults.size());
+        assertEquals(0, observer.mResults.get(0).size());
+
+        TestEntity entity = new TestEntity();
+        compartment.put(entity);
+        assertEquals(2, observer.mResults.size());
+        assertEquals(1, observer.mResults.get(1).size());
+
+        compartment.delete(entity);
+        assertEquals(3, observer.mResults.size());
+        assertEquals(0, observer.mResults.get(2).size());
+
+        subscription.unsubscribe();
+        compartment.put(new TestEntity());
+        assertEquals(3, observer.mResults.size());
+    }
+
+    public void testTransactionIsDeliveredOnce() {
+        RecordingObserver<TestEntity> observer = new RecordingObserver<TestEntity>();
+        DatabaseCompartment compartment = mCupboard.withDatabase(mDatabase);
+        compartment.query(TestEntity.class).observe(observer);
+        compartment.beginTransaction();
+        try {
+            compartment.put(new TestEntity());
+            compartment.put(new TestEntity(), new TestEntity());
+            assertEquals(1, observer.mResults.size());
+            compartment.setTransactionSuccessful();
+        } finally {
+            compartment.endTransaction();
+        }
+        assertEquals(2, observer.mResults.size());
+        assertEquals(3, observer.mResults.get(1).size());
+    }
+
+    public void testRolledBackTransactionIsNotDelivered() {
+        RecordingObserver<TestEntity> observer = new RecordingObserver<TestEntity>();
+        DatabaseCompartment compartment = mCupboard.withDatabase(mDatabase);
+        compartment.query(TestEntity.class).observe(observer);
+        compartment.beginTransaction();
+        try {
+            compartment.put(new TestEntity());
+        } finally {
+            compartment.endTransaction();
+        }
+        assertEquals(1, observer.mResults.size());
+    }
+
+    public void testOtherTableDoesNotTriggerQuery() {
+        RecordingObserver<TestEntity> observer = new RecordingObserver<TestEntity>();
+        DatabaseCompartment compartment = mCupboard.withDatabase(mDatabase);
+        compartment.query(TestEntity.class).observe(observer);
+        compartment.put(new ReferencedEntity());
+        assertEquals(1, observer.mResults.size());
+    }
+
+    public void testObserverErrorDoesNotFailWriter() {
+        RecordingObserver<TestEntity> observer = new RecordingObserver<TestEntity>() {
+            @Override
+            public void onQueryResult(List<TestEntity> result) {
+                super.onQueryResult(result);
+                if (mResults.size() == 2) {
+                    throw new IllegalStateException("expected");
+                }
+            }
+        };
+        DatabaseCompartment compartment = mCupboard.withDatabase(mDatabase);
+        compartment.query(TestEntity.class).observe(observer);
+        compartment.put(new TestEntity());
+        assertEquals(1, observer.mErrors.size());
+        assertEquals("expected", observer.mErrors.get(0).getMessage());
+        // the query is still observed
+        compartment.put(new TestEntity());
+        assertEquals(3, observer.mResults.size());
+        assertEquals(2, compartment.query(TestEntity.class).count());
+    }
+
+    public void testQueryErrorIsReportedToObserver() {
+        RecordingObserver<TestEntity> observer = new RecordingObserver<TestEntity>();
+        DatabaseCompartment compartment = mCupboard.withDatabase(mDatabase);
+        compartment.query(TestEntity.class).withSelection("missing = ?", "1").observe(observer);
+        assertEquals(0, observer.mResults.size());
+        assertEquals(1, observer.mErrors.size());
+        compartment.put(new TestEntity());
+        assertEquals(2, observer.mErrors.size());
+    }
+
+    private static class RecordingObserver<T> implements QueryObserver<T> {
+        final List<List<T>> mResults = new ArrayList<List<T>>();
+        final List<RuntimeException> mErrors = new ArrayList<RuntimeException>();
+
+        @Override
+        public void onQueryResult(List<T> result) {
+            mResults.add(result);
+        }
+
+        @Override
+        public void onQueryError(RuntimeException error) {
+            mErrors.add(error);
+        }
+    }
+
+    private class DBHelper extends SQLiteOpenHelper {
+
+        public DBHelper(Context context) {
+            super(context, "test_observe.db", null, 1);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            mCupboard.withDatabase(db).createTables();
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            mCupboard.withDatabase(db).upgradeTables();
+        }
+    }
+}
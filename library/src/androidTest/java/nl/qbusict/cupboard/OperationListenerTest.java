@@ -0,0 +1,100 @@
+package nl.qbusict.cupboard;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.test.AndroidTestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import nl.qbusict.cupboard.OperationListener.Operation;
+
+public class OperationListenerTest extends AndroidTestCase {
+
+    private Cupboard mCupboard;
+    private RecordingListener mListener;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mListener = new RecordingListener();
+        mCupboard = new CupboardBuilder().useOperationListener(mListener).build();
+        mCupboard.register(TestEntity.class);
+        getContext().deleteDatabase("test_operations.db");
+    }
+
+    public void testOperationsAreReported() {
+        SQLiteDatabase db = new DBHelper(getContext()).getWritableDatabase();
+        assertEquals(Operation.CREATE_TABLES, mListener.mOperations.get(0));
+        assertEquals(1, (int) mListener.mRows.get(0));
+        mListener.clear();
+
+        DatabaseCompartment compartment = mCupboard.withDatabase(db);
+        TestEntity entity = new TestEntity();
+        entity.stringProperty = "test";
+        compartment.put(entity);
+        assertEquals(Operation.PUT, mListener.mOperations.get(0));
+        assertEquals(1, (int) mListener.mRows.get(0));
+        assertTrue(mListener.mBytes.get(0) >= "test".length());
+        mListener.clear();
+
+        compartment.get(TestEntity.class, entity._id);
+        assertEquals(Operation.GET, mListener.mOperations.get(0));
+        assertEquals(1, (int) mListener.mRows.get(0));
+        mListener.clear();
+
+        compartment.put(new TestEntity());
+        mListener.clear();
+        QueryResultIterable<TestEntity> result = compartment.query(TestEntity.class).query();
+        assertTrue(mListener.mOperations.isEmpty());
+        assertEquals(2, result.list().size());
+        assertEquals(Operation.QUERY, mListener.mOperations.get(0));
+        assertEquals(2, (int) mListener.mRows.get(0));
+        mListener.clear();
+
+        compartment.delete(TestEntity.class, null);
+        assertEquals(Operation.DELETE, mListener.mOperations.get(0));
+        assertEquals(2, (int) mListener.mRows.get(0));
+        db.close();
+    }
+
+    private static class RecordingListener implements OperationListener {
+        final List<Operation> mOperations = new ArrayList<Operation>();
+        final List<Integer> mRows = new ArrayList<Integer>();
+        final List<Integer> mBytes = new ArrayList<Integer>();
+
+        @Override
+        public void onOperation(Class<?> entityClass, Operation operation, long sqlNanos, long conversionNanos, int rows, int bytesBound) {
+            assertEquals(TestEntity.class, entityClass);
+            assertTrue(sqlNanos >= 0);
+            assertTrue(conversionNanos >= 0);
+            mOperations.add(operation);
+            mRows.add(rows);
+            mBytes.add(bytesBound);
+        }
+
+        void clear() {
+            mOperations.clear();
+            mRows.clear();
+            mBytes.clear();
+        }
+    }
+
+    private class DBHelper extends SQLiteOpenHelper {
+
+        public DBHelper(Context context) {
+            super(context, "test_operations.db", null, 1);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            mCupboard.withDatabase(db).createTables();
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            mCupboard.withDatabase(db).upgradeTables();
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package nl.qbusict.cupboard;
 
+import android.database.CharArrayBuffer;
+import android.database.Cursor;
 import android.database.MatrixCursor;
 import android.test.AndroidTestCase;
 
@@ -26,4 +28,18 @@ public class OrderedCursorTest extends AndroidTestCase {
         assertTrue(wrapper.isNull(0));
     }
 
+    public void testCursorRemapBufferAndType() {
+        MatrixCursor cursor = new MatrixCursor(new String[]{"a", "b"});
+        cursor.addRow(new Object[]{"text", 1L});
+        PreferredColumnOrderCursorWrapper wrapper = new PreferredColumnOrderCursorWrapper(cursor, new String[]{"b", "m1", "a"});
+        wrapper.moveToNext();
+        CharArrayBuffer buffer = new CharArrayBuffer(16);
+        wrapper.copyStringToBuffer(2, buffer);
+        assertEquals("text", new String(buffer.data, 0, buffer.sizeCopied));
+        wrapper.copyStringToBuffer(1, buffer);
+        assertEquals(0, buffer.sizeCopied);
+        assertEquals(Cursor.FIELD_TYPE_INTEGER, wrapper.getType(0));
+        assertEquals(Cursor.FIELD_TYPE_NULL, wrapper.getType(1));
+        assertEquals(Cursor.FIELD_TYPE_STRING, wrapper.getType(2));
+    }
 }
@@ -0,0 +1,114 @@
+package nl.qbusict.cupboard;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.test.AndroidTestCase;
+
+import java.util.List;
+
+public class PreparedQueryTest extends AndroidTestCase {
+
+    private Cupboard mCupboard;
+    private SQLiteDatabase mDatabase;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mCupboard = new Cupboard();
+        mCupboard.register(TestEntity.class);
+        getContext().deleteDatabase("test_prepared.db");
+        mDatabase = new DBHelper(getContext()).getWritableDatabase();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mDatabase.close();
+        super.tearDown();
+    }
+
+    public void testPreparedQuery() {
+        DatabaseCompartment compartment = mCupboard.withDatabase(mDatabase);
+        for (int i = 0; i < 10; i++) {
+            TestEntity entity = new TestEntity();
+            entity.stringProperty = "entity" + i;
+            entity.intProperty = i;
+            compartment.put(entity);
+        }
+        PreparedQuery<TestEntity> query = compartment.query(TestEntity.class).withSelection("stringProperty = ?", "entity1").prepare();
+        assertEquals(1, query.get().intProperty);
+        assertEquals(5, query.get("entity5").intProperty);
+        assertEquals(7, query.get("entity7").intProperty);
+        assertNull(query.get("none"));
+        assertEquals(1, query.list().size());
+    }
+
+    public void testPreparedQueryLimitOffset() {
+        DatabaseCompartment compartment = mCupboard.withDatabase(mDatabase);
+        for (int i = 0; i < 10; i++) {
+            TestEntity entity = new TestEntity();
+            entity.intProperty = i;
+            compartment.put(entity);
+        }
+        PreparedQuery<TestEntity> query = compartment.query(TestEntity.class).withSelection("intProperty >= ?", "0").orderBy("intProperty").limit(3).offset(2).prepare();
+        assertEquals("SELECT * FROM 'TestEntity' WHERE intProperty >= ? ORDER BY intProperty LIMIT 2,3", query.getSql());
+        List<TestEntity> list = query.list();
+        assertEquals(3, list.size());
+        assertEquals(2, list.get(0).intProperty);
+        assertEquals(1, query.list("8").size());
+
+        query = compartment.query(TestEntity.class).orderBy("intProperty").offset(8).prepare();
+        assertEquals(2, query.list().size());
+    }
+
+    public void testCriteria() {
+        DatabaseCompartment compartment = mCupboard.withDatabase(mDatabase);
+        for (int i = 0; i < 10; i++) {
+            TestEntity entity = new TestEntity();
+            entity.stringProperty = "entity" + i;
+            entity.intProperty = i;
+            entity.doubleProperty = i / 2d;
+            compartment.put(entity);
+        }
+        List<TestEntity> list = compartment.query(TestEntity.class).where(Criteria.and(Criteria.ge("intProperty", 3),
+                Criteria.lt("doubleProperty", 3.0), Criteria.in("stringProperty", "entity3", "entity4", "entity8"))).orderBy("intProperty").list();
+        assertEquals(2, list.size());
+        assertEquals(3, list.get(0).intProperty);
+        assertEquals(4, list.get(1).intProperty);
+
+        PreparedQuery<TestEntity> query = compartment.query(TestEntity.class).where(Criteria.between("intProperty", 0, 0)).prepare();
+        assertEquals(3, query.list(2, 4).size());
+        assertEquals(list.get(0)._id, compartment.get(TestEntity.class, list.get(0)._id)._id);
+
+        try {
+            compartment.query(TestEntity.class).where(Criteria.eq("noSuchColumn", 1));
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testHavingRequiresGroupBy() {
+        try {
+            mCupboard.withDatabase(mDatabase).query(TestEntity.class).having("count(*) > 1").prepare();
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    private class DBHelper extends SQLiteOpenHelper {
+
+        public DBHelper(Context context) {
+            super(context, "test_prepared.db", null, 1);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            mCupboard.withDatabase(db).createTables();
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            mCupboard.withDatabase(db).upgradeTables();
+        }
+    }
+}
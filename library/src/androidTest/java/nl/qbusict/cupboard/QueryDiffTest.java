@@ -0,0 +1,159 @@
+package nl.qbusict.cupboard;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.test.AndroidTestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class QueryDiffTest extends AndroidTestCase {
+
+    private Cupboard mCupboard;
+    private SQLiteDatabase mDatabase;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mCupboard = new Cupboard();
+        mCupboard.register(TestEntity.class);
+        getContext().deleteDatabase("test_diff.db");
+        mDatabase = new DBHelper(getContext()).getWritableDatabase();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mDatabase.close();
+        super.tearDown();
+    }
+
+    public void testDiff() {
+        DatabaseCompartment compartment = mCupboard.withDatabase(mDatabase);
+        TestEntity first = new TestEntity();
+        first.stringProperty = "first";
+        TestEntity second = new TestEntity();
+        second.stringProperty = "second";
+        compartment.put(first, second);
+
+        QueryDiff<TestEntity> initial = compartment.query(TestEntity.class).orderBy("_id").query().diff(null);
+        assertEquals(2, initial.getCount());
+        assertEquals(2, initial.getInserted().size());
+        assertEquals("first", initial.getInserted().get(0).entity.stringProperty);
+        assertEquals(0, initial.getInserted().get(0).position);
+        assertTrue(initial.getUpdated().isEmpty());
+        assertTrue(initial.getRemoved().isEmpty());
+
+        QueryDiff<TestEntity> unchanged = compartment.query(TestEntity.class).orderBy("_id").query().diff(initial);
+        assertTrue(unchanged.isEmpty());
+
+        second.stringProperty = "changed";
+        compartment.put(second);
+        compartment.delete(first);
+        TestEntity third = new TestEntity();
+        compartment.put(third);
+        QueryDiff<TestEntity> changed = compartment.query(TestEntity.class).orderBy("_id").query().diff(unchanged);
+        assertEquals(2, changed.getCount());
+        assertEquals(1, changed.getInserted().size());
+        assertEquals(third._id.longValue(), changed.getInserted().get(0).id);
+        assertEquals(1, changed.getUpdated().size());
+        assertEquals("changed", changed.getUpdated().get(0).entity.stringProperty);
+        assertEquals(0, changed.getUpdated().get(0).position);
+        assertEquals(1, changed.getUpdated().get(0).previousPosition);
+        assertEquals(1, changed.getRemoved().size());
+        assertEquals(first._id.longValue(), changed.getRemoved().get(0).id);
+        assertNull(changed.getRemoved().get(0).entity);
+    }
+
+    public void testDiffRequiresId() {
+        DatabaseCompartment compartment = mCupboard.withDatabase(mDatabase);
+        compartment.put(new TestEntity(), new TestEntity());
+        try {
+            compartment.query(TestEntity.class).withProjection("stringProperty").query().diff(null);
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException expected) {
+        }
+        // the entity has an _id column, but the projection leaves it out
+        try {
+            compartment.query(TestEntity.class).withProjection("stringProperty", "intProperty").query().diff(null);
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    public void testDiffDetectsUpdateWithSameHashCode() {
+        DatabaseCompartment compartment = mCupboard.withDatabase(mDatabase);
+        TestEntity entity = new TestEntity();
+        entity.stringProperty = "Aa";
+        entity.byteArrayProperty = new byte[]{0, 31};
+        compartment.put(entity);
+        QueryDiff<TestEntity> initial = compartment.query(TestEntity.class).query().diff(null);
+
+        // "Aa" and "BB" have the same hash code
+        entity.stringProperty = "BB";
+        compartment.put(entity);
+        QueryDiff<TestEntity> changed = compartment.query(TestEntity.class).query().diff(initial);
+        assertEquals(1, changed.getUpdated().size());
+        assertEquals("BB", changed.getUpdated().get(0).entity.stringProperty);
+
+        // and so do these arrays
+        entity.byteArrayProperty = new byte[]{1, 0};
+        compartment.put(entity);
+        changed = compartment.query(TestEntity.class).query().diff(changed);
+        assertEquals(1, changed.getUpdated().size());
+        assertEquals(1, changed.getUpdated().get(0).entity.byteArrayProperty[0]);
+        assertTrue(compartment.query(TestEntity.class).query().diff(changed).isEmpty());
+    }
+
+    public void testObserveChanges() {
+        final List<QueryDiff<TestEntity>> diffs = new ArrayList<QueryDiff<TestEntity>>();
+        DatabaseCompartment compartment = mCupboard.withDatabase(mDatabase);
+        Subscription subscription = compartment.query(TestEntity.class).observeChanges(new DiffObserver<TestEntity>() {
+            @Override
+            public void onQueryDiff(QueryDiff<TestEntity> diff) {
+                diffs.add(diff);
+            }
+
+            @Override
+            public void onQueryError(RuntimeException error) {
+                fail(error.toString());
+            }
+        });
+        assertEquals(1, diffs.size());
+        assertTrue(diffs.get(0).isEmpty());
+
+        TestEntity entity = new TestEntity();
+        compartment.put(entity);
+        assertEquals(2, diffs.size());
+        assertEquals(1, diffs.get(1).getInserted().size());
+
+        // writing the same values doesn't change the result
+        compartment.put(entity);
+        assertEquals(2, diffs.size());
+
+        compartment.delete(entity);
+        assertEquals(3, diffs.size());
+        assertEquals(1, diffs.get(2).getRemoved().size());
+
+        subscription.unsubscribe();
+        compartment.put(new TestEntity());
+        assertEquals(3, diffs.size());
+    }
+
+    private class DBHelper extends SQLiteOpenHelper {
+
+        public DBHelper(Context context) {
+            super(context, "test_diff.db", null, 1);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            mCupboard.withDatabase(db).createTables();
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            mCupboard.withDatabase(db).upgradeTables();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package nl.qbusict.cupboard;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.test.AndroidTestCase;
+
+import java.util.List;
+
+import nl.qbusict.cupboard.QueryPlanAdvisor.Finding;
+import nl.qbusict.cupboard.QueryPlanAdvisor.Problem;
+import nl.qbusict.cupboard.annotation.Index;
+
+public class QueryPlanAdvisorTest extends AndroidTestCase {
+
+    private Cupboard mCupboard;
+    private QueryPlanAdvisor mAdvisor;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mAdvisor = new QueryPlanAdvisor();
+        mCupboard = new CupboardBuilder().useAnnotations().useQueryPlanAdvisor(mAdvisor).build();
+        mCupboard.register(AdvisedEntity.class);
+        getContext().deleteDatabase("test_query_plan.db");
+    }
+
+    public void testFullScanSuggestsIndex() {
+        SQLiteDatabase db = new DBHelper(getContext()).getWritableDatabase();
+        DatabaseCompartment compartment = mCupboard.withDatabase(db);
+        compartment.query(AdvisedEntity.class).where(Criteria.eq("name", "test")).list();
+        // repeated queries are explained once
+        compartment.query(AdvisedEntity.class).where(Criteria.eq("name", "other")).list();
+        List<Finding> findings = mAdvisor.getFindings().get(AdvisedEntity.class);
+        assertNotNull(findings);
+        assertEquals(1, findings.size());
+        Finding finding = findings.get(0);
+        assertEquals(Problem.FULL_SCAN, finding.problem);
+        assertEquals("@Index on AdvisedEntity.name", finding.suggestion);
+        assertTrue(mAdvisor.getReport().contains(AdvisedEntity.class.getName()));
+        db.close();
+    }
+
+    public void testIndexedQueryHasNoFindings() {
+        SQLiteDatabase db = new DBHelper(getContext()).getWritableDatabase();
+        DatabaseCompartment compartment = mCupboard.withDatabase(db);
+        compartment.query(AdvisedEntity.class).where(Criteria.eq("code", 1)).orderBy("code").list();
+        compartment.query(AdvisedEntity.class).where(Criteria.eq("code", 1)).count();
+        assertNull(mAdvisor.getFindings().get(AdvisedEntity.class));
+        db.close();
+    }
+
+    public void testTempBTreeSuggestsCompositeIndex() {
+        SQLiteDatabase db = new DBHelper(getContext()).getWritableDatabase();
+        DatabaseCompartment compartment = mCupboard.withDatabase(db);
+        compartment.query(AdvisedEntity.class).where(Criteria.eq("code", 1)).orderBy("name").list();
+        List<Finding> findings = mAdvisor.getFindings().get(AdvisedEntity.class);
+        assertNotNull(findings);
+        Finding finding = findings.get(findings.size() - 1);
+        assertEquals(Problem.TEMP_B_TREE, finding.problem);
+        assertTrue(finding.suggestion, finding.suggestion.contains("indexName = \"AdvisedEntity_code_name\", order = 2)) on AdvisedEntity.name"));
+        mAdvisor.reset();
+        assertTrue(mAdvisor.getFindings().isEmpty());
+        db.close();
+    }
+
+    public void testFailedExplainIsRecorded() {
+        InMemoryCupboardDatabase db = new InMemoryCupboardDatabase() {
+            @Override
+            public Cursor rawQuery(String sql, Object[] bindArgs) {
+                if (sql.startsWith("EXPLAIN")) {
+                    throw new SQLException("near \"EXPLAIN\": syntax error");
+                }
+                return super.rawQuery(sql, bindArgs);
+            }
+        };
+        DatabaseCompartment compartment = mCupboard.withDatabase(db);
+        compartment.createTables();
+        AdvisedEntity entity = new AdvisedEntity();
+        entity.name = "test";
+        compartment.put(entity);
+        // the query runs, even though it can't be explained
+        assertEquals(1, compartment.query(AdvisedEntity.class).where(Criteria.eq("name", "test")).list().size());
+        List<Finding> findings = mAdvisor.getFindings().get(AdvisedEntity.class);
+        assertNotNull(findings);
+        assertEquals(1, findings.size());
+        assertEquals(Problem.EXPLAIN_FAILED, findings.get(0).problem);
+        assertTrue(findings.get(0).detail.contains("syntax error"));
+        assertNull(findings.get(0).suggestion);
+    }
+
+    public static class AdvisedEntity {
+        public Long _id;
+        public String name;
+        @Index
+        public int code;
+    }
+
+    private class DBHelper extends SQLiteOpenHelper {
+
+        public DBHelper(Context context) {
+            super(context, "test_query_plan.db", null, 1);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            mCupboard.withDatabase(db).createTables();
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            mCupboard.withDatabase(db).upgradeTables();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package nl.qbusict.cupboard;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.test.AndroidTestCase;
+
+import nl.qbusict.cupboard.annotation.Table;
+
+public class TableOptionsTest extends AndroidTestCase {
+
+    private Cupboard mCupboard;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mCupboard = new CupboardBuilder().useAnnotations().build();
+        mCupboard.register(BookAuthor.class);
+        mCupboard.register(LookupEntity.class);
+        getContext().deleteDatabase("test_table_options.db");
+    }
+
+    public void testCreateTables() {
+        SQLiteDatabase db = new DBHelper(getContext()).getWritableDatabase();
+        String sql = tableSql(db, "BookAuthor");
+        assertTrue(sql, sql.startsWith("CREATE TABLE 'BookAuthor' (_id integer, "));
+        assertTrue(sql, sql.endsWith(", primary key ('book', 'author')) without rowid"));
+        sql = tableSql(db, "LookupEntity");
+        assertTrue(sql, sql.startsWith("CREATE TABLE 'LookupEntity' (_id integer primary key, "));
+        assertFalse(sql, sql.contains("autoincrement"));
+        db.close();
+    }
+
+    public void testPutReplacesByPrimaryKey() {
+        SQLiteDatabase db = new DBHelper(getContext()).getWritableDatabase();
+        DatabaseCompartment compartment = mCupboard.withDatabase(db);
+        BookAuthor bookAuthor = new BookAuthor();
+        bookAuthor.book = 1;
+        bookAuthor.author = 2;
+        bookAuthor.role = "writer";
+        compartment.put(bookAuthor);
+        assertNull(bookAuthor._id);
+        bookAuthor.role = "editor";
+        compartment.put(bookAuthor);
+        bookAuthor.author = 3;
+        compartment.put(bookAuthor);
+        assertEquals(2, compartment.query(BookAuthor.class).count());
+        assertEquals("editor", compartment.query(BookAuthor.class).where(Criteria.eq("author", 2)).get().role);
+
+        LookupEntity lookup = new LookupEntity();
+        compartment.put(lookup);
+        assertNotNull(lookup._id);
+        db.close();
+    }
+
+    public void testPrimaryKeyRequiresWithoutRowId() {
+        try {
+            TableOptions.forEntity(InvalidEntity.class);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    private static String tableSql(SQLiteDatabase db, String table) {
+        Cursor cursor = db.rawQuery("select sql from sqlite_master where type = 'table' and name = ?", new String[]{table});
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getString(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Table(withoutRowId = true, primaryKey = {"book", "author"})
+    public static class BookAuthor {
+        public Long _id;
+        public long book;
+        public long author;
+        public String role;
+    }
+
+    @Table(autoIncrement = false)
+    public static class LookupEntity {
+        public Long _id;
+        public String name;
+    }
+
+    @Table(primaryKey = "name")
+    public static class InvalidEntity {
+        public Long _id;
+        public String name;
+    }
+
+    private class DBHelper extends SQLiteOpenHelper {
+
+        public DBHelper(Context context) {
+            super(context, "test_table_options.db", null, 1);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            mCupboard.withDatabase(db).createTables();
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            mCupboard.withDatabase(db).upgradeTables();
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package nl.qbusict.cupboard;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.test.AndroidTestCase;
+
+import java.sql.Timestamp;
+import java.util.Calendar;
+import java.util.Date;
+
+import nl.qbusict.cupboard.annotation.TimeStorage;
+import nl.qbusict.cupboard.annotation.TimeStorage.Mode;
+
+public class TimeStorageTest extends AndroidTestCase {
+
+    // 2016-03-01T12:30:15.250Z
+    private static final long TIME = 1456835415250L;
+
+    private Cupboard mCupboard;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mCupboard = new CupboardBuilder().useAnnotations().build();
+        mCupboard.register(Event.class);
+        getContext().deleteDatabase("test_time_storage.db");
+    }
+
+    public void testStorageModes() {
+        SQLiteDatabase db = new DBHelper(getContext()).getWritableDatabase();
+        Event event = new Event();
+        event.created = new Date(TIME);
+        event.day = new Date(TIME);
+        event.precise = new Timestamp(TIME);
+        event.precise.setNanos(250001000);
+        event.text = new Timestamp(TIME);
+        event.text.setNanos(250001000);
+        event.calendar = Calendar.getInstance();
+        event.calendar.setTimeInMillis(TIME);
+        long id = mCupboard.withDatabase(db).put(event);
+        Cursor cursor = db.rawQuery("select created, day, precise, text, calendar from Event", null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals(TIME, cursor.getLong(0));
+            assertEquals(TIME / 1000, cursor.getLong(1));
+            assertEquals(TIME * 1000 + 1, cursor.getLong(2));
+            assertEquals("2016-03-01T12:30:15.250Z", cursor.getString(3));
+            assertEquals("2016-03-01T12:30:15.250Z", cursor.getString(4));
+        } finally {
+            cursor.close();
+        }
+        event = mCupboard.withDatabase(db).get(Event.class, id);
+        assertEquals(new Date(TIME), event.created);
+        assertEquals(new Date(TIME - 250), event.day);
+        assertEquals(250001000, event.precise.getNanos());
+        assertEquals(250000000, event.text.getNanos());
+        assertEquals(TIME, event.text.getTime());
+        assertEquals(TIME, event.calendar.getTimeInMillis());
+        assertEquals(1, mCupboard.withDatabase(db).query(Event.class).where(Criteria.eq("calendar", event.calendar)).count());
+        assertEquals(1, mCupboard.withDatabase(db).query(Event.class).where(Criteria.eq("precise", event.precise)).count());
+        db.close();
+    }
+
+    public void testExtremeMillisRoundTrip() {
+        SQLiteDatabase db = new DBHelper(getContext()).getWritableDatabase();
+        for (long millis : new long[]{Long.MAX_VALUE, Long.MIN_VALUE}) {
+            Event event = new Event();
+            event.created = new Date(millis);
+            long id = mCupboard.withDatabase(db).put(event);
+            assertEquals(new Date(millis), mCupboard.withDatabase(db).get(Event.class, id).created);
+        }
+        // a value stored before the time storage existed
+        db.execSQL("update Event set created = " + Long.MAX_VALUE);
+        assertEquals(new Date(Long.MAX_VALUE), mCupboard.withDatabase(db).query(Event.class).get().created);
+        db.close();
+    }
+
+    public void testRangeQueries() {
+        SQLiteDatabase db = new DBHelper(getContext()).getWritableDatabase();
+        for (int i = 0; i < 10; i++) {
+            Event event = new Event();
+            event.text = new Timestamp(TIME + i * 3600000L);
+            event.day = event.text;
+            mCupboard.withDatabase(db).put(event);
+        }
+        Date from = new Date(TIME + 2 * 3600000L);
+        Date to = new Date(TIME + 5 * 3600000L);
+        assertEquals(4, mCupboard.withDatabase(db).query(Event.class).withSelection("text between ? and ?",
+                Mode.ISO_TEXT.toSelectionArg(from), Mode.ISO_TEXT.toSelectionArg(to)).count());
+        assertEquals(3, mCupboard.withDatabase(db).query(Event.class).withSelection("day >= ? and day < ?",
+                Mode.SECONDS.toSelectionArg(from), Mode.SECONDS.toSelectionArg(to)).count());
+        assertEquals(4, mCupboard.withDatabase(db).query(Event.class).where(Criteria.between("text", from, to)).count());
+        assertEquals(3, mCupboard.withDatabase(db).query(Event.class).where(Criteria.and(Criteria.ge("day", from), Criteria.lt("day", to))).count());
+        // text written by sqlite can be read as well
+        db.execSQL("update Event set text = datetime(0, 'unixepoch')");
+        assertEquals(0, mCupboard.withDatabase(db).query(Event.class).get().text.getTime());
+        db.close();
+    }
+
+    public void testPreparedQueryBindsStoredValue() {
+        SQLiteDatabase db = new DBHelper(getContext()).getWritableDatabase();
+        for (int i = 0; i < 3; i++) {
+            Event event = new Event();
+            event.day = new Date(TIME + i * 1000L);
+            event.precise = new Timestamp(TIME + i);
+            event.text = new Timestamp(TIME + i);
+            mCupboard.withDatabase(db).put(event);
+        }
+        PreparedQuery<Event> byDay = mCupboard.withDatabase(db).query(Event.class).where(Criteria.eq("day", new Date(TIME))).prepare();
+        assertEquals(new Date(TIME - 250), byDay.get().day);
+        assertEquals(new Date(TIME + 750), byDay.get(new Date(TIME + 1000)).day);
+        assertEquals(new Date(TIME + 1750), byDay.get(new Date(TIME + 2000)).day);
+        PreparedQuery<Event> byPrecise = mCupboard.withDatabase(db).query(Event.class).where(Criteria.eq("precise", new Date(TIME))).prepare();
+        assertEquals(TIME, byPrecise.get().precise.getTime());
+        assertEquals(TIME + 2, byPrecise.get(new Date(TIME + 2)).precise.getTime());
+        PreparedQuery<Event> byText = mCupboard.withDatabase(db).query(Event.class).where(Criteria.eq("text", new Date(TIME))).prepare();
+        assertEquals(TIME, byText.get().text.getTime());
+        assertEquals(TIME + 1, byText.get(new Timestamp(TIME + 1)).text.getTime());
+        db.close();
+    }
+
+    public void testTimeStorageOnWrongType() {
+        Cupboard cupboard = new CupboardBuilder().useAnnotations().build();
+        cupboard.register(Invalid.class);
+        try {
+            cupboard.getEntityConverter(Invalid.class);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public static class Event {
+        public Long _id;
+        public Date created;
+        @TimeStorage(Mode.SECONDS)
+        public Date day;
+        @TimeStorage(Mode.MICROS)
+        public Timestamp precise;
+        @TimeStorage(Mode.ISO_TEXT)
+        public Timestamp text;
+        @TimeStorage(Mode.ISO_TEXT)
+        public Calendar calendar;
+    }
+
+    public static class Invalid {
+        public Long _id;
+        @TimeStorage(Mode.SECONDS)
+        public long time;
+    }
+
+    private class DBHelper extends SQLiteOpenHelper {
+
+        public DBHelper(Context context) {
+            super(context, "test_time_storage.db", null, 1);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            mCupboard.withDatabase(db).createTables();
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            mCupboard.withDatabase(db).upgradeTables();
+        }
+    }
+}
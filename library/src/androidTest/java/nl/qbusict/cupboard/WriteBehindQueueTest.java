@@ -0,0 +1,182 @@
+package nl.qbusict.cupboard;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.test.AndroidTestCase;
+
+import android.content.ContentValues;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import nl.qbusict.cupboard.convert.EntityConverter;
+import nl.qbusict.cupboard.convert.EntityConverterFactory;
+import nl.qbusict.cupboard.convert.ReflectiveEntityConverter;
+
+public class WriteBehindQueueTest extends AndroidTestCase {
+
+    private Cupboard mCupboard;
+    private SQLiteDatabase mDatabase;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mCupboard = new Cupboard();
+        mCupboard.register(TestEntity.class);
+        getContext().deleteDatabase("test_write_behind.db");
+        mDatabase = new DBHelper(getContext()).getWritableDatabase();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mDatabase.close();
+        super.tearDown();
+    }
+
+    public void testFlushCommitsInBatches() throws Exception {
+        WriteBehindQueue queue = new WriteBehindQueue(mCupboard.withDatabase(mDatabase), 10, TimeUnit.MINUTES.toMillis(1), 100);
+        for (int i = 0; i < 25; i++) {
+            queue.put(new TestEntity());
+        }
+        queue.flush();
+        assertEquals(25, mCupboard.withDatabase(mDatabase).query(TestEntity.class).list().size());
+        WriteBehindQueue.Stats stats = queue.getStats();
+        assertEquals(25, stats.getEntityCount());
+        assertEquals(10, stats.getMaxBatchSize());
+        assertEquals(3, stats.getBatchCount());
+        queue.close();
+    }
+
+    public void testCommitAfterDelay() throws Exception {
+        WriteBehindQueue queue = new WriteBehindQueue(mCupboard.withDatabase(mDatabase), 100, 50, 100);
+        queue.put(new TestEntity());
+        Thread.sleep(500);
+        assertEquals(1, queue.getStats().getBatchCount());
+        assertEquals(1, mCupboard.withDatabase(mDatabase).query(TestEntity.class).list().size());
+        queue.close();
+    }
+
+    public void testCloseCommitsPending() throws Exception {
+        WriteBehindQueue queue = new WriteBehindQueue(mCupboard.withDatabase(mDatabase), 100, TimeUnit.MINUTES.toMillis(1), 100);
+        queue.put(new TestEntity());
+        queue.put(new TestEntity());
+        queue.close();
+        assertEquals(2, mCupboard.withDatabase(mDatabase).query(TestEntity.class).list().size());
+        try {
+            queue.put(new TestEntity());
+            fail("Expected an exception");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    public void testConcurrentFlushAndClose() throws Exception {
+        for (int round = 0; round < 20; round++) {
+            DatabaseCompartment compartment = mCupboard.withDatabase(new InMemoryCupboardDatabase());
+            compartment.createTables();
+            final WriteBehindQueue queue = new WriteBehindQueue(compartment, 10, 10, 100);
+            final CountDownLatch done = new CountDownLatch(8);
+            List<Thread> threads = new ArrayList<Thread>();
+            for (int i = 0; i < 8; i++) {
+                final boolean close = i % 4 == 0;
+                threads.add(new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            if (close) {
+                                queue.close();
+                            } else {
+                                queue.put(new TestEntity());
+                                queue.flush();
+                            }
+                        } catch (IllegalStateException expected) {
+                            // closed
+                        } catch (InterruptedException e) {
+                            throw new RuntimeException(e);
+                        } finally {
+                            done.countDown();
+                        }
+                    }
+                }));
+            }
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            assertTrue("flush or close did not return", done.await(10, TimeUnit.SECONDS));
+        }
+    }
+
+    public void testWriterThreadDies() throws Exception {
+        Cupboard cupboard = new CupboardBuilder().registerEntityConverterFactory(new EntityConverterFactory() {
+            @Override
+            public <T> EntityConverter<T> create(Cupboard cupboard, Class<T> type) {
+                if (type != Fatal.class) {
+                    return null;
+                }
+                return new ReflectiveEntityConverter<T>(cupboard, type) {
+                    @Override
+                    public void toValues(T object, ContentValues values) {
+                        throw new AssertionError("fatal");
+                    }
+                };
+            }
+        }).build();
+        cupboard.register(Fatal.class);
+        InMemoryCupboardDatabase database = new InMemoryCupboardDatabase();
+        cupboard.withDatabase(database).createTables();
+        // an uncaught error would otherwise crash the test process
+        Thread.UncaughtExceptionHandler handler = Thread.getDefaultUncaughtExceptionHandler();
+        final CountDownLatch died = new CountDownLatch(1);
+        Thread.setDefaultUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+            @Override
+            public void uncaughtException(Thread thread, Throwable ex) {
+                died.countDown();
+            }
+        });
+        try {
+            WriteBehindQueue queue = new WriteBehindQueue(cupboard.withDatabase(database), 10, 10, 100);
+            queue.put(new Fatal());
+            try {
+                queue.flush();
+                fail("Expected IllegalStateException");
+            } catch (IllegalStateException expected) {
+            }
+            try {
+                queue.put(new Fatal());
+                fail("Expected IllegalStateException");
+            } catch (IllegalStateException expected) {
+            }
+            try {
+                queue.close();
+            } catch (IllegalStateException expected) {
+                // the error is reported by close if flush found the writer stopped before it queued
+            }
+            assertTrue(died.await(10, TimeUnit.SECONDS));
+        } finally {
+            Thread.setDefaultUncaughtExceptionHandler(handler);
+        }
+    }
+
+    public static class Fatal {
+        public Long _id;
+    }
+
+    private class DBHelper extends SQLiteOpenHelper {
+
+        public DBHelper(Context context) {
+            super(context, "test_write_behind.db", null, 1);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            mCupboard.withDatabase(db).createTables();
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            mCupboard.withDatabase(db).upgradeTables();
+        }
+    }
+}
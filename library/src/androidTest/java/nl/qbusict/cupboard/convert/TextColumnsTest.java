@@ -0,0 +1,70 @@
+package nl.qbusict.cupboard.convert;
+
+import android.database.CharArrayBuffer;
+import android.database.MatrixCursor;
+import android.test.AndroidTestCase;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+public class TextColumnsTest extends AndroidTestCase {
+
+    private enum Color {
+        RED, GREEN, BLUE, Aa, BB
+    }
+
+    private static MatrixCursor cursor(Object... values) {
+        String[] columns = new String[values.length];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = "c" + i;
+        }
+        MatrixCursor cursor = new MatrixCursor(columns);
+        cursor.addRow(values);
+        cursor.moveToFirst();
+        return cursor;
+    }
+
+    public void testReadReusesBuffer() {
+        MatrixCursor cursor = cursor("first", "second");
+        CharArrayBuffer buffer = TextColumns.read(cursor, 0);
+        assertEquals("first", new String(buffer.data, 0, buffer.sizeCopied));
+        assertSame(buffer, TextColumns.read(cursor, 1));
+        assertEquals("second", new String(buffer.data, 0, buffer.sizeCopied));
+    }
+
+    public void testBigDecimal() {
+        MatrixCursor cursor = cursor("123.450", "-1E+3");
+        assertEquals(new BigDecimal("123.450"), TextColumns.readBigDecimal(cursor, 0));
+        assertEquals(new BigDecimal("-1E+3"), TextColumns.readBigDecimal(cursor, 1));
+    }
+
+    public void testBigInteger() {
+        MatrixCursor cursor = cursor("0", "-123456789012345678", "+42", "12345678901234567890123", "-99999999999999999999");
+        assertEquals(BigInteger.ZERO, TextColumns.readBigInteger(cursor, 0));
+        assertEquals(new BigInteger("-123456789012345678"), TextColumns.readBigInteger(cursor, 1));
+        assertEquals(BigInteger.valueOf(42), TextColumns.readBigInteger(cursor, 2));
+        assertEquals(new BigInteger("12345678901234567890123"), TextColumns.readBigInteger(cursor, 3));
+        assertEquals(new BigInteger("-99999999999999999999"), TextColumns.readBigInteger(cursor, 4));
+        try {
+            TextColumns.readBigInteger(cursor("12a"), 0);
+            fail("Expected NumberFormatException");
+        } catch (NumberFormatException expected) {
+        }
+    }
+
+    public void testEnumNames() {
+        TextColumns.EnumNames<Color> names = new TextColumns.EnumNames<Color>(Color.class);
+        // Aa and BB have the same String hash code
+        MatrixCursor cursor = cursor("RED", "GREEN", "BLUE", "Aa", "BB");
+        assertSame(Color.RED, names.read(cursor, 0));
+        assertSame(Color.GREEN, names.read(cursor, 1));
+        assertSame(Color.BLUE, names.read(cursor, 2));
+        assertSame(Color.Aa, names.read(cursor, 3));
+        assertSame(Color.BB, names.read(cursor, 4));
+        try {
+            names.read(cursor("RE"), 0);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
@@ -0,0 +1,549 @@
+/*
+ * Copyright (C) 2016 Little Robots
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package nl.qbusict.cupboard;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Asynchronous counterpart of {@link DatabaseCompartment}. Writes are funneled through a single writer thread and writes that
+ * are queued up while a previous batch is being committed are coalesced into a single transaction. Reads are executed on a
+ * bounded pool of reader threads.
+ * <p/>
+ * For reads to actually run concurrently with writes the database should use write ahead logging, see
+ * {@link SQLiteDatabase#enableWriteAheadLogging()}. Without it, readers simply wait for the database lock.
+ * <p/>
+ * An instance owns threads, so typically a single instance is created for a database and kept around for as long as the
+ * database is open. Call {@link #shutdown()} when done; pending writes will still be committed.
+ * <h2>Example</h2>
+ * <pre>
+ * AsyncDatabaseCompartment async = new AsyncDatabaseCompartment(cupboard(), db);
+ * Future&lt;Long&gt; id = async.put(book);
+ * async.read(new AsyncDatabaseCompartment.Operation&lt;List&lt;Book&gt;&gt;() {
+ *     public List&lt;Book&gt; execute(DatabaseCompartment compartment) {
+ *         return compartment.query(Book.class).list();
+ *     }
+ * }, callback);
+ * </pre>
+ */
+public class AsyncDatabaseCompartment {
+    private static final int DEFAULT_READER_THREADS = 2;
+    private static final int DEFAULT_MAX_BATCH_SIZE = 100;
+
+    private final DatabaseCompartment mCompartment;
+    private final BlockingQueue<Task<?>> mWriteQueue = new LinkedBlockingQueue<Task<?>>();
+    private final ExecutorService mReaders;
+    private final Thread mWriter;
+    private final int mMaxBatchSize;
+    private final Task<Void> mShutdownMarker;
+    // guards queueing writes against shutdown, so that no write is queued after the shutdown marker
+    private final Object mLock = new Object();
+    private volatile boolean mShutdown = false;
+
+    /**
+     * An operation on a database, executed on either the writer thread or one of the reader threads.
+     *
+     * @param <V> the result type
+     */
+    public interface Operation<V> {
+        /**
+         * Execute the operation
+         *
+         * @param compartment the compartment to operate on
+         * @return the result of the operation
+         */
+        V execute(DatabaseCompartment compartment);
+    }
+
+    /**
+     * Callback for the result of an {@link Operation}. Callbacks are invoked on the thread that executed the operation.
+     *
+     * @param <V> the result type
+     */
+    public interface Callback<V> {
+        /**
+         * Called when the operation succeeded. For writes this is called after the transaction was committed.
+         *
+         * @param result the result of the operation
+         */
+        void onSuccess(V result);
+
+        /**
+         * Called when the operation or committing the transaction failed
+         *
+         * @param error the error
+         */
+        void onFailure(Throwable error);
+    }
+
+    public AsyncDatabaseCompartment(Cupboard cupboard, SQLiteDatabase database) {
+        this(cupboard, new DatabaseCompartment.PlatformSQLiteDatabase(database), DEFAULT_READER_THREADS);
+    }
+
+    public AsyncDatabaseCompartment(Cupboard cupboard, SQLiteDatabase database, int readerThreads) {
+        this(cupboard, new DatabaseCompartment.PlatformSQLiteDatabase(database), readerThreads);
+    }
+
+    public AsyncDatabaseCompartment(Cupboard cupboard, CupboardDatabase database) {
+        this(cupboard, database, DEFAULT_READER_THREADS);
+    }
+
+    /**
+     * Create an async compartment
+     *
+     * @param cupboard      the cupboard instance
+     * @param database      the database
+     * @param readerThreads the maximum number of threads used for reading, must be greater or equal to 1
+     */
+    public AsyncDatabaseCompartment(Cupboard cupboard, CupboardDatabase database, int readerThreads) {
+        this(cupboard, database, readerThreads, DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    AsyncDatabaseCompartment(Cupboard cupboard, CupboardDatabase database, int readerThreads, int maxBatchSize) {
+        if (readerThreads < 1) {
+            throw new IllegalArgumentException("Reader threads must be greater or equal to 1");
+        }
+        mCompartment = new DatabaseCompartment(cupboard, database);
+        mMaxBatchSize = maxBatchSize;
+        mShutdownMarker = new Task<Void>(mCompartment, null, null);
+        mReaders = Executors.newFixedThreadPool(readerThreads, new NamedThreadFactory("cupboard-reader-"));
+        mWriter = new NamedThreadFactory("cupboard-writer-").newThread(new Runnable() {
+            @Override
+            public void run() {
+                processWrites();
+            }
+        });
+        mWriter.start();
+    }
+
+    /**
+     * Put a single entity
+     *
+     * @param entity the entity
+     * @return a future for the entity id
+     * @see DatabaseCompartment#put(Object)
+     */
+    public <T> Future<Long> put(final T entity) {
+        return write(new Operation<Long>() {
+            @Override
+            public Long execute(DatabaseCompartment compartment) {
+                return compartment.put(entity);
+            }
+        });
+    }
+
+    /**
+     * Put multiple entities
+     *
+     * @param entities the entities
+     * @return a future that completes when the entities are committed
+     * @see DatabaseCompartment#put(Collection)
+     */
+    public Future<Void> put(final Collection<?> entities) {
+        return write(new Operation<Void>() {
+            @Override
+            public Void execute(DatabaseCompartment compartment) {
+                compartment.put(entities);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Update entities
+     *
+     * @param entityClass the entity class
+     * @param values      the content values
+     * @return a future for the number of entities updated
+     * @see DatabaseCompartment#update(Class, ContentValues)
+     */
+    public Future<Integer> update(final Class<?> entityClass, final ContentValues values) {
+        return write(new Operation<Integer>() {
+            @Override
+            public Integer execute(DatabaseCompartment compartment) {
+                return compartment.update(entityClass, values);
+            }
+        });
+    }
+
+    /**
+     * Update entities
+     *
+     * @param entityClass   entity class
+     * @param values        content values
+     * @param selection     where clause
+     * @param selectionArgs selection arguments
+     * @return a future for the number of entities updated
+     * @see DatabaseCompartment#update(Class, ContentValues, String, String...)
+     */
+    public Future<Integer> update(final Class<?> entityClass, final ContentValues values, final String selection, final String... selectionArgs) {
+        return write(new Operation<Integer>() {
+            @Override
+            public Integer execute(DatabaseCompartment compartment) {
+                return compartment.update(entityClass, values, selection, selectionArgs);
+            }
+        });
+    }
+
+    /**
+     * Delete an entity
+     *
+     * @param entity the entity
+     * @return a future that returns true if the entity was deleted
+     * @see DatabaseCompartment#delete(Object)
+     */
+    public <T> Future<Boolean> delete(final T entity) {
+        return write(new Operation<Boolean>() {
+            @Override
+            public Boolean execute(DatabaseCompartment compartment) {
+                return compartment.delete(entity);
+            }
+        });
+    }
+
+    /**
+     * Delete an entity by id
+     *
+     * @param entityClass the entity class
+     * @param id          the entity id
+     * @return a future that returns true if the entity was deleted
+     * @see DatabaseCompartment#delete(Class, long)
+     */
+    public Future<Boolean> delete(final Class<?> entityClass, final long id) {
+        return write(new Operation<Boolean>() {
+            @Override
+            public Boolean execute(DatabaseCompartment compartment) {
+                return compartment.delete(entityClass, id);
+            }
+        });
+    }
+
+    /**
+     * Delete entities
+     *
+     * @param entityClass   the entity class
+     * @param selection     where clause
+     * @param selectionArgs selection arguments
+     * @return a future for the number of deleted entities
+     * @see DatabaseCompartment#delete(Class, String, String...)
+     */
+    public Future<Integer> delete(final Class<?> entityClass, final String selection, final String... selectionArgs) {
+        return write(new Operation<Integer>() {
+            @Override
+            public Integer execute(DatabaseCompartment compartment) {
+                return compartment.delete(entityClass, selection, selectionArgs);
+            }
+        });
+    }
+
+    /**
+     * Get an entity by id
+     *
+     * @param entityClass the entity class
+     * @param id          the entity id
+     * @return a future for the entity, which returns null if the entity wasn't found
+     * @see DatabaseCompartment#get(Class, long)
+     */
+    public <T> Future<T> get(final Class<T> entityClass, final long id) {
+        return read(new Operation<T>() {
+            @Override
+            public T execute(DatabaseCompartment compartment) {
+                return compartment.get(entityClass, id);
+            }
+        });
+    }
+
+    /**
+     * Execute a read operation on one of the reader threads
+     *
+     * @param operation the operation
+     * @return a future for the result
+     */
+    public <V> Future<V> read(Operation<V> operation) {
+        return read(operation, null);
+    }
+
+    /**
+     * Execute a read operation on one of the reader threads
+     *
+     * @param operation the operation
+     * @param callback  the callback to call with the result, may be null
+     * @return a future for the result
+     */
+    public <V> Future<V> read(Operation<V> operation, Callback<V> callback) {
+        checkNotShutdown();
+        Task<V> task = new Task<V>(mCompartment, operation, callback);
+        mReaders.execute(task);
+        return task;
+    }
+
+    /**
+     * Execute a write operation on the writer thread, see {@link #write(Operation, Callback)}.
+     *
+     * @param operation the operation
+     * @return a future for the result
+     */
+    public <V> Future<V> write(Operation<V> operation) {
+        return write(operation, null);
+    }
+
+    /**
+     * Execute a write operation on the writer thread. The operation should only write to the database; it is executed
+     * in a transaction that may be shared with other write operations. When another operation in that transaction fails, the
+     * transaction is rolled back and the operations that were executed before the failed one are executed again, so an
+     * operation must not have side effects outside of the database that can't be repeated. Use the callback for those, it is
+     * only called once.
+     *
+     * @param operation the operation
+     * @param callback  the callback to call after the operation was committed or failed, may be null
+     * @return a future for the result
+     */
+    public <V> Future<V> write(Operation<V> operation, Callback<V> callback) {
+        Task<V> task = new Task<V>(mCompartment, operation, callback);
+        synchronized (mLock) {
+            checkNotShutdown();
+            mWriteQueue.add(task);
+        }
+        return task;
+    }
+
+    /**
+     * Stop accepting new operations. Operations that were already submitted will complete; this method does not wait for them.
+     */
+    public void shutdown() {
+        synchronized (mLock) {
+            if (mShutdown) {
+                return;
+            }
+            mShutdown = true;
+            mWriteQueue.add(mShutdownMarker);
+        }
+        mReaders.shutdown();
+    }
+
+    private void checkNotShutdown() {
+        if (mShutdown) {
+            throw new RejectedExecutionException("This compartment has been shut down");
+        }
+    }
+
+    private void processWrites() {
+        List<Task<?>> batch = new ArrayList<Task<?>>(mMaxBatchSize);
+        boolean stopped = false;
+        try {
+            boolean running = true;
+            while (running) {
+                try {
+                    batch.add(mWriteQueue.take());
+                } catch (InterruptedException e) {
+                    // keep going until we get the shutdown marker
+                    continue;
+                }
+                mWriteQueue.drainTo(batch, mMaxBatchSize - 1);
+                running = !batch.remove(mShutdownMarker);
+                if (!batch.isEmpty()) {
+                    commit(batch);
+                }
+                batch.clear();
+            }
+            stopped = true;
+        } finally {
+            if (!stopped) {
+                // the writer thread dies, so fail whatever is left instead of leaving futures waiting forever
+                synchronized (mLock) {
+                    mShutdown = true;
+                }
+                mReaders.shutdown();
+                IllegalStateException error = new IllegalStateException("The writer thread stopped unexpectedly");
+                for (Task<?> task : batch) {
+                    failQuietly(task, error);
+                }
+                Task<?> task;
+                while ((task = mWriteQueue.poll()) != null) {
+                    failQuietly(task, error);
+                }
+            }
+        }
+    }
+
+    private static void failQuietly(Task<?> task, Throwable error) {
+        try {
+            task.fail(error);
+        } catch (Throwable ignored) {
+            // a failing callback must not stop the remaining tasks from failing
+        }
+    }
+
+    private void commit(List<Task<?>> batch) {
+        for (int i = batch.size() - 1; i >= 0; i--) {
+            if (batch.get(i).isCancelled()) {
+                batch.remove(i);
+            }
+        }
+        while (!batch.isEmpty()) {
+            int failed = commitCoalesced(batch);
+            if (failed < 0) {
+                return;
+            }
+            // the failed operation rolled back the operations before it, which are executed again. The failed operation isn't
+            // retried and the operations after it haven't been executed yet, so no operation runs more often than needed.
+            commit(new ArrayList<Task<?>>(batch.subList(0, failed)));
+            batch.get(failed).complete();
+            batch = new ArrayList<Task<?>>(batch.subList(failed + 1, batch.size()));
+        }
+    }
+
+    /**
+     * Execute the tasks in a single transaction. If one of multiple tasks fails the transaction is rolled back and none of
+     * the tasks are completed, otherwise all tasks are completed with either their result or the error.
+     *
+     * @return -1 if the tasks were completed, or the index of the task that failed, in which case the others should be retried
+     */
+    private int commitCoalesced(List<Task<?>> tasks) {
+        Throwable error = null;
+        int failed = -1;
+        mCompartment.beginTransaction();
+        try {
+            for (int i = 0; i < tasks.size(); i++) {
+                if (!tasks.get(i).execute()) {
+                    failed = i;
+                    break;
+                }
+            }
+            if (failed == -1) {
+                mCompartment.setTransactionSuccessful();
+            }
+        } catch (Throwable e) {
+            error = e;
+        } finally {
+            try {
+                mCompartment.endTransaction();
+            } catch (Throwable e) {
+                error = e;
+            }
+        }
+        if (failed != -1 && tasks.size() > 1) {
+            return failed;
+        }
+        for (Task<?> task : tasks) {
+            if (error != null) {
+                task.fail(error);
+            } else {
+                task.complete();
+            }
+        }
+        return -1;
+    }
+
+    private static class Task<V> extends FutureTask<V> {
+        private final DatabaseCompartment mCompartment;
+        private final Operation<V> mOperation;
+        private final Callback<V> mCallback;
+        private V mResult;
+        private Throwable mError;
+
+        Task(final DatabaseCompartment compartment, final Operation<V> operation, Callback<V> callback) {
+            super(new Callable<V>() {
+                @Override
+                public V call() throws Exception {
+                    return operation.execute(compartment);
+                }
+            });
+            mCompartment = compartment;
+            mOperation = operation;
+            mCallback = callback;
+        }
+
+        /**
+         * Execute the operation without completing this future
+         *
+         * @return true if the operation succeeded, false otherwise
+         */
+        boolean execute() {
+            mResult = null;
+            mError = null;
+            try {
+                mResult = mOperation.execute(mCompartment);
+                return true;
+            } catch (Throwable e) {
+                mError = e;
+                return false;
+            }
+        }
+
+        void complete() {
+            if (mError != null) {
+                setException(mError);
+            } else {
+                set(mResult);
+            }
+        }
+
+        void fail(Throwable error) {
+            setException(error);
+        }
+
+        @Override
+        protected void done() {
+            if (mCallback == null || isCancelled()) {
+                return;
+            }
+            V result;
+            try {
+                result = get();
+            } catch (InterruptedException e) {
+                return;
+            } catch (ExecutionException e) {
+                mCallback.onFailure(e.getCause());
+                return;
+            }
+            mCallback.onSuccess(result);
+        }
+    }
+
+    private static class NamedThreadFactory implements ThreadFactory {
+        private final AtomicInteger mCount = new AtomicInteger(1);
+        private final String mPrefix;
+
+        NamedThreadFactory(String prefix) {
+            mPrefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, mPrefix + mCount.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2016 Little Robots
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package nl.qbusict.cupboard;
+
+import android.content.ContentValues;
+
+import java.util.List;
+
+/**
+ * Optional extension to {@link CupboardDatabase}. When the database passed to Cupboard implements this interface,
+ * {@link DatabaseCompartment#put(java.util.Collection)} writes consecutive entities of the same type in batches instead of one
+ * statement per entity.
+ */
+public interface BatchCupboardDatabase extends CupboardDatabase {
+
+    /**
+     * Insert or replace multiple rows. This is only called inside a transaction.
+     *
+     * @param table          the table
+     * @param nullColumnHack the column to insert null into for empty values, see {@link #insertOrThrow(String, String, ContentValues)}
+     * @param values         the rows
+     * @param replace        true to replace existing rows like {@link #replaceOrThrow(String, String, ContentValues)}, false to
+     *                       fail on a conflict like {@link #insertOrThrow(String, String, ContentValues)}
+     * @return the row ids of the rows, in the order of the values
+     */
+    long[] insertBatch(String table, String nullColumnHack, List<ContentValues> values, boolean replace);
+}
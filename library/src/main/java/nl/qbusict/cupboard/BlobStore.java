@@ -0,0 +1,380 @@
+/*
+ * Copyright (C) 2016 Little Robots
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package nl.qbusict.cupboard;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.provider.BaseColumns;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import nl.qbusict.cupboard.internal.IndexStatement;
+
+/**
+ * Stores blobs that are too large to keep in memory or in a single row, like attachments or recordings. The content is split in
+ * chunks that are stored as separate rows, so reading and writing only holds a single chunk in memory and no row comes near the
+ * size limit of a {@link android.database.CursorWindow}. Entities refer to a blob with a {@link ChunkedBlob} field.
+ * <pre>
+ * BlobStore blobs = cupboard().withDatabase(db).blobs();
+ * message.attachment = blobs.create(inputStream);
+ * cupboard().withDatabase(db).put(message);
+ * ...
+ * InputStream in = blobs.openInputStream(message.attachment);
+ * </pre>
+ * Blobs are not deleted along with the entities that refer to them, use {@link #delete(ChunkedBlob)}.
+ * <p/>
+ * The tables of the store are created when the first blob is created, reading from a database without blobs doesn't change the
+ * schema, so it works on a read only database.
+ */
+public class BlobStore {
+    /**
+     * The default size of a chunk in bytes
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+    static final String BLOBS_TABLE = IndexStatement.INDEX_PREFIX + "_blobs";
+    static final String CHUNKS_TABLE = IndexStatement.INDEX_PREFIX + "_blob_chunks";
+    private static final String QUERY_CHUNK = "SELECT data FROM " + CHUNKS_TABLE + " WHERE blob = ? AND seq = ?";
+    private static final String QUERY_TABLES = "SELECT count(*) FROM sqlite_master WHERE type = 'table' AND name IN ('" + BLOBS_TABLE
+            + "', '" + CHUNKS_TABLE + "')";
+
+    private final CupboardDatabase mDatabase;
+    private final int mChunkSize;
+
+    BlobStore(CupboardDatabase database, int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Invalid chunk size " + chunkSize);
+        }
+        mDatabase = database;
+        mChunkSize = chunkSize;
+    }
+
+    private boolean hasTables() {
+        return DatabaseCompartment.longForQuery(mDatabase, QUERY_TABLES, null) == 2;
+    }
+
+    private void createTables() {
+        mDatabase.execSQL("CREATE TABLE IF NOT EXISTS " + BLOBS_TABLE + " (_id integer primary key autoincrement, length integer not null)");
+        mDatabase.execSQL("CREATE TABLE IF NOT EXISTS " + CHUNKS_TABLE + " (blob integer not null, seq integer not null, data blob not null, primary key (blob, seq))");
+    }
+
+    /**
+     * Create an empty blob
+     *
+     * @return the blob
+     */
+    public ChunkedBlob create() {
+        if (!hasTables()) {
+            createTables();
+        }
+        ContentValues values = new ContentValues(1);
+        values.put("length", 0);
+        return new ChunkedBlob(mDatabase.insertOrThrow(BLOBS_TABLE, null, values));
+    }
+
+    /**
+     * Create a blob with the content of a stream, in a single transaction. The stream is not closed.
+     *
+     * @param in the content
+     * @return the blob
+     * @throws IOException if reading from the stream fails, nothing is stored in that case
+     */
+    public ChunkedBlob create(InputStream in) throws IOException {
+        mDatabase.beginTransaction();
+        try {
+            ChunkedBlob blob = create();
+            BlobOutputStream out = openOutputStream(blob);
+            try {
+                byte[] buffer = new byte[Math.min(mChunkSize, 8192)];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+                out.commit();
+            } finally {
+                out.close();
+            }
+            mDatabase.setTransactionSuccessful();
+            return blob;
+        } finally {
+            mDatabase.endTransaction();
+        }
+    }
+
+    /**
+     * Open a stream to replace the content of a blob. A transaction is started when the stream is opened and ends when the stream is
+     * closed, so the stream must be closed on the thread that opened it. The new content is only stored by
+     * {@link BlobOutputStream#commit()}, closing the stream without committing, e.g. because copying the content failed, keeps
+     * the previous content.
+     * <p/>
+     * The transaction holds the exclusive lock of the database for as long as the stream is open, which blocks all other writers, so
+     * don't keep the stream open while waiting for a slow source like the network; copy such content to a file first.
+     * <pre>
+     * BlobOutputStream out = blobs.openOutputStream(blob);
+     * try {
+     *     // write the content
+     *     out.commit();
+     * } finally {
+     *     out.close();
+     * }
+     * </pre>
+     *
+     * @param blob the blob
+     * @return the stream
+     * @throws IllegalArgumentException if the blob doesn't exist
+     */
+    public BlobOutputStream openOutputStream(ChunkedBlob blob) {
+        mDatabase.beginTransaction();
+        boolean opened = false;
+        try {
+            if (length(blob) < 0) {
+                throw new IllegalArgumentException("No blob with id " + blob.getId());
+            }
+            mDatabase.delete(CHUNKS_TABLE, "blob = ?", new String[]{String.valueOf(blob.getId())});
+            opened = true;
+        } finally {
+            if (!opened) {
+                mDatabase.endTransaction();
+            }
+        }
+        return new BlobOutputStream(blob.getId());
+    }
+
+    /**
+     * Open a stream to read the content of a blob
+     *
+     * @param blob the blob
+     * @return the stream
+     * @throws IllegalArgumentException if the blob doesn't exist
+     */
+    public InputStream openInputStream(ChunkedBlob blob) {
+        if (length(blob) < 0) {
+            throw new IllegalArgumentException("No blob with id " + blob.getId());
+        }
+        return new BlobInputStream(blob.getId());
+    }
+
+    /**
+     * @param blob the blob
+     * @return the length of the blob in bytes, or -1 if the blob doesn't exist
+     */
+    public long length(ChunkedBlob blob) {
+        if (!hasTables()) {
+            return -1;
+        }
+        Cursor cursor = DatabaseCompartment.rawQuery(mDatabase, "SELECT length FROM " + BLOBS_TABLE + " WHERE " + BaseColumns._ID + " = ?", new Object[]{blob.getId()});
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Delete a blob and its content
+     *
+     * @param blob the blob
+     * @return true if the blob existed, false otherwise
+     */
+    public boolean delete(ChunkedBlob blob) {
+        if (!hasTables()) {
+            return false;
+        }
+        String[] args = new String[]{String.valueOf(blob.getId())};
+        mDatabase.beginTransaction();
+        try {
+            mDatabase.delete(CHUNKS_TABLE, "blob = ?", args);
+            boolean deleted = mDatabase.delete(BLOBS_TABLE, BaseColumns._ID + " = ?", args) > 0;
+            mDatabase.setTransactionSuccessful();
+            return deleted;
+        } finally {
+            mDatabase.endTransaction();
+        }
+    }
+
+    /**
+     * Writes the content of a blob chunk by chunk, see {@link #openOutputStream(ChunkedBlob)}
+     */
+    public class BlobOutputStream extends OutputStream {
+        private final long mBlob;
+        private final byte[] mChunk = new byte[mChunkSize];
+        private int mPosition;
+        private int mSeq;
+        private long mLength;
+        private boolean mClosed;
+        private boolean mFailed;
+
+        BlobOutputStream(long blob) {
+            mBlob = blob;
+        }
+
+        private void checkOpen() throws IOException {
+            if (mClosed) {
+                throw new IOException("Stream is closed");
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            checkOpen();
+            mChunk[mPosition++] = (byte) b;
+            if (mPosition == mChunk.length) {
+                writeChunk();
+            }
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int count) throws IOException {
+            checkOpen();
+            while (count > 0) {
+                int n = Math.min(count, mChunk.length - mPosition);
+                System.arraycopy(buffer, offset, mChunk, mPosition, n);
+                mPosition += n;
+                offset += n;
+                count -= n;
+                if (mPosition == mChunk.length) {
+                    writeChunk();
+                }
+            }
+        }
+
+        private void writeChunk() {
+            // a chunk that fails to insert leaves a gap, so nothing written to this stream can be committed
+            mFailed = true;
+            byte[] data = mChunk;
+            if (mPosition < mChunk.length) {
+                data = new byte[mPosition];
+                System.arraycopy(mChunk, 0, data, 0, mPosition);
+            }
+            ContentValues values = new ContentValues(3);
+            values.put("blob", mBlob);
+            values.put("seq", mSeq++);
+            values.put("data", data);
+            mDatabase.insertOrThrow(CHUNKS_TABLE, null, values);
+            mLength += mPosition;
+            mPosition = 0;
+            mFailed = false;
+        }
+
+        /**
+         * Store the remaining content and commit the transaction, replacing the previous content of the blob. The stream is closed
+         * afterwards.
+         *
+         * @throws IOException if the stream is closed or a previous write to it failed, the previous content is kept in that case
+         */
+        public void commit() throws IOException {
+            checkOpen();
+            if (mFailed) {
+                close();
+                throw new IOException("A write to the blob failed, not committing");
+            }
+            mClosed = true;
+            try {
+                if (mPosition > 0) {
+                    writeChunk();
+                }
+                ContentValues values = new ContentValues(1);
+                values.put("length", mLength);
+                mDatabase.update(BLOBS_TABLE, values, BaseColumns._ID + " = ?", new String[]{String.valueOf(mBlob)});
+                mDatabase.setTransactionSuccessful();
+            } finally {
+                mDatabase.endTransaction();
+            }
+        }
+
+        /**
+         * Close the stream, without storing the content unless {@link #commit()} was called before
+         */
+        @Override
+        public void close() {
+            if (!mClosed) {
+                mClosed = true;
+                mDatabase.endTransaction();
+            }
+        }
+    }
+
+    /**
+     * Reads the content of a blob, loading a single chunk at a time
+     */
+    private class BlobInputStream extends InputStream {
+        private final long mBlob;
+        private byte[] mChunk = new byte[0];
+        private int mPosition;
+        private int mSeq;
+        private boolean mEnd;
+
+        BlobInputStream(long blob) {
+            mBlob = blob;
+        }
+
+        /**
+         * @return false if there's no more content
+         */
+        private boolean fill() {
+            while (mPosition == mChunk.length) {
+                if (mEnd) {
+                    return false;
+                }
+                Cursor cursor = DatabaseCompartment.rawQuery(mDatabase, QUERY_CHUNK, new Object[]{mBlob, mSeq});
+                try {
+                    if (cursor.moveToFirst()) {
+                        mChunk = cursor.getBlob(0);
+                        mPosition = 0;
+                        mSeq++;
+                    } else {
+                        mEnd = true;
+                        mChunk = new byte[0];
+                        mPosition = 0;
+                    }
+                } finally {
+                    cursor.close();
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) {
+                return -1;
+            }
+            return mChunk[mPosition++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            if (count == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int n = Math.min(count, mChunk.length - mPosition);
+            System.arraycopy(mChunk, mPosition, buffer, offset, n);
+            mPosition += n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return mChunk.length - mPosition;
+        }
+    }
+}
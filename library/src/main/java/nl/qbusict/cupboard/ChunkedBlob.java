@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2016 Little Robots
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package nl.qbusict.cupboard;
+
+/**
+ * A reference to a blob in a {@link BlobStore}. An entity field of this type is stored as the id of the blob, the content is
+ * read and written as a stream through {@link DatabaseCompartment#blobs()}.
+ */
+public final class ChunkedBlob {
+    private final long mId;
+
+    public ChunkedBlob(long id) {
+        mId = id;
+    }
+
+    /**
+     * @return the id of the blob in the blob store
+     */
+    public long getId() {
+        return mId;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof ChunkedBlob && ((ChunkedBlob) o).mId == mId;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (mId ^ (mId >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return "ChunkedBlob(" + mId + ")";
+    }
+}
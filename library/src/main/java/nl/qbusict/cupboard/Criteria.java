@@ -0,0 +1,327 @@
+/*
+ * Copyright (C) 2016 Little Robots
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package nl.qbusict.cupboard;
+
+import android.content.ContentValues;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import nl.qbusict.cupboard.convert.EntityConverter;
+import nl.qbusict.cupboard.convert.FieldConverter;
+import nl.qbusict.cupboard.convert.ReflectiveEntityConverter;
+
+/**
+ * A typed selection on entity columns, to be used with {@link DatabaseCompartment.QueryBuilder#where(Criteria)}. Values are bound as
+ * arguments with their native type, numbers as integer or real values instead of text. The generated sql only depends on the
+ * structure of the criteria and not on the values, so that queries that only differ in their values share a compiled statement.
+ * <p/>
+ * Supported values are numbers, booleans (bound as 1 or 0), strings, enums, dates, calendars and byte arrays. Enums, dates and calendars are
+ * bound the way the column stores them, as set by {@link nl.qbusict.cupboard.annotation.EnumStorage} or {@link nl.qbusict.cupboard.annotation.TimeStorage}.
+ * Without a column to bind to, enums are bound by name and dates and calendars as milliseconds.
+ * <pre>
+ * cupboard().withDatabase(db).query(Book.class).where(Criteria.and(Criteria.eq("author", "Tolkien"), Criteria.gt("year", 1950))).list();
+ * </pre>
+ */
+public final class Criteria {
+    private final String mSql;
+    private final Object[] mValues;
+    private final Object[] mArgs;
+    /**
+     * The column of each argument
+     */
+    private final String[] mArgColumns;
+    private final List<String> mColumns;
+
+    private Criteria(String sql, Object[] values, String[] argColumns, List<String> columns) {
+        this.mSql = sql;
+        this.mValues = values;
+        this.mArgColumns = argColumns;
+        this.mColumns = columns;
+        this.mArgs = new Object[values.length];
+        for (int i = 0; i < values.length; i++) {
+            mArgs[i] = toBindArg(values[i]);
+        }
+    }
+
+    private Criteria(String sql, String column, Object... values) {
+        this(sql, values, repeat(column, values.length), Collections.singletonList(column));
+    }
+
+    private static String[] repeat(String column, int count) {
+        String[] columns = new String[count];
+        Arrays.fill(columns, column);
+        return columns;
+    }
+
+    private static Criteria compare(String column, String operator, Object value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Value for column " + column + " is null, use isNull() or isNotNull()");
+        }
+        return new Criteria(quote(column) + operator + "?", column, value);
+    }
+
+    /**
+     * @return a criteria matching rows where the column equals the value
+     */
+    public static Criteria eq(String column, Object value) {
+        return compare(column, " = ", value);
+    }
+
+    /**
+     * @return a criteria matching rows where the column does not equal the value
+     */
+    public static Criteria ne(String column, Object value) {
+        return compare(column, " != ", value);
+    }
+
+    /**
+     * @return a criteria matching rows where the column is less than the value
+     */
+    public static Criteria lt(String column, Object value) {
+        return compare(column, " < ", value);
+    }
+
+    /**
+     * @return a criteria matching rows where the column is less than or equal to the value
+     */
+    public static Criteria le(String column, Object value) {
+        return compare(column, " <= ", value);
+    }
+
+    /**
+     * @return a criteria matching rows where the column is greater than the value
+     */
+    public static Criteria gt(String column, Object value) {
+        return compare(column, " > ", value);
+    }
+
+    /**
+     * @return a criteria matching rows where the column is greater than or equal to the value
+     */
+    public static Criteria ge(String column, Object value) {
+        return compare(column, " >= ", value);
+    }
+
+    /**
+     * @return a criteria matching rows where the column is between the two values, inclusive
+     */
+    public static Criteria between(String column, Object low, Object high) {
+        if (low == null || high == null) {
+            throw new IllegalArgumentException("Values for column " + column + " can't be null");
+        }
+        return new Criteria(quote(column) + " BETWEEN ? AND ?", column, low, high);
+    }
+
+    /**
+     * @return a criteria matching rows where the column equals one of the values
+     */
+    public static Criteria in(String column, Object... values) {
+        if (values == null || values.length == 0) {
+            throw new IllegalArgumentException("At least one value is required for column " + column);
+        }
+        StringBuilder sql = new StringBuilder(quote(column)).append(" IN (");
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == null) {
+                throw new IllegalArgumentException("Value for column " + column + " is null");
+            }
+            sql.append(i == 0 ? "?" : ",?");
+        }
+        sql.append(')');
+        return new Criteria(sql.toString(), column, values.clone());
+    }
+
+    /**
+     * @return a criteria matching rows where the column equals one of the values
+     */
+    public static Criteria in(String column, Collection<?> values) {
+        return in(column, values.toArray());
+    }
+
+    /**
+     * @return a criteria matching rows where the column is null
+     */
+    public static Criteria isNull(String column) {
+        return new Criteria(quote(column) + " IS NULL", column);
+    }
+
+    /**
+     * @return a criteria matching rows where the column is not null
+     */
+    public static Criteria isNotNull(String column) {
+        return new Criteria(quote(column) + " IS NOT NULL", column);
+    }
+
+    /**
+     * @return a criteria matching rows that match all criteria
+     */
+    public static Criteria and(Criteria... criteria) {
+        return combine(" AND ", criteria);
+    }
+
+    /**
+     * @return a criteria matching rows that match at least one of the criteria
+     */
+    public static Criteria or(Criteria... criteria) {
+        return combine(" OR ", criteria);
+    }
+
+    /**
+     * @return a criteria matching rows that don't match the criteria
+     */
+    public static Criteria not(Criteria criteria) {
+        return new Criteria("NOT (" + criteria.mSql + ")", criteria.mValues, criteria.mArgColumns, criteria.mColumns);
+    }
+
+    private static Criteria combine(String operator, Criteria[] criteria) {
+        if (criteria == null || criteria.length == 0) {
+            throw new IllegalArgumentException("At least one criteria is required");
+        }
+        if (criteria.length == 1) {
+            return criteria[0];
+        }
+        StringBuilder sql = new StringBuilder();
+        List<Object> values = new ArrayList<Object>();
+        List<String> argColumns = new ArrayList<String>();
+        List<String> columns = new ArrayList<String>();
+        for (int i = 0; i < criteria.length; i++) {
+            if (i > 0) {
+                sql.append(operator);
+            }
+            sql.append('(').append(criteria[i].mSql).append(')');
+            values.addAll(Arrays.asList(criteria[i].mValues));
+            argColumns.addAll(Arrays.asList(criteria[i].mArgColumns));
+            columns.addAll(criteria[i].mColumns);
+        }
+        return new Criteria(sql.toString(), values.toArray(), argColumns.toArray(new String[argColumns.size()]),
+                Collections.unmodifiableList(columns));
+    }
+
+    private static String quote(String column) {
+        return '"' + column + '"';
+    }
+
+    /**
+     * Convert a value to the type it's bound as
+     */
+    static Object toBindArg(Object value) {
+        if (value == null || value instanceof String || value instanceof Long || value instanceof Double || value instanceof byte[]) {
+            return value;
+        }
+        if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof Float) {
+            return ((Float) value).doubleValue();
+        }
+        if (value instanceof Boolean) {
+            return (Boolean) value ? 1L : 0L;
+        }
+        if (value instanceof Enum) {
+            return ((Enum<?>) value).name();
+        }
+        if (value instanceof Date) {
+            return ((Date) value).getTime();
+        }
+        if (value instanceof Calendar) {
+            return ((Calendar) value).getTimeInMillis();
+        }
+        if (value instanceof Number || value instanceof Character) {
+            return value.toString();
+        }
+        throw new IllegalArgumentException("Can't bind value of type " + value.getClass());
+    }
+
+    /**
+     * @return the selection sql, with ? as parameter placeholders
+     */
+    public String getSql() {
+        return mSql;
+    }
+
+    /**
+     * @return the arguments, in the order of their placeholders
+     */
+    public Object[] getArgs() {
+        return mArgs.clone();
+    }
+
+    /**
+     * Get the arguments, converting enums, dates and calendars with the field converter of their column, so that they are bound
+     * the way the column stores them.
+     *
+     * @param converter the converter of the entity that is queried
+     * @return the arguments, in the order of their placeholders
+     */
+    Object[] getArgs(EntityConverter<?> converter) {
+        Object[] args = new Object[mValues.length];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = toBindArg(converter, mArgColumns[i], mValues[i]);
+        }
+        return args;
+    }
+
+    /**
+     * @return the column of each argument, in the order of their placeholders
+     */
+    String[] getArgColumns() {
+        return mArgColumns.clone();
+    }
+
+    /**
+     * Convert a value to a bind argument. Enums, dates and calendars are converted with the field converter of the column, so that
+     * they are bound the way the column stores them, other values as described in {@link Criteria}.
+     *
+     * @param converter the converter of the entity that is queried
+     * @param column    the column the value is compared to, or null if unknown
+     * @param value     the value
+     * @return the bind argument
+     */
+    static Object toBindArg(EntityConverter<?> converter, String column, Object value) {
+        if (column == null || !(converter instanceof ReflectiveEntityConverter)
+                || !(value instanceof Enum || value instanceof Date || value instanceof Calendar)) {
+            return toBindArg(value);
+        }
+        @SuppressWarnings("unchecked")
+        FieldConverter<Object> fieldConverter = (FieldConverter<Object>) ((ReflectiveEntityConverter<?>) converter).getColumnConverter(column);
+        if (fieldConverter == null) {
+            return toBindArg(value);
+        }
+        ContentValues values = new ContentValues(1);
+        try {
+            fieldConverter.toContentValue(value, column, values);
+        } catch (ClassCastException e) {
+            throw new IllegalArgumentException("Value " + value + " does not match the type of column " + column);
+        }
+        return toBindArg(values.get(column));
+    }
+
+    List<String> getColumns() {
+        return mColumns;
+    }
+
+    @Override
+    public String toString() {
+        return mSql + " " + Arrays.toString(mArgs);
+    }
+}
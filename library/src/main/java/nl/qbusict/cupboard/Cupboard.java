@@ -28,10 +28,14 @@ import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import nl.qbusict.cupboard.annotation.Column;
+import nl.qbusict.cupboard.annotation.EnumStorage;
 import nl.qbusict.cupboard.convert.EntityConverter;
 import nl.qbusict.cupboard.convert.EntityConverterFactory;
 import nl.qbusict.cupboard.convert.FieldConverter;
@@ -97,6 +101,11 @@ public class Cupboard {
     private final ConverterRegistry mConverterRegistry;
     private boolean mUseAnnotations = false;
     private Set<Class<?>> mEntities = new HashSet<Class<?>>(128);
+    private final TableChangeNotifier mChangeNotifier = new TableChangeNotifier();
+    private final Map<Class<?>, TableOptions> mTableOptions = new ConcurrentHashMap<Class<?>, TableOptions>();
+    private QueryPlanAdvisor mQueryPlanAdvisor;
+    private OperationListener mOperationListener;
+    private final Map<Class<?>, EnumStorage.Mode> mEnumStorage = new HashMap<Class<?>, EnumStorage.Mode>();
 
     public Cupboard() {
         this.mConverterRegistry = new ConverterRegistry(this);
@@ -104,6 +113,7 @@ public class Cupboard {
 
     Cupboard(Cupboard cupboard) {
         this.mConverterRegistry = new ConverterRegistry(cupboard.mConverterRegistry, this);
+        this.mEnumStorage.putAll(cupboard.mEnumStorage);
     }
 
     /**
@@ -196,6 +206,18 @@ public class Cupboard {
         return mUseAnnotations;
     }
 
+    TableOptions getTableOptions(Class<?> entityClass) {
+        if (!mUseAnnotations) {
+            return TableOptions.DEFAULT;
+        }
+        TableOptions options = mTableOptions.get(entityClass);
+        if (options == null) {
+            options = TableOptions.forEntity(entityClass);
+            mTableOptions.put(entityClass, options);
+        }
+        return options;
+    }
+
     /**
      * Enable or disable the use of annotations. This works as a hint that an {@link nl.qbusict.cupboard.convert.EntityConverter} or {@link nl.qbusict.cupboard.convert.FieldConverter}
      * may use through {@link #isUseAnnotations()}.
@@ -303,14 +325,50 @@ public class Cupboard {
         return getBestMatchingEntityClass(entityClass) != null;
     }
 
+    /**
+     * Get how the values of an enum are stored, unless a field overrides it with {@link EnumStorage}
+     *
+     * @param enumClass the enum class
+     * @return the storage mode, {@link EnumStorage.Mode#NAME} if none was registered
+     */
+    public EnumStorage.Mode getEnumStorage(Class<?> enumClass) {
+        EnumStorage.Mode mode = mEnumStorage.get(enumClass);
+        return mode != null ? mode : EnumStorage.Mode.NAME;
+    }
+
+    void setEnumStorage(Class<?> enumClass, EnumStorage.Mode mode) {
+        mEnumStorage.put(enumClass, mode);
+    }
+
+    TableChangeNotifier getChangeNotifier() {
+        return mChangeNotifier;
+    }
+
+    void setQueryPlanAdvisor(QueryPlanAdvisor advisor) {
+        mQueryPlanAdvisor = advisor;
+    }
+
+    QueryPlanAdvisor getQueryPlanAdvisor() {
+        return mQueryPlanAdvisor;
+    }
+
+    void setOperationListener(OperationListener listener) {
+        mOperationListener = listener;
+    }
+
+    OperationListener getOperationListener() {
+        return mOperationListener;
+    }
+
     Class<?> getBestMatchingEntityClass(Class<?> entityClass) {
         Class<?> clz = entityClass;
-        do {
+        // interfaces and Object have no super class
+        while (clz != null && clz != Object.class) {
             if (mEntities.contains(clz)) {
                 return clz;
             }
             clz = clz.getSuperclass();
-        } while (clz != Object.class);
+        }
         return null;
     }
 }
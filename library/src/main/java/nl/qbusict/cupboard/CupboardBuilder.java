@@ -15,6 +15,7 @@
  */
 package nl.qbusict.cupboard;
 
+import nl.qbusict.cupboard.annotation.EnumStorage;
 import nl.qbusict.cupboard.convert.EntityConverterFactory;
 import nl.qbusict.cupboard.convert.FieldConverter;
 import nl.qbusict.cupboard.convert.FieldConverterFactory;
@@ -76,6 +77,20 @@ public class CupboardBuilder {
         return this;
     }
 
+    /**
+     * Set how the values of an enum are stored. Fields annotated with {@link EnumStorage} use the mode of the annotation instead.
+     * Use {@link DatabaseCompartment#migrateEnumColumn(Class, String, Class, EnumStorage.Mode, EnumStorage.Mode)} to convert the
+     * values of existing columns.
+     *
+     * @param enumClass the enum class
+     * @param mode      the storage mode, {@link EnumStorage.Mode#CODE} requires the enum to implement {@link nl.qbusict.cupboard.convert.CodedEnum}
+     * @return the builder for chaining
+     */
+    public <E extends Enum<E>> CupboardBuilder registerEnumStorage(Class<E> enumClass, EnumStorage.Mode mode) {
+        mCupboard.setEnumStorage(enumClass, mode);
+        return this;
+    }
+
     /**
      * Enable the use of annotations
      *
@@ -86,6 +101,29 @@ public class CupboardBuilder {
         return this;
     }
 
+    /**
+     * Inspect the query plan of queries built with {@link DatabaseCompartment.QueryBuilder}. This runs an additional query for each
+     * distinct query and should only be enabled in debug builds.
+     *
+     * @param advisor the advisor that collects the findings
+     * @return the builder for chaining
+     */
+    public CupboardBuilder useQueryPlanAdvisor(QueryPlanAdvisor advisor) {
+        mCupboard.setQueryPlanAdvisor(advisor);
+        return this;
+    }
+
+    /**
+     * Report the timings of the operations performed by a {@link DatabaseCompartment}. Operations are not timed when no listener is set.
+     *
+     * @param listener the listener, for example an {@link OperationHistogram}
+     * @return the builder for chaining
+     */
+    public CupboardBuilder useOperationListener(OperationListener listener) {
+        mCupboard.setOperationListener(listener);
+        return this;
+    }
+
 
     /**
      * Create the {@link nl.qbusict.cupboard.Cupboard} instance.
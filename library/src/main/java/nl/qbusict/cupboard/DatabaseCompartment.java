@@ -19,22 +19,35 @@ package nl.qbusict.cupboard;
 import android.annotation.SuppressLint;
 import android.content.ContentValues;
 import android.database.Cursor;
+import android.database.sqlite.SQLiteCursor;
+import android.database.sqlite.SQLiteCursorDriver;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteProgram;
+import android.database.sqlite.SQLiteQuery;
+import android.database.sqlite.SQLiteStatement;
 import android.provider.BaseColumns;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
 
+import nl.qbusict.cupboard.OperationListener.Operation;
+import nl.qbusict.cupboard.annotation.EnumStorage;
 import nl.qbusict.cupboard.annotation.Index;
+import nl.qbusict.cupboard.convert.CodedEnum;
 import nl.qbusict.cupboard.convert.EntityConverter;
 import nl.qbusict.cupboard.convert.EntityConverter.Column;
 import nl.qbusict.cupboard.convert.EntityConverter.ColumnType;
+import nl.qbusict.cupboard.convert.FieldConverter;
+import nl.qbusict.cupboard.convert.ReflectiveEntityConverter;
 import nl.qbusict.cupboard.internal.IndexStatement;
 import nl.qbusict.cupboard.internal.IndexStatement.Builder;
 
@@ -52,6 +65,8 @@ import nl.qbusict.cupboard.internal.IndexStatement.Builder;
 @SuppressLint("DefaultLocale")
 public class DatabaseCompartment extends BaseCompartment {
     private static final String QUERY_BY_ID = BaseColumns._ID + " = ?";
+    private static final String METADATA_TABLE = IndexStatement.INDEX_PREFIX + "metadata";
+    private static final String SCHEMA_FINGERPRINT = "schema_fingerprint";
 
     private final CupboardDatabase mDatabase;
 
@@ -69,27 +84,145 @@ public class DatabaseCompartment extends BaseCompartment {
      * This is useful in {@link SQLiteOpenHelper#onCreate(SQLiteDatabase)}
      */
     public void createTables() {
+        String fingerprint = getSchemaFingerprint();
+        if (isSchemaCurrent(fingerprint)) {
+            return;
+        }
         for (Class<?> entity : mCupboard.getRegisteredEntities()) {
+            long start = startOperation();
             EntityConverter<?> converter = mCupboard.getEntityConverter(entity);
-            createNewTable(mDatabase, converter.getTable(), converter.getColumns());
+            boolean created = createNewTable(mDatabase, converter.getTable(), converter.getColumns(), mCupboard.getTableOptions(entity));
+            reportOperation(entity, Operation.CREATE_TABLES, start, 0, created ? 1 : 0, 0);
         }
+        storeSchemaFingerprint(fingerprint);
     }
 
     /**
      * Upgrade and / or create tables for the classes registered with {@link Cupboard#register(Class)}
-     * This is useful in {@link SQLiteOpenHelper#onUpgrade(SQLiteDatabase, int, int)}
+     * This is useful in {@link SQLiteOpenHelper#onUpgrade(SQLiteDatabase, int, int)}. The schema is read once and all changes are
+     * applied in a single transaction, see {@link #getUpgradeStatements()}.
+     * <p/>
+     * A fingerprint of the tables and indexes of the registered entities is stored after creating or upgrading tables. When the
+     * entities haven't changed since then and all of their tables exist this method returns without inspecting the columns and
+     * indexes. The fingerprint is cleared by {@link #dropAllTables()} and {@link #dropAllIndices()}, but not by changes to columns or
+     * indexes made outside of Cupboard.
      */
     public void upgradeTables() {
+        String fingerprint = getSchemaFingerprint();
+        if (isSchemaCurrent(fingerprint)) {
+            return;
+        }
+        List<String> statements = getUpgradeStatements();
+        mDatabase.beginTransaction();
+        try {
+            for (String statement : statements) {
+                mDatabase.execSQL(statement);
+            }
+            storeSchemaFingerprint(fingerprint);
+            mDatabase.setTransactionSuccessful();
+        } finally {
+            mDatabase.endTransaction();
+        }
+    }
+
+    /**
+     * @return true if the stored fingerprint matches and the tables of all registered entities exist, tables that are dropped outside
+     * of Cupboard don't clear the fingerprint
+     */
+    private boolean isSchemaCurrent(String fingerprint) {
+        if (!fingerprint.equals(readSchemaFingerprint())) {
+            return false;
+        }
+        SchemaSnapshot schema = SchemaSnapshot.read(mDatabase);
+        for (Class<?> entity : mCupboard.getRegisteredEntities()) {
+            if (!schema.hasTable(mCupboard.getEntityConverter(entity).getTable())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Hash the create statements of all registered entities. These include the table, the column types and the indexes.
+     */
+    String getSchemaFingerprint() {
+        List<String> statements = new ArrayList<String>();
+        for (Class<?> entity : mCupboard.getRegisteredEntities()) {
+            EntityConverter<?> converter = mCupboard.getEntityConverter(entity);
+            addCreateStatements(statements, converter.getTable(), converter.getColumns(), mCupboard.getTableOptions(entity));
+        }
+        // registration order and index order are not stable
+        Collections.sort(statements);
+        // 64 bit FNV-1a
+        long hash = 0xcbf29ce484222325L;
+        for (String statement : statements) {
+            for (int i = 0; i < statement.length(); i++) {
+                hash ^= statement.charAt(i);
+                hash *= 0x100000001b3L;
+            }
+            hash ^= '\n';
+            hash *= 0x100000001b3L;
+        }
+        return Long.toHexString(hash);
+    }
+
+    private boolean hasMetadataTable() {
+        return longForQuery(mDatabase, "select count(*) from sqlite_master where type = 'table' and name = '" + METADATA_TABLE + "'", null) > 0;
+    }
+
+    private String readSchemaFingerprint() {
+        if (!hasMetadataTable()) {
+            return null;
+        }
+        Cursor cursor = mDatabase.rawQuery("select value from " + METADATA_TABLE + " where name = ?", new String[]{SCHEMA_FINGERPRINT});
+        try {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void storeSchemaFingerprint(String fingerprint) {
+        mDatabase.execSQL("create table if not exists " + METADATA_TABLE + " (name text primary key, value text)");
+        ContentValues values = new ContentValues(2);
+        values.put("name", SCHEMA_FINGERPRINT);
+        values.put("value", fingerprint);
+        mDatabase.replaceOrThrow(METADATA_TABLE, null, values);
+    }
+
+    void clearSchemaFingerprint() {
+        if (hasMetadataTable()) {
+            mDatabase.delete(METADATA_TABLE, "name = ?", new String[]{SCHEMA_FINGERPRINT});
+        }
+    }
+
+    /**
+     * Get the statements that {@link #upgradeTables()} would execute, without changing the database. Missing tables are created,
+     * missing columns are added and Cupboard indexes (prefixed with {@link IndexStatement#INDEX_PREFIX}) that differ from the
+     * indexes of the entity are dropped and / or created.
+     *
+     * @return the statements, empty if the database is up to date
+     */
+    public List<String> getUpgradeStatements() {
+        SchemaSnapshot schema = SchemaSnapshot.read(mDatabase);
+        List<String> statements = new ArrayList<String>();
         for (Class<?> entity : mCupboard.getRegisteredEntities()) {
             EntityConverter<?> converter = mCupboard.getEntityConverter(entity);
-            updateTable(mDatabase, converter.getTable(), converter.getColumns());
+            String table = converter.getTable();
+            if (schema.hasTable(table)) {
+                addUpgradeStatements(statements, schema, table, converter.getColumns());
+            } else {
+                addCreateStatements(statements, table, converter.getColumns(), mCupboard.getTableOptions(entity));
+            }
         }
+        return statements;
     }
 
     /**
      * Drop all tables for the classes registered with {@link nl.qbusict.cupboard.Cupboard#register(Class)}
      */
     public void dropAllTables() {
+        clearSchemaFingerprint();
         for (Class<?> entity : mCupboard.getRegisteredEntities()) {
             EntityConverter<?> converter = mCupboard.getEntityConverter(entity);
             mDatabase.execSQL("DROP TABLE IF EXISTS " + quoteTable(converter.getTable()));
@@ -102,11 +235,57 @@ public class DatabaseCompartment extends BaseCompartment {
      * any indices not added by Cupboard. Typically called before upgrading tables.
      */
     public void dropAllIndices() {
+        clearSchemaFingerprint();
         for (Class<?> entity : mCupboard.getRegisteredEntities()) {
             dropIndices(entity);
         }
     }
 
+    /**
+     * Prepare for loading a large number of entities, by dropping the non-unique Cupboard indexes (prefixed with
+     * {@link IndexStatement#INDEX_PREFIX}) of the given entities. Inserting into a table without indexes is considerably faster and
+     * building an index once afterwards is cheaper than maintaining it for each insert. Unique indexes are kept, so that their
+     * constraints still apply during the load. Call {@link #endBulkLoad(Class[])} to recreate the indexes.
+     * <p/>
+     * The stored schema fingerprint is cleared, so that {@link #upgradeTables()} recreates the indexes if
+     * {@link #endBulkLoad(Class[])} isn't called, for example because the process was killed.
+     *
+     * @param entityClasses the entities to load, or none for all registered entities
+     */
+    public void beginBulkLoad(Class<?>... entityClasses) {
+        clearSchemaFingerprint();
+        for (Class<?> entity : bulkLoadEntities(entityClasses)) {
+            EntityConverter<?> converter = getConverter(entity);
+            for (IndexStatement index : buildIndexes(converter.getTable(), converter.getColumns()).build()) {
+                if (!index.mIsUnique) {
+                    mDatabase.execSQL("drop index if exists " + IndexStatement.INDEX_PREFIX + index.mIndexName);
+                }
+            }
+        }
+    }
+
+    /**
+     * Recreate the indexes that were dropped by {@link #beginBulkLoad(Class[])}.
+     *
+     * @param entityClasses the entities that were loaded, or none for all registered entities
+     */
+    public void endBulkLoad(Class<?>... entityClasses) {
+        for (Class<?> entity : bulkLoadEntities(entityClasses)) {
+            EntityConverter<?> converter = getConverter(entity);
+            String table = converter.getTable();
+            for (IndexStatement index : buildIndexes(table, converter.getColumns()).build()) {
+                mDatabase.execSQL(index.getCreationSql(table));
+            }
+        }
+    }
+
+    private Collection<Class<?>> bulkLoadEntities(Class<?>[] entityClasses) {
+        if (entityClasses == null || entityClasses.length == 0) {
+            return mCupboard.getRegisteredEntities();
+        }
+        return Arrays.<Class<?>>asList(entityClasses);
+    }
+
     private void dropIndices(Class<?> entity) {
         String table = mCupboard.getTable(entity);
         Cursor indices = mDatabase.rawQuery("select name, sql from sqlite_master where type = 'index' and tbl_name = '" + table + '\'', null);
@@ -128,7 +307,9 @@ public class DatabaseCompartment extends BaseCompartment {
      * @return the entity or null if not found
      */
     public <T> T get(Class<T> entityClass, long id) {
-        return query(entityClass).byId(id).get();
+        QueryBuilder<T> query = query(entityClass).byId(id);
+        query.mOperation = Operation.GET;
+        return query.get();
     }
 
     /**
@@ -164,8 +345,22 @@ public class DatabaseCompartment extends BaseCompartment {
      * @param entities the entities
      */
     public void put(Object... entities) {
+        put(Arrays.asList(entities));
+    }
+
+    /**
+     * Put multiple entities in a single transaction. When the database is a {@link BatchCupboardDatabase}, consecutive entities of the
+     * same type are written in a single batch.
+     *
+     * @param entities the entities
+     */
+    public void put(Collection<?> entities) {
+        if (mDatabase instanceof BatchCupboardDatabase) {
+            putBatched(entities);
+            return;
+        }
         boolean mNestedTransaction = mDatabase.inTransaction();
-        mDatabase.beginTransaction();
+        beginTransaction();
         try {
             for (Object entity : entities) {
                 put(entity);
@@ -173,30 +368,85 @@ public class DatabaseCompartment extends BaseCompartment {
                     mDatabase.yieldIfContendedSafely();
                 }
             }
-            mDatabase.setTransactionSuccessful();
+            setTransactionSuccessful();
         } finally {
-            mDatabase.endTransaction();
+            endTransaction();
         }
     }
 
-    /**
-     * Put multiple entities in a single transaction.
-     *
-     * @param entities the entities
-     */
-    public void put(Collection<?> entities) {
-        boolean mNestedTransaction = mDatabase.inTransaction();
-        mDatabase.beginTransaction();
+    @SuppressWarnings("unchecked")
+    private void putBatched(Collection<?> entities) {
+        Batch batch = null;
+        beginTransaction();
         try {
             for (Object entity : entities) {
-                put(entity);
-                if (!mNestedTransaction) {
-                    mDatabase.yieldIfContendedSafely();
+                Class<?> entityClass = entity.getClass();
+                EntityConverter<Object> converter = (EntityConverter<Object>) getConverter(entityClass);
+                ContentValues values = new ContentValues();
+                long start = startOperation();
+                converter.toValues(entity, values);
+                long conversionNanos = start == 0 ? 0 : System.nanoTime() - start;
+                boolean replace = values.getAsLong(BaseColumns._ID) != null || mCupboard.getTableOptions(entityClass).mWithoutRowId;
+                if (values.getAsLong(BaseColumns._ID) != null && hasUnloadedLazyColumns(converter, values)) {
+                    if (batch != null) {
+                        flush(batch);
+                        batch = null;
+                    }
+                    putPartial(entityClass, converter, values, conversionNanos);
+                    continue;
+                }
+                if (batch != null && (batch.mEntityClass != entityClass || batch.mReplace != replace)) {
+                    flush(batch);
+                    batch = null;
+                }
+                if (batch == null) {
+                    batch = new Batch(entityClass, converter, replace);
                 }
+                batch.mEntities.add(entity);
+                batch.mValues.add(values);
+                batch.mConversionNanos += conversionNanos;
             }
-            mDatabase.setTransactionSuccessful();
+            if (batch != null) {
+                flush(batch);
+            }
+            setTransactionSuccessful();
         } finally {
-            mDatabase.endTransaction();
+            endTransaction();
+        }
+    }
+
+    private void flush(Batch batch) {
+        long start = startOperation();
+        String table = batch.mConverter.getTable();
+        long[] ids = ((BatchCupboardDatabase) mDatabase).insertBatch(quoteTable(table), "_id", batch.mValues, batch.mReplace);
+        if (!batch.mReplace) {
+            for (int i = 0; i < ids.length; i++) {
+                batch.mConverter.setId(ids[i], batch.mEntities.get(i));
+            }
+        }
+        int bytes = 0;
+        for (ContentValues values : batch.mValues) {
+            bytes += boundBytes(values);
+        }
+        reportOperation(batch.mEntityClass, Operation.PUT, start, batch.mConversionNanos, batch.mValues.size(), bytes);
+        tableChanged(table);
+    }
+
+    /**
+     * Consecutive entities of the same type that are either all inserted or all replaced
+     */
+    private static class Batch {
+        final Class<?> mEntityClass;
+        final EntityConverter<Object> mConverter;
+        final boolean mReplace;
+        final List<Object> mEntities = new ArrayList<Object>();
+        final List<ContentValues> mValues = new ArrayList<ContentValues>();
+        long mConversionNanos;
+
+        Batch(Class<?> entityClass, EntityConverter<Object> converter, boolean replace) {
+            mEntityClass = entityClass;
+            mConverter = converter;
+            mReplace = replace;
         }
     }
 
@@ -210,33 +460,75 @@ public class DatabaseCompartment extends BaseCompartment {
     public <T> long put(T entity) {
         EntityConverter<T> converter = (EntityConverter<T>) getConverter(entity.getClass());
         ContentValues values = new ContentValues();
+        long start = startOperation();
         converter.toValues(entity, values);
+        long conversionNanos = start == 0 ? 0 : System.nanoTime() - start;
         Long id = values.getAsLong(BaseColumns._ID);
-        long insertedId = put(entity.getClass(), values);
-        if (id == null) {
+        if (id != null && hasUnloadedLazyColumns(converter, values)) {
+            // replacing the row would clear the lazy columns
+            putPartial(entity.getClass(), converter, values, conversionNanos);
+            return id;
+        }
+        long insertedId = put(entity.getClass(), values, conversionNanos);
+        if (id == null && !mCupboard.getTableOptions(entity.getClass()).mWithoutRowId) {
             converter.setId(insertedId, entity);
         }
         return id == null ? insertedId : id;
     }
 
+    private static boolean hasUnloadedLazyColumns(EntityConverter<?> converter, ContentValues values) {
+        for (Column column : converter.getColumns()) {
+            if (column.lazy && !values.containsKey(column.name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Update the columns in the values of an existing entity, or insert the entity if it doesn't exist
+     */
+    private void putPartial(Class<?> entityClass, EntityConverter<?> converter, ContentValues values, long conversionNanos) {
+        long start = startOperation();
+        String table = quoteTable(converter.getTable());
+        if (mDatabase.update(table, values, QUERY_BY_ID, new String[]{values.getAsString(BaseColumns._ID)}) == 0) {
+            mDatabase.insertOrThrow(table, "_id", values);
+        }
+        reportOperation(entityClass, Operation.PUT, start, conversionNanos, 1, boundBytes(values));
+        tableChanged(converter.getTable());
+    }
+
     /**
      * Put an entity from a {@link ContentValues} object.
      * If the content values contain a {@link BaseColumns#_ID} then this id will be used and an existing entity will be replaced.
+     * For a table {@link nl.qbusict.cupboard.annotation.Table#withoutRowId() without rowid} an existing entity with the same primary key is replaced.
      *
      * @param entityClass the entity class
      * @param values      the content values
-     * @return the id of the entity
+     * @return the id of the entity, or 0 for a table without rowid when the values don't contain an id
      */
     public long put(Class<?> entityClass, ContentValues values) {
+        return put(entityClass, values, 0);
+    }
+
+    private long put(Class<?> entityClass, ContentValues values, long conversionNanos) {
+        long start = startOperation();
         EntityConverter<?> converter = getConverter(entityClass);
         Long id = values.getAsLong(BaseColumns._ID);
-        if (id != null) {
+        if (mCupboard.getTableOptions(entityClass).mWithoutRowId) {
+            // there's no rowid to return, the entity is identified by its primary key
+            mDatabase.replaceOrThrow(quoteTable(converter.getTable()), "_id", values);
+            if (id == null) {
+                id = 0L;
+            }
+        } else if (id != null) {
             mDatabase.replaceOrThrow(quoteTable(converter.getTable()), "_id", values);
-            return id;
         } else {
             id = mDatabase.insertOrThrow(quoteTable(converter.getTable()), "_id", values);
-            return id;
         }
+        reportOperation(entityClass, Operation.PUT, start, conversionNanos, 1, boundBytes(values));
+        tableChanged(converter.getTable());
+        return id;
     }
 
     /**
@@ -247,12 +539,17 @@ public class DatabaseCompartment extends BaseCompartment {
      * @return the number of entities updated
      */
     public int update(Class<?> entityClass, ContentValues values) {
+        long start = startOperation();
         EntityConverter<?> converter = getConverter(entityClass);
+        int updated;
         if (values.containsKey(BaseColumns._ID)) {
-            return mDatabase.update(quoteTable(converter.getTable()), values, QUERY_BY_ID, new String[]{values.getAsString(BaseColumns._ID)});
+            updated = mDatabase.update(quoteTable(converter.getTable()), values, QUERY_BY_ID, new String[]{values.getAsString(BaseColumns._ID)});
         } else {
-            return mDatabase.update(quoteTable(converter.getTable()), values, null, null);
+            updated = mDatabase.update(quoteTable(converter.getTable()), values, null, null);
         }
+        reportOperation(entityClass, Operation.UPDATE, start, 0, updated, boundBytes(values));
+        tableChanged(converter.getTable(), updated);
+        return updated;
     }
 
     /**
@@ -265,8 +562,12 @@ public class DatabaseCompartment extends BaseCompartment {
      * @return the number of entities updated
      */
     public int update(Class<?> entityClass, ContentValues values, String selection, String... selectionArgs) {
+        long start = startOperation();
         EntityConverter<?> converter = getConverter(entityClass);
-        return mDatabase.update(quoteTable(converter.getTable()), values, selection, selectionArgs);
+        int updated = mDatabase.update(quoteTable(converter.getTable()), values, selection, selectionArgs);
+        reportOperation(entityClass, Operation.UPDATE, start, 0, updated, boundBytes(values) + boundBytes(selectionArgs));
+        tableChanged(converter.getTable(), updated);
+        return updated;
     }
 
     /**
@@ -294,8 +595,13 @@ public class DatabaseCompartment extends BaseCompartment {
      * @return true if the entity was deleted, false if no entity with the given id was found
      */
     public boolean delete(Class<?> entityClass, long id) {
+        long start = startOperation();
         EntityConverter<?> converter = getConverter(entityClass);
-        return mDatabase.delete(quoteTable(converter.getTable()), QUERY_BY_ID, new String[]{String.valueOf(id)}) > 0;
+        String[] args = new String[]{String.valueOf(id)};
+        int deleted = mDatabase.delete(quoteTable(converter.getTable()), QUERY_BY_ID, args);
+        reportOperation(entityClass, Operation.DELETE, start, 0, deleted, boundBytes(args));
+        tableChanged(converter.getTable(), deleted);
+        return deleted > 0;
     }
 
     /**
@@ -307,135 +613,394 @@ public class DatabaseCompartment extends BaseCompartment {
      * @return the number of deleted entities
      */
     public int delete(Class<?> entityClass, String selection, String... selectionArgs) {
+        long start = startOperation();
         EntityConverter<?> converter = getConverter(entityClass);
-        return mDatabase.delete(quoteTable(converter.getTable()), selection, selectionArgs);
+        int deleted = mDatabase.delete(quoteTable(converter.getTable()), selection, selectionArgs);
+        reportOperation(entityClass, Operation.DELETE, start, 0, deleted, boundBytes(selectionArgs));
+        tableChanged(converter.getTable(), deleted);
+        return deleted;
     }
 
-    boolean updateTable(CupboardDatabase db, String table, List<Column> cols) {
-        Cursor cursor = db.rawQuery("pragma table_info('" + table + "')", null);
-        try {
-            if (cursor.getCount() == 0) {
-                return createNewTable(db, table, cols);
-            } else {
-                return updateTable(db, table, cursor, cols);
+    /**
+     * Get the store for the content of {@link ChunkedBlob} fields, using chunks of {@link BlobStore#DEFAULT_CHUNK_SIZE} bytes.
+     * The tables of the store are created by the first write.
+     *
+     * @return the blob store
+     */
+    public BlobStore blobs() {
+        return blobs(BlobStore.DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Get the store for the content of {@link ChunkedBlob} fields. The chunk size only applies to content written through the returned
+     * store, content can be read with any chunk size.
+     *
+     * @param chunkSize the size of a chunk in bytes
+     * @return the blob store
+     */
+    public BlobStore blobs(int chunkSize) {
+        return new BlobStore(mDatabase, chunkSize);
+    }
+
+    /**
+     * Get a handle to load and store a column on demand, typically a column of a field annotated with {@link nl.qbusict.cupboard.annotation.Lazy}
+     *
+     * @param entityClass the entity class
+     * @param column      the column
+     * @param type        the type of the column value. The value is converted with the field converter of the column, so that
+     *                    {@link nl.qbusict.cupboard.annotation.EnumStorage}, {@link nl.qbusict.cupboard.annotation.TimeStorage} and
+     *                    collection fields are stored as the entity stores them, or with the field converter for this type if the entity
+     *                    converter isn't a {@link ReflectiveEntityConverter}
+     * @return the handle
+     * @throws IllegalArgumentException if the entity has no such column
+     */
+    public <T> LazyColumn<T> lazyColumn(Class<?> entityClass, String column, Class<T> type) {
+        EntityConverter<?> converter = getConverter(entityClass);
+        for (Column c : converter.getColumns()) {
+            if (c.name.equals(column)) {
+                FieldConverter<?> fieldConverter = converter instanceof ReflectiveEntityConverter
+                        ? ((ReflectiveEntityConverter<?>) converter).getColumnConverter(column) : null;
+                if (fieldConverter == null) {
+                    fieldConverter = mCupboard.getFieldConverter(type);
+                }
+                @SuppressWarnings("unchecked")
+                FieldConverter<T> typed = (FieldConverter<T>) fieldConverter;
+                return new LazyColumn<T>(this, entityClass, converter.getTable(), column, typed);
             }
+        }
+        throw new IllegalArgumentException("Entity " + entityClass.getSimpleName() + " has no column " + column);
+    }
+
+    <T> T getColumn(Class<?> entityClass, String table, String column, long id, FieldConverter<T> fieldConverter) {
+        long start = startOperation();
+        Object[] args = new Object[]{id};
+        Cursor cursor = rawQuery(mDatabase, "SELECT \"" + column + "\" FROM " + quoteTable(table) + " WHERE " + QUERY_BY_ID, args);
+        try {
+            T value = cursor.moveToFirst() && !cursor.isNull(0) ? fieldConverter.fromCursorValue(cursor, 0) : null;
+            reportOperation(entityClass, Operation.GET, start, 0, cursor.getCount(), boundBytes(args));
+            return value;
         } finally {
             cursor.close();
         }
     }
 
-    @SuppressWarnings("ConstantConditions")
-    boolean updateTable(CupboardDatabase db, String table, Cursor tableInfo, List<Column> cols) {
-        Locale locale = Locale.US;
-        Map<String, Column> columns = new HashMap<String, Column>(cols.size());
-        for (Column col : cols) {
-            if (col.type == ColumnType.JOIN) {
-                continue;
-            }
-            columns.put(col.name.toLowerCase(locale), col);
+    <T> boolean setColumn(Class<?> entityClass, String table, String column, long id, T value, FieldConverter<T> fieldConverter) {
+        long start = startOperation();
+        ContentValues values = new ContentValues(1);
+        if (value == null) {
+            values.putNull(column);
+        } else {
+            fieldConverter.toContentValue(value, column, values);
         }
+        String[] args = new String[]{String.valueOf(id)};
+        int updated = mDatabase.update(quoteTable(table), values, QUERY_BY_ID, args);
+        reportOperation(entityClass, Operation.UPDATE, start, 0, updated, boundBytes(values) + boundBytes(args));
+        tableChanged(table, updated);
+        return updated > 0;
+    }
 
-        int index = tableInfo.getColumnIndex("name");
-        while (tableInfo.moveToNext()) {
-            columns.remove(tableInfo.getString(index).toLowerCase(locale));
+    /**
+     * Convert the values of an enum column from one {@link EnumStorage.Mode} to another. Call this from
+     * {@link SQLiteOpenHelper#onUpgrade(SQLiteDatabase, int, int)} after changing the {@link EnumStorage} of a field or the storage
+     * registered with {@link CupboardBuilder#registerEnumStorage(Class, EnumStorage.Mode)}. Values that don't match a constant are
+     * left unchanged.
+     * <p/>
+     * The declared type of an existing column is not changed. SQLite stores integers in a text column as text, these are read
+     * back as numbers, but compare as text in range queries.
+     *
+     * @param entityClass the entity class
+     * @param column      the column that holds the enum values
+     * @param enumClass   the enum class
+     * @param from        the mode the values are stored in
+     * @param to          the mode to store the values in
+     * @return the number of rows updated
+     */
+    public <E extends Enum<E>> int migrateEnumColumn(Class<?> entityClass, String column, Class<E> enumClass, EnumStorage.Mode from, EnumStorage.Mode to) {
+        if (from == to) {
+            return 0;
         }
-
-        boolean updated = false;
-        if (!columns.isEmpty()) {
-            updated = true;
-            for (Column column : columns.values()) {
-                db.execSQL("alter table '" + table + "' add column '" + column.name + "' " + column.type.toString());
-            }
+        long start = startOperation();
+        EntityConverter<?> converter = getConverter(entityClass);
+        String quoted = "\"" + column + "\"";
+        StringBuilder sql = new StringBuilder("UPDATE ").append(quoteTable(converter.getTable()));
+        sql.append(" SET ").append(quoted).append(" = CASE ").append(quoted);
+        for (E constant : enumClass.getEnumConstants()) {
+            sql.append(" WHEN ").append(enumLiteral(constant, from)).append(" THEN ").append(enumLiteral(constant, to));
         }
-        updated |= diffAndUpdateIndexes(db, table, cols);
+        sql.append(" ELSE ").append(quoted).append(" END WHERE ").append(quoted).append(" IS NOT NULL");
+        int updated;
+        // changes() has to run on the connection that ran the update
+        mDatabase.beginTransaction();
+        try {
+            mDatabase.execSQL(sql.toString());
+            updated = (int) longForQuery(mDatabase, "SELECT changes()", null);
+            mDatabase.setTransactionSuccessful();
+        } finally {
+            mDatabase.endTransaction();
+        }
+        reportOperation(entityClass, Operation.UPDATE, start, 0, updated, 0);
+        tableChanged(converter.getTable(), updated);
         return updated;
     }
 
-    private boolean diffAndUpdateIndexes(CupboardDatabase db, String table, List<Column> cols) {
-        boolean updated = false;
-        Cursor indexesInDbCursor = db.rawQuery("select name, sql from sqlite_master where type = 'index' and tbl_name = '" + table + "' and name like '" + IndexStatement.INDEX_PREFIX + "%'", null);
-        Map<String, String> indexesInDb = new HashMap<String, String>();
-        while (indexesInDbCursor.moveToNext()) {
-            indexesInDb.put(indexesInDbCursor.getString(0), indexesInDbCursor.getString(1));
+    private static String enumLiteral(Enum<?> constant, EnumStorage.Mode mode) {
+        switch (mode) {
+            case ORDINAL:
+                return String.valueOf(constant.ordinal());
+            case CODE:
+                if (!(constant instanceof CodedEnum)) {
+                    throw new IllegalArgumentException("Enum " + constant.getDeclaringClass().getName() + " does not implement " + CodedEnum.class.getName());
+                }
+                return String.valueOf(((CodedEnum) constant).getCode());
+            default:
+                return "'" + constant.name() + "'";
         }
-        indexesInDbCursor.close();
+    }
 
-        Builder builder = new IndexStatement.Builder();
-        for (Column col : cols) {
-            if (col.type == ColumnType.JOIN) {
-                continue;
-            }
-            Index index = col.index;
-            if (index != null) {
-                builder.addIndexedColumn(table, col.name, index);
-            }
+    /**
+     * Begin a transaction. Transactions may be nested. Use this instead of beginning a transaction on the database directly
+     * so that changes made in this transaction are reported to observed queries only once, after the outermost transaction has been committed.
+     * <pre>
+     * DatabaseCompartment compartment = cupboard().withDatabase(db);
+     * compartment.beginTransaction();
+     * try {
+     *     ...
+     *     compartment.setTransactionSuccessful();
+     * } finally {
+     *     compartment.endTransaction();
+     * }
+     * </pre>
+     *
+     * @see QueryBuilder#observe(QueryObserver)
+     */
+    public void beginTransaction() {
+        mDatabase.beginTransaction();
+        mCupboard.getChangeNotifier().beginTransaction();
+    }
+
+    /**
+     * Mark the current transaction as successful
+     *
+     * @see #beginTransaction()
+     */
+    public void setTransactionSuccessful() {
+        mDatabase.setTransactionSuccessful();
+        mCupboard.getChangeNotifier().setTransactionSuccessful();
+    }
+
+    /**
+     * End the current transaction, committing it if this is the outermost transaction and all transactions were marked successful.
+     *
+     * @see #beginTransaction()
+     */
+    public void endTransaction() {
+        try {
+            mDatabase.endTransaction();
+        } finally {
+            mCupboard.getChangeNotifier().endTransaction();
         }
-        Map<String, IndexStatement> indexesOfEntity = builder.buildAsMap();
+    }
 
-        Set<String> oldSet = indexesInDb.keySet();
-        Set<String> newSet = indexesOfEntity.keySet();
+    /**
+     * @return the start time of an operation, or 0 if operations aren't reported
+     */
+    private long startOperation() {
+        return mCupboard.getOperationListener() != null ? System.nanoTime() : 0;
+    }
 
-        Set<String> toRemove = new HashSet<String>(oldSet);
-        toRemove.removeAll(newSet);
-        for (String name : toRemove) {
-            db.execSQL("drop index if exists " + name);
-            updated |= true;
+    private void reportOperation(Class<?> entityClass, Operation operation, long start, long conversionNanos, int rows, int bytesBound) {
+        OperationListener listener = mCupboard.getOperationListener();
+        if (listener != null && start != 0) {
+            listener.onOperation(entityClass, operation, System.nanoTime() - start, conversionNanos, rows, bytesBound);
         }
+    }
 
-        Set<String> toAdd = new HashSet<String>(newSet);
-        toAdd.removeAll(oldSet);
-        for (String name : toAdd) {
-            db.execSQL(indexesOfEntity.get(name).getCreationSql(table));
-            updated |= true;
+    /**
+     * @return the approximate size of the values, for {@link OperationListener}
+     */
+    static int boundBytes(ContentValues values) {
+        int bytes = 0;
+        for (Map.Entry<String, Object> entry : values.valueSet()) {
+            bytes += boundBytes(entry.getValue());
         }
+        return bytes;
+    }
 
-        Set<String> toPossiblyKeep = new HashSet<String>(newSet);
-        toPossiblyKeep.retainAll(oldSet);
-        for (String name : toPossiblyKeep) {
-            String oldSql = indexesInDb.get(name);
-            String newSql = indexesOfEntity.get(name).getCreationSql(table, false);
-            // If they are the same, leave it that way, otherwise, drop old and create new
-            if (!oldSql.equalsIgnoreCase(newSql)) {
-                db.execSQL("drop index if exists " + name);
-                db.execSQL(newSql);
-                updated |= true;
+    static int boundBytes(Object[] args) {
+        int bytes = 0;
+        if (args != null) {
+            for (Object arg : args) {
+                bytes += boundBytes(arg);
             }
         }
+        return bytes;
+    }
 
-        return updated;
+    private static int boundBytes(Object value) {
+        if (value == null) {
+            return 0;
+        } else if (value instanceof byte[]) {
+            return ((byte[]) value).length;
+        } else if (value instanceof String) {
+            return ((String) value).length();
+        }
+        return 8;
+    }
+
+    private void tableChanged(String table, int rows) {
+        if (rows > 0) {
+            tableChanged(table);
+        }
     }
 
-    boolean createNewTable(CupboardDatabase db, String table, List<Column> cols) {
-        StringBuilder sql = new StringBuilder("create table '").append(table).append("' (_id integer primary key autoincrement");
+    private void tableChanged(String table) {
+        mCupboard.getChangeNotifier().tableChanged(table);
+    }
 
-        Builder builder = new IndexStatement.Builder();
+    <T> Subscription observe(QueryBuilder<T> query, QueryObserver<T> observer, Executor executor) {
+        ObservedQuery<T> observed = new ObservedQuery<T>(mCupboard.getChangeNotifier(), getConverter(query.mEntityClass).getTable(), query, observer, executor);
+        observed.start();
+        return observed;
+    }
+
+    <T> Subscription observeChanges(QueryBuilder<T> query, DiffObserver<T> observer, Executor executor) {
+        ObservedQuery<T> observed = new ObservedQuery<T>(mCupboard.getChangeNotifier(), getConverter(query.mEntityClass).getTable(), query, observer, executor);
+        observed.start();
+        return observed;
+    }
+
+    private void addUpgradeStatements(List<String> statements, SchemaSnapshot schema, String table, List<Column> cols) {
+        Set<String> existingColumns = schema.getColumns(table);
+        for (Column column : cols) {
+            if (column.type != ColumnType.JOIN && !existingColumns.contains(column.name.toLowerCase(Locale.US))) {
+                statements.add("alter table '" + table + "' add column '" + column.name + "' " + column.type.toString());
+            }
+        }
+
+        Map<String, String> existingIndexes = schema.getIndexes(table);
+        List<IndexStatement> indexes = buildIndexes(table, cols).build();
+        Set<String> names = new HashSet<String>(indexes.size());
+        for (IndexStatement index : indexes) {
+            names.add(IndexStatement.INDEX_PREFIX + index.mIndexName);
+        }
+        for (String name : existingIndexes.keySet()) {
+            if (!names.contains(name)) {
+                statements.add("drop index if exists " + name);
+            }
+        }
+        for (IndexStatement index : indexes) {
+            String name = IndexStatement.INDEX_PREFIX + index.mIndexName;
+            String existingSql = existingIndexes.get(name);
+            if (existingSql == null) {
+                statements.add(index.getCreationSql(table));
+            } else {
+                String sql = index.getCreationSql(table, false);
+                // If they are the same, leave it that way, otherwise, drop old and create new
+                if (!existingSql.equalsIgnoreCase(sql)) {
+                    statements.add("drop index if exists " + name);
+                    statements.add(sql);
+                }
+            }
+        }
+    }
+
+    private void addCreateStatements(List<String> statements, String table, List<Column> cols, TableOptions options) {
+        StringBuilder sql = new StringBuilder("create table '").append(table).append("' (");
+        if (options.mPrimaryKey.length > 0) {
+            sql.append("_id integer");
+        } else if (options.mAutoIncrement && !options.mWithoutRowId) {
+            sql.append("_id integer primary key autoincrement");
+        } else {
+            sql.append("_id integer primary key");
+        }
+        Set<String> names = new HashSet<String>();
         for (Column col : cols) {
             if (col.type == ColumnType.JOIN) {
                 continue;
             }
             String name = col.name;
+            names.add(name);
             if (!name.equals(BaseColumns._ID)) {
                 sql.append(", '").append(name).append("'");
                 sql.append(" ").append(col.type.toString());
             }
+        }
+        if (options.mPrimaryKey.length > 0) {
+            sql.append(", primary key (");
+            for (int i = 0; i < options.mPrimaryKey.length; i++) {
+                String name = options.mPrimaryKey[i];
+                if (!names.contains(name)) {
+                    throw new IllegalArgumentException("Primary key column " + name + " is not a column of table " + table);
+                }
+                sql.append(i == 0 ? "'" : ", '").append(name).append('\'');
+            }
+            sql.append(')');
+        }
+        sql.append(options.mWithoutRowId ? ") without rowid;" : ");");
+        statements.add(sql.toString());
+
+        for (IndexStatement stmt : buildIndexes(table, cols).build()) {
+            statements.add(stmt.getCreationSql(table));
+        }
+    }
+
+    private Builder buildIndexes(String table, List<Column> cols) {
+        Builder builder = new IndexStatement.Builder();
+        for (Column col : cols) {
+            if (col.type == ColumnType.JOIN) {
+                continue;
+            }
             Index index = col.index;
             if (index != null) {
-                builder.addIndexedColumn(table, name, index);
+                builder.addIndexedColumn(table, col.name, index);
             }
         }
-        sql.append(");");
-        db.execSQL(sql.toString());
+        return builder;
+    }
 
-        for (IndexStatement stmt : builder.build()) {
-            db.execSQL(stmt.getCreationSql(table));
+    boolean createNewTable(CupboardDatabase db, String table, List<Column> cols, TableOptions options) {
+        List<String> statements = new ArrayList<String>();
+        addCreateStatements(statements, table, cols, options);
+        for (String statement : statements) {
+            db.execSQL(statement);
         }
         return true;
     }
 
-    private <T> QueryResultIterable<T> query(Class<T> entityClass, String[] projection, String selection, String[] selectionArgs, String groupBy, String having, String orderBy, String limit, boolean distinct) {
-        EntityConverter<T> translator = getConverter(entityClass);
-        Cursor cursor = mDatabase.query(distinct, quoteTable(translator.getTable()), projection, selection, selectionArgs, groupBy, having, orderBy, limit);
-        return new QueryResultIterable<T>(cursor, translator);
+    /**
+     * Run a query, binding arguments by their type if the database supports it and as strings otherwise.
+     */
+    static Cursor rawQuery(CupboardDatabase db, String sql, Object[] args) {
+        if (args == null || args instanceof String[]) {
+            return db.rawQuery(sql, (String[]) args);
+        }
+        if (db instanceof ExtendedCupboardDatabase) {
+            return ((ExtendedCupboardDatabase) db).rawQuery(sql, args);
+        }
+        String[] stringArgs = new String[args.length];
+        for (int i = 0; i < args.length; i++) {
+            Object arg = args[i];
+            if (arg instanceof byte[]) {
+                throw new IllegalArgumentException("Binding a blob requires a database that implements " + ExtendedCupboardDatabase.class.getSimpleName());
+            }
+            stringArgs[i] = arg == null ? null : String.valueOf(arg);
+        }
+        return db.rawQuery(sql, stringArgs);
+    }
+
+    /**
+     * Run a query for a single long value, as a simple query if the database supports it.
+     */
+    static long longForQuery(CupboardDatabase db, String sql, Object[] args) {
+        if (db instanceof ExtendedCupboardDatabase) {
+            return ((ExtendedCupboardDatabase) db).longForQuery(sql, args);
+        }
+        Cursor cursor = rawQuery(db, sql, args);
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
+        }
     }
 
     private String quoteTable(String table) {
@@ -446,7 +1011,8 @@ public class DatabaseCompartment extends BaseCompartment {
         private final Class<T> mEntityClass;
         private final DatabaseCompartment mCompartment;
         private String mSelection;
-        private String[] mSelectionArgs;
+        private Object[] mSelectionArgs;
+        private String[] mArgColumns;
         private String mOrder;
         private String mGroup;
         private String mHaving;
@@ -454,6 +1020,8 @@ public class DatabaseCompartment extends BaseCompartment {
         private String mLimit = null;
         private String mOffset = null;
         private boolean mDistinct = false;
+        private boolean mIncludeLazyColumns = false;
+        private Operation mOperation = Operation.QUERY;
 
         QueryBuilder(Class<T> entityClass, DatabaseCompartment compartment) {
             this.mEntityClass = entityClass;
@@ -471,6 +1039,37 @@ public class DatabaseCompartment extends BaseCompartment {
         public QueryBuilder<T> withSelection(String selection, String... args) {
             this.mSelection = selection;
             this.mSelectionArgs = args;
+            this.mArgColumns = null;
+            return this;
+        }
+
+        /**
+         * Set the selection (where clause) and selection arguments from typed criteria. The columns of the criteria must be columns of
+         * the entity. Enum, date and calendar values are bound the way their column stores them. Replaces a selection set by
+         * {@link #withSelection(String, String...)}.
+         *
+         * @param criteria the criteria
+         * @return this builder
+         * @throws IllegalArgumentException if the criteria refers to a column that the entity doesn't have
+         */
+        public QueryBuilder<T> where(Criteria criteria) {
+            EntityConverter<T> converter = mCompartment.getConverter(mEntityClass);
+            List<Column> columns = converter.getColumns();
+            for (String name : criteria.getColumns()) {
+                boolean found = false;
+                for (Column column : columns) {
+                    if (column.name.equals(name)) {
+                        found = true;
+                        break;
+                    }
+                }
+                if (!found) {
+                    throw new IllegalArgumentException("Entity " + mEntityClass.getSimpleName() + " has no column " + name);
+                }
+            }
+            this.mSelection = criteria.getSql();
+            this.mSelectionArgs = criteria.getArgs(converter);
+            this.mArgColumns = criteria.getArgColumns();
             return this;
         }
 
@@ -528,7 +1127,8 @@ public class DatabaseCompartment extends BaseCompartment {
          */
         public QueryBuilder<T> byId(long id) {
             mSelection = "_id = ?";
-            mSelectionArgs = new String[]{String.valueOf(id)};
+            mSelectionArgs = new Object[]{id};
+            mArgColumns = null;
             limit(1);
             return this;
         }
@@ -572,18 +1172,371 @@ public class DatabaseCompartment extends BaseCompartment {
             return this;
         }
 
+        /**
+         * Also load the columns of fields annotated with {@link nl.qbusict.cupboard.annotation.Lazy}, which are left out by default.
+         *
+         * @return this builder.
+         */
+        public QueryBuilder<T> includeLazyColumns() {
+            mIncludeLazyColumns = true;
+            return this;
+        }
+
         /**
          * Execute the query
          *
          * @return The query result
          */
         public QueryResultIterable<T> query() {
-            if (mLimit != null && mOffset != null) {
-                mLimit = String.format("%s,%s", mOffset, mLimit);
-            } else if (mOffset != null) {
-                mLimit = String.format("%s,%d", mOffset, Long.MAX_VALUE);
+            return prepare().query();
+        }
+
+        /**
+         * Prepare this query for repeated execution. The sql is built once and the returned query can be executed with different
+         * selection arguments, see {@link PreparedQuery#query(Object...)}. Changes to this builder after calling this method do not affect
+         * the prepared query.
+         *
+         * @return the prepared query
+         */
+        public PreparedQuery<T> prepare() {
+            EntityConverter<T> converter = mCompartment.getConverter(mEntityClass);
+            String[] projection = mProjection;
+            if (projection == null && !mIncludeLazyColumns) {
+                projection = eagerProjection(converter.getColumns());
+            }
+            return new PreparedQuery<T>(mCompartment.mDatabase, converter, buildSql(converter.getTable(), projection), mSelectionArgs, mArgColumns,
+                    mEntityClass, mCompartment.mCupboard, mOperation);
+        }
+
+        /**
+         * Count the rows this query would return, without transferring the rows. Projection and order are ignored unless the query is
+         * distinct, grouped or limited.
+         *
+         * @return the number of rows
+         */
+        public long count() {
+            return queryForLong("count(*)");
+        }
+
+        /**
+         * Check if this query returns at least one row, without transferring the rows.
+         *
+         * @return true if the query has a result, false otherwise
+         */
+        public boolean exists() {
+            String table = mCompartment.getConverter(mEntityClass).getTable();
+            return longForQuery(mCompartment.mDatabase, advise("SELECT EXISTS(" + buildSql(table) + ")"), mSelectionArgs) != 0;
+        }
+
+        /**
+         * Query the minimum value of a column
+         *
+         * @param column the column, which must be an integer or real column of the entity
+         * @return the minimum value as a {@link Long} or {@link Double} depending on the column type, or null if there are no (non null) values
+         */
+        public Number min(String column) {
+            return queryForNumber("min", column);
+        }
+
+        /**
+         * Query the maximum value of a column
+         *
+         * @param column the column, which must be an integer or real column of the entity
+         * @return the maximum value as a {@link Long} or {@link Double} depending on the column type, or null if there are no (non null) values
+         */
+        public Number max(String column) {
+            return queryForNumber("max", column);
+        }
+
+        /**
+         * Query the sum of the values of a column
+         *
+         * @param column the column, which must be an integer or real column of the entity
+         * @return the sum as a {@link Long} or {@link Double} depending on the column type, or null if there are no (non null) values
+         */
+        public Number sum(String column) {
+            return queryForNumber("sum", column);
+        }
+
+        /**
+         * Query a single long value, the result of an sql expression over the rows of this query, for example <pre>max(length(name))</pre>.
+         * The expression is evaluated as a simple query, without creating a cursor. If the query is distinct, grouped or limited it is
+         * evaluated over the rows of this query as a sub query.
+         *
+         * @param expression the sql expression
+         * @return the value or 0 if the expression evaluated to null
+         */
+        public long queryForLong(String expression) {
+            String table = mCompartment.getConverter(mEntityClass).getTable();
+            return longForQuery(mCompartment.mDatabase, advise(buildAggregateSql(table, expression)), mSelectionArgs);
+        }
+
+        /**
+         * Query the values of a single column as longs, without converting entities. Null values are returned as 0.
+         *
+         * @param column the column or sql expression, replacing the projection of this query
+         * @return the values in the order of the query
+         */
+        public long[] queryLongs(String column) {
+            Cursor cursor = queryColumn(column);
+            try {
+                long[] values = new long[Math.max(cursor.getCount(), 0)];
+                int count = 0;
+                while (cursor.moveToNext()) {
+                    if (count == values.length) {
+                        values = resize(values, Math.max(16, count * 2));
+                    }
+                    values[count++] = cursor.getLong(0);
+                }
+                return count == values.length ? values : resize(values, count);
+            } finally {
+                cursor.close();
+            }
+        }
+
+        /**
+         * Query the values of a single column as doubles, without converting entities. Null values are returned as 0.
+         *
+         * @param column the column or sql expression, replacing the projection of this query
+         * @return the values in the order of the query
+         */
+        public double[] queryDoubles(String column) {
+            Cursor cursor = queryColumn(column);
+            try {
+                double[] values = new double[Math.max(cursor.getCount(), 0)];
+                int count = 0;
+                while (cursor.moveToNext()) {
+                    if (count == values.length) {
+                        values = resize(values, Math.max(16, count * 2));
+                    }
+                    values[count++] = cursor.getDouble(0);
+                }
+                return count == values.length ? values : resize(values, count);
+            } finally {
+                cursor.close();
+            }
+        }
+
+        /**
+         * Query the values of a single column as strings, without converting entities.
+         *
+         * @param column the column or sql expression, replacing the projection of this query
+         * @return the values in the order of the query, including null values
+         */
+        public List<String> queryStrings(String column) {
+            Cursor cursor = queryColumn(column);
+            try {
+                List<String> values = new ArrayList<String>(Math.max(cursor.getCount(), 0));
+                while (cursor.moveToNext()) {
+                    values.add(cursor.getString(0));
+                }
+                return values;
+            } finally {
+                cursor.close();
+            }
+        }
+
+        // Arrays.copyOf requires api level 9
+        private static long[] resize(long[] values, int length) {
+            long[] resized = new long[length];
+            System.arraycopy(values, 0, resized, 0, Math.min(values.length, length));
+            return resized;
+        }
+
+        private static double[] resize(double[] values, int length) {
+            double[] resized = new double[length];
+            System.arraycopy(values, 0, resized, 0, Math.min(values.length, length));
+            return resized;
+        }
+
+        private Cursor queryColumn(String column) {
+            String table = mCompartment.getConverter(mEntityClass).getTable();
+            return rawQuery(mCompartment.mDatabase, advise(buildSql(table, new String[]{column})), mSelectionArgs);
+        }
+
+        /**
+         * Let the query plan advisor, if any, inspect a query before it's executed
+         *
+         * @return the sql, unchanged
+         */
+        private String advise(String sql) {
+            QueryPlanAdvisor advisor = mCompartment.mCupboard.getQueryPlanAdvisor();
+            if (advisor != null) {
+                advisor.inspect(mCompartment.mDatabase, mEntityClass, mCompartment.getConverter(mEntityClass).getColumns(), sql, mSelectionArgs);
+            }
+            return sql;
+        }
+
+        private Number queryForNumber(String function, String column) {
+            EntityConverter<T> converter = mCompartment.getConverter(mEntityClass);
+            ColumnType type = null;
+            for (Column col : converter.getColumns()) {
+                if (col.name.equals(column)) {
+                    type = col.type;
+                    break;
+                }
+            }
+            if (type != ColumnType.INTEGER && type != ColumnType.REAL) {
+                throw new IllegalArgumentException("Entity " + mEntityClass.getSimpleName() + " has no integer or real column " + column);
+            }
+            String sql = buildAggregateSql(converter.getTable(), function + "(\"" + column + "\")");
+            Cursor cursor = rawQuery(mCompartment.mDatabase, advise(sql), mSelectionArgs);
+            try {
+                if (!cursor.moveToFirst() || cursor.isNull(0)) {
+                    return null;
+                }
+                if (type == ColumnType.INTEGER) {
+                    return cursor.getLong(0);
+                }
+                return cursor.getDouble(0);
+            } finally {
+                cursor.close();
             }
-            return mCompartment.query(mEntityClass, mProjection, mSelection, mSelectionArgs, mGroup, mHaving, mOrder, mLimit, mDistinct);
+        }
+
+        private String buildAggregateSql(String table, String expression) {
+            if (mDistinct || mGroup != null || mHaving != null || mLimit != null || mOffset != null) {
+                return "SELECT " + expression + " FROM (" + buildSql(table) + ")";
+            }
+            StringBuilder sql = new StringBuilder(60);
+            sql.append("SELECT ").append(expression).append(" FROM ").append(mCompartment.quoteTable(table));
+            appendClause(sql, " WHERE ", mSelection);
+            return sql.toString();
+        }
+
+        /**
+         * @return the columns that aren't lazy, or null to select all columns if there are no lazy columns. Read only columns are
+         * left out of the projection as well, since they are not part of the table.
+         */
+        private static String[] eagerProjection(List<Column> columns) {
+            int eager = 0;
+            boolean lazy = false;
+            for (Column column : columns) {
+                if (column.lazy) {
+                    lazy = true;
+                } else if (column.type != ColumnType.JOIN) {
+                    eager++;
+                }
+            }
+            if (!lazy) {
+                return null;
+            }
+            String[] projection = new String[eager];
+            int i = 0;
+            for (Column column : columns) {
+                if (!column.lazy && column.type != ColumnType.JOIN) {
+                    projection[i++] = "\"" + column.name + "\"";
+                }
+            }
+            return projection;
+        }
+
+        private String buildSql(String table) {
+            return buildSql(table, mProjection);
+        }
+
+        private String buildSql(String table, String[] projection) {
+            if (mHaving != null && mGroup == null) {
+                throw new IllegalArgumentException("A having clause requires a group by clause");
+            }
+            StringBuilder sql = new StringBuilder(120);
+            sql.append("SELECT ");
+            if (mDistinct) {
+                sql.append("DISTINCT ");
+            }
+            if (projection != null && projection.length > 0) {
+                for (int i = 0; i < projection.length; i++) {
+                    if (i > 0) {
+                        sql.append(", ");
+                    }
+                    sql.append(projection[i]);
+                }
+            } else {
+                sql.append('*');
+            }
+            sql.append(" FROM ").append(mCompartment.quoteTable(table));
+            appendClause(sql, " WHERE ", mSelection);
+            appendClause(sql, " GROUP BY ", mGroup);
+            appendClause(sql, " HAVING ", mHaving);
+            appendClause(sql, " ORDER BY ", mOrder);
+            if (mOffset != null) {
+                sql.append(" LIMIT ").append(mOffset).append(',').append(mLimit != null ? mLimit : String.valueOf(Long.MAX_VALUE));
+            } else {
+                appendClause(sql, " LIMIT ", mLimit);
+            }
+            return sql.toString();
+        }
+
+        private static void appendClause(StringBuilder sql, String name, String clause) {
+            if (clause != null && clause.length() > 0) {
+                sql.append(name).append(clause);
+            }
+        }
+
+        /**
+         * Observe the results of this query. The observer is called with the current result and again each time the table of this entity is
+         * changed through Cupboard, see {@link DatabaseCompartment#beginTransaction()}. Changes to this builder after calling this method do not
+         * affect the observed query. The query is executed on the thread that made the change, after the change was committed. Errors are
+         * reported to {@link QueryObserver#onQueryError(RuntimeException)}, not to the thread that made the change.
+         *
+         * @param observer the observer
+         * @return a subscription to stop observing
+         */
+        public Subscription observe(QueryObserver<T> observer) {
+            return observe(observer, null);
+        }
+
+        /**
+         * Observe the results of this query. The observer is called with the current result and again each time the table of this entity is
+         * changed through Cupboard, see {@link DatabaseCompartment#beginTransaction()}. Multiple changes while a query is pending are
+         * handled by a single query. Changes to this builder after calling this method do not affect the observed query.
+         *
+         * @param observer the observer
+         * @param executor the executor to execute the query and call the observer on or null to do this on the thread that made the change
+         * @return a subscription to stop observing
+         */
+        public Subscription observe(QueryObserver<T> observer, Executor executor) {
+            return mCompartment.observe(copy(), observer, executor);
+        }
+
+        /**
+         * Observe the changes to the results of this query. The observer is called with the current result and again each time a change
+         * to the table of this entity changed the result, see {@link #observe(QueryObserver)}. Only entities that were inserted or updated
+         * are converted. The query must include the {@link BaseColumns#_ID} column.
+         *
+         * @param observer the observer
+         * @return a subscription to stop observing
+         */
+        public Subscription observeChanges(DiffObserver<T> observer) {
+            return observeChanges(observer, null);
+        }
+
+        /**
+         * Observe the changes to the results of this query, see {@link #observeChanges(DiffObserver)} and {@link #observe(QueryObserver, Executor)}.
+         *
+         * @param observer the observer
+         * @param executor the executor to execute the query and call the observer on or null to do this on the thread that made the change
+         * @return a subscription to stop observing
+         */
+        public Subscription observeChanges(DiffObserver<T> observer, Executor executor) {
+            return mCompartment.observeChanges(copy(), observer, executor);
+        }
+
+        QueryBuilder<T> copy() {
+            QueryBuilder<T> copy = new QueryBuilder<T>(mEntityClass, mCompartment);
+            copy.mSelection = mSelection;
+            copy.mSelectionArgs = mSelectionArgs;
+            copy.mArgColumns = mArgColumns;
+            copy.mOrder = mOrder;
+            copy.mGroup = mGroup;
+            copy.mHaving = mHaving;
+            copy.mProjection = mProjection;
+            copy.mLimit = mLimit;
+            copy.mOffset = mOffset;
+            copy.mDistinct = mDistinct;
+            copy.mOperation = mOperation;
+            copy.mIncludeLazyColumns = mIncludeLazyColumns;
+            return copy;
         }
 
         /**
@@ -614,7 +1567,7 @@ public class DatabaseCompartment extends BaseCompartment {
         }
     }
 
-    private static class PlatformSQLiteDatabase implements CupboardDatabase {
+    static class PlatformSQLiteDatabase implements ExtendedCupboardDatabase {
         private final SQLiteDatabase mDatabase;
 
         public PlatformSQLiteDatabase(SQLiteDatabase db) {
@@ -646,6 +1599,50 @@ public class DatabaseCompartment extends BaseCompartment {
             return mDatabase.rawQuery(sql, selectionArgs);
         }
 
+        @Override
+        public Cursor rawQuery(String sql, final Object[] bindArgs) {
+            return mDatabase.rawQueryWithFactory(new SQLiteDatabase.CursorFactory() {
+                @SuppressWarnings("deprecation")
+                @Override
+                public Cursor newCursor(SQLiteDatabase db, SQLiteCursorDriver driver, String editTable, SQLiteQuery query) {
+                    bind(query, bindArgs);
+                    // the constructor without the database is only available from api level 11
+                    return new SQLiteCursor(db, driver, editTable, query);
+                }
+            }, sql, null, null);
+        }
+
+        @Override
+        public long longForQuery(String sql, Object[] bindArgs) {
+            SQLiteStatement statement = mDatabase.compileStatement(sql);
+            try {
+                bind(statement, bindArgs);
+                return statement.simpleQueryForLong();
+            } finally {
+                statement.close();
+            }
+        }
+
+        private static void bind(SQLiteProgram program, Object[] bindArgs) {
+            if (bindArgs == null) {
+                return;
+            }
+            for (int i = 0; i < bindArgs.length; i++) {
+                Object arg = bindArgs[i];
+                if (arg == null) {
+                    program.bindNull(i + 1);
+                } else if (arg instanceof Long) {
+                    program.bindLong(i + 1, (Long) arg);
+                } else if (arg instanceof Double) {
+                    program.bindDouble(i + 1, (Double) arg);
+                } else if (arg instanceof byte[]) {
+                    program.bindBlob(i + 1, (byte[]) arg);
+                } else {
+                    program.bindString(i + 1, arg.toString());
+                }
+            }
+        }
+
         @Override
         public int delete(String table, String selection, String[] selectionArgs) {
             return mDatabase.delete(table, selection, selectionArgs);
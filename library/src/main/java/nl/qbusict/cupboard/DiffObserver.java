@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2016 Little Robots
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package nl.qbusict.cupboard;
+
+/**
+ * Receives the changes to the result of an observed query, see {@link DatabaseCompartment.QueryBuilder#observeChanges(DiffObserver)}
+ *
+ * @param <T> the entity type
+ */
+public interface DiffObserver<T> {
+    /**
+     * Called with the initial result of the query, reported as inserted entities, and again each time a re-run of the query
+     * yielded a different result.
+     *
+     * @param diff the changes compared to the previous result
+     */
+    void onQueryDiff(QueryDiff<T> diff);
+
+    /**
+     * Called when running the query or {@link #onQueryDiff(QueryDiff)} failed. The error is not thrown to the thread that made the
+     * change, as the change was committed already, and the query stays observed.
+     *
+     * @param error the error
+     */
+    void onQueryError(RuntimeException error);
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2016 Little Robots
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package nl.qbusict.cupboard;
+
+import android.database.Cursor;
+
+/**
+ * Optional extensions to {@link CupboardDatabase}. When the database passed to Cupboard implements this interface, query arguments
+ * are bound with their native type instead of as strings and
+ * scalar queries don't need a cursor.
+ */
+public interface ExtendedCupboardDatabase extends CupboardDatabase {
+
+    /**
+     * Run a query, binding each argument with its own type.
+     *
+     * @param sql      the sql of the query, with ? as parameter placeholders
+     * @param bindArgs the arguments, either null, a {@link Long}, a {@link Double}, a {@link String} or a byte[]
+     * @return the cursor
+     */
+    Cursor rawQuery(String sql, Object[] bindArgs);
+
+    /**
+     * Run a query that returns a single long value in its first row and column, without creating a cursor.
+     *
+     * @param sql      the sql of the query, with ? as parameter placeholders
+     * @param bindArgs the arguments, see {@link #rawQuery(String, Object[])}
+     * @return the value, or 0 if the value is null
+     */
+    long longForQuery(String sql, Object[] bindArgs);
+}
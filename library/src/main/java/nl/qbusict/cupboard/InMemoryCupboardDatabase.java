@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2016 Little Robots
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package nl.qbusict.cupboard;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+import nl.qbusict.cupboard.internal.memory.MemoryDatabase;
+
+/**
+ * A {@link CupboardDatabase} that keeps its tables in memory, for tests and benchmarks that run on the jvm or shouldn't pay for disk
+ * access. It understands the sql that Cupboard generates and queries on a single table, see {@link MemoryDatabase} for the
+ * supported subset of sqlite.
+ * <p/>
+ * Transactions behave like those of {@link android.database.sqlite.SQLiteDatabase}: they can be nested, a nested transaction that
+ * isn't marked successful rolls back the outermost transaction, and other threads wait for a transaction to end before they access
+ * the database.
+ * <p/>
+ * The database doesn't need a device, but it and {@link DatabaseCompartment} use {@link ContentValues},
+ * {@link android.database.CursorWrapper} and {@link android.database.SQLException}, which only throw in the android.jar used for
+ * unit tests. Tests that run on the jvm need an implementation of these classes ahead of android.jar on the classpath, like the
+ * test fixtures in src/testFixtures of this library, or Robolectric.
+ * <pre>
+ * DatabaseCompartment dbc = cupboard().withDatabase(new InMemoryCupboardDatabase());
+ * dbc.createTables();
+ * </pre>
+ */
+public class InMemoryCupboardDatabase implements ExtendedCupboardDatabase {
+    private final MemoryDatabase mDatabase = new MemoryDatabase();
+    private final ReentrantLock mLock = new ReentrantLock();
+    // transaction state, only accessed by the thread that holds the lock
+    private int mDepth;
+    private boolean mSuccessful;
+    private boolean mFailed;
+
+    /**
+     * @return the database engine, to run statements directly
+     */
+    public MemoryDatabase getDatabase() {
+        return mDatabase;
+    }
+
+    @Override
+    public long insertOrThrow(String table, String nullColumnHack, ContentValues values) {
+        return insert(false, table, nullColumnHack, values);
+    }
+
+    @Override
+    public long replaceOrThrow(String table, String nullColumnHack, ContentValues values) {
+        return insert(true, table, nullColumnHack, values);
+    }
+
+    private long insert(boolean replace, String table, String nullColumnHack, ContentValues values) {
+        List<Object> args = new ArrayList<Object>();
+        String sql = SqlBuilder.insert(replace, table, nullColumnHack, values, args);
+        mLock.lock();
+        try {
+            mDatabase.execute(sql, args.toArray());
+            return mDatabase.getLastInsertRowId();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    @Override
+    public int update(String table, ContentValues values, String selection, String[] selectionArgs) {
+        List<Object> args = new ArrayList<Object>();
+        String sql = SqlBuilder.update(table, values, selection, selectionArgs, args);
+        return execute(sql, args.toArray());
+    }
+
+    @Override
+    public int delete(String table, String selection, String[] selectionArgs) {
+        return execute(SqlBuilder.delete(table, selection), selectionArgs);
+    }
+
+    private int execute(String sql, Object[] args) {
+        mLock.lock();
+        try {
+            return mDatabase.execute(sql, args);
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    @Override
+    public Cursor query(boolean distinct, String table, String[] columns, String selection, String[] selectionArgs, String groupBy,
+                        String having, String orderBy, String limit) {
+        return rawQuery(SqlBuilder.query(distinct, table, columns, selection, groupBy, having, orderBy, limit), (Object[]) selectionArgs);
+    }
+
+    @Override
+    public Cursor rawQuery(String sql, String[] selectionArgs) {
+        return rawQuery(sql, (Object[]) selectionArgs);
+    }
+
+    @Override
+    public Cursor rawQuery(String sql, Object[] bindArgs) {
+        mLock.lock();
+        try {
+            return mDatabase.query(sql, bindArgs);
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * Unlike {@link android.database.sqlite.SQLiteStatement#simpleQueryForLong()}, a query without rows returns 0.
+     */
+    @Override
+    public long longForQuery(String sql, Object[] bindArgs) {
+        Cursor cursor = rawQuery(sql, bindArgs);
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Override
+    public void execSQL(String sql) {
+        execute(sql, null);
+    }
+
+    @Override
+    public boolean inTransaction() {
+        return mLock.isHeldByCurrentThread() && mDepth > 0;
+    }
+
+    @Override
+    public void beginTransaction() {
+        mLock.lock();
+        if (mDepth > 0 && mSuccessful) {
+            mLock.unlock();
+            throw new IllegalStateException("Cannot begin a transaction because the current transaction has already been marked successful");
+        }
+        if (mDepth++ == 0) {
+            mDatabase.beginTransaction();
+            mFailed = false;
+        }
+        mSuccessful = false;
+    }
+
+    @Override
+    public void yieldIfContendedSafely() {
+        // there is a single connection, other threads wait for the transaction anyway
+    }
+
+    @Override
+    public void setTransactionSuccessful() {
+        if (!inTransaction()) {
+            throw new IllegalStateException("No transaction in progress");
+        }
+        if (mSuccessful) {
+            throw new IllegalStateException("The transaction has already been marked successful");
+        }
+        mSuccessful = true;
+    }
+
+    @Override
+    public void endTransaction() {
+        if (!inTransaction()) {
+            throw new IllegalStateException("No transaction in progress");
+        }
+        try {
+            mFailed |= !mSuccessful;
+            // the enclosing transaction needs to be marked successful on its own
+            mSuccessful = false;
+            if (--mDepth == 0) {
+                if (mFailed) {
+                    mDatabase.rollback();
+                } else {
+                    mDatabase.commit();
+                }
+            }
+        } finally {
+            mLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,408 @@
+/*
+ * Copyright (C) 2016 Little Robots
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package nl.qbusict.cupboard;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.SQLException;
+import android.provider.BaseColumns;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import nl.qbusict.cupboard.internal.memory.MemoryCursor;
+import nl.qbusict.cupboard.internal.memory.Values;
+
+/**
+ * A {@link CupboardDatabase} on a jdbc {@link Connection} to an sqlite database, to use the same entities and
+ * {@link DatabaseCompartment} code on a jvm backend. Prepared statements are cached per sql, query results are read into memory so
+ * that the returned cursors support random access, and {@link DatabaseCompartment#put(java.util.Collection)} inserts entities that
+ * have an id with {@link PreparedStatement#executeBatch()}.
+ * <p/>
+ * Transactions behave like those of {@link android.database.sqlite.SQLiteDatabase}: they can be nested and a nested transaction that
+ * isn't marked successful rolls back the outermost transaction. Other threads wait for a transaction to end. Errors are thrown as
+ * {@link SQLException}. The connection is owned by the caller, {@link #close()} only closes the cached statements.
+ */
+public class JdbcCupboardDatabase implements ExtendedCupboardDatabase, BatchCupboardDatabase {
+    private static final int DEFAULT_STATEMENT_CACHE_SIZE = 32;
+
+    private final Connection mConnection;
+    private final Map<String, PreparedStatement> mStatements;
+    private final ReentrantLock mLock = new ReentrantLock();
+    // transaction state, only accessed by the thread that holds the lock
+    private int mDepth;
+    private boolean mSuccessful;
+    private boolean mFailed;
+    private boolean mAutoCommit;
+
+    public JdbcCupboardDatabase(Connection connection) {
+        this(connection, DEFAULT_STATEMENT_CACHE_SIZE);
+    }
+
+    /**
+     * @param connection         the connection to an sqlite database
+     * @param statementCacheSize the maximum number of prepared statements to keep open, the least recently used statement is closed
+     *                           when the cache is full
+     */
+    public JdbcCupboardDatabase(Connection connection, final int statementCacheSize) {
+        mConnection = connection;
+        mStatements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() > statementCacheSize) {
+                    closeQuietly(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    private PreparedStatement prepare(String sql) throws java.sql.SQLException {
+        PreparedStatement statement = mStatements.get(sql);
+        if (statement == null) {
+            statement = mConnection.prepareStatement(sql);
+            mStatements.put(sql, statement);
+        }
+        return statement;
+    }
+
+    private static void bind(PreparedStatement statement, Object[] args) throws java.sql.SQLException {
+        statement.clearParameters();
+        if (args == null) {
+            return;
+        }
+        for (int i = 0; i < args.length; i++) {
+            Object arg = Values.normalize(args[i]);
+            if (arg == null) {
+                statement.setNull(i + 1, Types.NULL);
+            } else if (arg instanceof Long) {
+                statement.setLong(i + 1, (Long) arg);
+            } else if (arg instanceof Double) {
+                statement.setDouble(i + 1, (Double) arg);
+            } else if (arg instanceof byte[]) {
+                statement.setBytes(i + 1, (byte[]) arg);
+            } else {
+                statement.setString(i + 1, arg.toString());
+            }
+        }
+    }
+
+    private static SQLException wrap(java.sql.SQLException e) {
+        // the constructor with a cause needs api level 16
+        SQLException error = new SQLException(e.getMessage() + " (" + e.getClass().getName() + ", error code " + e.getErrorCode() + ")");
+        error.initCause(e);
+        return error;
+    }
+
+    private static void closeQuietly(Statement statement) {
+        try {
+            statement.close();
+        } catch (java.sql.SQLException ignored) {
+        }
+    }
+
+    @Override
+    public long insertOrThrow(String table, String nullColumnHack, ContentValues values) {
+        return insert(false, table, nullColumnHack, values);
+    }
+
+    @Override
+    public long replaceOrThrow(String table, String nullColumnHack, ContentValues values) {
+        return insert(true, table, nullColumnHack, values);
+    }
+
+    private long insert(boolean replace, String table, String nullColumnHack, ContentValues values) {
+        List<Object> args = new ArrayList<Object>();
+        String sql = SqlBuilder.insert(replace, table, nullColumnHack, values, args);
+        mLock.lock();
+        try {
+            PreparedStatement statement = prepare(sql);
+            bind(statement, args.toArray());
+            statement.executeUpdate();
+            return lastInsertRowId();
+        } catch (java.sql.SQLException e) {
+            throw wrap(e);
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    private long lastInsertRowId() throws java.sql.SQLException {
+        return queryForLong("SELECT last_insert_rowid()", null);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * Runs of values with an id and the same columns are executed as a single batch. Values without an id are inserted one at a
+     * time and read the row id that sqlite assigned, as the row ids of a batch aren't guaranteed to be consecutive.
+     */
+    @Override
+    public long[] insertBatch(String table, String nullColumnHack, List<ContentValues> values, boolean replace) {
+        long[] ids = new long[values.size()];
+        mLock.lock();
+        try {
+            String batchSql = null;
+            for (int i = 0; i < values.size(); i++) {
+                ContentValues row = values.get(i);
+                List<Object> args = new ArrayList<Object>();
+                String sql = SqlBuilder.insert(replace, table, nullColumnHack, row, args);
+                Long id = row == null ? null : row.getAsLong(BaseColumns._ID);
+                if (batchSql != null && (id == null || !sql.equals(batchSql))) {
+                    executeBatch(batchSql);
+                    batchSql = null;
+                }
+                PreparedStatement statement = prepare(sql);
+                bind(statement, args.toArray());
+                if (id == null) {
+                    statement.executeUpdate();
+                    ids[i] = lastInsertRowId();
+                } else {
+                    statement.addBatch();
+                    batchSql = sql;
+                    ids[i] = id;
+                }
+            }
+            if (batchSql != null) {
+                executeBatch(batchSql);
+            }
+            return ids;
+        } catch (java.sql.SQLException e) {
+            throw wrap(e);
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    private void executeBatch(String sql) throws java.sql.SQLException {
+        PreparedStatement statement = prepare(sql);
+        try {
+            statement.executeBatch();
+        } finally {
+            statement.clearBatch();
+        }
+    }
+
+    @Override
+    public int update(String table, ContentValues values, String selection, String[] selectionArgs) {
+        List<Object> args = new ArrayList<Object>();
+        String sql = SqlBuilder.update(table, values, selection, selectionArgs, args);
+        return executeUpdate(sql, args.toArray());
+    }
+
+    @Override
+    public int delete(String table, String selection, String[] selectionArgs) {
+        return executeUpdate(SqlBuilder.delete(table, selection), selectionArgs);
+    }
+
+    private int executeUpdate(String sql, Object[] args) {
+        mLock.lock();
+        try {
+            PreparedStatement statement = prepare(sql);
+            bind(statement, args);
+            return statement.executeUpdate();
+        } catch (java.sql.SQLException e) {
+            throw wrap(e);
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    @Override
+    public Cursor query(boolean distinct, String table, String[] columns, String selection, String[] selectionArgs, String groupBy,
+                        String having, String orderBy, String limit) {
+        return rawQuery(SqlBuilder.query(distinct, table, columns, selection, groupBy, having, orderBy, limit), (Object[]) selectionArgs);
+    }
+
+    @Override
+    public Cursor rawQuery(String sql, String[] selectionArgs) {
+        return rawQuery(sql, (Object[]) selectionArgs);
+    }
+
+    @Override
+    public Cursor rawQuery(String sql, Object[] bindArgs) {
+        mLock.lock();
+        try {
+            PreparedStatement statement = prepare(sql);
+            bind(statement, bindArgs);
+            ResultSet resultSet = statement.executeQuery();
+            try {
+                ResultSetMetaData metaData = resultSet.getMetaData();
+                String[] columns = new String[metaData.getColumnCount()];
+                for (int i = 0; i < columns.length; i++) {
+                    columns[i] = metaData.getColumnLabel(i + 1);
+                }
+                List<Object[]> rows = new ArrayList<Object[]>();
+                while (resultSet.next()) {
+                    Object[] row = new Object[columns.length];
+                    for (int i = 0; i < row.length; i++) {
+                        row[i] = Values.normalize(resultSet.getObject(i + 1));
+                    }
+                    rows.add(row);
+                }
+                return new MemoryCursor(columns, rows);
+            } finally {
+                resultSet.close();
+            }
+        } catch (java.sql.SQLException e) {
+            throw wrap(e);
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * Unlike {@link android.database.sqlite.SQLiteStatement#simpleQueryForLong()}, a query without rows returns 0.
+     */
+    @Override
+    public long longForQuery(String sql, Object[] bindArgs) {
+        mLock.lock();
+        try {
+            return queryForLong(sql, bindArgs);
+        } catch (java.sql.SQLException e) {
+            throw wrap(e);
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    private long queryForLong(String sql, Object[] args) throws java.sql.SQLException {
+        PreparedStatement statement = prepare(sql);
+        bind(statement, args);
+        ResultSet resultSet = statement.executeQuery();
+        try {
+            return resultSet.next() ? resultSet.getLong(1) : 0;
+        } finally {
+            resultSet.close();
+        }
+    }
+
+    @Override
+    public void execSQL(String sql) {
+        mLock.lock();
+        try {
+            Statement statement = mConnection.createStatement();
+            try {
+                statement.execute(sql);
+            } finally {
+                statement.close();
+            }
+        } catch (java.sql.SQLException e) {
+            throw wrap(e);
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean inTransaction() {
+        return mLock.isHeldByCurrentThread() && mDepth > 0;
+    }
+
+    @Override
+    public void beginTransaction() {
+        mLock.lock();
+        if (mDepth > 0 && mSuccessful) {
+            mLock.unlock();
+            throw new IllegalStateException("Cannot begin a transaction because the current transaction has already been marked successful");
+        }
+        if (mDepth == 0) {
+            try {
+                mAutoCommit = mConnection.getAutoCommit();
+                mConnection.setAutoCommit(false);
+            } catch (java.sql.SQLException e) {
+                mLock.unlock();
+                throw wrap(e);
+            }
+            mFailed = false;
+        }
+        mDepth++;
+        mSuccessful = false;
+    }
+
+    @Override
+    public void yieldIfContendedSafely() {
+        // other threads wait for the transaction to end, yielding would only commit part of it
+    }
+
+    @Override
+    public void setTransactionSuccessful() {
+        if (!inTransaction()) {
+            throw new IllegalStateException("No transaction in progress");
+        }
+        if (mSuccessful) {
+            throw new IllegalStateException("The transaction has already been marked successful");
+        }
+        mSuccessful = true;
+    }
+
+    @Override
+    public void endTransaction() {
+        if (!inTransaction()) {
+            throw new IllegalStateException("No transaction in progress");
+        }
+        try {
+            mFailed |= !mSuccessful;
+            // the enclosing transaction needs to be marked successful on its own
+            mSuccessful = false;
+            if (--mDepth == 0) {
+                try {
+                    if (mFailed) {
+                        mConnection.rollback();
+                    } else {
+                        mConnection.commit();
+                    }
+                } finally {
+                    mConnection.setAutoCommit(mAutoCommit);
+                }
+            }
+        } catch (java.sql.SQLException e) {
+            throw wrap(e);
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Close the cached prepared statements. The connection is not closed.
+     */
+    public void close() {
+        mLock.lock();
+        try {
+            for (Iterator<PreparedStatement> it = mStatements.values().iterator(); it.hasNext(); ) {
+                closeQuietly(it.next());
+                it.remove();
+            }
+        } finally {
+            mLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2016 Little Robots
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package nl.qbusict.cupboard;
+
+import nl.qbusict.cupboard.convert.FieldConverter;
+
+/**
+ * A handle to a single column of an entity that is loaded and stored on demand by id, typically the column of a field annotated
+ * with {@link nl.qbusict.cupboard.annotation.Lazy}. Created by {@link DatabaseCompartment#lazyColumn(Class, String, Class)}.
+ * <pre>
+ * LazyColumn&lt;byte[]&gt; thumbnails = cupboard().withDatabase(db).lazyColumn(Photo.class, "thumbnail", byte[].class);
+ * byte[] thumbnail = thumbnails.get(photo._id);
+ * </pre>
+ *
+ * @param <T> the type of the column value
+ */
+public class LazyColumn<T> {
+    private final DatabaseCompartment mCompartment;
+    private final Class<?> mEntityClass;
+    private final String mTable;
+    private final String mColumn;
+    private final FieldConverter<T> mConverter;
+
+    LazyColumn(DatabaseCompartment compartment, Class<?> entityClass, String table, String column, FieldConverter<T> converter) {
+        mCompartment = compartment;
+        mEntityClass = entityClass;
+        mTable = table;
+        mColumn = column;
+        mConverter = converter;
+    }
+
+    /**
+     * @return the column name
+     */
+    public String getColumn() {
+        return mColumn;
+    }
+
+    /**
+     * Load the value of the entity with the given id
+     *
+     * @param id the entity id
+     * @return the value, or null if the value is null or there's no entity with this id
+     */
+    public T get(long id) {
+        return mCompartment.getColumn(mEntityClass, mTable, mColumn, id, mConverter);
+    }
+
+    /**
+     * Store the value of the entity with the given id, without touching the other columns
+     *
+     * @param id    the entity id
+     * @param value the value, may be null to clear the column
+     * @return true if the entity exists, false otherwise
+     */
+    public boolean set(long id, T value) {
+        return mCompartment.setColumn(mEntityClass, mTable, mColumn, id, value, mConverter);
+    }
+}
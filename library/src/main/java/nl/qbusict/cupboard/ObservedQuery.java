@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2016 Little Robots
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package nl.qbusict.cupboard;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import nl.qbusict.cupboard.DatabaseCompartment.QueryBuilder;
+
+/**
+ * A query that is re-run when its table changes. At most one re-run is scheduled at any time, changes that are reported while
+ * a run is pending are handled by that run. When observed with a {@link DiffObserver} the result of the previous run is kept
+ * as a {@link QueryDiff}, and runs that don't change the result are not reported. Errors are reported to the observer, never to the
+ * thread that made the change.
+ */
+class ObservedQuery<T> implements Subscription, TableChangeNotifier.Listener, Runnable {
+    private final TableChangeNotifier mNotifier;
+    private final String mTable;
+    private final QueryBuilder<T> mQuery;
+    private final QueryObserver<T> mObserver;
+    private final DiffObserver<T> mDiffObserver;
+    private final Executor mExecutor;
+    private final AtomicBoolean mPending = new AtomicBoolean(false);
+    private volatile boolean mUnsubscribed = false;
+    private QueryDiff<T> mPrevious;
+
+    ObservedQuery(TableChangeNotifier notifier, String table, QueryBuilder<T> query, QueryObserver<T> observer, Executor executor) {
+        this(notifier, table, query, observer, null, executor);
+    }
+
+    ObservedQuery(TableChangeNotifier notifier, String table, QueryBuilder<T> query, DiffObserver<T> observer, Executor executor) {
+        this(notifier, table, query, null, observer, executor);
+    }
+
+    private ObservedQuery(TableChangeNotifier notifier, String table, QueryBuilder<T> query, QueryObserver<T> observer,
+                          DiffObserver<T> diffObserver, Executor executor) {
+        mNotifier = notifier;
+        mTable = table;
+        mQuery = query;
+        mObserver = observer;
+        mDiffObserver = diffObserver;
+        mExecutor = executor;
+    }
+
+    void start() {
+        mNotifier.addListener(this);
+        schedule();
+    }
+
+    @Override
+    public void onTablesChanged(Set<String> tables) {
+        if (tables.contains(mTable)) {
+            schedule();
+        }
+    }
+
+    private void schedule() {
+        if (!mUnsubscribed && mPending.compareAndSet(false, true)) {
+            if (mExecutor == null) {
+                run();
+            } else {
+                try {
+                    mExecutor.execute(this);
+                } catch (RuntimeException e) {
+                    // e.g. an executor that was shut down
+                    mPending.set(false);
+                    deliverError(e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        mPending.set(false);
+        if (mUnsubscribed) {
+            return;
+        }
+        // runs may overlap on a multi threaded executor, deliver them in order
+        synchronized (this) {
+            try {
+                if (mDiffObserver != null) {
+                    boolean initial = mPrevious == null;
+                    QueryDiff<T> diff = mQuery.query().diff(mPrevious);
+                    mPrevious = diff;
+                    if (!mUnsubscribed && (initial || !diff.isEmpty())) {
+                        mDiffObserver.onQueryDiff(diff);
+                    }
+                } else {
+                    List<T> result = mQuery.list();
+                    if (!mUnsubscribed) {
+                        mObserver.onQueryResult(result);
+                    }
+                }
+            } catch (RuntimeException e) {
+                if (!mUnsubscribed) {
+                    deliverError(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Report an error to the observer. This runs on the thread that committed a change when there's no executor, so the error
+     * must not propagate.
+     */
+    private void deliverError(RuntimeException error) {
+        try {
+            if (mDiffObserver != null) {
+                mDiffObserver.onQueryError(error);
+            } else {
+                mObserver.onQueryError(error);
+            }
+        } catch (RuntimeException ignored) {
+            // nothing left to report to
+        }
+    }
+
+    @Override
+    public void unsubscribe() {
+        mUnsubscribed = true;
+        mNotifier.removeListener(this);
+    }
+
+    @Override
+    public boolean isUnsubscribed() {
+        return mUnsubscribed;
+    }
+}
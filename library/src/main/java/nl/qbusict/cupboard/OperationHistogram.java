@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2016 Little Robots
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package nl.qbusict.cupboard;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * An {@link OperationListener} that keeps counts, totals and histograms of the sql and conversion times per entity and operation.
+ * Times are kept in power of two buckets of microseconds, so recording an operation doesn't allocate and percentiles are accurate to
+ * a factor of two. Call {@link #dump()} periodically to log the statistics.
+ * <pre>
+ * OperationHistogram histogram = new OperationHistogram();
+ * Cupboard cupboard = new CupboardBuilder().useOperationListener(histogram).build();
+ * ...
+ * Log.i("Cupboard", histogram.dump());
+ * </pre>
+ */
+public class OperationHistogram implements OperationListener {
+    private static final int BUCKETS = 32;
+    private static final Operation[] OPERATIONS = Operation.values();
+
+    private final ConcurrentMap<Class<?>, Stats[]> mStats = new ConcurrentHashMap<Class<?>, Stats[]>();
+
+    @Override
+    public void onOperation(Class<?> entityClass, Operation operation, long sqlNanos, long conversionNanos, int rows, int bytesBound) {
+        Stats[] stats = mStats.get(entityClass);
+        if (stats == null) {
+            stats = new Stats[OPERATIONS.length];
+            for (int i = 0; i < stats.length; i++) {
+                stats[i] = new Stats();
+            }
+            Stats[] existing = mStats.putIfAbsent(entityClass, stats);
+            if (existing != null) {
+                stats = existing;
+            }
+        }
+        stats[operation.ordinal()].record(sqlNanos, conversionNanos, rows, bytesBound);
+    }
+
+    /**
+     * @param entityClass the entity class
+     * @param operation   the operation
+     * @return the number of times the operation was performed on the entity
+     */
+    public long getCount(Class<?> entityClass, Operation operation) {
+        Stats[] stats = mStats.get(entityClass);
+        return stats == null ? 0 : stats[operation.ordinal()].getCount();
+    }
+
+    /**
+     * @param entityClass the entity class
+     * @param operation   the operation
+     * @return the total number of rows affected by the operation on the entity
+     */
+    public long getRows(Class<?> entityClass, Operation operation) {
+        Stats[] stats = mStats.get(entityClass);
+        return stats == null ? 0 : stats[operation.ordinal()].getRows();
+    }
+
+    /**
+     * Clear all statistics
+     */
+    public void reset() {
+        mStats.clear();
+    }
+
+    /**
+     * Format the statistics, one line per entity and operation, sorted by entity name. Times are in microseconds, percentiles are the
+     * upper bound of their bucket.
+     *
+     * @return the statistics
+     */
+    public String dump() {
+        List<Map.Entry<Class<?>, Stats[]>> entries = new ArrayList<Map.Entry<Class<?>, Stats[]>>(mStats.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<Class<?>, Stats[]>>() {
+            @Override
+            public int compare(Map.Entry<Class<?>, Stats[]> lhs, Map.Entry<Class<?>, Stats[]> rhs) {
+                return lhs.getKey().getName().compareTo(rhs.getKey().getName());
+            }
+        });
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<Class<?>, Stats[]> entry : entries) {
+            for (Operation operation : OPERATIONS) {
+                entry.getValue()[operation.ordinal()].appendTo(sb, entry.getKey().getSimpleName(), operation);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static int bucket(long nanos) {
+        long micros = nanos / 1000;
+        int bucket = 64 - Long.numberOfLeadingZeros(micros);
+        return bucket < BUCKETS ? bucket : BUCKETS - 1;
+    }
+
+    private static final class Stats {
+        private final long[] mSqlBuckets = new long[BUCKETS];
+        private final long[] mConversionBuckets = new long[BUCKETS];
+        private long mCount;
+        private long mSqlNanos;
+        private long mConversionNanos;
+        private long mRows;
+        private long mBytes;
+
+        synchronized void record(long sqlNanos, long conversionNanos, int rows, int bytes) {
+            mCount++;
+            mSqlNanos += sqlNanos;
+            mConversionNanos += conversionNanos;
+            mRows += rows;
+            mBytes += bytes;
+            mSqlBuckets[bucket(sqlNanos)]++;
+            mConversionBuckets[bucket(conversionNanos)]++;
+        }
+
+        synchronized long getCount() {
+            return mCount;
+        }
+
+        synchronized long getRows() {
+            return mRows;
+        }
+
+        synchronized void appendTo(StringBuilder sb, String entity, Operation operation) {
+            if (mCount == 0) {
+                return;
+            }
+            sb.append(entity).append(' ').append(operation)
+                    .append(" count=").append(mCount)
+                    .append(" rows=").append(mRows)
+                    .append(" bytes=").append(mBytes)
+                    .append(" sql(avg=").append(mSqlNanos / mCount / 1000)
+                    .append(" p50=").append(percentile(mSqlBuckets, 50))
+                    .append(" p99=").append(percentile(mSqlBuckets, 99))
+                    .append(") conversion(avg=").append(mConversionNanos / mCount / 1000)
+                    .append(" p50=").append(percentile(mConversionBuckets, 50))
+                    .append(" p99=").append(percentile(mConversionBuckets, 99))
+                    .append(")\n");
+        }
+
+        private long percentile(long[] buckets, int percentile) {
+            long threshold = (mCount * percentile + 99) / 100;
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= threshold) {
+                    // bucket i holds values below 2^i microseconds
+                    return 1L << i;
+                }
+            }
+            return 1L << (BUCKETS - 1);
+        }
+    }
+}
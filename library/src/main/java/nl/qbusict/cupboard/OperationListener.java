@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2016 Little Robots
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package nl.qbusict.cupboard;
+
+/**
+ * Receives timings of the operations performed by a {@link DatabaseCompartment}, to tell the time spent in the database from the time
+ * spent converting entities. Register a listener using {@link CupboardBuilder#useOperationListener(OperationListener)}.
+ * Listeners are called on the thread that performed the operation and should return quickly, see {@link OperationHistogram} for a low
+ * overhead implementation.
+ */
+public interface OperationListener {
+
+    /**
+     * The operations that are reported
+     */
+    enum Operation {
+        PUT, GET, QUERY, UPDATE, DELETE, CREATE_TABLES
+    }
+
+    /**
+     * Called after an operation completed. Queries are reported when their {@link QueryResultIterable} is closed, the conversion time
+     * then includes the entities that were read from the result.
+     *
+     * @param entityClass     the entity class
+     * @param operation       the operation
+     * @param sqlNanos        the time spent in the database, in nanoseconds
+     * @param conversionNanos the time spent in the {@link nl.qbusict.cupboard.convert.EntityConverter}, in nanoseconds
+     * @param rows            the number of rows inserted, read, updated or deleted
+     * @param bytesBound      the approximate size of the values and arguments bound to the statement, strings counted by their length
+     */
+    void onOperation(Class<?> entityClass, Operation operation, long sqlNanos, long conversionNanos, int rows, int bytesBound);
+}
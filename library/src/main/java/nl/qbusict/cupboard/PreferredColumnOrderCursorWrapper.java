@@ -15,6 +15,7 @@
  */
 package nl.qbusict.cupboard;
 
+import android.database.CharArrayBuffer;
 import android.database.Cursor;
 import android.database.CursorWrapper;
 
@@ -138,6 +139,25 @@ class PreferredColumnOrderCursorWrapper extends CursorWrapper {
         return super.getString(index);
     }
 
+    @Override
+    public void copyStringToBuffer(int columnIndex, CharArrayBuffer buffer) {
+        int index = mColumnMap[columnIndex];
+        if (index == -1) {
+            buffer.sizeCopied = 0;
+            return;
+        }
+        super.copyStringToBuffer(index, buffer);
+    }
+
+    @Override
+    public int getType(int columnIndex) {
+        int index = mColumnMap[columnIndex];
+        if (index == -1) {
+            return FIELD_TYPE_NULL;
+        }
+        return super.getType(index);
+    }
+
     @Override
     public boolean isNull(int columnIndex) {
         int index = mColumnMap[columnIndex];
@@ -147,6 +167,15 @@ class PreferredColumnOrderCursorWrapper extends CursorWrapper {
         return super.isNull(index);
     }
 
+    /**
+     * Return the requested name of a column, or null if the wrapped cursor doesn't have the column, for instance because it was left out
+     * of the query.
+     */
+    @Override
+    public String getColumnName(int columnIndex) {
+        return mColumnMap[columnIndex] == -1 ? null : mColumns[columnIndex];
+    }
+
     @Override
     public int getColumnCount() {
         return mColumns.length;
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2016 Little Robots
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package nl.qbusict.cupboard;
+
+import android.database.Cursor;
+
+import java.util.List;
+
+import nl.qbusict.cupboard.OperationListener.Operation;
+import nl.qbusict.cupboard.convert.EntityConverter;
+
+/**
+ * A query of which the sql is built once, created by {@link DatabaseCompartment.QueryBuilder#prepare()}. A prepared query is immutable
+ * and can be executed any number of times, from any thread, with different selection arguments. Because the sql is identical for each
+ * execution, the compiled statement is reused from the statement cache of the database connection.
+ *
+ * @param <T> the entity type
+ */
+public final class PreparedQuery<T> {
+    private final CupboardDatabase mDatabase;
+    private final EntityConverter<T> mConverter;
+    private final String mSql;
+    private final Object[] mArgs;
+    private final String[] mArgColumns;
+    private final Class<T> mEntityClass;
+    private final Cupboard mCupboard;
+    private final Operation mOperation;
+
+    PreparedQuery(CupboardDatabase database, EntityConverter<T> converter, String sql, Object[] args, String[] argColumns, Class<T> entityClass,
+                  Cupboard cupboard, Operation operation) {
+        this.mDatabase = database;
+        this.mConverter = converter;
+        this.mSql = sql;
+        this.mArgs = args == null ? null : args.clone();
+        this.mArgColumns = argColumns == null ? null : argColumns.clone();
+        this.mEntityClass = entityClass;
+        this.mCupboard = cupboard;
+        this.mOperation = operation;
+    }
+
+    /**
+     * Execute the query
+     *
+     * @param args the selection arguments, replacing the arguments of the query builder. If no arguments are passed then the arguments
+     *             of the query builder are used. Arguments are converted as described in {@link Criteria}; if the selection was set
+     *             with {@link DatabaseCompartment.QueryBuilder#where(Criteria)} then enum, date and calendar arguments are bound the way
+     *             the column of their placeholder stores them.
+     * @return the query result
+     */
+    public QueryResultIterable<T> query(Object... args) {
+        Object[] selectionArgs = mArgs;
+        if (args != null && args.length > 0) {
+            selectionArgs = new Object[args.length];
+            for (int i = 0; i < args.length; i++) {
+                String column = mArgColumns != null && i < mArgColumns.length ? mArgColumns[i] : null;
+                selectionArgs[i] = Criteria.toBindArg(mConverter, column, args[i]);
+            }
+        }
+        QueryPlanAdvisor advisor = mCupboard.getQueryPlanAdvisor();
+        if (advisor != null) {
+            advisor.inspect(mDatabase, mEntityClass, mConverter.getColumns(), mSql, selectionArgs);
+        }
+        OperationListener listener = mCupboard.getOperationListener();
+        if (listener == null) {
+            Cursor cursor = DatabaseCompartment.rawQuery(mDatabase, mSql, selectionArgs);
+            return new QueryResultIterable<T>(cursor, mConverter);
+        }
+        long start = System.nanoTime();
+        Cursor cursor = DatabaseCompartment.rawQuery(mDatabase, mSql, selectionArgs);
+        // the query runs when the cursor is first filled, include that in the sql time
+        cursor.getCount();
+        QueryResultIterable<T> result = new QueryResultIterable<T>(cursor, mConverter);
+        result.measure(listener, mEntityClass, mOperation, System.nanoTime() - start, DatabaseCompartment.boundBytes(selectionArgs));
+        return result;
+    }
+
+    /**
+     * Convenience for calling {@link #query(Object...)}.getCursor()
+     *
+     * @param args the selection arguments
+     * @return the cursor
+     */
+    public Cursor getCursor(Object... args) {
+        return query(args).getCursor();
+    }
+
+    /**
+     * Convenience for calling {@link #query(Object...)}.get()
+     *
+     * @param args the selection arguments
+     * @return the first entity or null if there's no result
+     */
+    public T get(Object... args) {
+        return query(args).get();
+    }
+
+    /**
+     * Convenience for calling {@link #query(Object...)}.list()
+     *
+     * @param args the selection arguments
+     * @return the result as a list
+     */
+    public List<T> list(Object... args) {
+        return query(args).list();
+    }
+
+    /**
+     * @return the sql of this query
+     */
+    public String getSql() {
+        return mSql;
+    }
+
+    @Override
+    public String toString() {
+        return mSql;
+    }
+}
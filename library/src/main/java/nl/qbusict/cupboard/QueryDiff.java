@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2016 Little Robots
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package nl.qbusict.cupboard;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The difference between two runs of the same query, by entity id. Rows are compared on the raw column values, so only entities
+ * that were inserted or updated are converted. A diff is created by {@link QueryResultIterable#diff(QueryDiff)}, passing in the
+ * diff of the previous run.
+ *
+ * @param <T> the entity type
+ */
+public class QueryDiff<T> {
+    private final List<Change<T>> mInserted;
+    private final List<Change<T>> mUpdated;
+    private final List<Change<T>> mRemoved;
+    final long[] mIds;
+    // the raw column values of each row, by position
+    final Object[][] mRows;
+    final Map<Long, Integer> mPositions;
+
+    QueryDiff(long[] ids, Object[][] rows, Map<Long, Integer> positions, List<Change<T>> inserted, List<Change<T>> updated, List<Change<T>> removed) {
+        mIds = ids;
+        mRows = rows;
+        mPositions = positions;
+        mInserted = Collections.unmodifiableList(inserted);
+        mUpdated = Collections.unmodifiableList(updated);
+        mRemoved = Collections.unmodifiableList(removed);
+    }
+
+    static <T> QueryDiff<T> empty() {
+        return new QueryDiff<T>(new long[0], new Object[0][], new HashMap<Long, Integer>(), new ArrayList<Change<T>>(0),
+                new ArrayList<Change<T>>(0), new ArrayList<Change<T>>(0));
+    }
+
+    /**
+     * @return the entities that are in the result, but weren't in the previous result, ordered by position
+     */
+    public List<Change<T>> getInserted() {
+        return mInserted;
+    }
+
+    /**
+     * @return the entities that were in the previous result, but have different column values, ordered by position
+     */
+    public List<Change<T>> getUpdated() {
+        return mUpdated;
+    }
+
+    /**
+     * @return the entities that were in the previous result, but not in this result, ordered by previous position. The entity of these changes is null.
+     */
+    public List<Change<T>> getRemoved() {
+        return mRemoved;
+    }
+
+    /**
+     * @return the number of rows in the result
+     */
+    public int getCount() {
+        return mIds.length;
+    }
+
+    /**
+     * @return true if nothing was inserted, updated or removed
+     */
+    public boolean isEmpty() {
+        return mInserted.isEmpty() && mUpdated.isEmpty() && mRemoved.isEmpty();
+    }
+
+    /**
+     * A single changed entity
+     *
+     * @param <T> the entity type
+     */
+    public static class Change<T> {
+        /**
+         * The id of the entity
+         */
+        public final long id;
+        /**
+         * The position in the current result or -1 if the entity was removed
+         */
+        public final int position;
+        /**
+         * The position in the previous result, or -1 if the entity was inserted
+         */
+        public final int previousPosition;
+        /**
+         * The entity or null if the entity was removed
+         */
+        public final T entity;
+
+        Change(long id, int position, int previousPosition, T entity) {
+            this.id = id;
+            this.position = position;
+            this.previousPosition = previousPosition;
+            this.entity = entity;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2016 Little Robots
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package nl.qbusict.cupboard;
+
+import java.util.List;
+
+/**
+ * Receives the results of an observed query, see {@link DatabaseCompartment.QueryBuilder#observe(QueryObserver)}
+ *
+ * @param <T> the entity type
+ */
+public interface QueryObserver<T> {
+    /**
+     * Called with the initial result of the query and again each time the query was re-run because the table of the entity changed.
+     *
+     * @param result the query result
+     */
+    void onQueryResult(List<T> result);
+
+    /**
+     * Called when running the query or {@link #onQueryResult(List)} failed. The error is not thrown to the thread that made the
+     * change, as the change was committed already, and the query stays observed.
+     *
+     * @param error the error
+     */
+    void onQueryError(RuntimeException error);
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) 2016 Little Robots
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package nl.qbusict.cupboard;
+
+import android.database.Cursor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import nl.qbusict.cupboard.convert.EntityConverter.Column;
+import nl.qbusict.cupboard.convert.EntityConverter.ColumnType;
+
+/**
+ * A diagnostic tool that inspects the query plan of queries run through {@link DatabaseCompartment.QueryBuilder}. Each distinct
+ * query is explained once using EXPLAIN QUERY PLAN. Full table scans and sorts using a temporary b-tree are recorded per entity, together
+ * with a suggestion for an {@link nl.qbusict.cupboard.annotation.Index} or {@link nl.qbusict.cupboard.annotation.CompositeIndex} that
+ * would avoid them. Enable it using {@link CupboardBuilder#useQueryPlanAdvisor(QueryPlanAdvisor)}, this is meant for debug builds only.
+ */
+public class QueryPlanAdvisor {
+
+    /**
+     * The kind of problem found in a query plan
+     */
+    public enum Problem {
+        /**
+         * All rows of the table are visited
+         */
+        FULL_SCAN,
+        /**
+         * The result is sorted or grouped in a temporary b-tree
+         */
+        TEMP_B_TREE,
+        /**
+         * The query couldn't be explained, e.g. because the database doesn't support EXPLAIN QUERY PLAN
+         */
+        EXPLAIN_FAILED
+    }
+
+    /**
+     * A problem found in the plan of a query
+     */
+    public static class Finding {
+        /**
+         * The entity that was queried
+         */
+        public final Class<?> entityClass;
+        /**
+         * The sql of the query
+         */
+        public final String sql;
+        /**
+         * The kind of problem
+         */
+        public final Problem problem;
+        /**
+         * The line of the query plan that shows the problem, or the error message if the query couldn't be explained
+         */
+        public final String detail;
+        /**
+         * The suggested index declaration, or null if no columns of the entity could be found to index
+         */
+        public final String suggestion;
+
+        Finding(Class<?> entityClass, String sql, Problem problem, String detail, String suggestion) {
+            this.entityClass = entityClass;
+            this.sql = sql;
+            this.problem = problem;
+            this.detail = detail;
+            this.suggestion = suggestion;
+        }
+
+        @Override
+        public String toString() {
+            return problem + ": " + detail + "\n    " + sql + (suggestion != null ? "\n    suggestion: " + suggestion : "");
+        }
+    }
+
+    private static final Locale LOCALE = Locale.US;
+    private final Set<String> mExplained = new HashSet<String>();
+    private final Map<Class<?>, List<Finding>> mFindings = new LinkedHashMap<Class<?>, List<Finding>>();
+
+    /**
+     * Explain a query, unless it was explained before. Failing to explain a query is recorded as a finding, it never fails the query.
+     */
+    void inspect(CupboardDatabase db, Class<?> entityClass, List<Column> columns, String sql, Object[] args) {
+        synchronized (this) {
+            if (!mExplained.add(sql)) {
+                return;
+            }
+        }
+        List<String> plan = new ArrayList<String>();
+        try {
+            Cursor cursor = DatabaseCompartment.rawQuery(db, "EXPLAIN QUERY PLAN " + sql, args);
+            try {
+                int detail = cursor.getColumnIndexOrThrow("detail");
+                while (cursor.moveToNext()) {
+                    plan.add(cursor.getString(detail));
+                }
+            } finally {
+                cursor.close();
+            }
+        } catch (RuntimeException e) {
+            addFinding(new Finding(entityClass, sql, Problem.EXPLAIN_FAILED, String.valueOf(e.getMessage()), null));
+            return;
+        }
+        for (String line : plan) {
+            String upper = line.toUpperCase(LOCALE);
+            if (upper.startsWith("SCAN ") && !upper.contains(" USING ")) {
+                addFinding(new Finding(entityClass, sql, Problem.FULL_SCAN, line, suggest(entityClass, columns, clause(sql, " WHERE "), null)));
+            } else if (upper.startsWith("USE TEMP B-TREE")) {
+                String clause = upper.contains("GROUP BY") ? clause(sql, " GROUP BY ") : clause(sql, " ORDER BY ");
+                addFinding(new Finding(entityClass, sql, Problem.TEMP_B_TREE, line, suggest(entityClass, columns, clause(sql, " WHERE "), clause)));
+            }
+        }
+    }
+
+    private synchronized void addFinding(Finding finding) {
+        List<Finding> findings = mFindings.get(finding.entityClass);
+        if (findings == null) {
+            findings = new ArrayList<Finding>();
+            mFindings.put(finding.entityClass, findings);
+        }
+        findings.add(finding);
+    }
+
+    /**
+     * Get the text of a clause of a query generated by the query builder
+     */
+    private static String clause(String sql, String keyword) {
+        int start = sql.indexOf(keyword);
+        if (start < 0) {
+            return null;
+        }
+        start += keyword.length();
+        int end = sql.length();
+        for (String next : new String[]{" GROUP BY ", " HAVING ", " ORDER BY ", " LIMIT "}) {
+            int index = sql.indexOf(next, start);
+            if (index >= 0 && index < end) {
+                end = index;
+            }
+        }
+        return sql.substring(start, end);
+    }
+
+    /**
+     * Suggest an index on the columns used in the selection, followed by the columns used for sorting
+     */
+    private static String suggest(Class<?> entityClass, List<Column> columns, String selection, String sort) {
+        Set<String> indexed = new LinkedHashSet<String>();
+        addColumns(indexed, columns, selection);
+        addColumns(indexed, columns, sort);
+        if (indexed.isEmpty()) {
+            return null;
+        }
+        if (indexed.size() == 1) {
+            return "@Index on " + entityClass.getSimpleName() + "." + indexed.iterator().next();
+        }
+        StringBuilder name = new StringBuilder(entityClass.getSimpleName());
+        for (String column : indexed) {
+            name.append('_').append(column);
+        }
+        StringBuilder suggestion = new StringBuilder();
+        int order = 1;
+        for (String column : indexed) {
+            if (suggestion.length() > 0) {
+                suggestion.append(", ");
+            }
+            suggestion.append("@Index(indexNames = @CompositeIndex(indexName = \"").append(name).append("\", order = ").append(order++)
+                    .append(")) on ").append(entityClass.getSimpleName()).append('.').append(column);
+        }
+        return suggestion.toString();
+    }
+
+    /**
+     * Add the columns of the entity that appear as identifiers in the clause, in order of appearance
+     */
+    private static void addColumns(Set<String> result, List<Column> columns, String clause) {
+        if (clause == null) {
+            return;
+        }
+        int i = 0;
+        while (i < clause.length()) {
+            char c = clause.charAt(i);
+            if (c == '\'') {
+                // skip string literals
+                int end = clause.indexOf('\'', i + 1);
+                i = end < 0 ? clause.length() : end + 1;
+            } else if (Character.isJavaIdentifierStart(c)) {
+                int end = i + 1;
+                while (end < clause.length() && Character.isJavaIdentifierPart(clause.charAt(end))) {
+                    end++;
+                }
+                String identifier = clause.substring(i, end);
+                for (Column column : columns) {
+                    if (column.name.equalsIgnoreCase(identifier) && column.type != ColumnType.JOIN) {
+                        result.add(column.name);
+                    }
+                }
+                i = end;
+            } else {
+                i++;
+            }
+        }
+    }
+
+    /**
+     * @return the findings, by entity
+     */
+    public synchronized Map<Class<?>, List<Finding>> getFindings() {
+        Map<Class<?>, List<Finding>> copy = new LinkedHashMap<Class<?>, List<Finding>>();
+        for (Map.Entry<Class<?>, List<Finding>> entry : mFindings.entrySet()) {
+            copy.put(entry.getKey(), Collections.unmodifiableList(new ArrayList<Finding>(entry.getValue())));
+        }
+        return Collections.unmodifiableMap(copy);
+    }
+
+    /**
+     * @return a readable report of the findings, grouped by entity
+     */
+    public synchronized String getReport() {
+        StringBuilder report = new StringBuilder();
+        for (Map.Entry<Class<?>, List<Finding>> entry : mFindings.entrySet()) {
+            report.append(entry.getKey().getName()).append(":\n");
+            for (Finding finding : entry.getValue()) {
+                report.append("  ").append(finding).append('\n');
+            }
+        }
+        return report.toString();
+    }
+
+    /**
+     * Forget all findings and explained queries
+     */
+    public synchronized void reset() {
+        mExplained.clear();
+        mFindings.clear();
+    }
+}
@@ -1,13 +1,20 @@
 package nl.qbusict.cupboard;
 
 import android.database.Cursor;
+import android.provider.BaseColumns;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 
+import nl.qbusict.cupboard.OperationListener.Operation;
+import nl.qbusict.cupboard.QueryDiff.Change;
 import nl.qbusict.cupboard.convert.EntityConverter;
+import nl.qbusict.cupboard.convert.EntityConverter.Column;
 
 /*
  * Copyright (C) 2013 Qbus B.V.
@@ -29,6 +36,13 @@ public class QueryResultIterable<T> implements Iterable<T> {
     private final Cursor mCursor;
     private final EntityConverter<T> mTranslator;
     private final int mPosition;
+    private OperationListener mListener;
+    private Class<?> mEntityClass;
+    private Operation mOperation;
+    private long mSqlNanos;
+    private long mConversionNanos;
+    private int mRows;
+    private int mBytesBound;
 
     QueryResultIterable(Cursor cursor, EntityConverter<T> translator) {
         if (cursor.getPosition() > -1) {
@@ -43,13 +57,40 @@ public class QueryResultIterable<T> implements Iterable<T> {
     @Override
     public Iterator<T> iterator() {
         mCursor.moveToPosition(mPosition);
-        return new QueryResultIterator<T>(mCursor, mTranslator);
+        return new QueryResultIterator<T>(mCursor, mTranslator, this);
     }
 
     public void close() {
         if (!mCursor.isClosed()) {
             mCursor.close();
         }
+        if (mListener != null) {
+            OperationListener listener = mListener;
+            mListener = null;
+            listener.onOperation(mEntityClass, mOperation, mSqlNanos, mConversionNanos, mRows, mBytesBound);
+        }
+    }
+
+    /**
+     * Report this result to a listener when it's closed, including the time spent converting rows
+     */
+    void measure(OperationListener listener, Class<?> entityClass, Operation operation, long sqlNanos, int bytesBound) {
+        mListener = listener;
+        mEntityClass = entityClass;
+        mOperation = operation;
+        mSqlNanos = sqlNanos;
+        mBytesBound = bytesBound;
+    }
+
+    T convert(Cursor cursor) {
+        if (mListener == null) {
+            return mTranslator.fromCursor(cursor);
+        }
+        long start = System.nanoTime();
+        T entity = mTranslator.fromCursor(cursor);
+        mConversionNanos += System.nanoTime() - start;
+        mRows++;
+        return entity;
     }
 
     public Cursor getCursor() {
@@ -105,15 +146,109 @@ public class QueryResultIterable<T> implements Iterable<T> {
         }
     }
 
+    /**
+     * Compute the difference between this result and the previous result of the same query. Rows are matched by their
+     * {@link BaseColumns#_ID} and compared by their column values, so that only inserted and updated rows are converted to entities.
+     * The underlying cursor will be closed when this method returns.
+     *
+     * @param previous the diff returned for the previous result or null if there's no previous result, in which case all rows are reported as inserted
+     * @return the difference, to be passed in when diffing the next result
+     * @throws IllegalStateException if the result does not contain the {@link BaseColumns#_ID} column
+     */
+    public QueryDiff<T> diff(QueryDiff<T> previous) {
+        if (previous == null) {
+            previous = QueryDiff.empty();
+        }
+        try {
+            List<Column> columns = mTranslator.getColumns();
+            Cursor cursor = new PreferredColumnOrderCursorWrapper(mCursor, columns);
+            int columnCount = cursor.getColumnCount();
+            int idIndex = -1;
+            for (int i = 0; i < columnCount; i++) {
+                if (BaseColumns._ID.equals(columns.get(i).name)) {
+                    idIndex = i;
+                    break;
+                }
+            }
+            // the wrapper reads a column that is missing from the cursor as 0, so check the cursor itself
+            if (idIndex == -1 || mCursor.getColumnIndex(BaseColumns._ID) == -1) {
+                throw new IllegalStateException("Computing a diff requires the " + BaseColumns._ID + " column in the result");
+            }
+            int count = cursor.getCount();
+            long[] ids = new long[count];
+            Object[][] rows = new Object[count][];
+            Map<Long, Integer> positions = new HashMap<Long, Integer>(count * 2);
+            List<Change<T>> inserted = new ArrayList<Change<T>>();
+            List<Change<T>> updated = new ArrayList<Change<T>>();
+            for (int position = 0; position < count; position++) {
+                cursor.moveToPosition(position);
+                long id = cursor.getLong(idIndex);
+                Object[] row = readRow(cursor, columns, columnCount);
+                ids[position] = id;
+                rows[position] = row;
+                positions.put(id, position);
+                Integer previousPosition = previous.mPositions.get(id);
+                if (previousPosition == null) {
+                    inserted.add(new Change<T>(id, position, -1, convert(cursor)));
+                } else if (!Arrays.deepEquals(previous.mRows[previousPosition], row)) {
+                    updated.add(new Change<T>(id, position, previousPosition, convert(cursor)));
+                }
+            }
+            List<Change<T>> removed = new ArrayList<Change<T>>();
+            for (int i = 0; i < previous.mIds.length; i++) {
+                long id = previous.mIds[i];
+                if (!positions.containsKey(id)) {
+                    removed.add(new Change<T>(id, -1, i, null));
+                }
+            }
+            return new QueryDiff<T>(ids, rows, positions, inserted, updated, removed);
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Read the raw values of a row to compare with the previous result, reading each column as the type it's declared as.
+     */
+    private static Object[] readRow(Cursor cursor, List<Column> columns, int columnCount) {
+        Object[] row = new Object[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            if (cursor.isNull(i)) {
+                continue;
+            }
+            switch (columns.get(i).type) {
+                case INTEGER:
+                    row[i] = cursor.getLong(i);
+                    break;
+                case REAL:
+                    row[i] = cursor.getDouble(i);
+                    break;
+                case BLOB:
+                    row[i] = cursor.getBlob(i);
+                    break;
+                default:
+                    row[i] = cursor.getString(i);
+                    break;
+            }
+        }
+        return row;
+    }
+
     static class QueryResultIterator<E> implements Iterator<E> {
         private final Cursor mCursor;
         private final EntityConverter<E> mTranslator;
+        private final QueryResultIterable<E> mIterable;
         private final int mCount;
         private int mPosition;
 
         public QueryResultIterator(Cursor cursor, EntityConverter<E> translator) {
+            this(cursor, translator, null);
+        }
+
+        QueryResultIterator(Cursor cursor, EntityConverter<E> translator, QueryResultIterable<E> iterable) {
             this.mCursor = new PreferredColumnOrderCursorWrapper(cursor, translator.getColumns());
             this.mTranslator = translator;
+            this.mIterable = iterable;
             this.mPosition = cursor.getPosition();
             this.mCount = cursor.getCount();
             if (mPosition != -1) {
@@ -132,7 +267,7 @@ public class QueryResultIterable<T> implements Iterable<T> {
                 throw new NoSuchElementException();
             }
             mCursor.moveToPosition(++mPosition);
-            return mTranslator.fromCursor(mCursor);
+            return mIterable != null ? mIterable.convert(mCursor) : mTranslator.fromCursor(mCursor);
         }
 
         @Override
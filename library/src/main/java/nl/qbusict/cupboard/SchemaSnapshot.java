@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2016 Little Robots
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package nl.qbusict.cupboard;
+
+import android.database.Cursor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import nl.qbusict.cupboard.internal.IndexStatement;
+
+/**
+ * The tables, columns and Cupboard indexes of a database, read in a single pass over sqlite_master. Columns are parsed from
+ * the create table statement, falling back to table_info for tables that can't be parsed. Table and column names are matched
+ * case insensitive.
+ */
+class SchemaSnapshot {
+    private static final Locale LOCALE = Locale.US;
+    private final Map<String, Set<String>> mColumns = new HashMap<String, Set<String>>();
+    private final Map<String, Map<String, String>> mIndexes = new HashMap<String, Map<String, String>>();
+
+    private SchemaSnapshot() {
+    }
+
+    static SchemaSnapshot read(CupboardDatabase db) {
+        SchemaSnapshot snapshot = new SchemaSnapshot();
+        List<String> unparsed = new ArrayList<String>();
+        Cursor cursor = db.rawQuery("select type, name, tbl_name, sql from sqlite_master where type in ('table', 'index')", null);
+        try {
+            while (cursor.moveToNext()) {
+                String type = cursor.getString(0);
+                String name = cursor.getString(1);
+                String sql = cursor.getString(3);
+                if ("table".equals(type)) {
+                    Set<String> columns = sql == null ? null : parseColumns(sql);
+                    if (columns == null) {
+                        unparsed.add(name);
+                    } else {
+                        snapshot.mColumns.put(name.toLowerCase(LOCALE), columns);
+                    }
+                } else if (sql != null && name.startsWith(IndexStatement.INDEX_PREFIX)) {
+                    String table = cursor.getString(2).toLowerCase(LOCALE);
+                    Map<String, String> indexes = snapshot.mIndexes.get(table);
+                    if (indexes == null) {
+                        indexes = new HashMap<String, String>();
+                        snapshot.mIndexes.put(table, indexes);
+                    }
+                    indexes.put(name, sql);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        for (String table : unparsed) {
+            snapshot.mColumns.put(table.toLowerCase(LOCALE), readColumns(db, table));
+        }
+        return snapshot;
+    }
+
+    private static Set<String> readColumns(CupboardDatabase db, String table) {
+        Set<String> columns = new HashSet<String>();
+        Cursor cursor = db.rawQuery("pragma table_info('" + table + "')", null);
+        try {
+            int index = cursor.getColumnIndex("name");
+            while (cursor.moveToNext()) {
+                columns.add(cursor.getString(index).toLowerCase(LOCALE));
+            }
+        } finally {
+            cursor.close();
+        }
+        return columns;
+    }
+
+    /**
+     * Parse the column names from a create table statement
+     *
+     * @param sql the create table statement
+     * @return the lower case column names or null if the statement could not be parsed
+     */
+    static Set<String> parseColumns(String sql) {
+        if (!sql.regionMatches(true, 0, "create table", 0, 12)) {
+            return null;
+        }
+        int start = sql.indexOf('(');
+        if (start < 0) {
+            return null;
+        }
+        List<String> definitions = new ArrayList<String>();
+        StringBuilder definition = new StringBuilder();
+        int depth = 0;
+        char quote = 0;
+        boolean closed = false;
+        for (int i = start + 1; i < sql.length() && !closed; i++) {
+            char c = sql.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '\'' || c == '"' || c == '`') {
+                quote = c;
+            } else if (c == '[') {
+                quote = ']';
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                if (depth == 0) {
+                    definitions.add(definition.toString());
+                    closed = true;
+                    continue;
+                }
+                depth--;
+            } else if (c == ',' && depth == 0) {
+                definitions.add(definition.toString());
+                definition.setLength(0);
+                continue;
+            }
+            definition.append(c);
+        }
+        if (!closed) {
+            return null;
+        }
+        Set<String> columns = new HashSet<String>();
+        for (String def : definitions) {
+            String name = columnName(def.trim());
+            if (name == null) {
+                return null;
+            }
+            if (name.length() > 0) {
+                columns.add(name.toLowerCase(LOCALE));
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * @return the column name of a column definition, an empty string for a table constraint or null if it can't be parsed
+     */
+    private static String columnName(String definition) {
+        if (definition.length() == 0) {
+            return null;
+        }
+        char first = definition.charAt(0);
+        if (first == '\'' || first == '"' || first == '`' || first == '[') {
+            char quote = first == '[' ? ']' : first;
+            StringBuilder name = new StringBuilder();
+            int i = 1;
+            while (i < definition.length()) {
+                char c = definition.charAt(i);
+                if (c == quote) {
+                    if (quote != ']' && i + 1 < definition.length() && definition.charAt(i + 1) == quote) {
+                        name.append(c);
+                        i += 2;
+                        continue;
+                    }
+                    return name.toString();
+                }
+                name.append(c);
+                i++;
+            }
+            return null;
+        }
+        int end = 0;
+        while (end < definition.length() && !Character.isWhitespace(definition.charAt(end)) && definition.charAt(end) != '(') {
+            end++;
+        }
+        String name = definition.substring(0, end);
+        String keyword = name.toUpperCase(LOCALE);
+        if (keyword.equals("CONSTRAINT") || keyword.equals("PRIMARY") || keyword.equals("UNIQUE") || keyword.equals("CHECK") || keyword.equals("FOREIGN")) {
+            return "";
+        }
+        return name;
+    }
+
+    /**
+     * @return true if the table exists
+     */
+    boolean hasTable(String table) {
+        return mColumns.containsKey(table.toLowerCase(LOCALE));
+    }
+
+    /**
+     * @return the lower case column names of the table or null if the table does not exist
+     */
+    Set<String> getColumns(String table) {
+        return mColumns.get(table.toLowerCase(LOCALE));
+    }
+
+    /**
+     * @return the Cupboard indexes of the table, by name, with their sql
+     */
+    Map<String, String> getIndexes(String table) {
+        Map<String, String> indexes = mIndexes.get(table.toLowerCase(LOCALE));
+        return indexes == null ? Collections.<String, String>emptyMap() : indexes;
+    }
+}
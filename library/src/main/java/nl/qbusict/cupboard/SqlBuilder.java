@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2016 Little Robots
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package nl.qbusict.cupboard;
+
+import android.content.ContentValues;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the statements behind the {@link CupboardDatabase} methods, for implementations that only run sql. The statements
+ * match those built by {@link android.database.sqlite.SQLiteDatabase}, with ? placeholders for all values.
+ */
+final class SqlBuilder {
+
+    private SqlBuilder() {
+    }
+
+    /**
+     * @param replace true for insert or replace
+     * @param args    receives the values to bind
+     */
+    static String insert(boolean replace, String table, String nullColumnHack, ContentValues values, List<Object> args) {
+        StringBuilder sql = new StringBuilder(replace ? "INSERT OR REPLACE INTO " : "INSERT INTO ").append(table).append(" (");
+        if (values == null || values.size() == 0) {
+            if (nullColumnHack == null) {
+                sql.setLength(sql.length() - 2);
+                return sql.append(" DEFAULT VALUES").toString();
+            }
+            return sql.append(nullColumnHack).append(") VALUES (NULL)").toString();
+        }
+        int first = args.size();
+        for (Map.Entry<String, Object> entry : values.valueSet()) {
+            if (args.size() > first) {
+                sql.append(", ");
+            }
+            sql.append('"').append(entry.getKey()).append('"');
+            args.add(entry.getValue());
+        }
+        sql.append(") VALUES (");
+        for (int i = first; i < args.size(); i++) {
+            sql.append(i == first ? "?" : ", ?");
+        }
+        return sql.append(')').toString();
+    }
+
+    /**
+     * @param args receives the values and the selection arguments to bind
+     */
+    static String update(String table, ContentValues values, String selection, String[] selectionArgs, List<Object> args) {
+        if (values == null || values.size() == 0) {
+            throw new IllegalArgumentException("Empty values");
+        }
+        StringBuilder sql = new StringBuilder("UPDATE ").append(table).append(" SET ");
+        int first = args.size();
+        for (Map.Entry<String, Object> entry : values.valueSet()) {
+            if (args.size() > first) {
+                sql.append(", ");
+            }
+            sql.append('"').append(entry.getKey()).append("\" = ?");
+            args.add(entry.getValue());
+        }
+        appendClause(sql, " WHERE ", selection);
+        if (selectionArgs != null) {
+            for (String arg : selectionArgs) {
+                args.add(arg);
+            }
+        }
+        return sql.toString();
+    }
+
+    static String delete(String table, String selection) {
+        StringBuilder sql = new StringBuilder("DELETE FROM ").append(table);
+        appendClause(sql, " WHERE ", selection);
+        return sql.toString();
+    }
+
+    static String query(boolean distinct, String table, String[] columns, String selection, String groupBy, String having,
+                        String orderBy, String limit) {
+        StringBuilder sql = new StringBuilder("SELECT ");
+        if (distinct) {
+            sql.append("DISTINCT ");
+        }
+        if (columns != null && columns.length > 0) {
+            for (int i = 0; i < columns.length; i++) {
+                if (i > 0) {
+                    sql.append(", ");
+                }
+                sql.append(columns[i]);
+            }
+        } else {
+            sql.append('*');
+        }
+        sql.append(" FROM ").append(table);
+        appendClause(sql, " WHERE ", selection);
+        appendClause(sql, " GROUP BY ", groupBy);
+        appendClause(sql, " HAVING ", having);
+        appendClause(sql, " ORDER BY ", orderBy);
+        appendClause(sql, " LIMIT ", limit);
+        return sql.toString();
+    }
+
+    private static void appendClause(StringBuilder sql, String name, String clause) {
+        if (clause != null && clause.length() > 0) {
+            sql.append(name).append(clause);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright (C) 2016 Little Robots
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package nl.qbusict.cupboard;
+
+/**
+ * A handle to an observed query
+ */
+public interface Subscription {
+    /**
+     * Stop observing. Results that are being delivered while this method is called may still be delivered.
+     */
+    void unsubscribe();
+
+    /**
+     * @return true if {@link #unsubscribe()} was called, false otherwise
+     */
+    boolean isUnsubscribed();
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2016 Little Robots
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package nl.qbusict.cupboard;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Tracks which tables are changed through a {@link DatabaseCompartment} and notifies the registered listeners. Changes
+ * made in a transaction started by {@link DatabaseCompartment#beginTransaction()} are collected per thread and delivered once,
+ * after the outermost transaction was committed. Changes in a transaction that is rolled back are dropped.
+ */
+class TableChangeNotifier {
+
+    interface Listener {
+        /**
+         * Called after a write through Cupboard was committed. Must not throw, the listener is called by the thread that made the
+         * change.
+         *
+         * @param tables the tables that have changed
+         */
+        void onTablesChanged(Set<String> tables);
+    }
+
+    private final CopyOnWriteArrayList<Listener> mListeners = new CopyOnWriteArrayList<Listener>();
+    private final ThreadLocal<Transaction> mTransaction = new ThreadLocal<Transaction>();
+
+    void addListener(Listener listener) {
+        mListeners.add(listener);
+    }
+
+    void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    boolean hasListeners() {
+        return !mListeners.isEmpty();
+    }
+
+    void beginTransaction() {
+        Transaction transaction = mTransaction.get();
+        if (transaction == null) {
+            transaction = new Transaction();
+            mTransaction.set(transaction);
+        }
+        transaction.mDepth++;
+        transaction.mSuccessful = false;
+    }
+
+    void setTransactionSuccessful() {
+        Transaction transaction = mTransaction.get();
+        if (transaction != null) {
+            transaction.mSuccessful = true;
+        }
+    }
+
+    void endTransaction() {
+        Transaction transaction = mTransaction.get();
+        if (transaction == null) {
+            return;
+        }
+        transaction.mFailed |= !transaction.mSuccessful;
+        // the enclosing transaction needs to be marked successful on its own
+        transaction.mSuccessful = false;
+        if (--transaction.mDepth == 0) {
+            mTransaction.remove();
+            if (!transaction.mFailed && !transaction.mTables.isEmpty()) {
+                dispatch(transaction.mTables);
+            }
+        }
+    }
+
+    void tableChanged(String table) {
+        if (mListeners.isEmpty()) {
+            return;
+        }
+        Transaction transaction = mTransaction.get();
+        if (transaction != null) {
+            transaction.mTables.add(table);
+        } else {
+            dispatch(Collections.singleton(table));
+        }
+    }
+
+    private void dispatch(Set<String> tables) {
+        Set<String> changed = Collections.unmodifiableSet(tables);
+        for (Listener listener : mListeners) {
+            listener.onTablesChanged(changed);
+        }
+    }
+
+    private static class Transaction {
+        final Set<String> mTables = new HashSet<String>();
+        int mDepth;
+        boolean mSuccessful;
+        boolean mFailed;
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2016 Little Robots
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package nl.qbusict.cupboard;
+
+import nl.qbusict.cupboard.annotation.Table;
+
+/**
+ * The table options of an entity, as declared by {@link Table}
+ */
+class TableOptions {
+    static final TableOptions DEFAULT = new TableOptions(true, false, new String[0]);
+
+    final boolean mAutoIncrement;
+    final boolean mWithoutRowId;
+    final String[] mPrimaryKey;
+
+    private TableOptions(boolean autoIncrement, boolean withoutRowId, String[] primaryKey) {
+        this.mAutoIncrement = autoIncrement;
+        this.mWithoutRowId = withoutRowId;
+        this.mPrimaryKey = primaryKey;
+    }
+
+    static TableOptions forEntity(Class<?> entityClass) {
+        Table table = entityClass.getAnnotation(Table.class);
+        if (table == null) {
+            return DEFAULT;
+        }
+        if (table.primaryKey().length > 0 && !table.withoutRowId()) {
+            throw new IllegalArgumentException("A primary key can only be declared for a table without rowid, use a unique index instead: " + entityClass);
+        }
+        return new TableOptions(table.autoIncrement(), table.withoutRowId(), table.primaryKey().clone());
+    }
+}
@@ -0,0 +1,362 @@
+/*
+ * Copyright (C) 2016 Little Robots
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package nl.qbusict.cupboard;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Buffers entities and puts them in the database in batches, committing a batch in a single transaction (group commit).
+ * A batch is committed when it reaches the maximum batch size, when the oldest entity in the batch has been waiting for
+ * the maximum delay or when {@link #flush()} is called. When the buffer is full, {@link #put(Object)} blocks until there's room.
+ * <p/>
+ * Failures to commit a batch are reported by the next call to {@link #flush()} or {@link #close()}; the entities in a failed batch are lost.
+ * If the writer thread dies, the entities that are still queued are lost as well, waiting calls to {@link #flush()} return with an error.
+ * <h2>Example</h2>
+ * <pre>
+ * WriteBehindQueue queue = new WriteBehindQueue(cupboard().withDatabase(db), 200, 500, 10000);
+ * queue.put(measurement);
+ * ...
+ * queue.close();
+ * </pre>
+ */
+public class WriteBehindQueue {
+    private final DatabaseCompartment mCompartment;
+    private final BlockingQueue<Object> mQueue;
+    private final int mMaxBatchSize;
+    private final long mMaxDelayNanos;
+    private final Thread mWriter;
+    private final Stats mStats = new Stats();
+    private final Object mLock = new Object();
+    private RuntimeException mError;
+    private volatile boolean mClosed = false;
+    /**
+     * Set when the writer thread exits, requests queued after that are released by the thread that queued them
+     */
+    private volatile boolean mStopped = false;
+
+    /**
+     * Create a write behind queue
+     *
+     * @param compartment    the compartment to put the entities in
+     * @param maxBatchSize   the maximum number of entities committed in a single transaction, must be greater or equal to 1
+     * @param maxDelayMillis the maximum time an entity is buffered before the batch is committed
+     * @param capacity       the maximum number of entities buffered, must be greater or equal to maxBatchSize
+     */
+    public WriteBehindQueue(DatabaseCompartment compartment, int maxBatchSize, long maxDelayMillis, int capacity) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be greater or equal to 1");
+        }
+        if (capacity < maxBatchSize) {
+            throw new IllegalArgumentException("Capacity must be greater or equal to the batch size");
+        }
+        mCompartment = compartment;
+        mMaxBatchSize = maxBatchSize;
+        mMaxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        mQueue = new ArrayBlockingQueue<Object>(capacity);
+        mWriter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                processQueue();
+            }
+        }, "cupboard-write-behind");
+        mWriter.setDaemon(true);
+        mWriter.start();
+    }
+
+    /**
+     * Queue an entity to be put in the database, blocking if the buffer is full
+     *
+     * @param entity the entity
+     * @throws InterruptedException if interrupted while waiting for room in the buffer
+     */
+    public void put(Object entity) throws InterruptedException {
+        synchronized (mLock) {
+            checkNotClosed();
+            mQueue.put(entity);
+        }
+        checkNotStopped();
+    }
+
+    /**
+     * Queue an entity to be put in the database, waiting up to the given time if the buffer is full
+     *
+     * @param entity  the entity
+     * @param timeout the maximum time to wait
+     * @param unit    the unit of the timeout
+     * @return true if the entity was queued, false if the buffer was still full after the timeout
+     * @throws InterruptedException if interrupted while waiting for room in the buffer
+     */
+    public boolean offer(Object entity, long timeout, TimeUnit unit) throws InterruptedException {
+        boolean queued;
+        synchronized (mLock) {
+            checkNotClosed();
+            queued = mQueue.offer(entity, timeout, unit);
+        }
+        checkNotStopped();
+        return queued;
+    }
+
+    /**
+     * Commit all entities queued before this call and wait for the commit to complete.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     * @throws IllegalStateException if a batch failed to commit since the last call to flush
+     */
+    public void flush() throws InterruptedException {
+        FlushRequest request = new FlushRequest();
+        synchronized (mLock) {
+            checkNotClosed();
+            mQueue.put(request);
+        }
+        if (mStopped) {
+            releaseRequests();
+        }
+        request.mDone.await();
+        throwPendingError();
+    }
+
+    /**
+     * Commit all queued entities and stop the writer thread. No entities can be queued after calling this method.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     * @throws IllegalStateException if a batch failed to commit since the last call to flush
+     */
+    public void close() throws InterruptedException {
+        FlushRequest request = new FlushRequest();
+        request.mClose = true;
+        synchronized (mLock) {
+            if (mClosed) {
+                return;
+            }
+            // the close request is the last item in the queue
+            mClosed = true;
+            try {
+                mQueue.put(request);
+            } catch (InterruptedException e) {
+                mClosed = false;
+                throw e;
+            }
+        }
+        if (mStopped) {
+            releaseRequests();
+        }
+        request.mDone.await();
+        throwPendingError();
+    }
+
+    /**
+     * Get the statistics for this queue
+     *
+     * @return the statistics, updated as batches are committed
+     */
+    public Stats getStats() {
+        return mStats;
+    }
+
+    private void checkNotClosed() {
+        if (mClosed) {
+            throw new IllegalStateException("This queue is closed");
+        }
+        checkNotStopped();
+    }
+
+    private void checkNotStopped() {
+        if (mStopped) {
+            releaseRequests();
+            throw new IllegalStateException("The writer thread of this queue has stopped");
+        }
+    }
+
+    /**
+     * Remove everything from the queue, releasing the threads waiting for a flush
+     */
+    private void releaseRequests() {
+        Object item;
+        while ((item = mQueue.poll()) != null) {
+            if (item instanceof FlushRequest) {
+                ((FlushRequest) item).mDone.countDown();
+            }
+        }
+    }
+
+    private synchronized void throwPendingError() {
+        RuntimeException error = mError;
+        mError = null;
+        if (error != null) {
+            throw new IllegalStateException("Failed to commit batch", error);
+        }
+    }
+
+    private void processQueue() {
+        List<Object> batch = new ArrayList<Object>(mMaxBatchSize);
+        boolean running = true;
+        FlushRequest request = null;
+        try {
+            while (running) {
+                request = null;
+                try {
+                    Object item = mQueue.take();
+                    long deadline = System.nanoTime() + mMaxDelayNanos;
+                    while (true) {
+                        if (item instanceof FlushRequest) {
+                            request = (FlushRequest) item;
+                            break;
+                        }
+                        batch.add(item);
+                        if (batch.size() >= mMaxBatchSize) {
+                            break;
+                        }
+                        long remaining = deadline - System.nanoTime();
+                        item = remaining > 0 ? mQueue.poll(remaining, TimeUnit.NANOSECONDS) : mQueue.poll();
+                        if (item == null) {
+                            break;
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    // commit what we have so far
+                }
+                if (!batch.isEmpty()) {
+                    commit(batch);
+                    batch.clear();
+                }
+                if (request != null) {
+                    running = !request.mClose;
+                    request.mDone.countDown();
+                }
+            }
+        } finally {
+            if (running) {
+                synchronized (this) {
+                    if (mError == null) {
+                        mError = new IllegalStateException("The writer thread stopped unexpectedly");
+                    }
+                }
+            }
+            mStopped = true;
+            if (request != null) {
+                // taken from the queue, but not released when the batch before it failed
+                request.mDone.countDown();
+            }
+            releaseRequests();
+        }
+    }
+
+    private void commit(List<Object> batch) {
+        long start = System.nanoTime();
+        try {
+            mCompartment.put(batch);
+            mStats.addBatch(batch.size(), System.nanoTime() - start);
+        } catch (RuntimeException e) {
+            mStats.addFailedBatch();
+            synchronized (this) {
+                if (mError == null) {
+                    mError = e;
+                }
+            }
+        }
+    }
+
+    private static class FlushRequest {
+        final CountDownLatch mDone = new CountDownLatch(1);
+        boolean mClose = false;
+    }
+
+    /**
+     * Statistics on the batches committed by a {@link WriteBehindQueue}
+     */
+    public static class Stats {
+        private long mBatches;
+        private long mFailedBatches;
+        private long mEntities;
+        private int mMaxBatchSize;
+        private long mTotalCommitNanos;
+        private long mMaxCommitNanos;
+
+        synchronized void addBatch(int size, long commitNanos) {
+            mBatches++;
+            mEntities += size;
+            mMaxBatchSize = Math.max(mMaxBatchSize, size);
+            mTotalCommitNanos += commitNanos;
+            mMaxCommitNanos = Math.max(mMaxCommitNanos, commitNanos);
+        }
+
+        synchronized void addFailedBatch() {
+            mFailedBatches++;
+        }
+
+        /**
+         * @return the number of batches committed
+         */
+        public synchronized long getBatchCount() {
+            return mBatches;
+        }
+
+        /**
+         * @return the number of batches that failed to commit
+         */
+        public synchronized long getFailedBatchCount() {
+            return mFailedBatches;
+        }
+
+        /**
+         * @return the number of entities committed
+         */
+        public synchronized long getEntityCount() {
+            return mEntities;
+        }
+
+        /**
+         * @return the largest batch committed
+         */
+        public synchronized int getMaxBatchSize() {
+            return mMaxBatchSize;
+        }
+
+        /**
+         * @return the average number of entities per committed batch
+         */
+        public synchronized double getAverageBatchSize() {
+            return mBatches == 0 ? 0 : (double) mEntities / mBatches;
+        }
+
+        /**
+         * @return the average time to commit a batch, in milliseconds
+         */
+        public synchronized double getAverageCommitMillis() {
+            return mBatches == 0 ? 0 : mTotalCommitNanos / (double) mBatches / TimeUnit.MILLISECONDS.toNanos(1);
+        }
+
+        /**
+         * @return the longest time to commit a batch, in milliseconds
+         */
+        public synchronized double getMaxCommitMillis() {
+            return mMaxCommitNanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+        }
+
+        @Override
+        public synchronized String toString() {
+            return "batches=" + mBatches + ", failed=" + mFailedBatches + ", entities=" + mEntities + ", avgBatchSize=" + getAverageBatchSize()
+                    + ", maxBatchSize=" + mMaxBatchSize + ", avgCommitMs=" + getAverageCommitMillis() + ", maxCommitMs=" + getMaxCommitMillis();
+        }
+    }
+}
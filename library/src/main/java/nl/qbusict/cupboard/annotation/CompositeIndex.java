@@ -47,4 +47,17 @@ public @interface CompositeIndex {
      * @return name of the composite index if .
      */
     String indexName();
+
+    /**
+     * @return an sql expression to index at this position instead of the plain column, for example <pre>lower(email)</pre>.
+     * Expression indexes require SQLite 3.9.0 (Android 7.0).
+     */
+    String expression() default "";
+
+    /**
+     * @return a condition that makes the index partial, for example <pre>deleted = 0</pre>. The condition applies to the whole index, so
+     * it only needs to be declared on one of its columns; columns that declare a condition for the same index must use the same one.
+     * Partial indexes require SQLite 3.8.0 (Android 5.0).
+     */
+    String where() default "";
 }
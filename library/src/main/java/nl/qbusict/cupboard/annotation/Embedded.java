@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2016 Little Robots
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package nl.qbusict.cupboard.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation that stores the fields of a value object in columns of the table of the entity that holds it, instead of converting
+ * the field to a single column. The columns of the embedded object are named after its fields, prefixed with {@link #value()}, so
+ * reading the entity doesn't need a join or a second query. Embedded objects can be nested.
+ * <p/>
+ * The embedded class needs a no-arg constructor, the same fields are ignored as for entities. When all columns of an embedded object
+ * are null, the field is set to null, putting an entity with a null embedded object stores null in all its columns.
+ * An {@link Index} on a field of the embedded class can't have an {@link Index#expression()} or {@link Index#where()}, as the sql
+ * would refer to the columns without their prefix.
+ * <p/>
+ * Note that annotations are not processed by default. To enable processing of annotations construct an instance of Cupboard using {@link nl.qbusict.cupboard.CupboardBuilder} and call {@link nl.qbusict.cupboard.CupboardBuilder#useAnnotations()} <br/>
+ */
+@Retention(value = RetentionPolicy.RUNTIME)
+@Target(value = ElementType.FIELD)
+public @interface Embedded {
+    /**
+     * @return the prefix of the column names of the embedded fields, by default the column name of the annotated field followed by an underscore.
+     */
+    String value() default "";
+}
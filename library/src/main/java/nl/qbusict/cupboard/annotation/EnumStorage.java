@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2016 Little Robots
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package nl.qbusict.cupboard.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation that sets how an enum field is stored, overriding the storage registered for the enum with
+ * {@link nl.qbusict.cupboard.CupboardBuilder#registerEnumStorage(Class, Mode)}. Use
+ * {@link nl.qbusict.cupboard.DatabaseCompartment#migrateEnumColumn(Class, String, Class, Mode, Mode)} to convert the values of an
+ * existing column when changing the storage.
+ * <p/>
+ * Note that annotations are not processed by default. To enable processing of annotations construct an instance of Cupboard using {@link nl.qbusict.cupboard.CupboardBuilder} and call {@link nl.qbusict.cupboard.CupboardBuilder#useAnnotations()} <br/>
+ */
+@Retention(value = RetentionPolicy.RUNTIME)
+@Target(value = ElementType.FIELD)
+public @interface EnumStorage {
+
+    Mode value();
+
+    enum Mode {
+        /**
+         * Store the name of the constant as text, this is the default
+         */
+        NAME,
+        /**
+         * Store the ordinal of the constant as an integer. Constants must not be reordered or removed once stored.
+         */
+        ORDINAL,
+        /**
+         * Store {@link nl.qbusict.cupboard.convert.CodedEnum#getCode()} as an integer. The enum must implement {@link nl.qbusict.cupboard.convert.CodedEnum}.
+         */
+        CODE
+    }
+}
@@ -56,4 +56,16 @@ public @interface Index {
      */
     CompositeIndex[] uniqueNames() default {};
 
+    /**
+     * @return an sql expression to index instead of the plain column, for example <pre>lower(email)</pre>. Only used for the index with
+     * the generated name, use {@link CompositeIndex#expression()} for named indexes. Expression indexes require SQLite 3.9.0 (Android 7.0).
+     */
+    String expression() default "";
+
+    /**
+     * @return a condition that makes this a partial index, only containing the rows that match, for example <pre>deleted = 0</pre>. Only
+     * used for the index with the generated name, use {@link CompositeIndex#where()} for named indexes. Partial indexes require
+     * SQLite 3.8.0 (Android 5.0).
+     */
+    String where() default "";
 }
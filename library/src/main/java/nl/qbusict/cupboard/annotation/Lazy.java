@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2016 Little Robots
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package nl.qbusict.cupboard.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation that marks a field as loaded on demand, for large blobs or text that lists don't need. The column is left out of
+ * queries built with {@link nl.qbusict.cupboard.DatabaseCompartment#query(Class)} unless the query has a projection or
+ * {@link nl.qbusict.cupboard.DatabaseCompartment.QueryBuilder#includeLazyColumns()} is called, the field of the returned entities is null.
+ * Load the value with a {@link nl.qbusict.cupboard.LazyColumn}.
+ * <p/>
+ * Putting an entity that was queried without the lazy column keeps the value that is stored, as long as the field is null. Setting the
+ * field of such an entity to null does not clear the stored value, use {@link nl.qbusict.cupboard.LazyColumn#set(long, Object)} for that.
+ * A lazy field can't have a primitive type.
+ * <p/>
+ * Note that annotations are not processed by default. To enable processing of annotations construct an instance of Cupboard using {@link nl.qbusict.cupboard.CupboardBuilder} and call {@link nl.qbusict.cupboard.CupboardBuilder#useAnnotations()} <br/>
+ */
+@Retention(value = RetentionPolicy.RUNTIME)
+@Target(value = ElementType.FIELD)
+public @interface Lazy {
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2016 Little Robots
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package nl.qbusict.cupboard.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation interface that allows one to change how the table of an entity is created. By default a table has an
+ * <code>_id integer primary key autoincrement</code> column. The options are only applied when the table is created, changing them
+ * later does not change an existing table.
+ * <p/>
+ * Note that annotations are not processed by default. To enable processing of annotations construct an instance of Cupboard using {@link nl.qbusict.cupboard.CupboardBuilder} and call {@link nl.qbusict.cupboard.CupboardBuilder#useAnnotations()} <br/>
+ */
+@Retention(value = RetentionPolicy.RUNTIME)
+@Target(value = ElementType.TYPE)
+public @interface Table {
+    /**
+     * @return whether ids are strictly increasing and never reused. Autoincrement requires an extra write to sqlite_sequence for each
+     * insert; without it, the id of a deleted last row may be reused. By default it is true.
+     */
+    boolean autoIncrement() default true;
+
+    /**
+     * @return whether to create the table WITHOUT ROWID, storing the rows in the primary key index. This suits junction and lookup tables
+     * with a small composite key. Ids are not generated for these tables: entities are put by replacing any entity with the same
+     * primary key and the id of an entity is not set. Requires SQLite 3.8.2 (Android 5.0).
+     */
+    boolean withoutRowId() default false;
+
+    /**
+     * @return the columns of the primary key of a {@link #withoutRowId()} table. If empty, the _id column is the primary key and
+     * must be set by the application.
+     */
+    String[] primaryKey() default {};
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2016 Little Robots
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package nl.qbusict.cupboard.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import nl.qbusict.cupboard.internal.convert.TimeFieldConverterFactory;
+
+/**
+ * Annotation that sets how a {@link java.util.Date}, {@link java.sql.Timestamp} or {@link java.util.Calendar} field is stored.
+ * Fields without this annotation are stored as {@link Mode#MILLIS}. All modes sort in chronological order, so range queries on
+ * the column can use an index, as long as the arguments are in the same format as the stored values, see {@link Mode#toSelectionArg(java.util.Date)}.
+ * <p/>
+ * Note that annotations are not processed by default. To enable processing of annotations construct an instance of Cupboard using {@link nl.qbusict.cupboard.CupboardBuilder} and call {@link nl.qbusict.cupboard.CupboardBuilder#useAnnotations()} <br/>
+ */
+@Retention(value = RetentionPolicy.RUNTIME)
+@Target(value = ElementType.FIELD)
+public @interface TimeStorage {
+
+    Mode value();
+
+    enum Mode {
+        /**
+         * Store the seconds since the epoch as an integer, the milliseconds are dropped
+         */
+        SECONDS,
+        /**
+         * Store the milliseconds since the epoch as an integer, this is the default
+         */
+        MILLIS,
+        /**
+         * Store the microseconds since the epoch as an integer. Only a {@link java.sql.Timestamp} has sub millisecond precision
+         * to store.
+         */
+        MICROS,
+        /**
+         * Store the time in UTC as ISO 8601 text with millisecond precision, like <code>2016-03-01T12:30:00.000Z</code>, the
+         * format of <code>strftime('%Y-%m-%dT%H:%M:%fZ')</code> in sqlite. Text written by sqlite's other date and time
+         * functions, like <code>2016-03-01 12:30:00</code>, can be read as well.
+         */
+        ISO_TEXT;
+
+        /**
+         * Convert a time to the value that is stored for it in this mode, for use as a selection argument
+         *
+         * @param time the time
+         * @return the stored value as a string
+         */
+        public String toSelectionArg(java.util.Date time) {
+            return TimeFieldConverterFactory.toSelectionArg(time, this);
+        }
+    }
+}
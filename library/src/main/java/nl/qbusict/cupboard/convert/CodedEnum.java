@@ -0,0 +1,29 @@
+/*
+ * Copyright (C) 2016 Little Robots
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package nl.qbusict.cupboard.convert;
+
+/**
+ * Implemented by enums that are stored with {@link nl.qbusict.cupboard.annotation.EnumStorage.Mode#CODE}. The code of a constant
+ * is stored instead of its name or ordinal, so constants can be renamed and reordered without migrating the data.
+ */
+public interface CodedEnum {
+    /**
+     * @return the code that is stored for this constant, unique within the enum
+     */
+    int getCode();
+}
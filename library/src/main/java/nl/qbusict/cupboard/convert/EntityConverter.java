@@ -100,6 +100,10 @@ public interface EntityConverter<T> {
         public final String name;
         public final ColumnType type;
         public final Index index;
+        /**
+         * True if the column is only read on demand, see {@link nl.qbusict.cupboard.annotation.Lazy}
+         */
+        public final boolean lazy;
 
         /**
          * Define an unindexed column
@@ -121,9 +125,22 @@ public interface EntityConverter<T> {
          * @see nl.qbusict.cupboard.convert.IndexBuilder
          */
         public Column(String name, ColumnType type, Index index) {
+            this(name, type, index, false);
+        }
+
+        /**
+         * Define a column with an optional index definition that may be loaded on demand
+         *
+         * @param name  the column name
+         * @param type  the column type
+         * @param index the index definition or null for no index
+         * @param lazy  true if the column should be left out of queries by default
+         */
+        public Column(String name, ColumnType type, Index index, boolean lazy) {
             this.name = name;
             this.type = type;
             this.index = index;
+            this.lazy = lazy;
         }
 
         @Override
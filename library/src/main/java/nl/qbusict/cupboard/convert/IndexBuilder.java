@@ -17,6 +17,8 @@ public class IndexBuilder {
 
     private CompositeIndexBuilder mCompositeIndexBuilder = new CompositeIndexBuilder();
     private boolean mUnique = false;
+    private String mExpression = "";
+    private String mWhere = "";
 
     /**
      * Set the index name to use
@@ -42,13 +44,35 @@ public class IndexBuilder {
         return this;
     }
 
+    /**
+     * Index an sql expression instead of the plain column, see {@link Index#expression()}
+     *
+     * @param expression the expression, for example <pre>lower(email)</pre>
+     * @return the builder for chaining
+     */
+    public IndexBuilder expression(String expression) {
+        mExpression = expression;
+        return this;
+    }
+
+    /**
+     * Make this a partial index, see {@link Index#where()}
+     *
+     * @param where the condition, for example <pre>deleted = 0</pre>
+     * @return the builder for chaining
+     */
+    public IndexBuilder where(String where) {
+        mWhere = where;
+        return this;
+    }
+
     /**
      * Build the index
      *
      * @return the index
      */
     public Index build() {
-        return new IndexImpl(mUnique, mCompositeIndexBuilder.mIndices, mCompositeIndexBuilder.mUniqueIndices);
+        return new IndexImpl(mUnique, mCompositeIndexBuilder.mIndices, mCompositeIndexBuilder.mUniqueIndices, mExpression, mWhere);
     }
 
     public class CompositeIndexBuilder {
@@ -115,13 +139,35 @@ public class IndexBuilder {
             return this;
         }
 
+        /**
+         * Index an sql expression instead of the plain column, see {@link CompositeIndex#expression()}
+         *
+         * @param expression the expression, for example <pre>lower(email)</pre>
+         * @return the builder for chaining
+         */
+        public CompositeIndexBuilder expression(String expression) {
+            mCurrentIndex.setExpression(expression);
+            return this;
+        }
+
+        /**
+         * Make the index partial, see {@link CompositeIndex#where()}
+         *
+         * @param where the condition, for example <pre>deleted = 0</pre>
+         * @return the builder for chaining
+         */
+        public CompositeIndexBuilder where(String where) {
+            mCurrentIndex.setWhere(where);
+            return this;
+        }
+
         /**
          * Build the index
          *
          * @return the index
          */
         public Index build() {
-            return new IndexImpl(false, mIndices, mUniqueIndices);
+            return new IndexImpl(false, mIndices, mUniqueIndices, "", "");
         }
     }
 
@@ -130,11 +176,15 @@ public class IndexBuilder {
         private final boolean mUnique;
         private final CompositeIndex[] mNames;
         private final CompositeIndex[] mUniqueNames;
+        private final String mExpression;
+        private final String mWhere;
 
-        public IndexImpl(boolean unique, List<CompositeIndex> names, List<CompositeIndex> uniqueNames) {
+        public IndexImpl(boolean unique, List<CompositeIndex> names, List<CompositeIndex> uniqueNames, String expression, String where) {
             this.mUnique = unique;
             this.mNames = names.toArray(new CompositeIndex[names.size()]);
             this.mUniqueNames = uniqueNames.toArray(new CompositeIndex[uniqueNames.size()]);
+            this.mExpression = expression;
+            this.mWhere = where;
         }
 
         @Override
@@ -152,6 +202,16 @@ public class IndexBuilder {
             return mUniqueNames;
         }
 
+        @Override
+        public String expression() {
+            return mExpression;
+        }
+
+        @Override
+        public String where() {
+            return mWhere;
+        }
+
         @Override
         public Class<? extends Annotation> annotationType() {
             return Index.class;
@@ -163,11 +223,21 @@ public class IndexBuilder {
         private final String mName;
         private boolean mAscending;
         private int mOrder;
+        private String mExpression = "";
+        private String mWhere = "";
 
         public CompositeIndexImpl(String name) {
             this.mName = name;
         }
 
+        void setExpression(String expression) {
+            mExpression = expression;
+        }
+
+        void setWhere(String where) {
+            mWhere = where;
+        }
+
         void setAscending(boolean ascending) {
             mAscending = ascending;
         }
@@ -191,6 +261,16 @@ public class IndexBuilder {
             return mName;
         }
 
+        @Override
+        public String expression() {
+            return mExpression;
+        }
+
+        @Override
+        public String where() {
+            return mWhere;
+        }
+
         @Override
         public Class<? extends Annotation> annotationType() {
             return CompositeIndex.class;
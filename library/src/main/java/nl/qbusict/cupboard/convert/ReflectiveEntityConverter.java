@@ -19,6 +19,8 @@ import android.content.ContentValues;
 import android.database.Cursor;
 import android.provider.BaseColumns;
 
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.Type;
@@ -26,11 +28,20 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import nl.qbusict.cupboard.Cupboard;
+import nl.qbusict.cupboard.annotation.CompositeIndex;
+import nl.qbusict.cupboard.annotation.Embedded;
+import nl.qbusict.cupboard.annotation.EnumStorage;
 import nl.qbusict.cupboard.annotation.Ignore;
 import nl.qbusict.cupboard.annotation.Index;
+import nl.qbusict.cupboard.annotation.Lazy;
+import nl.qbusict.cupboard.annotation.TimeStorage;
+import nl.qbusict.cupboard.internal.convert.EnumFieldConverterFactory;
+import nl.qbusict.cupboard.internal.convert.TimeFieldConverterFactory;
 
 /**
  * The default {@link nl.qbusict.cupboard.convert.EntityConverter}
@@ -45,7 +56,13 @@ public class ReflectiveEntityConverter<T> implements EntityConverter<T> {
     private final List<Column> mColumns;
     private final Property[] mProperties;
     private final boolean mUseAnnotations;
+    private final boolean mHasLazyProperties;
     private Property mIdProperty;
+    /**
+     * The lazy properties that weren't loaded, by entity returned from {@link #fromCursor(Cursor)}. Guarded by itself.
+     */
+    private final Map<EntityKey, boolean[]> mUnloaded = new HashMap<EntityKey, boolean[]>();
+    private final ReferenceQueue<Object> mCollected = new ReferenceQueue<Object>();
 
     public ReflectiveEntityConverter(Cupboard cupboard, Class<T> entityClass) {
         this(cupboard, entityClass, Collections.<String>emptyList(), Collections.<EntityConverter.Column>emptyList());
@@ -67,40 +84,94 @@ public class ReflectiveEntityConverter<T> implements EntityConverter<T> {
     public ReflectiveEntityConverter(Cupboard cupboard, Class<T> entityClass, Collection<String> ignoredFieldNames, Collection<Column> additionalColumns) {
         mCupboard = cupboard;
         mUseAnnotations = cupboard.isUseAnnotations();
-        Field[] fields = getAllFields(entityClass);
-        ArrayList<Column> columns = new ArrayList<Column>(fields.length);
         this.mEntityClass = entityClass;
+        ArrayList<Column> columns = new ArrayList<Column>();
         List<Property> properties = new ArrayList<Property>();
-        for (Field field : fields) {
-            if (ignoredFieldNames.contains(field.getName()) || isIgnored(field)) {
+        addProperties(entityClass, null, "", ignoredFieldNames, properties, columns);
+        columns.addAll(additionalColumns);
+        this.mColumns = Collections.unmodifiableList(columns);
+        this.mProperties = properties.toArray(new Property[properties.size()]);
+        boolean lazy = false;
+        for (Property prop : mProperties) {
+            lazy |= prop.lazy;
+        }
+        this.mHasLazyProperties = lazy;
+    }
+
+    /**
+     * Add the properties and columns of the fields of a class, recursing into embedded fields
+     *
+     * @param clz        the entity class or the class of an embedded field
+     * @param embeddedIn the property of the embedded field or null for the entity itself
+     * @param prefix     the prefix of the column names
+     */
+    private void addProperties(Class<?> clz, Property embeddedIn, String prefix, Collection<String> ignoredFieldNames, List<Property> properties, List<Column> columns) {
+        for (Field field : getAllFields(clz)) {
+            if ((embeddedIn == null && ignoredFieldNames.contains(field.getName())) || isIgnored(field)) {
+                continue;
+            }
+            if (!field.isAccessible()) {
+                field.setAccessible(true);
+            }
+            if (isEmbedded(field)) {
+                Property holder = new Property();
+                holder.field = field;
+                holder.type = field.getType();
+                holder.embeddedIn = embeddedIn;
+                holder.lazy = (embeddedIn != null && embeddedIn.lazy) || isLazyColumn(field);
+                for (Property p = embeddedIn; p != null; p = p.embeddedIn) {
+                    if (p.type == holder.type) {
+                        throw new IllegalArgumentException("Embedded field " + field.getName() + " in " + clz.getName() + " embeds itself");
+                    }
+                }
+                addProperties(holder.type, holder, prefix + getEmbeddedPrefix(field), ignoredFieldNames, properties, columns);
                 continue;
             }
             Type type = field.getGenericType();
             FieldConverter<?> converter = getFieldConverter(field);
             if (converter == null) {
-                throw new IllegalArgumentException("Do not know how to convert field " + field.getName() + " in entity " + entityClass.getName() + " of type " + type);
+                throw new IllegalArgumentException("Do not know how to convert field " + field.getName() + " in entity " + clz.getName() + " of type " + type);
             }
             if (converter.getColumnType() == null) {
                 continue;
             }
+            if (isLazyColumn(field) && field.getType().isPrimitive()) {
+                throw new IllegalArgumentException("Lazy field " + field.getName() + " in " + clz.getName() + " has a primitive type");
+            }
             Property prop = new Property();
             prop.field = field;
-            if (!field.isAccessible()) {
-                field.setAccessible(true);
-            }
-            prop.name = getColumn(field);
+            prop.name = prefix + getColumn(field);
             prop.type = field.getType();
             prop.fieldConverter = (FieldConverter<Object>) converter;
             prop.columnType = isReadOnlyColumn(field) ? ColumnType.JOIN : converter.getColumnType();
+            prop.lazy = (embeddedIn != null && embeddedIn.lazy) || isLazyColumn(field);
+            prop.embeddedIn = embeddedIn;
             properties.add(prop);
-            if (BaseColumns._ID.equals(prop.name)) {
+            if (embeddedIn == null && BaseColumns._ID.equals(prop.name)) {
                 mIdProperty = prop;
             }
-            columns.add(new Column(prop.name, prop.columnType, getIndexes(field)));
+            Index index = getIndexes(field);
+            if (embeddedIn != null && index != null && hasSqlClauses(index)) {
+                // the sql refers to the columns without the prefix of the embedded field
+                throw new IllegalArgumentException("Index on field " + field.getName() + " in embedded class " + clz.getName()
+                        + " has an expression or where clause");
+            }
+            columns.add(new Column(prop.name, prop.columnType, index, prop.lazy));
         }
-        columns.addAll(additionalColumns);
-        this.mColumns = Collections.unmodifiableList(columns);
-        this.mProperties = properties.toArray(new Property[properties.size()]);
+    }
+
+    private static boolean hasSqlClauses(Index index) {
+        if (index.expression().length() > 0 || index.where().length() > 0) {
+            return true;
+        }
+        for (CompositeIndex[] composites : new CompositeIndex[][]{index.indexNames(), index.uniqueNames()}) {
+            for (CompositeIndex composite : composites) {
+                if (composite.expression().length() > 0 || composite.where().length() > 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
     }
 
     private static String getTable(Class<?> clz) {
@@ -110,12 +181,31 @@ public class ReflectiveEntityConverter<T> implements EntityConverter<T> {
     /**
      * Get a {@link nl.qbusict.cupboard.convert.FieldConverter} for the specified field. This allows for subclasses
      * to provide a specific {@link nl.qbusict.cupboard.convert.FieldConverter} for a property. The default implementation
-     * simply calls {@link nl.qbusict.cupboard.Cupboard#getFieldConverter(java.lang.reflect.Type)}
+     * simply calls {@link nl.qbusict.cupboard.Cupboard#getFieldConverter(java.lang.reflect.Type)}, unless annotations are enabled and
+     * the field is annotated with {@link EnumStorage} or {@link TimeStorage}.
      *
      * @param field the field
      * @return the field converter
      */
     protected FieldConverter<?> getFieldConverter(Field field) {
+        if (mUseAnnotations) {
+            EnumStorage storage = field.getAnnotation(EnumStorage.class);
+            if (storage != null) {
+                FieldConverter<?> converter = EnumFieldConverterFactory.create(field.getGenericType(), storage.value());
+                if (converter == null) {
+                    throw new IllegalArgumentException("EnumStorage on field " + field.getName() + " that is not an enum");
+                }
+                return converter;
+            }
+            TimeStorage timeStorage = field.getAnnotation(TimeStorage.class);
+            if (timeStorage != null) {
+                FieldConverter<?> converter = TimeFieldConverterFactory.create(field.getGenericType(), timeStorage.value());
+                if (converter == null) {
+                    throw new IllegalArgumentException("TimeStorage on field " + field.getName() + " that is not a Date, Timestamp or Calendar");
+                }
+                return converter;
+            }
+        }
         return mCupboard.getFieldConverter(field.getGenericType());
     }
 
@@ -166,15 +256,35 @@ public class ReflectiveEntityConverter<T> implements EntityConverter<T> {
         try {
             T result = mEntityClass.newInstance();
             int cols = cursor.getColumnCount();
-            for (int index = 0; index < mProperties.length && index < cols; index++) {
+            boolean[] unloaded = null;
+            for (int index = 0; index < mProperties.length; index++) {
                 Property prop = mProperties[index];
+                // a column left out of the query is past the last column or has no name
+                if (index >= cols || (prop.lazy && cursor.getColumnName(index) == null)) {
+                    if (prop.lazy) {
+                        if (unloaded == null) {
+                            unloaded = new boolean[mProperties.length];
+                        }
+                        unloaded[index] = true;
+                    }
+                    continue;
+                }
                 Class<?> type = prop.type;
                 if (cursor.isNull(index)) {
-                    if (!type.isPrimitive()) {
-                        prop.field.set(result, null);
+                    // embedded objects are only created for a column that is not null
+                    Object owner = prop.embeddedIn == null ? result : getEmbedded(result, prop.embeddedIn, false);
+                    if (owner != null && !type.isPrimitive()) {
+                        prop.field.set(owner, null);
                     }
                 } else {
-                    prop.field.set(result, prop.fieldConverter.fromCursorValue(cursor, index));
+                    Object owner = prop.embeddedIn == null ? result : getEmbedded(result, prop.embeddedIn, true);
+                    prop.field.set(owner, prop.fieldConverter.fromCursorValue(cursor, index));
+                }
+            }
+            if (unloaded != null) {
+                synchronized (mUnloaded) {
+                    expungeCollected();
+                    mUnloaded.put(new EntityKey(result, mCollected), unloaded);
                 }
             }
             return result;
@@ -187,14 +297,24 @@ public class ReflectiveEntityConverter<T> implements EntityConverter<T> {
 
     @Override
     public void toValues(T object, ContentValues values) {
-        for (Property prop : mProperties) {
+        boolean[] unloaded = null;
+        if (mHasLazyProperties) {
+            synchronized (mUnloaded) {
+                expungeCollected();
+                unloaded = mUnloaded.get(new EntityKey(object, null));
+            }
+        }
+        for (int index = 0; index < mProperties.length; index++) {
+            Property prop = mProperties[index];
             if (prop.columnType == ColumnType.JOIN) {
                 continue;
             }
             try {
-                Object value = prop.field.get(object);
+                Object owner = prop.embeddedIn == null ? object : getEmbedded(object, prop.embeddedIn, false);
+                Object value = owner == null ? null : prop.field.get(owner);
                 if (value == null) {
-                    if (!prop.name.equals(BaseColumns._ID)) {
+                    // a lazy column that wasn't loaded keeps its stored value
+                    if (!prop.name.equals(BaseColumns._ID) && (unloaded == null || !unloaded[index])) {
                         values.putNull(prop.name);
                     }
                 } else {
@@ -206,6 +326,53 @@ public class ReflectiveEntityConverter<T> implements EntityConverter<T> {
         }
     }
 
+    private void expungeCollected() {
+        Object key;
+        while ((key = mCollected.poll()) != null) {
+            mUnloaded.remove(key);
+        }
+    }
+
+    /**
+     * Get the object of an embedded field
+     *
+     * @param entity the entity
+     * @param holder the property of the embedded field
+     * @param create true to create the object, and the objects it is embedded in, if the field is null
+     * @return the object or null if the field is null and create is false
+     */
+    private static Object getEmbedded(Object entity, Property holder, boolean create) throws IllegalAccessException {
+        Object owner = holder.embeddedIn == null ? entity : getEmbedded(entity, holder.embeddedIn, create);
+        if (owner == null) {
+            return null;
+        }
+        Object value = holder.field.get(owner);
+        if (value == null && create) {
+            try {
+                value = holder.type.newInstance();
+            } catch (InstantiationException e) {
+                throw new RuntimeException(e);
+            }
+            holder.field.set(owner, value);
+        }
+        return value;
+    }
+
+    /**
+     * Get the field converter of a column
+     *
+     * @param column the column name
+     * @return the converter or null if this entity has no such column
+     */
+    public FieldConverter<?> getColumnConverter(String column) {
+        for (Property prop : mProperties) {
+            if (prop.name.equals(column)) {
+                return prop.fieldConverter;
+            }
+        }
+        return null;
+    }
+
     @Override
     public List<Column> getColumns() {
         return mColumns;
@@ -222,6 +389,43 @@ public class ReflectiveEntityConverter<T> implements EntityConverter<T> {
         return false;
     }
 
+    /**
+     * Return if the specified field is only loaded on demand. The default implementation checks for the {@link nl.qbusict.cupboard.annotation.Lazy}
+     * annotation if annotations are enabled.
+     *
+     * @param field the field to check
+     * @return true if this field should be left out of queries by default, false otherwise
+     */
+    protected boolean isLazyColumn(Field field) {
+        return mUseAnnotations && field.getAnnotation(Lazy.class) != null;
+    }
+
+    /**
+     * Return if the fields of the value object in the specified field are stored in columns of this entity's table. The default implementation
+     * checks for the {@link nl.qbusict.cupboard.annotation.Embedded} annotation if annotations are enabled.
+     *
+     * @param field the field to check
+     * @return true if the field should be flattened into columns, false if it is converted by a {@link FieldConverter}
+     */
+    protected boolean isEmbedded(Field field) {
+        return mUseAnnotations && field.getAnnotation(Embedded.class) != null;
+    }
+
+    /**
+     * Return the prefix of the column names of an embedded field. The default implementation uses the value of
+     * the {@link nl.qbusict.cupboard.annotation.Embedded} annotation or, if that's empty, the column name of the field followed by an underscore.
+     *
+     * @param field the embedded field
+     * @return the prefix
+     */
+    protected String getEmbeddedPrefix(Field field) {
+        Embedded embedded = field.getAnnotation(Embedded.class);
+        if (embedded != null && embedded.value().length() > 0) {
+            return embedded.value();
+        }
+        return getColumn(field) + "_";
+    }
+
     @Override
     public void setId(Long id, T instance) {
         if (mIdProperty != null) {
@@ -286,12 +490,47 @@ public class ReflectiveEntityConverter<T> implements EntityConverter<T> {
         return getTable(mEntityClass);
     }
 
+    /**
+     * A weak reference to an entity that compares the entity by identity, so that tracking an entity neither keeps it alive nor depends
+     * on its equals() and hashCode()
+     */
+    private static class EntityKey extends WeakReference<Object> {
+        private final int mHash;
+
+        EntityKey(Object entity, ReferenceQueue<Object> queue) {
+            super(entity, queue);
+            mHash = System.identityHashCode(entity);
+        }
+
+        @Override
+        public int hashCode() {
+            return mHash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) {
+                return true;
+            }
+            if (!(o instanceof EntityKey)) {
+                return false;
+            }
+            Object entity = get();
+            return entity != null && entity == ((EntityKey) o).get();
+        }
+    }
+
     private static class Property {
         Field field;
         String name;
         Class<?> type;
         FieldConverter<Object> fieldConverter;
         ColumnType columnType;
+        boolean lazy;
+        /**
+         * The property of the embedded field that holds this field, or null for a field of the entity
+         */
+        Property embeddedIn;
     }
 
 }
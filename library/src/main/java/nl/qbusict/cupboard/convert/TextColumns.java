@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2016 Little Robots
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package nl.qbusict.cupboard.convert;
+
+import android.database.CharArrayBuffer;
+import android.database.Cursor;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * Reads text columns through {@link Cursor#copyStringToBuffer(int, CharArrayBuffer)} instead of {@link Cursor#getString(int)}, so
+ * that {@link FieldConverter}s that parse text don't create a String per cell. A cursor on an sqlite database copies the text
+ * straight from its window. The buffer is owned by the calling thread and is overwritten by the next read on that thread.
+ * <p/>
+ * The column must not be null, {@link EntityConverter}s check for null before calling a field converter.
+ */
+public final class TextColumns {
+    private static final ThreadLocal<CharArrayBuffer> sBuffers = new ThreadLocal<CharArrayBuffer>() {
+        @Override
+        protected CharArrayBuffer initialValue() {
+            return new CharArrayBuffer(64);
+        }
+    };
+
+    private TextColumns() {
+    }
+
+    /**
+     * Copy the text of a column into the buffer of the calling thread
+     *
+     * @param cursor      the cursor
+     * @param columnIndex the index of the column
+     * @return the buffer, the text is in the first {@link CharArrayBuffer#sizeCopied} characters of {@link CharArrayBuffer#data}
+     */
+    public static CharArrayBuffer read(Cursor cursor, int columnIndex) {
+        CharArrayBuffer buffer = sBuffers.get();
+        cursor.copyStringToBuffer(columnIndex, buffer);
+        return buffer;
+    }
+
+    public static BigDecimal readBigDecimal(Cursor cursor, int columnIndex) {
+        CharArrayBuffer buffer = read(cursor, columnIndex);
+        return new BigDecimal(buffer.data, 0, buffer.sizeCopied);
+    }
+
+    public static BigInteger readBigInteger(Cursor cursor, int columnIndex) {
+        CharArrayBuffer buffer = read(cursor, columnIndex);
+        char[] data = buffer.data;
+        int length = buffer.sizeCopied;
+        // values of up to 18 digits fit in a long and are parsed without creating a string
+        int start = length > 0 && (data[0] == '-' || data[0] == '+') ? 1 : 0;
+        if (length > start && length - start <= 18) {
+            long value = 0;
+            int i = start;
+            for (; i < length; i++) {
+                char c = data[i];
+                if (c < '0' || c > '9') {
+                    break;
+                }
+                value = value * 10 + (c - '0');
+            }
+            if (i == length) {
+                return BigInteger.valueOf(data[0] == '-' ? -value : value);
+            }
+        }
+        return new BigInteger(new String(data, 0, length));
+    }
+
+    /**
+     * Looks up the constants of an enum by name, like {@link Enum#valueOf(Class, String)}, without creating a string for the name
+     *
+     * @param <E> the enum type
+     */
+    public static final class EnumNames<E extends Enum<E>> {
+        private final Class<E> mEnumClass;
+        private final E[] mConstants;
+        private final char[][] mNames;
+        /**
+         * Open addressing hash table of constant index + 1, 0 for an empty slot
+         */
+        private final int[] mTable;
+
+        public EnumNames(Class<E> enumClass) {
+            mEnumClass = enumClass;
+            mConstants = enumClass.getEnumConstants();
+            mNames = new char[mConstants.length][];
+            int size = 2;
+            while (size < mConstants.length * 2) {
+                size <<= 1;
+            }
+            mTable = new int[size];
+            for (int i = 0; i < mConstants.length; i++) {
+                mNames[i] = mConstants[i].name().toCharArray();
+                int slot = hash(mNames[i], mNames[i].length) & (size - 1);
+                while (mTable[slot] != 0) {
+                    slot = (slot + 1) & (size - 1);
+                }
+                mTable[slot] = i + 1;
+            }
+        }
+
+        private static int hash(char[] chars, int length) {
+            int hash = 0;
+            for (int i = 0; i < length; i++) {
+                hash = 31 * hash + chars[i];
+            }
+            // spread the high bits, the table is indexed by the low bits
+            return hash ^ (hash >>> 16);
+        }
+
+        /**
+         * @param buffer the name
+         * @return the constant with the name
+         * @throws IllegalArgumentException if the enum has no constant with the name
+         */
+        public E valueOf(CharArrayBuffer buffer) {
+            char[] data = buffer.data;
+            int length = buffer.sizeCopied;
+            int mask = mTable.length - 1;
+            for (int slot = hash(data, length) & mask; mTable[slot] != 0; slot = (slot + 1) & mask) {
+                char[] name = mNames[mTable[slot] - 1];
+                if (name.length == length && regionMatches(name, data, length)) {
+                    return mConstants[mTable[slot] - 1];
+                }
+            }
+            throw new IllegalArgumentException("No enum constant " + mEnumClass.getName() + "." + new String(data, 0, length));
+        }
+
+        private static boolean regionMatches(char[] name, char[] data, int length) {
+            for (int i = 0; i < length; i++) {
+                if (name[i] != data[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Read the constant named in a text column
+         */
+        public E read(Cursor cursor, int columnIndex) {
+            return valueOf(TextColumns.read(cursor, columnIndex));
+        }
+    }
+}
@@ -18,12 +18,24 @@ public class IndexStatement {
     public final String[] mColumnNames;
     public final boolean[] mAscendings;
     public final String mIndexName;
+    public final String[] mExpressions;
+    public final String mWhere;
 
     public IndexStatement(boolean isUnique, String[] columnNames, boolean[] ascendings, String indexName) {
+        this(isUnique, columnNames, ascendings, indexName, null, null);
+    }
+
+    /**
+     * @param expressions per column the expression to index instead of the column, or null or empty for the column itself.
+     * @param where       the condition of a partial index or null or empty for a full index
+     */
+    public IndexStatement(boolean isUnique, String[] columnNames, boolean[] ascendings, String indexName, String[] expressions, String where) {
         this.mIsUnique = isUnique;
         this.mColumnNames = columnNames;
         this.mAscendings = ascendings;
         this.mIndexName = indexName;
+        this.mExpressions = expressions;
+        this.mWhere = where;
     }
 
     public String getCreationSql(String table) {
@@ -31,7 +43,7 @@ public class IndexStatement {
     }
 
     public String getCreationSql(String table, boolean includeIfNotExists) {
-//		create *unique* index *if not exists* indexName on tableName ('col1' asc, 'col2' desc, 'col3' asc)
+//		create *unique* index *if not exists* indexName on tableName ('col1' asc, lower('col2') desc, 'col3' asc) *where condition*
         StringBuilder sb = new StringBuilder("create ");
         if (mIsUnique) {
             sb.append("unique ");
@@ -40,14 +52,25 @@ public class IndexStatement {
         if (includeIfNotExists) {
             sb.append("if not exists ");
         }
-        sb.append(INDEX_PREFIX).append(mIndexName).append(" on %s (");
+        sb.append(INDEX_PREFIX).append(mIndexName).append(" on ").append(table).append(" (");
         int size = mColumnNames.length;
-        sb.append('\'').append(mColumnNames[0]).append("' ").append(mAscendings[0] ? "ASC" : "DESC");
-        for (int i = 1; i < size; i++) {
-            sb.append(", '").append(mColumnNames[i]).append("' ").append(mAscendings[i] ? "ASC" : "DESC");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            String expression = mExpressions != null ? mExpressions[i] : null;
+            if (expression != null && expression.length() > 0) {
+                sb.append(expression);
+            } else {
+                sb.append('\'').append(mColumnNames[i]).append('\'');
+            }
+            sb.append(mAscendings[i] ? " ASC" : " DESC");
         }
         sb.append(')');
-        return String.format(sb.toString(), table, includeIfNotExists);
+        if (mWhere != null && mWhere.length() > 0) {
+            sb.append(" where ").append(mWhere);
+        }
+        return sb.toString();
     }
 
     public static class Builder {
@@ -55,6 +78,7 @@ public class IndexStatement {
 
         Map<String, Set<IndexColumnMetadata>> indexes = new HashMap<String, Set<IndexColumnMetadata>>();
         Map<String, Set<IndexColumnMetadata>> uniqueIndexes = new HashMap<String, Set<IndexColumnMetadata>>();
+        Map<String, String> conditions = new HashMap<String, String>();
 
         public void addIndexedColumn(String table, String name, Index index) {
             boolean added = false;
@@ -68,23 +92,31 @@ public class IndexStatement {
             }
             if (!added) {
                 boolean unique = index.unique();
-                addCompositeIndex(name, unique ? uniqueIndexes : indexes, CompositeIndex.DEFAULT_ASCENDING, CompositeIndex.DEFAULT_ORDER, String.format(GENERATED_INDEX_NAME, table, name));
+                addCompositeIndex(name, unique ? uniqueIndexes : indexes, CompositeIndex.DEFAULT_ASCENDING, CompositeIndex.DEFAULT_ORDER, String.format(GENERATED_INDEX_NAME, table, name),
+                        index.expression(), index.where());
             }
         }
 
         private void addCompositeIndexes(String name, Map<String, Set<IndexColumnMetadata>> collectionToAdd, CompositeIndex[] composites) {
             for (CompositeIndex ci : composites) {
-                addCompositeIndex(name, collectionToAdd, ci.ascending(), ci.order(), ci.indexName());
+                addCompositeIndex(name, collectionToAdd, ci.ascending(), ci.order(), ci.indexName(), ci.expression(), ci.where());
             }
         }
 
-        private void addCompositeIndex(String columnName, Map<String, Set<IndexColumnMetadata>> collectionToAdd, boolean ascending, int order, String indexName) {
+        private void addCompositeIndex(String columnName, Map<String, Set<IndexColumnMetadata>> collectionToAdd, boolean ascending, int order, String indexName,
+                                       String expression, String where) {
+            if (where != null && where.length() > 0) {
+                String existing = conditions.put(indexName, where);
+                if (existing != null && !existing.equals(where)) {
+                    throw new IllegalArgumentException(String.format("Index %s has two different conditions: '%s' and '%s'", indexName, existing, where));
+                }
+            }
             Set<IndexColumnMetadata> set = collectionToAdd.get(indexName);
             if (set == null) {
                 set = new HashSet<IndexStatement.Builder.IndexColumnMetadata>();
                 collectionToAdd.put(indexName, set);
             }
-            IndexColumnMetadata indexColumnMetadata = new IndexColumnMetadata(columnName, ascending, order);
+            IndexColumnMetadata indexColumnMetadata = new IndexColumnMetadata(columnName, ascending, order, expression);
             if (!set.add(indexColumnMetadata)) {
                 throw new IllegalArgumentException(String.format("Column '%s' has two indexes with the same name %s", columnName, indexName));
             }
@@ -123,23 +155,27 @@ public class IndexStatement {
             int size = columnMetadatas.size();
             String[] columnNames = new String[size];
             boolean[] ascendingColumns = new boolean[size];
+            String[] expressions = new String[size];
             for (int i = 0; i < size; i++) {
                 IndexColumnMetadata indexColumnMetadata = columnMetadatas.get(i);
                 columnNames[i] = indexColumnMetadata.mColumnName;
                 ascendingColumns[i] = indexColumnMetadata.mAscending;
+                expressions[i] = indexColumnMetadata.mExpression;
             }
-            indexStatements.add(new IndexStatement(unique, columnNames, ascendingColumns, indexName));
+            indexStatements.add(new IndexStatement(unique, columnNames, ascendingColumns, indexName, expressions, conditions.get(indexName)));
         }
 
         class IndexColumnMetadata implements Comparable<IndexColumnMetadata> {
             String mColumnName;
             boolean mAscending;
             int mOrder;
+            String mExpression;
 
-            public IndexColumnMetadata(String columnName, boolean ascending, int order) {
+            public IndexColumnMetadata(String columnName, boolean ascending, int order, String expression) {
                 this.mColumnName = columnName;
                 this.mAscending = ascending;
                 this.mOrder = order;
+                this.mExpression = expression;
             }
 
             public int hashCode() {
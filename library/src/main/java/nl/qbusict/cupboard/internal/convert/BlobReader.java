@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2016 Little Robots
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package nl.qbusict.cupboard.internal.convert;
+
+/**
+ * Reads the format written by {@link BlobWriter}
+ */
+final class BlobReader {
+    private final byte[] mBuffer;
+    private int mPosition;
+
+    BlobReader(byte[] buffer) {
+        mBuffer = buffer;
+    }
+
+    private void require(int length) {
+        if (length < 0 || mPosition + length > mBuffer.length) {
+            throw new IllegalArgumentException("Unexpected end of data at " + mPosition);
+        }
+    }
+
+    int readByte() {
+        require(1);
+        return mBuffer[mPosition++] & 0xff;
+    }
+
+    long readVarLong() {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint at " + mPosition);
+    }
+
+    int readLength() {
+        long length = readVarLong();
+        if (length < 0 || length > mBuffer.length - mPosition) {
+            // every element takes at least one byte, so this can't be a valid length
+            throw new IllegalArgumentException("Invalid length " + length + " at " + mPosition);
+        }
+        return (int) length;
+    }
+
+    long readSignedVarLong() {
+        long value = readVarLong();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    int readFixed32() {
+        require(4);
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            value |= (mBuffer[mPosition++] & 0xff) << (8 * i);
+        }
+        return value;
+    }
+
+    long readFixed64() {
+        require(8);
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value |= (long) (mBuffer[mPosition++] & 0xff) << (8 * i);
+        }
+        return value;
+    }
+
+    byte[] readBytes() {
+        int length = readLength();
+        byte[] value = new byte[length];
+        System.arraycopy(mBuffer, mPosition, value, 0, length);
+        mPosition += length;
+        return value;
+    }
+
+    String readString() {
+        int length = readLength();
+        char[] chars = new char[length];
+        byte[] buffer = mBuffer;
+        for (int i = 0; i < length; i++) {
+            int b = readByte();
+            if (b < 0x80) {
+                chars[i] = (char) b;
+            } else if (b < 0xe0) {
+                require(1);
+                chars[i] = (char) (((b & 0x1f) << 6) | (buffer[mPosition++] & 0x3f));
+            } else {
+                require(2);
+                chars[i] = (char) (((b & 0x0f) << 12) | ((buffer[mPosition++] & 0x3f) << 6) | (buffer[mPosition++] & 0x3f));
+            }
+        }
+        return new String(chars);
+    }
+
+    boolean isAtEnd() {
+        return mPosition == mBuffer.length;
+    }
+}
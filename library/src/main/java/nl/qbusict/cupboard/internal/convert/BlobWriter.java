@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2016 Little Robots
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package nl.qbusict.cupboard.internal.convert;
+
+/**
+ * Writes the binary format of {@link CollectionFieldConverterFactory}. Integers are written as varints, signed values zigzag
+ * encoded so that small negative values stay small. Strings are written as the number of chars followed by the chars in utf-8,
+ * surrogates are encoded separately.
+ */
+final class BlobWriter {
+    private byte[] mBuffer;
+    private int mSize;
+
+    BlobWriter(int capacity) {
+        mBuffer = new byte[capacity];
+    }
+
+    private void ensureCapacity(int extra) {
+        if (mSize + extra > mBuffer.length) {
+            byte[] buffer = new byte[Math.max(mBuffer.length * 2, mSize + extra)];
+            System.arraycopy(mBuffer, 0, buffer, 0, mSize);
+            mBuffer = buffer;
+        }
+    }
+
+    void writeByte(int value) {
+        ensureCapacity(1);
+        mBuffer[mSize++] = (byte) value;
+    }
+
+    void writeVarLong(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7fL) != 0) {
+            mBuffer[mSize++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        mBuffer[mSize++] = (byte) value;
+    }
+
+    void writeSignedVarLong(long value) {
+        writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    void writeFixed32(int value) {
+        ensureCapacity(4);
+        for (int i = 0; i < 4; i++) {
+            mBuffer[mSize++] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    void writeFixed64(long value) {
+        ensureCapacity(8);
+        for (int i = 0; i < 8; i++) {
+            mBuffer[mSize++] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    void writeBytes(byte[] value) {
+        writeVarLong(value.length);
+        ensureCapacity(value.length);
+        System.arraycopy(value, 0, mBuffer, mSize, value.length);
+        mSize += value.length;
+    }
+
+    void writeString(String value) {
+        int length = value.length();
+        writeVarLong(length);
+        ensureCapacity(length * 3);
+        byte[] buffer = mBuffer;
+        int size = mSize;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer[size++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[size++] = (byte) (0xc0 | (c >> 6));
+                buffer[size++] = (byte) (0x80 | (c & 0x3f));
+            } else {
+                buffer[size++] = (byte) (0xe0 | (c >> 12));
+                buffer[size++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                buffer[size++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        mSize = size;
+    }
+
+    byte[] toByteArray() {
+        byte[] result = new byte[mSize];
+        System.arraycopy(mBuffer, 0, result, 0, mSize);
+        return result;
+    }
+}
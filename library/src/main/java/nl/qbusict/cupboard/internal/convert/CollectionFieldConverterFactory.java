@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2016 Little Robots
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package nl.qbusict.cupboard.internal.convert;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+
+import nl.qbusict.cupboard.Cupboard;
+import nl.qbusict.cupboard.convert.EntityConverter.ColumnType;
+import nl.qbusict.cupboard.convert.FieldConverter;
+import nl.qbusict.cupboard.convert.FieldConverterFactory;
+
+/**
+ * Stores collections and maps in a BLOB column using a compact binary format. Elements can be boxed primitives, strings,
+ * byte arrays, enums, registered entities, which are stored by id, and nested collections and maps of these.
+ * <p/>
+ * Fields declared as {@link java.util.List}, {@link java.util.Collection}, {@link java.util.Set} or {@link java.util.Map} are
+ * read as a lazy wrapper that decodes the blob on first access, so queries don't pay for collections that aren't used. A
+ * wrapper that wasn't accessed is written back without encoding it again. Fields of a concrete type, like {@link java.util.ArrayList},
+ * are decoded when the entity is read.
+ */
+public class CollectionFieldConverterFactory implements FieldConverterFactory {
+    private static final int FORMAT_VERSION = 1;
+
+    static class CollectionConverter implements FieldConverter<Object> {
+        private final ValueCodec mCodec;
+        private final Class<?> mType;
+
+        CollectionConverter(ValueCodec codec, Class<?> type) {
+            mCodec = codec;
+            mType = type;
+        }
+
+        @Override
+        public Object fromCursorValue(Cursor cursor, int columnIndex) {
+            return LazyCollections.wrap(mCodec, mType, cursor.getBlob(columnIndex));
+        }
+
+        @Override
+        public void toContentValue(Object value, String key, ContentValues values) {
+            values.put(key, encode(value));
+        }
+
+        byte[] encode(Object value) {
+            if (value instanceof LazyCollections.Lazy) {
+                byte[] blob = ((LazyCollections.Lazy) value).getBlob(mCodec);
+                if (blob != null) {
+                    return blob;
+                }
+            }
+            return CollectionFieldConverterFactory.encode(mCodec, value);
+        }
+
+        @Override
+        public ColumnType getColumnType() {
+            return ColumnType.BLOB;
+        }
+    }
+
+    static byte[] encode(ValueCodec codec, Object value) {
+        BlobWriter out = new BlobWriter(64);
+        out.writeByte(FORMAT_VERSION);
+        codec.write(out, value);
+        return out.toByteArray();
+    }
+
+    static Object decode(ValueCodec codec, byte[] blob) {
+        BlobReader in = new BlobReader(blob);
+        int version = in.readByte();
+        if (version != FORMAT_VERSION) {
+            throw new IllegalArgumentException("Unsupported collection format " + version);
+        }
+        Object value = codec.read(in);
+        if (!in.isAtEnd()) {
+            throw new IllegalArgumentException("Unexpected data after the collection");
+        }
+        return value;
+    }
+
+    @Override
+    public FieldConverter<?> create(Cupboard cupboard, Type type) {
+        if (!(type instanceof ParameterizedType)) {
+            return null;
+        }
+        ValueCodec codec = ValueCodec.forType(cupboard, type);
+        if (codec instanceof ValueCodec.CollectionCodec) {
+            return new CollectionConverter(codec, ((ValueCodec.CollectionCodec) codec).getCollectionClass());
+        } else if (codec instanceof ValueCodec.MapCodec) {
+            return new CollectionConverter(codec, ((ValueCodec.MapCodec) codec).getMapClass());
+        }
+        return null;
+    }
+}
@@ -42,7 +42,7 @@ import nl.qbusict.cupboard.convert.ReflectiveEntityConverter;
 public class ConverterRegistry {
 
     private static final int DEFAULT_ENTITY_CONVERTER_COUNT = 1;
-    private static final int DEFAULT_FIELD_CONVERTER_COUNT = 3;
+    private static final int DEFAULT_FIELD_CONVERTER_COUNT = 5;
     private final ThreadLocal<Map<Type, FutureFieldConverter<?>>> mFieldConverterCalls = new ThreadLocal<Map<Type, FutureFieldConverter<?>>>();
     private final ThreadLocal<Map<Class<?>, EntityConverter<?>>> mEntityConverterCalls = new ThreadLocal<Map<Class<?>, EntityConverter<?>>>();
     List<FieldConverterFactory> mFieldConverterFactories = new ArrayList<FieldConverterFactory>(256);
@@ -65,7 +65,9 @@ public class ConverterRegistry {
 
     private void addDefaultFieldConverterFactories() {
         mFieldConverterFactories.add(new DefaultFieldConverterFactory());
+        mFieldConverterFactories.add(new TimeFieldConverterFactory());
         mFieldConverterFactories.add(new EnumFieldConverterFactory());
+        mFieldConverterFactories.add(new CollectionFieldConverterFactory());
         mFieldConverterFactories.add(new EntityFieldConverterFactory());
     }
 
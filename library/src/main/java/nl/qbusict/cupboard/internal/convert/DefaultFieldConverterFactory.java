@@ -21,13 +21,14 @@ import android.database.Cursor;
 import java.lang.reflect.Type;
 import java.math.BigDecimal;
 import java.math.BigInteger;
-import java.util.Date;
 import java.util.HashMap;
 
+import nl.qbusict.cupboard.ChunkedBlob;
 import nl.qbusict.cupboard.Cupboard;
 import nl.qbusict.cupboard.convert.EntityConverter.ColumnType;
 import nl.qbusict.cupboard.convert.FieldConverter;
 import nl.qbusict.cupboard.convert.FieldConverterFactory;
+import nl.qbusict.cupboard.convert.TextColumns;
 
 public class DefaultFieldConverterFactory implements FieldConverterFactory {
     
@@ -52,7 +53,7 @@ public class DefaultFieldConverterFactory implements FieldConverterFactory {
         sTypeConverters.put(byte[].class, new ByteArrayConverter());
         sTypeConverters.put(boolean.class, new BooleanConverter());
         sTypeConverters.put(Boolean.class, new BooleanConverter());
-        sTypeConverters.put(Date.class, new DateConverter());
+        sTypeConverters.put(ChunkedBlob.class, new ChunkedBlobConverter());
     }
 
     @Override
@@ -67,7 +68,7 @@ public class DefaultFieldConverterFactory implements FieldConverterFactory {
     private static class BigDecimalConverter implements FieldConverter<BigDecimal> {
         @Override
         public BigDecimal fromCursorValue(Cursor cursor, int columnIndex) {
-            return new BigDecimal(cursor.getString(columnIndex));
+            return TextColumns.readBigDecimal(cursor, columnIndex);
         }
 
         @Override
@@ -84,7 +85,7 @@ public class DefaultFieldConverterFactory implements FieldConverterFactory {
     private static class BigIntegerConverter implements FieldConverter<BigInteger> {
         @Override
         public BigInteger fromCursorValue(Cursor cursor, int columnIndex) {
-            return new BigInteger(cursor.getString(columnIndex));
+            return TextColumns.readBigInteger(cursor, columnIndex);
         }
 
         @Override
@@ -255,15 +256,15 @@ public class DefaultFieldConverterFactory implements FieldConverterFactory {
         }
     }
 
-    private static class DateConverter implements FieldConverter<Date> {
+    private static class ChunkedBlobConverter implements FieldConverter<ChunkedBlob> {
         @Override
-        public Date fromCursorValue(Cursor cursor, int columnIndex) {
-            return new Date(cursor.getLong(columnIndex));
+        public ChunkedBlob fromCursorValue(Cursor cursor, int columnIndex) {
+            return new ChunkedBlob(cursor.getLong(columnIndex));
         }
 
         @Override
-        public void toContentValue(Date value, String key, ContentValues values) {
-            values.put(key, value.getTime());
+        public void toContentValue(ChunkedBlob value, String key, ContentValues values) {
+            values.put(key, value.getId());
         }
 
         @Override
@@ -271,4 +272,4 @@ public class DefaultFieldConverterFactory implements FieldConverterFactory {
             return ColumnType.INTEGER;
         }
     }
-}
\ No newline at end of file
+}
@@ -20,24 +20,28 @@ import android.database.Cursor;
 
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.util.Arrays;
 
 import nl.qbusict.cupboard.*;
+import nl.qbusict.cupboard.annotation.EnumStorage;
+import nl.qbusict.cupboard.convert.CodedEnum;
 import nl.qbusict.cupboard.convert.EntityConverter.ColumnType;
 import nl.qbusict.cupboard.convert.FieldConverter;
 import nl.qbusict.cupboard.convert.FieldConverterFactory;
+import nl.qbusict.cupboard.convert.TextColumns;
 
 public class EnumFieldConverterFactory implements FieldConverterFactory {
     private static class EnumConverter<E extends Enum> implements FieldConverter<E> {
 
-        private final Class<E> mEnumClass;
+        private final TextColumns.EnumNames mNames;
 
         public EnumConverter(Class<E> enumClass) {
-            this.mEnumClass = enumClass;
+            this.mNames = new TextColumns.EnumNames(enumClass);
         }
 
         @Override
         public E fromCursorValue(Cursor cursor, int columnIndex) {
-            return (E) Enum.valueOf(mEnumClass, cursor.getString(columnIndex));
+            return (E) mNames.read(cursor, columnIndex);
         }
 
         @Override
@@ -51,8 +55,119 @@ public class EnumFieldConverterFactory implements FieldConverterFactory {
         }
     }
 
-    @Override
-    public FieldConverter<?> create(Cupboard cupboard, Type type) {
+    private static class OrdinalEnumConverter<E extends Enum> implements FieldConverter<E> {
+
+        private final Class<E> mEnumClass;
+        private final E[] mConstants;
+
+        public OrdinalEnumConverter(Class<E> enumClass) {
+            this.mEnumClass = enumClass;
+            this.mConstants = enumClass.getEnumConstants();
+        }
+
+        @Override
+        public E fromCursorValue(Cursor cursor, int columnIndex) {
+            int ordinal = cursor.getInt(columnIndex);
+            if (ordinal < 0 || ordinal >= mConstants.length) {
+                throw new IllegalArgumentException("No enum constant " + mEnumClass.getName() + " with ordinal " + ordinal);
+            }
+            return mConstants[ordinal];
+        }
+
+        @Override
+        public void toContentValue(E value, String key, ContentValues values) {
+            values.put(key, value.ordinal());
+        }
+
+        @Override
+        public ColumnType getColumnType() {
+            return ColumnType.INTEGER;
+        }
+    }
+
+    private static class CodedEnumConverter<E extends Enum> implements FieldConverter<E> {
+
+        private final Class<E> mEnumClass;
+        // sorted codes and the constants in the same order, for a binary search
+        private final int[] mCodes;
+        private final E[] mConstants;
+
+        public CodedEnumConverter(Class<E> enumClass) {
+            this.mEnumClass = enumClass;
+            E[] constants = enumClass.getEnumConstants();
+            mCodes = codes(enumClass);
+            Arrays.sort(mCodes);
+            mConstants = constants.clone();
+            for (int i = 1; i < mCodes.length; i++) {
+                if (mCodes[i] == mCodes[i - 1]) {
+                    throw new IllegalArgumentException("Duplicate code " + mCodes[i] + " in enum " + enumClass.getName());
+                }
+            }
+            for (E constant : constants) {
+                mConstants[Arrays.binarySearch(mCodes, ((CodedEnum) constant).getCode())] = constant;
+            }
+        }
+
+        @Override
+        public E fromCursorValue(Cursor cursor, int columnIndex) {
+            int code = cursor.getInt(columnIndex);
+            int index = Arrays.binarySearch(mCodes, code);
+            if (index < 0) {
+                throw new IllegalArgumentException("No enum constant " + mEnumClass.getName() + " with code " + code);
+            }
+            return mConstants[index];
+        }
+
+        @Override
+        public void toContentValue(E value, String key, ContentValues values) {
+            values.put(key, ((CodedEnum) value).getCode());
+        }
+
+        @Override
+        public ColumnType getColumnType() {
+            return ColumnType.INTEGER;
+        }
+    }
+
+    /**
+     * @return the codes of the constants of a {@link CodedEnum}, in declaration order
+     * @throws IllegalArgumentException if the enum does not implement {@link CodedEnum}
+     */
+    static int[] codes(Class<?> enumClass) {
+        if (!CodedEnum.class.isAssignableFrom(enumClass)) {
+            throw new IllegalArgumentException("Enum " + enumClass.getName() + " does not implement " + CodedEnum.class.getName());
+        }
+        Object[] constants = enumClass.getEnumConstants();
+        int[] codes = new int[constants.length];
+        for (int i = 0; i < constants.length; i++) {
+            codes[i] = ((CodedEnum) constants[i]).getCode();
+        }
+        return codes;
+    }
+
+    /**
+     * Create a converter for an enum field that is stored in the given mode
+     *
+     * @param type the type of the field
+     * @param mode the storage mode
+     * @return the converter or null if the type isn't an enum
+     */
+    public static FieldConverter<?> create(Type type, EnumStorage.Mode mode) {
+        Class<Enum> enumClass = enumClass(type);
+        if (enumClass == null) {
+            return null;
+        }
+        switch (mode) {
+            case ORDINAL:
+                return new OrdinalEnumConverter<Enum>(enumClass);
+            case CODE:
+                return new CodedEnumConverter<Enum>(enumClass);
+            default:
+                return new EnumConverter<Enum>(enumClass);
+        }
+    }
+
+    private static Class<Enum> enumClass(Type type) {
         // enum can also be declared as Enum<EnumType>
         if (type instanceof ParameterizedType) {
             if (((ParameterizedType) type).getRawType() == Enum.class) {
@@ -64,8 +179,17 @@ public class EnumFieldConverterFactory implements FieldConverterFactory {
         }
         Class<?> clz = (Class<?>) type;
         if (clz.isEnum()) {
-            return new EnumConverter<Enum>((Class<Enum>) clz);
+            return (Class<Enum>) clz;
         }
         return null;
     }
+
+    @Override
+    public FieldConverter<?> create(Cupboard cupboard, Type type) {
+        Class<Enum> enumClass = enumClass(type);
+        if (enumClass == null) {
+            return null;
+        }
+        return create(enumClass, cupboard.getEnumStorage(enumClass));
+    }
 }
@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2016 Little Robots
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package nl.qbusict.cupboard.internal.convert;
+
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Collections that keep the blob read from the cursor and only decode it when they are accessed. A collection that was not
+ * accessed is written back as the original blob.
+ */
+final class LazyCollections {
+
+    private LazyCollections() {
+    }
+
+    /**
+     * A collection that hasn't been decoded yet
+     */
+    interface Lazy {
+        /**
+         * @return the blob this collection was read from if it was encoded by the codec and hasn't been accessed, null otherwise
+         */
+        byte[] getBlob(ValueCodec codec);
+    }
+
+    static Object wrap(ValueCodec codec, Class<?> type, byte[] blob) {
+        if (type == List.class || type == Collection.class) {
+            return new LazyList(codec, blob);
+        } else if (type == Set.class) {
+            return new LazySet(codec, blob);
+        } else if (type == Map.class) {
+            return new LazyMap(codec, blob);
+        }
+        return CollectionFieldConverterFactory.decode(codec, blob);
+    }
+
+    static class LazyList extends AbstractList<Object> implements Lazy {
+        private final ValueCodec mCodec;
+        private byte[] mBlob;
+        private List<Object> mList;
+
+        LazyList(ValueCodec codec, byte[] blob) {
+            mCodec = codec;
+            mBlob = blob;
+        }
+
+        private List<Object> list() {
+            if (mList == null) {
+                @SuppressWarnings("unchecked")
+                List<Object> list = (List<Object>) CollectionFieldConverterFactory.decode(mCodec, mBlob);
+                mList = list;
+                mBlob = null;
+            }
+            return mList;
+        }
+
+        @Override
+        public byte[] getBlob(ValueCodec codec) {
+            return codec == mCodec ? mBlob : null;
+        }
+
+        @Override
+        public Object get(int location) {
+            return list().get(location);
+        }
+
+        @Override
+        public int size() {
+            return list().size();
+        }
+
+        @Override
+        public Object set(int location, Object object) {
+            return list().set(location, object);
+        }
+
+        @Override
+        public void add(int location, Object object) {
+            list().add(location, object);
+            modCount++;
+        }
+
+        @Override
+        public Object remove(int location) {
+            modCount++;
+            return list().remove(location);
+        }
+    }
+
+    static class LazySet extends AbstractSet<Object> implements Lazy {
+        private final ValueCodec mCodec;
+        private byte[] mBlob;
+        private Set<Object> mSet;
+
+        LazySet(ValueCodec codec, byte[] blob) {
+            mCodec = codec;
+            mBlob = blob;
+        }
+
+        private Set<Object> set() {
+            if (mSet == null) {
+                @SuppressWarnings("unchecked")
+                Set<Object> set = (Set<Object>) CollectionFieldConverterFactory.decode(mCodec, mBlob);
+                mSet = set;
+                mBlob = null;
+            }
+            return mSet;
+        }
+
+        @Override
+        public byte[] getBlob(ValueCodec codec) {
+            return codec == mCodec ? mBlob : null;
+        }
+
+        @Override
+        public Iterator<Object> iterator() {
+            return set().iterator();
+        }
+
+        @Override
+        public int size() {
+            return set().size();
+        }
+
+        @Override
+        public boolean contains(Object object) {
+            return set().contains(object);
+        }
+
+        @Override
+        public boolean add(Object object) {
+            return set().add(object);
+        }
+
+        @Override
+        public boolean remove(Object object) {
+            return set().remove(object);
+        }
+    }
+
+    static class LazyMap extends AbstractMap<Object, Object> implements Lazy {
+        private final ValueCodec mCodec;
+        private byte[] mBlob;
+        private Map<Object, Object> mMap;
+
+        LazyMap(ValueCodec codec, byte[] blob) {
+            mCodec = codec;
+            mBlob = blob;
+        }
+
+        private Map<Object, Object> map() {
+            if (mMap == null) {
+                @SuppressWarnings("unchecked")
+                Map<Object, Object> map = (Map<Object, Object>) CollectionFieldConverterFactory.decode(mCodec, mBlob);
+                mMap = map;
+                mBlob = null;
+            }
+            return mMap;
+        }
+
+        @Override
+        public byte[] getBlob(ValueCodec codec) {
+            return codec == mCodec ? mBlob : null;
+        }
+
+        @Override
+        public Set<Entry<Object, Object>> entrySet() {
+            return map().entrySet();
+        }
+
+        @Override
+        public int size() {
+            return map().size();
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return map().containsKey(key);
+        }
+
+        @Override
+        public Object get(Object key) {
+            return map().get(key);
+        }
+
+        @Override
+        public Object put(Object key, Object value) {
+            return map().put(key, value);
+        }
+
+        @Override
+        public Object remove(Object key) {
+            return map().remove(key);
+        }
+    }
+}
@@ -0,0 +1,331 @@
+/*
+ * Copyright (C) 2016 Little Robots
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package nl.qbusict.cupboard.internal.convert;
+
+import android.content.ContentValues;
+import android.database.CharArrayBuffer;
+import android.database.Cursor;
+
+import java.lang.reflect.Type;
+import java.sql.Timestamp;
+import java.util.Calendar;
+import java.util.Date;
+
+import nl.qbusict.cupboard.Cupboard;
+import nl.qbusict.cupboard.annotation.TimeStorage;
+import nl.qbusict.cupboard.convert.EntityConverter.ColumnType;
+import nl.qbusict.cupboard.convert.FieldConverter;
+import nl.qbusict.cupboard.convert.FieldConverterFactory;
+import nl.qbusict.cupboard.convert.TextColumns;
+
+/**
+ * Converters for {@link Date}, {@link Timestamp} and {@link Calendar} fields. Values are converted through milliseconds since the
+ * epoch, only microseconds storage includes the sub millisecond part of a timestamp. The text format is written and parsed by hand,
+ * without {@link java.text.SimpleDateFormat} or an intermediate string.
+ */
+public class TimeFieldConverterFactory implements FieldConverterFactory {
+    private static final long MICROS_PER_SECOND = 1000000L;
+    private static final long MICROS_PER_DAY = 86400L * MICROS_PER_SECOND;
+    private static final long MILLIS_PER_DAY = 86400000L;
+
+    private enum Kind {
+        DATE, TIMESTAMP, CALENDAR
+    }
+
+    private static class TimeConverter implements FieldConverter<Object> {
+        private final Kind mKind;
+        private final TimeStorage.Mode mMode;
+
+        TimeConverter(Kind kind, TimeStorage.Mode mode) {
+            this.mKind = kind;
+            this.mMode = mode;
+        }
+
+        @Override
+        public Object fromCursorValue(Cursor cursor, int columnIndex) {
+            long millis;
+            // the part of the time below a millisecond, only used for a timestamp
+            int subMillisMicros = 0;
+            switch (mMode) {
+                case SECONDS:
+                    millis = cursor.getLong(columnIndex) * 1000;
+                    break;
+                case MICROS:
+                case ISO_TEXT:
+                    long micros;
+                    if (mMode == TimeStorage.Mode.MICROS) {
+                        micros = cursor.getLong(columnIndex);
+                    } else {
+                        CharArrayBuffer buffer = TextColumns.read(cursor, columnIndex);
+                        micros = parseIso(buffer.data, buffer.sizeCopied);
+                    }
+                    millis = floorDiv(micros, 1000);
+                    subMillisMicros = (int) floorMod(micros, 1000);
+                    break;
+                default:
+                    millis = cursor.getLong(columnIndex);
+                    break;
+            }
+            switch (mKind) {
+                case TIMESTAMP:
+                    Timestamp timestamp = new Timestamp(millis);
+                    if (subMillisMicros != 0) {
+                        timestamp.setNanos(timestamp.getNanos() + subMillisMicros * 1000);
+                    }
+                    return timestamp;
+                case CALENDAR:
+                    Calendar calendar = Calendar.getInstance();
+                    calendar.setTimeInMillis(millis);
+                    return calendar;
+                default:
+                    return new Date(millis);
+            }
+        }
+
+        @Override
+        public void toContentValue(Object value, String key, ContentValues values) {
+            long millis = value instanceof Calendar ? ((Calendar) value).getTimeInMillis() : ((Date) value).getTime();
+            switch (mMode) {
+                case SECONDS:
+                    values.put(key, floorDiv(millis, 1000));
+                    break;
+                case MICROS:
+                    values.put(key, toMicros(millis, value));
+                    break;
+                case ISO_TEXT:
+                    values.put(key, formatIso(millis));
+                    break;
+                default:
+                    values.put(key, millis);
+                    break;
+            }
+        }
+
+        @Override
+        public ColumnType getColumnType() {
+            return mMode == TimeStorage.Mode.ISO_TEXT ? ColumnType.TEXT : ColumnType.INTEGER;
+        }
+    }
+
+    /**
+     * Create a converter for a time field that is stored in the given mode
+     *
+     * @param type the type of the field
+     * @param mode the storage mode
+     * @return the converter or null if the type isn't a {@link Date}, {@link Timestamp} or {@link Calendar}
+     */
+    public static FieldConverter<?> create(Type type, TimeStorage.Mode mode) {
+        if (type == Date.class) {
+            return new TimeConverter(Kind.DATE, mode);
+        } else if (type == Timestamp.class) {
+            return new TimeConverter(Kind.TIMESTAMP, mode);
+        } else if (type == Calendar.class) {
+            return new TimeConverter(Kind.CALENDAR, mode);
+        }
+        return null;
+    }
+
+    /**
+     * Convert a time to the value that is stored for it, to use as a selection argument
+     *
+     * @param time the time
+     * @param mode the storage mode
+     * @return the stored value as a string
+     */
+    public static String toSelectionArg(Date time, TimeStorage.Mode mode) {
+        long millis = time.getTime();
+        switch (mode) {
+            case SECONDS:
+                return String.valueOf(floorDiv(millis, 1000));
+            case MICROS:
+                return String.valueOf(toMicros(millis, time));
+            case ISO_TEXT:
+                return formatIso(millis);
+            default:
+                return String.valueOf(millis);
+        }
+    }
+
+    private static long toMicros(long millis, Object value) {
+        if (millis > Long.MAX_VALUE / 1000 || millis < Long.MIN_VALUE / 1000) {
+            throw new IllegalArgumentException("Time " + millis + " can't be stored as microseconds");
+        }
+        long micros = millis * 1000;
+        if (value instanceof Timestamp) {
+            // getTime() includes the whole milliseconds of the nanos
+            micros += (((Timestamp) value).getNanos() / 1000) % 1000;
+        }
+        return micros;
+    }
+
+    private static long floorDiv(long x, long y) {
+        long q = x / y;
+        return (x % y) < 0 ? q - 1 : q;
+    }
+
+    private static long floorMod(long x, long y) {
+        return x - floorDiv(x, y) * y;
+    }
+
+    /**
+     * Format as <code>yyyy-MM-ddTHH:mm:ss.SSSZ</code> in UTC. The length is fixed, so the text sorts chronologically.
+     */
+    static String formatIso(long millis) {
+        long days = floorDiv(millis, MILLIS_PER_DAY);
+        long millisOfDay = millis - days * MILLIS_PER_DAY;
+        // civil from days, see http://howardhinnant.github.io/date_algorithms.html
+        long z = days + 719468;
+        long era = (z >= 0 ? z : z - 146096) / 146097;
+        long doe = z - era * 146097;
+        long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        long mp = (5 * doy + 2) / 153;
+        int day = (int) (doy - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+        if (year < 0 || year > 9999) {
+            throw new IllegalArgumentException("Year " + year + " can't be stored as ISO 8601 text");
+        }
+        char[] chars = new char[24];
+        put(chars, 0, (int) year, 4);
+        chars[4] = '-';
+        put(chars, 5, month, 2);
+        chars[7] = '-';
+        put(chars, 8, day, 2);
+        chars[10] = 'T';
+        long seconds = millisOfDay / 1000;
+        put(chars, 11, (int) (seconds / 3600), 2);
+        chars[13] = ':';
+        put(chars, 14, (int) (seconds / 60 % 60), 2);
+        chars[16] = ':';
+        put(chars, 17, (int) (seconds % 60), 2);
+        chars[19] = '.';
+        put(chars, 20, (int) (millisOfDay % 1000), 3);
+        chars[23] = 'Z';
+        return new String(chars);
+    }
+
+    private static void put(char[] chars, int offset, int value, int digits) {
+        for (int i = offset + digits - 1; i >= offset; i--) {
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    /**
+     * Parse <code>yyyy-MM-dd[(T| )HH:mm[:ss[.fraction]]][Z|(+|-)HH[:]mm]</code>, a missing offset is taken as UTC. Digits of
+     * the fraction beyond microseconds are dropped.
+     *
+     * @return the microseconds since the epoch
+     * @throws IllegalArgumentException if the text is not in this format
+     */
+    static long parseIso(char[] data, int length) {
+        int year = digits(data, length, 0, 4);
+        int month = digits(data, length, 5, 2);
+        int day = digits(data, length, 8, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31 || data[4] != '-' || data[7] != '-') {
+            throw invalid(data, length);
+        }
+        long micros = daysFromCivil(year, month, day) * MICROS_PER_DAY;
+        int pos = 10;
+        if (pos < length && (data[pos] == 'T' || data[pos] == ' ')) {
+            int hour = digits(data, length, pos + 1, 2);
+            int minute = digits(data, length, pos + 4, 2);
+            if (hour < 0 || hour > 23 || minute < 0 || minute > 59 || data[pos + 3] != ':') {
+                throw invalid(data, length);
+            }
+            micros += (hour * 3600L + minute * 60L) * MICROS_PER_SECOND;
+            pos += 6;
+            if (pos < length && data[pos] == ':') {
+                int second = digits(data, length, pos + 1, 2);
+                if (second < 0 || second > 59) {
+                    throw invalid(data, length);
+                }
+                micros += second * MICROS_PER_SECOND;
+                pos += 3;
+                if (pos < length && data[pos] == '.') {
+                    pos++;
+                    int start = pos;
+                    long fraction = 0;
+                    long scale = MICROS_PER_SECOND;
+                    for (; pos < length && data[pos] >= '0' && data[pos] <= '9'; pos++) {
+                        if (scale > 1) {
+                            scale /= 10;
+                            fraction += (data[pos] - '0') * scale;
+                        }
+                    }
+                    if (pos == start) {
+                        throw invalid(data, length);
+                    }
+                    micros += fraction;
+                }
+            }
+        }
+        if (pos < length) {
+            char c = data[pos];
+            if (c == 'Z' && pos + 1 == length) {
+                return micros;
+            }
+            if (c != '+' && c != '-') {
+                throw invalid(data, length);
+            }
+            int hours = digits(data, length, pos + 1, 2);
+            int minutesPos = pos + 3 < length && data[pos + 3] == ':' ? pos + 4 : pos + 3;
+            int minutes = digits(data, length, minutesPos, 2);
+            if (hours < 0 || minutes < 0 || minutesPos + 2 != length) {
+                throw invalid(data, length);
+            }
+            long offset = (hours * 3600L + minutes * 60L) * MICROS_PER_SECOND;
+            micros += c == '+' ? -offset : offset;
+        }
+        return micros;
+    }
+
+    private static int digits(char[] data, int length, int offset, int count) {
+        if (offset + count > length) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = offset; i < offset + count; i++) {
+            char c = data[i];
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static long daysFromCivil(long year, int month, int day) {
+        year -= month <= 2 ? 1 : 0;
+        long era = (year >= 0 ? year : year - 399) / 400;
+        long yoe = year - era * 400;
+        long doy = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097 + doe - 719468;
+    }
+
+    private static IllegalArgumentException invalid(char[] data, int length) {
+        return new IllegalArgumentException("Invalid ISO 8601 time: " + new String(data, 0, length));
+    }
+
+    @Override
+    public FieldConverter<?> create(Cupboard cupboard, Type type) {
+        return create(type, TimeStorage.Mode.MILLIS);
+    }
+}
@@ -0,0 +1,432 @@
+/*
+ * Copyright (C) 2016 Little Robots
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package nl.qbusict.cupboard.internal.convert;
+
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import nl.qbusict.cupboard.Cupboard;
+import nl.qbusict.cupboard.annotation.EnumStorage;
+import nl.qbusict.cupboard.convert.CodedEnum;
+import nl.qbusict.cupboard.convert.EntityConverter;
+
+/**
+ * Encodes a single value in the binary format of {@link CollectionFieldConverterFactory}
+ */
+abstract class ValueCodec {
+
+    abstract void write(BlobWriter out, Object value);
+
+    abstract Object read(BlobReader in);
+
+    final void writeNullable(BlobWriter out, Object value) {
+        if (value == null) {
+            out.writeByte(0);
+        } else {
+            out.writeByte(1);
+            write(out, value);
+        }
+    }
+
+    final Object readNullable(BlobReader in) {
+        return in.readByte() == 0 ? null : read(in);
+    }
+
+    /**
+     * Get a codec for a type, or null if the type can't be encoded. Supported are boxed primitives, strings, byte arrays,
+     * enums, registered entities, which are stored by id, and collections and maps of these.
+     */
+    static ValueCodec forType(Cupboard cupboard, Type type) {
+        if (type instanceof ParameterizedType) {
+            ParameterizedType parameterized = (ParameterizedType) type;
+            if (!(parameterized.getRawType() instanceof Class)) {
+                return null;
+            }
+            Class<?> raw = (Class<?>) parameterized.getRawType();
+            Type[] args = parameterized.getActualTypeArguments();
+            if (Map.class.isAssignableFrom(raw) && args.length == 2 && canCreate(raw, Map.class)) {
+                ValueCodec key = forType(cupboard, args[0]);
+                ValueCodec value = forType(cupboard, args[1]);
+                return key != null && value != null ? new MapCodec(raw, key, value) : null;
+            }
+            if (Collection.class.isAssignableFrom(raw) && args.length == 1 && canCreate(raw, Collection.class, List.class, Set.class)) {
+                ValueCodec element = forType(cupboard, args[0]);
+                return element != null ? new CollectionCodec(raw, element) : null;
+            }
+            return null;
+        }
+        if (!(type instanceof Class)) {
+            return null;
+        }
+        Class<?> clz = (Class<?>) type;
+        if (clz == String.class) {
+            return STRING;
+        } else if (clz == Integer.class) {
+            return INTEGER;
+        } else if (clz == Long.class) {
+            return LONG;
+        } else if (clz == Short.class) {
+            return SHORT;
+        } else if (clz == Byte.class) {
+            return BYTE;
+        } else if (clz == Character.class) {
+            return CHARACTER;
+        } else if (clz == Boolean.class) {
+            return BOOLEAN;
+        } else if (clz == Float.class) {
+            return FLOAT;
+        } else if (clz == Double.class) {
+            return DOUBLE;
+        } else if (clz == byte[].class) {
+            return BYTES;
+        } else if (clz.isEnum()) {
+            return new EnumCodec(clz, cupboard.getEnumStorage(clz));
+        } else if (cupboard.isRegisteredEntity(clz)) {
+            return new EntityCodec(clz, cupboard.getEntityConverter(clz));
+        }
+        return null;
+    }
+
+    private static boolean canCreate(Class<?> raw, Class<?>... interfaces) {
+        if (raw.isInterface()) {
+            return Arrays.asList(interfaces).contains(raw);
+        }
+        if (Modifier.isAbstract(raw.getModifiers())) {
+            return false;
+        }
+        try {
+            raw.getConstructor();
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    private static Object newInstance(Class<?> clz) {
+        try {
+            return clz.newInstance();
+        } catch (InstantiationException e) {
+            throw new RuntimeException(e);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    static final ValueCodec STRING = new ValueCodec() {
+        @Override
+        void write(BlobWriter out, Object value) {
+            out.writeString((String) value);
+        }
+
+        @Override
+        Object read(BlobReader in) {
+            return in.readString();
+        }
+    };
+
+    static final ValueCodec INTEGER = new ValueCodec() {
+        @Override
+        void write(BlobWriter out, Object value) {
+            out.writeSignedVarLong((Integer) value);
+        }
+
+        @Override
+        Object read(BlobReader in) {
+            return (int) in.readSignedVarLong();
+        }
+    };
+
+    static final ValueCodec LONG = new ValueCodec() {
+        @Override
+        void write(BlobWriter out, Object value) {
+            out.writeSignedVarLong((Long) value);
+        }
+
+        @Override
+        Object read(BlobReader in) {
+            return in.readSignedVarLong();
+        }
+    };
+
+    static final ValueCodec SHORT = new ValueCodec() {
+        @Override
+        void write(BlobWriter out, Object value) {
+            out.writeSignedVarLong((Short) value);
+        }
+
+        @Override
+        Object read(BlobReader in) {
+            return (short) in.readSignedVarLong();
+        }
+    };
+
+    static final ValueCodec BYTE = new ValueCodec() {
+        @Override
+        void write(BlobWriter out, Object value) {
+            out.writeByte((Byte) value);
+        }
+
+        @Override
+        Object read(BlobReader in) {
+            return (byte) in.readByte();
+        }
+    };
+
+    static final ValueCodec CHARACTER = new ValueCodec() {
+        @Override
+        void write(BlobWriter out, Object value) {
+            out.writeVarLong((Character) value);
+        }
+
+        @Override
+        Object read(BlobReader in) {
+            return (char) in.readVarLong();
+        }
+    };
+
+    static final ValueCodec BOOLEAN = new ValueCodec() {
+        @Override
+        void write(BlobWriter out, Object value) {
+            out.writeByte((Boolean) value ? 1 : 0);
+        }
+
+        @Override
+        Object read(BlobReader in) {
+            return in.readByte() != 0;
+        }
+    };
+
+    static final ValueCodec FLOAT = new ValueCodec() {
+        @Override
+        void write(BlobWriter out, Object value) {
+            out.writeFixed32(Float.floatToIntBits((Float) value));
+        }
+
+        @Override
+        Object read(BlobReader in) {
+            return Float.intBitsToFloat(in.readFixed32());
+        }
+    };
+
+    static final ValueCodec DOUBLE = new ValueCodec() {
+        @Override
+        void write(BlobWriter out, Object value) {
+            out.writeFixed64(Double.doubleToLongBits((Double) value));
+        }
+
+        @Override
+        Object read(BlobReader in) {
+            return Double.longBitsToDouble(in.readFixed64());
+        }
+    };
+
+    static final ValueCodec BYTES = new ValueCodec() {
+        @Override
+        void write(BlobWriter out, Object value) {
+            out.writeBytes((byte[]) value);
+        }
+
+        @Override
+        Object read(BlobReader in) {
+            return in.readBytes();
+        }
+    };
+
+    /**
+     * Stores enums like {@link EnumFieldConverterFactory} does, following the {@link EnumStorage} registered for the enum
+     */
+    private static class EnumCodec extends ValueCodec {
+        private final Class<?> mEnumClass;
+        private final EnumStorage.Mode mMode;
+        private final Object[] mConstants;
+        private final int[] mCodes;
+
+        EnumCodec(Class<?> enumClass, EnumStorage.Mode mode) {
+            mEnumClass = enumClass;
+            mMode = mode;
+            mConstants = enumClass.getEnumConstants();
+            mCodes = mode == EnumStorage.Mode.CODE ? EnumFieldConverterFactory.codes(enumClass) : null;
+        }
+
+        @Override
+        void write(BlobWriter out, Object value) {
+            switch (mMode) {
+                case ORDINAL:
+                    out.writeVarLong(((Enum<?>) value).ordinal());
+                    break;
+                case CODE:
+                    out.writeSignedVarLong(((CodedEnum) value).getCode());
+                    break;
+                default:
+                    out.writeString(((Enum<?>) value).name());
+            }
+        }
+
+        @Override
+        Object read(BlobReader in) {
+            switch (mMode) {
+                case ORDINAL:
+                    long ordinal = in.readVarLong();
+                    if (ordinal < 0 || ordinal >= mConstants.length) {
+                        throw new IllegalArgumentException("No enum constant " + mEnumClass.getName() + " with ordinal " + ordinal);
+                    }
+                    return mConstants[(int) ordinal];
+                case CODE:
+                    long code = in.readSignedVarLong();
+                    for (int i = 0; i < mCodes.length; i++) {
+                        if (mCodes[i] == code) {
+                            return mConstants[i];
+                        }
+                    }
+                    throw new IllegalArgumentException("No enum constant " + mEnumClass.getName() + " with code " + code);
+                default:
+                    @SuppressWarnings("unchecked")
+                    Object constant = Enum.valueOf((Class) mEnumClass, in.readString());
+                    return constant;
+            }
+        }
+    }
+
+    /**
+     * Stores the id of a registered entity, like a field referencing an entity
+     */
+    private static class EntityCodec extends ValueCodec {
+        private final Class<?> mEntityClass;
+        private final EntityConverter<Object> mConverter;
+
+        EntityCodec(Class<?> entityClass, EntityConverter<?> converter) {
+            mEntityClass = entityClass;
+            @SuppressWarnings("unchecked")
+            EntityConverter<Object> objectConverter = (EntityConverter<Object>) converter;
+            mConverter = objectConverter;
+        }
+
+        @Override
+        void write(BlobWriter out, Object value) {
+            Long id = mConverter.getId(value);
+            if (id == null) {
+                throw new IllegalArgumentException("Cannot store a reference to an entity without an id: " + value);
+            }
+            out.writeSignedVarLong(id);
+        }
+
+        @Override
+        Object read(BlobReader in) {
+            Object entity = newInstance(mEntityClass);
+            mConverter.setId(in.readSignedVarLong(), entity);
+            return entity;
+        }
+    }
+
+    static class CollectionCodec extends ValueCodec {
+        private final Class<?> mCollectionClass;
+        private final ValueCodec mElement;
+
+        CollectionCodec(Class<?> collectionClass, ValueCodec element) {
+            mCollectionClass = collectionClass;
+            mElement = element;
+        }
+
+        Class<?> getCollectionClass() {
+            return mCollectionClass;
+        }
+
+        @Override
+        void write(BlobWriter out, Object value) {
+            Collection<?> collection = (Collection<?>) value;
+            out.writeVarLong(collection.size());
+            for (Object element : collection) {
+                mElement.writeNullable(out, element);
+            }
+        }
+
+        @Override
+        Object read(BlobReader in) {
+            int size = in.readLength();
+            Collection<Object> collection = newCollection(size);
+            for (int i = 0; i < size; i++) {
+                collection.add(mElement.readNullable(in));
+            }
+            return collection;
+        }
+
+        private Collection<Object> newCollection(int size) {
+            if (mCollectionClass == List.class || mCollectionClass == Collection.class) {
+                return new ArrayList<Object>(size);
+            } else if (mCollectionClass == Set.class) {
+                return new LinkedHashSet<Object>(size * 4 / 3 + 1);
+            }
+            @SuppressWarnings("unchecked")
+            Collection<Object> collection = (Collection<Object>) newInstance(mCollectionClass);
+            return collection;
+        }
+    }
+
+    static class MapCodec extends ValueCodec {
+        private final Class<?> mMapClass;
+        private final ValueCodec mKey;
+        private final ValueCodec mValue;
+
+        MapCodec(Class<?> mapClass, ValueCodec key, ValueCodec value) {
+            mMapClass = mapClass;
+            mKey = key;
+            mValue = value;
+        }
+
+        Class<?> getMapClass() {
+            return mMapClass;
+        }
+
+        @Override
+        void write(BlobWriter out, Object value) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            out.writeVarLong(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                mKey.writeNullable(out, entry.getKey());
+                mValue.writeNullable(out, entry.getValue());
+            }
+        }
+
+        @Override
+        Object read(BlobReader in) {
+            int size = in.readLength();
+            Map<Object, Object> map;
+            if (mMapClass == Map.class) {
+                map = new LinkedHashMap<Object, Object>(size * 4 / 3 + 1);
+            } else {
+                @SuppressWarnings("unchecked")
+                Map<Object, Object> instance = (Map<Object, Object>) newInstance(mMapClass);
+                map = instance;
+            }
+            for (int i = 0; i < size; i++) {
+                Object key = mKey.readNullable(in);
+                map.put(key, mValue.readNullable(in));
+            }
+            return map;
+        }
+    }
+}
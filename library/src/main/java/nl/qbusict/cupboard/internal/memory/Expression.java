@@ -0,0 +1,971 @@
+/*
+ * Copyright (C) 2016 Little Robots
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package nl.qbusict.cupboard.internal.memory;
+
+import android.database.SQLException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import static nl.qbusict.cupboard.internal.memory.Values.AFFINITY_INTEGER;
+import static nl.qbusict.cupboard.internal.memory.Values.AFFINITY_NONE;
+import static nl.qbusict.cupboard.internal.memory.Values.AFFINITY_NUMERIC;
+import static nl.qbusict.cupboard.internal.memory.Values.AFFINITY_REAL;
+import static nl.qbusict.cupboard.internal.memory.Values.AFFINITY_TEXT;
+
+/**
+ * An sql expression. Column references are resolved against a {@link Source} before evaluation.
+ */
+abstract class Expression {
+    /**
+     * The span of this expression in the sql, used to name result columns
+     */
+    int mStart;
+    int mEnd;
+
+    abstract Object evaluate(Scope scope);
+
+    /**
+     * Resolve the column references in this expression
+     */
+    void resolve(Source source) {
+    }
+
+    /**
+     * @return the affinity of this expression, only column references and casts have an affinity
+     */
+    int affinity() {
+        return AFFINITY_NONE;
+    }
+
+    /**
+     * @return true if this expression contains an aggregate function
+     */
+    boolean isAggregate() {
+        return false;
+    }
+
+    /**
+     * @return the name of a result column for this expression, a column name or the sql of the expression
+     */
+    String columnName(String sql) {
+        return sql.substring(mStart, mEnd);
+    }
+
+    static boolean isTrue(Object value) {
+        Boolean truth = Values.truth(value);
+        return truth != null && truth;
+    }
+
+    private static Object bool(boolean value) {
+        return value ? 1L : 0L;
+    }
+
+    /**
+     * The columns an expression can refer to
+     */
+    static final class Source {
+        final String mTable;
+        final String[] mNames;
+        final int[] mAffinities;
+        final boolean mHasRowId;
+
+        Source(String table, String[] names, int[] affinities, boolean hasRowId) {
+            mTable = table;
+            mNames = names;
+            mAffinities = affinities;
+            mHasRowId = hasRowId;
+        }
+
+        /**
+         * @return the index of a column, the number of columns for the rowid or -1 if not found
+         */
+        int indexOf(String name) {
+            for (int i = 0; i < mNames.length; i++) {
+                if (mNames[i].equalsIgnoreCase(name)) {
+                    return i;
+                }
+            }
+            if (mHasRowId && ("rowid".equalsIgnoreCase(name) || "_rowid_".equalsIgnoreCase(name) || "oid".equalsIgnoreCase(name))) {
+                return mNames.length;
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * The state of a single execution of a statement
+     */
+    static final class Execution {
+        final MemoryDatabase mDatabase;
+        final Object[] mArgs;
+        final Map<Expression, Object> mSubqueryResults = new HashMap<Expression, Object>();
+
+        Execution(MemoryDatabase database, Object[] args) {
+            mDatabase = database;
+            mArgs = args;
+        }
+    }
+
+    /**
+     * The row an expression is evaluated for. A row holds the values of the source columns followed by the rowid.
+     * When aggregating, the group holds all rows of the group and the row is the last row of the group.
+     */
+    static final class Scope {
+        final Execution mExecution;
+        Object[] mRow;
+        List<Object[]> mGroup;
+        Object[] mResult;
+
+        Scope(Execution execution) {
+            mExecution = execution;
+        }
+    }
+
+    static final class Literal extends Expression {
+        final Object mValue;
+
+        Literal(Object value) {
+            mValue = value;
+        }
+
+        @Override
+        Object evaluate(Scope scope) {
+            return mValue;
+        }
+    }
+
+    static final class Parameter extends Expression {
+        final int mIndex;
+
+        Parameter(int index) {
+            mIndex = index;
+        }
+
+        @Override
+        Object evaluate(Scope scope) {
+            Object[] args = scope.mExecution.mArgs;
+            return args != null && mIndex < args.length ? Values.normalize(args[mIndex]) : null;
+        }
+    }
+
+    static final class ColumnRef extends Expression {
+        final String mTable;
+        final String mName;
+        final boolean mQuoted;
+        private int mIndex = -1;
+        private int mAffinity;
+        private String mResolvedName;
+
+        ColumnRef(String table, String name, boolean quoted) {
+            mTable = table;
+            mName = name;
+            mQuoted = quoted;
+        }
+
+        @Override
+        void resolve(Source source) {
+            int index = source == null ? -1 : source.indexOf(mName);
+            if (index == -1 || (mTable != null && source.mTable != null && !mTable.equalsIgnoreCase(source.mTable))) {
+                if (mQuoted && mTable == null) {
+                    // sqlite treats a double quoted string that isn't a column as a string literal
+                    mIndex = -2;
+                    return;
+                }
+                throw new SQLException("no such column: " + (mTable != null ? mTable + "." : "") + mName);
+            }
+            mIndex = index;
+            mAffinity = index < source.mNames.length ? source.mAffinities[index] : AFFINITY_INTEGER;
+            mResolvedName = index < source.mNames.length ? source.mNames[index] : mName;
+        }
+
+        @Override
+        Object evaluate(Scope scope) {
+            if (mIndex == -2) {
+                return mName;
+            }
+            return scope.mRow[mIndex];
+        }
+
+        @Override
+        int affinity() {
+            return mIndex == -2 ? AFFINITY_NONE : mAffinity;
+        }
+
+        @Override
+        String columnName(String sql) {
+            return mIndex == -2 ? super.columnName(sql) : mResolvedName;
+        }
+    }
+
+    static final class Unary extends Expression {
+        final String mOperator;
+        final Expression mOperand;
+
+        Unary(String operator, Expression operand) {
+            mOperator = operator;
+            mOperand = operand;
+        }
+
+        @Override
+        void resolve(Source source) {
+            mOperand.resolve(source);
+        }
+
+        @Override
+        boolean isAggregate() {
+            return mOperand.isAggregate();
+        }
+
+        @Override
+        Object evaluate(Scope scope) {
+            Object value = mOperand.evaluate(scope);
+            if (value == null) {
+                return null;
+            }
+            if ("NOT".equals(mOperator)) {
+                return bool(!isTrue(value));
+            } else if ("~".equals(mOperator)) {
+                return ~Values.toLong(value);
+            }
+            Object number = Values.toNumber(value);
+            if ("-".equals(mOperator)) {
+                if (number instanceof Long) {
+                    long l = (Long) number;
+                    return l == Long.MIN_VALUE ? (Object) (-(double) l) : (Object) (-l);
+                }
+                return -((Double) number);
+            }
+            return value;
+        }
+    }
+
+    static final class Binary extends Expression {
+        final String mOperator;
+        final Expression mLeft;
+        final Expression mRight;
+
+        Binary(String operator, Expression left, Expression right) {
+            mOperator = operator;
+            mLeft = left;
+            mRight = right;
+        }
+
+        @Override
+        void resolve(Source source) {
+            mLeft.resolve(source);
+            mRight.resolve(source);
+        }
+
+        @Override
+        boolean isAggregate() {
+            return mLeft.isAggregate() || mRight.isAggregate();
+        }
+
+        @Override
+        Object evaluate(Scope scope) {
+            String op = mOperator;
+            if ("AND".equals(op)) {
+                Boolean left = Values.truth(mLeft.evaluate(scope));
+                if (left != null && !left) {
+                    return 0L;
+                }
+                Boolean right = Values.truth(mRight.evaluate(scope));
+                if (right != null && !right) {
+                    return 0L;
+                }
+                return left == null || right == null ? null : 1L;
+            } else if ("OR".equals(op)) {
+                Boolean left = Values.truth(mLeft.evaluate(scope));
+                if (left != null && left) {
+                    return 1L;
+                }
+                Boolean right = Values.truth(mRight.evaluate(scope));
+                if (right != null && right) {
+                    return 1L;
+                }
+                return left == null || right == null ? null : 0L;
+            }
+            Object left = mLeft.evaluate(scope);
+            Object right = mRight.evaluate(scope);
+            if ("IS".equals(op) || "IS NOT".equals(op)) {
+                Object[] operands = compareOperands(left, mLeft.affinity(), right, mRight.affinity());
+                boolean same = operands[0] == null ? operands[1] == null : operands[1] != null && Values.compare(operands[0], operands[1]) == 0;
+                return bool("IS".equals(op) == same);
+            }
+            if (left == null || right == null) {
+                return null;
+            }
+            if ("||".equals(op)) {
+                return Values.toText(left) + Values.toText(right);
+            }
+            if (op.equals("=") || op.equals("==") || op.equals("!=") || op.equals("<>") || op.equals("<") || op.equals("<=")
+                    || op.equals(">") || op.equals(">=")) {
+                Object[] operands = compareOperands(left, mLeft.affinity(), right, mRight.affinity());
+                int cmp = Values.compare(operands[0], operands[1]);
+                if (op.equals("=") || op.equals("==")) {
+                    return bool(cmp == 0);
+                } else if (op.equals("!=") || op.equals("<>")) {
+                    return bool(cmp != 0);
+                } else if (op.equals("<")) {
+                    return bool(cmp < 0);
+                } else if (op.equals("<=")) {
+                    return bool(cmp <= 0);
+                } else if (op.equals(">")) {
+                    return bool(cmp > 0);
+                }
+                return bool(cmp >= 0);
+            }
+            if (op.equals("&") || op.equals("|") || op.equals("<<") || op.equals(">>")) {
+                long a = Values.toLong(left);
+                long b = Values.toLong(right);
+                if (op.equals("&")) {
+                    return a & b;
+                } else if (op.equals("|")) {
+                    return a | b;
+                } else if (op.equals("<<")) {
+                    return b >= 64 ? 0L : a << b;
+                }
+                return b >= 64 ? (a < 0 ? -1L : 0L) : a >> b;
+            }
+            return arithmetic(op, Values.toNumber(left), Values.toNumber(right));
+        }
+
+        private static Object arithmetic(String op, Object a, Object b) {
+            if (a instanceof Long && b instanceof Long) {
+                long x = (Long) a;
+                long y = (Long) b;
+                if (op.equals("+")) {
+                    long r = x + y;
+                    if (((x ^ r) & (y ^ r)) < 0) {
+                        return (double) x + (double) y;
+                    }
+                    return r;
+                } else if (op.equals("-")) {
+                    long r = x - y;
+                    if (((x ^ y) & (x ^ r)) < 0) {
+                        return (double) x - (double) y;
+                    }
+                    return r;
+                } else if (op.equals("*")) {
+                    long r = x * y;
+                    if (x != 0 && (r / x != y || (x == -1 && y == Long.MIN_VALUE))) {
+                        return (double) x * (double) y;
+                    }
+                    return r;
+                } else if (op.equals("/")) {
+                    if (y == 0) {
+                        return null;
+                    }
+                    if (x == Long.MIN_VALUE && y == -1) {
+                        return -(double) x;
+                    }
+                    return x / y;
+                }
+                if (y == 0) {
+                    return null;
+                }
+                return y == -1 ? 0L : x % y;
+            }
+            double x = ((Number) a).doubleValue();
+            double y = ((Number) b).doubleValue();
+            if (op.equals("+")) {
+                return x + y;
+            } else if (op.equals("-")) {
+                return x - y;
+            } else if (op.equals("*")) {
+                return x * y;
+            } else if (op.equals("/")) {
+                return y == 0 ? null : (Object) (x / y);
+            }
+            long ly = (long) y;
+            return ly == 0 ? null : (Object) (double) ((long) x % ly);
+        }
+    }
+
+    /**
+     * Apply the sqlite comparison affinity rules to two operands
+     */
+    static Object[] compareOperands(Object left, int leftAffinity, Object right, int rightAffinity) {
+        if (isNumeric(leftAffinity) && (rightAffinity == AFFINITY_TEXT || rightAffinity == AFFINITY_NONE)) {
+            right = Values.applyAffinity(right, AFFINITY_NUMERIC);
+        } else if (isNumeric(rightAffinity) && (leftAffinity == AFFINITY_TEXT || leftAffinity == AFFINITY_NONE)) {
+            left = Values.applyAffinity(left, AFFINITY_NUMERIC);
+        } else if (leftAffinity == AFFINITY_TEXT && rightAffinity == AFFINITY_NONE) {
+            right = Values.applyAffinity(right, AFFINITY_TEXT);
+        } else if (rightAffinity == AFFINITY_TEXT && leftAffinity == AFFINITY_NONE) {
+            left = Values.applyAffinity(left, AFFINITY_TEXT);
+        }
+        return new Object[]{left, right};
+    }
+
+    private static boolean isNumeric(int affinity) {
+        return affinity == AFFINITY_INTEGER || affinity == AFFINITY_REAL || affinity == AFFINITY_NUMERIC;
+    }
+
+    static final class IsNull extends Expression {
+        final Expression mOperand;
+        final boolean mNot;
+
+        IsNull(Expression operand, boolean not) {
+            mOperand = operand;
+            mNot = not;
+        }
+
+        @Override
+        void resolve(Source source) {
+            mOperand.resolve(source);
+        }
+
+        @Override
+        boolean isAggregate() {
+            return mOperand.isAggregate();
+        }
+
+        @Override
+        Object evaluate(Scope scope) {
+            return bool((mOperand.evaluate(scope) == null) != mNot);
+        }
+    }
+
+    static final class Between extends Expression {
+        final Expression mOperand;
+        final Expression mLow;
+        final Expression mHigh;
+        final boolean mNot;
+
+        Between(Expression operand, Expression low, Expression high, boolean not) {
+            mOperand = operand;
+            mLow = low;
+            mHigh = high;
+            mNot = not;
+        }
+
+        @Override
+        void resolve(Source source) {
+            mOperand.resolve(source);
+            mLow.resolve(source);
+            mHigh.resolve(source);
+        }
+
+        @Override
+        boolean isAggregate() {
+            return mOperand.isAggregate() || mLow.isAggregate() || mHigh.isAggregate();
+        }
+
+        @Override
+        Object evaluate(Scope scope) {
+            Object value = mOperand.evaluate(scope);
+            Object low = mLow.evaluate(scope);
+            Object high = mHigh.evaluate(scope);
+            if (value == null || low == null || high == null) {
+                return null;
+            }
+            Object[] lower = compareOperands(value, mOperand.affinity(), low, mLow.affinity());
+            Object[] upper = compareOperands(value, mOperand.affinity(), high, mHigh.affinity());
+            boolean between = Values.compare(lower[0], lower[1]) >= 0 && Values.compare(upper[0], upper[1]) <= 0;
+            return bool(between != mNot);
+        }
+    }
+
+    static final class In extends Expression {
+        final Expression mOperand;
+        final List<Expression> mValues;
+        final Select mSubquery;
+        final boolean mNot;
+
+        In(Expression operand, List<Expression> values, Select subquery, boolean not) {
+            mOperand = operand;
+            mValues = values;
+            mSubquery = subquery;
+            mNot = not;
+        }
+
+        @Override
+        void resolve(Source source) {
+            mOperand.resolve(source);
+            if (mValues != null) {
+                for (Expression value : mValues) {
+                    value.resolve(source);
+                }
+            }
+        }
+
+        @Override
+        boolean isAggregate() {
+            return mOperand.isAggregate();
+        }
+
+        @Override
+        Object evaluate(Scope scope) {
+            Object value = mOperand.evaluate(scope);
+            if (value == null) {
+                return null;
+            }
+            boolean found = false;
+            boolean sawNull = false;
+            if (mSubquery != null) {
+                Select.Result result = subqueryResult(scope, this, mSubquery);
+                for (Object[] row : result.mRows) {
+                    Object candidate = row[0];
+                    if (candidate == null) {
+                        sawNull = true;
+                    } else if (matches(value, candidate, result.mAffinities[0])) {
+                        found = true;
+                        break;
+                    }
+                }
+            } else {
+                for (Expression expression : mValues) {
+                    Object candidate = expression.evaluate(scope);
+                    if (candidate == null) {
+                        sawNull = true;
+                    } else if (matches(value, candidate, expression.affinity())) {
+                        found = true;
+                        break;
+                    }
+                }
+            }
+            if (!found && sawNull) {
+                return null;
+            }
+            return bool(found != mNot);
+        }
+
+        private boolean matches(Object value, Object candidate, int candidateAffinity) {
+            Object[] operands = compareOperands(value, mOperand.affinity(), candidate, candidateAffinity);
+            return Values.compare(operands[0], operands[1]) == 0;
+        }
+    }
+
+    static final class Like extends Expression {
+        final Expression mOperand;
+        final Expression mPattern;
+        final Expression mEscape;
+        final boolean mNot;
+        private String mCachedPattern;
+        private Pattern mCompiled;
+
+        Like(Expression operand, Expression pattern, Expression escape, boolean not) {
+            mOperand = operand;
+            mPattern = pattern;
+            mEscape = escape;
+            mNot = not;
+        }
+
+        @Override
+        void resolve(Source source) {
+            mOperand.resolve(source);
+            mPattern.resolve(source);
+            if (mEscape != null) {
+                mEscape.resolve(source);
+            }
+        }
+
+        @Override
+        boolean isAggregate() {
+            return mOperand.isAggregate() || mPattern.isAggregate();
+        }
+
+        @Override
+        Object evaluate(Scope scope) {
+            Object value = mOperand.evaluate(scope);
+            Object pattern = mPattern.evaluate(scope);
+            String escape = mEscape == null ? null : Values.toText(mEscape.evaluate(scope));
+            if (value == null || pattern == null) {
+                return null;
+            }
+            String text = Values.toText(pattern) + (escape == null ? "" : "\u0000" + escape);
+            if (!text.equals(mCachedPattern)) {
+                mCompiled = compile(Values.toText(pattern), escape == null || escape.length() == 0 ? (char) 0 : escape.charAt(0));
+                mCachedPattern = text;
+            }
+            return bool(mCompiled.matcher(Values.toText(value)).matches() != mNot);
+        }
+
+        private static Pattern compile(String like, char escape) {
+            StringBuilder regex = new StringBuilder();
+            StringBuilder literal = new StringBuilder();
+            for (int i = 0; i < like.length(); i++) {
+                char c = like.charAt(i);
+                if (escape != 0 && c == escape && i + 1 < like.length()) {
+                    literal.append(like.charAt(++i));
+                } else if (c == '%' || c == '_') {
+                    if (literal.length() > 0) {
+                        regex.append(Pattern.quote(literal.toString()));
+                        literal.setLength(0);
+                    }
+                    regex.append(c == '%' ? ".*" : ".");
+                } else {
+                    literal.append(c);
+                }
+            }
+            if (literal.length() > 0) {
+                regex.append(Pattern.quote(literal.toString()));
+            }
+            // like is case insensitive for ascii characters only, as in sqlite
+            return Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+        }
+    }
+
+    static final class Cast extends Expression {
+        final Expression mOperand;
+        final int mAffinity;
+
+        Cast(Expression operand, String type) {
+            mOperand = operand;
+            mAffinity = Values.affinity(type);
+        }
+
+        @Override
+        void resolve(Source source) {
+            mOperand.resolve(source);
+        }
+
+        @Override
+        boolean isAggregate() {
+            return mOperand.isAggregate();
+        }
+
+        @Override
+        int affinity() {
+            return mAffinity;
+        }
+
+        @Override
+        Object evaluate(Scope scope) {
+            Object value = mOperand.evaluate(scope);
+            if (value == null) {
+                return null;
+            }
+            switch (mAffinity) {
+                case AFFINITY_TEXT:
+                    return Values.toText(value);
+                case AFFINITY_INTEGER:
+                    return Values.toLong(value);
+                case AFFINITY_REAL:
+                    return Values.toDouble(value);
+                case AFFINITY_NUMERIC:
+                    Object number = Values.toNumber(value);
+                    return Values.applyAffinity(number, AFFINITY_NUMERIC);
+                default:
+                    return Values.toBlob(value);
+            }
+        }
+    }
+
+    static final class Exists extends Expression {
+        final Select mSubquery;
+
+        Exists(Select subquery) {
+            mSubquery = subquery;
+        }
+
+        @Override
+        Object evaluate(Scope scope) {
+            return bool(!subqueryResult(scope, this, mSubquery).mRows.isEmpty());
+        }
+    }
+
+    static final class ScalarSubquery extends Expression {
+        final Select mSubquery;
+
+        ScalarSubquery(Select subquery) {
+            mSubquery = subquery;
+        }
+
+        @Override
+        Object evaluate(Scope scope) {
+            Select.Result result = subqueryResult(scope, this, mSubquery);
+            return result.mRows.isEmpty() ? null : result.mRows.get(0)[0];
+        }
+    }
+
+    /**
+     * Run an uncorrelated subquery once per execution
+     */
+    private static Select.Result subqueryResult(Scope scope, Expression owner, Select subquery) {
+        Execution execution = scope.mExecution;
+        Select.Result result = (Select.Result) execution.mSubqueryResults.get(owner);
+        if (result == null) {
+            result = subquery.execute(execution);
+            execution.mSubqueryResults.put(owner, result);
+        }
+        return result;
+    }
+
+    static final class Function extends Expression {
+        private static final Set<String> AGGREGATES = new HashSet<String>();
+
+        static {
+            AGGREGATES.add("count");
+            AGGREGATES.add("sum");
+            AGGREGATES.add("total");
+            AGGREGATES.add("avg");
+            AGGREGATES.add("min");
+            AGGREGATES.add("max");
+            AGGREGATES.add("group_concat");
+        }
+
+        final String mName;
+        final List<Expression> mArgs;
+        final boolean mDistinct;
+        final boolean mStar;
+        private final boolean mAggregate;
+
+        Function(String name, List<Expression> args, boolean distinct, boolean star) {
+            mName = name.toLowerCase(Locale.US);
+            mArgs = args;
+            mDistinct = distinct;
+            mStar = star;
+            // min and max with more than one argument are scalar functions
+            mAggregate = AGGREGATES.contains(mName) && (mArgs.size() <= 1 || "group_concat".equals(mName));
+        }
+
+        @Override
+        void resolve(Source source) {
+            for (Expression arg : mArgs) {
+                arg.resolve(source);
+            }
+        }
+
+        @Override
+        boolean isAggregate() {
+            if (mAggregate) {
+                return true;
+            }
+            for (Expression arg : mArgs) {
+                if (arg.isAggregate()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        Object evaluate(Scope scope) {
+            if (mAggregate) {
+                return aggregate(scope);
+            } else if ("last_insert_rowid".equals(mName)) {
+                return scope.mExecution.mDatabase.mLastInsertRowId;
+            } else if ("changes".equals(mName)) {
+                return (long) scope.mExecution.mDatabase.mChanges;
+            }
+            List<Object> values = new ArrayList<Object>(mArgs.size());
+            for (Expression arg : mArgs) {
+                values.add(arg.evaluate(scope));
+            }
+            return scalar(values);
+        }
+
+        private Object aggregate(Scope scope) {
+            if (scope.mGroup == null) {
+                throw new SQLException("misuse of aggregate function " + mName + "()");
+            }
+            if (mStar || ("count".equals(mName) && mArgs.isEmpty())) {
+                return (long) scope.mGroup.size();
+            }
+            Scope rowScope = new Scope(scope.mExecution);
+            List<Object> values = new ArrayList<Object>(scope.mGroup.size());
+            Set<Key> seen = mDistinct ? new HashSet<Key>() : null;
+            Expression arg = mArgs.get(0);
+            for (Object[] row : scope.mGroup) {
+                rowScope.mRow = row;
+                Object value = arg.evaluate(rowScope);
+                if (value != null && (seen == null || seen.add(new Key(new Object[]{value})))) {
+                    values.add(value);
+                }
+            }
+            if ("count".equals(mName)) {
+                return (long) values.size();
+            } else if ("min".equals(mName) || "max".equals(mName)) {
+                Object best = null;
+                for (Object value : values) {
+                    if (best == null || ("min".equals(mName) ? Values.compare(value, best) < 0 : Values.compare(value, best) > 0)) {
+                        best = value;
+                    }
+                }
+                return best;
+            } else if ("group_concat".equals(mName)) {
+                if (values.isEmpty()) {
+                    return null;
+                }
+                String separator = mArgs.size() > 1 ? Values.toText(mArgs.get(1).evaluate(scope)) : ",";
+                StringBuilder sb = new StringBuilder();
+                for (int i = 0; i < values.size(); i++) {
+                    if (i > 0) {
+                        sb.append(separator);
+                    }
+                    sb.append(Values.toText(values.get(i)));
+                }
+                return sb.toString();
+            }
+            boolean integer = true;
+            long longSum = 0;
+            double sum = 0;
+            for (Object value : values) {
+                Object number = Values.toNumber(value);
+                if (number instanceof Long && integer && !(value instanceof String)) {
+                    long l = (Long) number;
+                    long r = longSum + l;
+                    if (((longSum ^ r) & (l ^ r)) < 0) {
+                        throw new SQLException("integer overflow");
+                    }
+                    longSum = r;
+                } else {
+                    integer = false;
+                }
+                sum += ((Number) number).doubleValue();
+            }
+            if ("total".equals(mName)) {
+                return sum;
+            } else if (values.isEmpty()) {
+                return null;
+            } else if ("avg".equals(mName)) {
+                return sum / values.size();
+            }
+            return integer ? (Object) longSum : (Object) sum;
+        }
+
+        private Object scalar(List<Object> values) {
+            String name = mName;
+            Object first = values.isEmpty() ? null : values.get(0);
+            if ("coalesce".equals(name) || "ifnull".equals(name)) {
+                for (Object value : values) {
+                    if (value != null) {
+                        return value;
+                    }
+                }
+                return null;
+            } else if ("nullif".equals(name)) {
+                return Values.equal(first, values.get(1)) ? null : first;
+            } else if ("min".equals(name) || "max".equals(name)) {
+                Object best = first;
+                for (Object value : values) {
+                    if (value == null) {
+                        return null;
+                    }
+                    if ("min".equals(name) ? Values.compare(value, best) < 0 : Values.compare(value, best) > 0) {
+                        best = value;
+                    }
+                }
+                return best;
+            } else if ("typeof".equals(name)) {
+                return Values.typeName(first);
+            }
+            if (first == null) {
+                return null;
+            }
+            if ("lower".equals(name)) {
+                return Values.toText(first).toLowerCase(Locale.US);
+            } else if ("upper".equals(name)) {
+                return Values.toText(first).toUpperCase(Locale.US);
+            } else if ("length".equals(name)) {
+                return first instanceof byte[] ? (long) ((byte[]) first).length : (long) Values.toText(first).length();
+            } else if ("abs".equals(name)) {
+                Object number = Values.toNumber(first);
+                return number instanceof Long ? (Object) Math.abs((Long) number) : (Object) Math.abs((Double) number);
+            } else if ("trim".equals(name) || "ltrim".equals(name) || "rtrim".equals(name)) {
+                String text = Values.toText(first);
+                int start = 0;
+                int end = text.length();
+                while (!"rtrim".equals(name) && start < end && text.charAt(start) == ' ') {
+                    start++;
+                }
+                while (!"ltrim".equals(name) && end > start && text.charAt(end - 1) == ' ') {
+                    end--;
+                }
+                return text.substring(start, end);
+            } else if ("substr".equals(name)) {
+                String text = Values.toText(first);
+                long start = Values.toLong(values.get(1));
+                long length = values.size() > 2 ? Values.toLong(values.get(2)) : Integer.MAX_VALUE;
+                long from = start > 0 ? start - 1 : start < 0 ? text.length() + start : -1;
+                long to = from + length;
+                if (start == 0) {
+                    to = length - 1;
+                    from = 0;
+                }
+                from = Math.max(0, Math.min(text.length(), from));
+                to = Math.max(from, Math.min(text.length(), to));
+                return text.substring((int) from, (int) to);
+            } else if ("replace".equals(name)) {
+                String pattern = Values.toText(values.get(1));
+                Object replacement = values.get(2);
+                if (pattern == null || replacement == null) {
+                    return null;
+                }
+                return pattern.length() == 0 ? Values.toText(first) : Values.toText(first).replace(pattern, Values.toText(replacement));
+            } else if ("instr".equals(name)) {
+                Object needle = values.get(1);
+                return needle == null ? null : (Object) (long) (Values.toText(first).indexOf(Values.toText(needle)) + 1);
+            } else if ("round".equals(name)) {
+                long digits = values.size() > 1 ? Values.toLong(values.get(1)) : 0;
+                double scale = Math.pow(10, digits);
+                double value = Values.toDouble(first);
+                return (value < 0 ? -Math.floor(-value * scale + 0.5) : Math.floor(value * scale + 0.5)) / scale;
+            }
+            throw new SQLException("no such function: " + mName);
+        }
+    }
+
+    /**
+     * A tuple of values with equality as defined by {@link Values#compare(Object, Object)}
+     */
+    static final class Key {
+        final Object[] mValues;
+        private final int mHash;
+
+        Key(Object[] values) {
+            mValues = values;
+            int hash = 1;
+            for (Object value : values) {
+                hash = 31 * hash + Values.hash(value);
+            }
+            mHash = hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            if (other.mValues.length != mValues.length) {
+                return false;
+            }
+            for (int i = 0; i < mValues.length; i++) {
+                if (mValues[i] == null ? other.mValues[i] != null : other.mValues[i] == null || Values.compare(mValues[i], other.mValues[i]) != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return mHash;
+        }
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright (C) 2016 Little Robots
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package nl.qbusict.cupboard.internal.memory;
+
+import android.database.Cursor;
+import android.database.SQLException;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import nl.qbusict.cupboard.internal.memory.Expression.Execution;
+
+import static nl.qbusict.cupboard.internal.memory.Values.AFFINITY_INTEGER;
+import static nl.qbusict.cupboard.internal.memory.Values.AFFINITY_TEXT;
+
+/**
+ * A database that keeps its tables in memory and understands enough sqlite to run the statements Cupboard generates and the
+ * queries typically found in tests. Values follow the sqlite type affinity and comparison rules. Only unique indexes are enforced,
+ * other indexes are recorded in the schema but queries always scan the table, except for lookups by rowid.
+ * <p/>
+ * Each statement is atomic. Transactions are not nested, the caller is responsible for mapping nested transactions onto a single
+ * {@link #beginTransaction()}. All methods are synchronized, a transaction is not isolated from other threads.
+ */
+public final class MemoryDatabase {
+    private static final int STATEMENT_CACHE_SIZE = 64;
+
+    static final class Index {
+        final String mName;
+        final String mTable;
+        final String mSql;
+
+        Index(String name, String table, String sql) {
+            mName = name;
+            mTable = table;
+            mSql = sql;
+        }
+    }
+
+    private final Map<String, Table> mTables = new LinkedHashMap<String, Table>();
+    private final Map<String, Index> mIndexes = new LinkedHashMap<String, Index>();
+    /**
+     * Parsed statements by sql. Column references are resolved on each execution, so statements remain valid when the schema changes.
+     */
+    private final Map<String, Statement> mStatements = new LinkedHashMap<String, Statement>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Statement> eldest) {
+            return size() > STATEMENT_CACHE_SIZE;
+        }
+    };
+    /**
+     * The undo log of the current transaction or null if there is no transaction
+     */
+    private List<Runnable> mTransaction;
+    private List<Runnable> mUndo;
+    long mUserVersion;
+    int mChanges;
+    long mLastInsertRowId;
+
+    /**
+     * Run a query
+     *
+     * @param sql  the query, a select, pragma or explain query plan statement
+     * @param args the arguments for the ? placeholders, either null, a {@link Number}, a {@link Boolean}, a {@link String} or a byte[]
+     * @return a cursor on a copy of the result
+     */
+    public synchronized Cursor query(String sql, Object[] args) {
+        Select.Result result = run(sql, args);
+        return new MemoryCursor(result.mNames, result.mRows);
+    }
+
+    /**
+     * Execute a statement that doesn't return rows
+     *
+     * @param sql  the statement
+     * @param args the arguments, see {@link #query(String, Object[])}
+     * @return the number of rows inserted, updated or deleted
+     */
+    public synchronized int execute(String sql, Object[] args) {
+        mChanges = 0;
+        run(sql, args);
+        return mChanges;
+    }
+
+    /**
+     * @return the rowid of the last row inserted into a table with a rowid
+     */
+    public synchronized long getLastInsertRowId() {
+        return mLastInsertRowId;
+    }
+
+    public synchronized void beginTransaction() {
+        if (mTransaction != null) {
+            throw new IllegalStateException("A transaction is already in progress");
+        }
+        mTransaction = new ArrayList<Runnable>();
+    }
+
+    public synchronized boolean inTransaction() {
+        return mTransaction != null;
+    }
+
+    public synchronized void commit() {
+        if (mTransaction == null) {
+            throw new IllegalStateException("No transaction in progress");
+        }
+        mTransaction = null;
+    }
+
+    public synchronized void rollback() {
+        if (mTransaction == null) {
+            throw new IllegalStateException("No transaction in progress");
+        }
+        undo(mTransaction, 0);
+        mTransaction = null;
+    }
+
+    private Select.Result run(String sql, Object[] args) {
+        Statement statement = mStatements.get(sql);
+        if (statement == null) {
+            statement = Parser.parse(sql);
+            mStatements.put(sql, statement);
+        }
+        mUndo = mTransaction != null ? mTransaction : new ArrayList<Runnable>();
+        int mark = mUndo.size();
+        try {
+            return statement.execute(new Execution(this, args));
+        } catch (RuntimeException e) {
+            undo(mUndo, mark);
+            throw e;
+        } finally {
+            mUndo = null;
+        }
+    }
+
+    private static void undo(List<Runnable> log, int mark) {
+        for (int i = log.size() - 1; i >= mark; i--) {
+            log.remove(i).run();
+        }
+    }
+
+    /**
+     * @return the undo log of the statement that is executing
+     */
+    List<Runnable> undoLog() {
+        return mUndo;
+    }
+
+    static boolean isMaster(String name) {
+        return "sqlite_master".equalsIgnoreCase(name) || "sqlite_schema".equalsIgnoreCase(name);
+    }
+
+    /**
+     * @return the contents of sqlite_master
+     */
+    Select.Result master() {
+        List<Object[]> rows = new ArrayList<Object[]>(mTables.size() + mIndexes.size());
+        long page = 2;
+        for (Table table : mTables.values()) {
+            rows.add(new Object[]{"table", table.mName, table.mName, page++, table.mSql});
+            for (Index index : mIndexes.values()) {
+                if (index.mTable.equalsIgnoreCase(table.mName)) {
+                    rows.add(new Object[]{"index", index.mName, index.mTable, page++, index.mSql});
+                }
+            }
+        }
+        return new Select.Result(new String[]{"type", "name", "tbl_name", "rootpage", "sql"},
+                new int[]{AFFINITY_TEXT, AFFINITY_TEXT, AFFINITY_TEXT, AFFINITY_INTEGER, AFFINITY_TEXT}, rows);
+    }
+
+    Table findTable(String name) {
+        return mTables.get(name.toLowerCase(Locale.US));
+    }
+
+    Index findIndex(String name) {
+        return mIndexes.get(name.toLowerCase(Locale.US));
+    }
+
+    /**
+     * @throws SQLException if the table doesn't exist
+     */
+    Table table(String name) {
+        Table table = findTable(name);
+        if (table == null) {
+            throw new SQLException("no such table: " + name);
+        }
+        return table;
+    }
+
+    void addTable(Table table) {
+        final String key = table.mName.toLowerCase(Locale.US);
+        mTables.put(key, table);
+        mUndo.add(new Runnable() {
+            @Override
+            public void run() {
+                mTables.remove(key);
+            }
+        });
+    }
+
+    void addIndex(Index index) {
+        final String key = index.mName.toLowerCase(Locale.US);
+        mIndexes.put(key, index);
+        mUndo.add(new Runnable() {
+            @Override
+            public void run() {
+                mIndexes.remove(key);
+            }
+        });
+    }
+
+    boolean dropTable(String name) {
+        final String key = name.toLowerCase(Locale.US);
+        final Table table = mTables.remove(key);
+        if (table == null) {
+            return false;
+        }
+        mUndo.add(new Runnable() {
+            @Override
+            public void run() {
+                mTables.put(key, table);
+            }
+        });
+        for (Index index : new ArrayList<Index>(mIndexes.values())) {
+            if (index.mTable.equalsIgnoreCase(table.mName)) {
+                dropIndex(index.mName);
+            }
+        }
+        return true;
+    }
+
+    boolean dropIndex(String name) {
+        final String key = name.toLowerCase(Locale.US);
+        final Index index = mIndexes.remove(key);
+        if (index == null) {
+            return false;
+        }
+        Table table = findTable(index.mTable);
+        if (table != null) {
+            for (Table.Unique unique : table.mUniques) {
+                if (name.equalsIgnoreCase(unique.mIndexName)) {
+                    beforeSchemaChange(table);
+                    table.mUniques.remove(unique);
+                    break;
+                }
+            }
+        }
+        mUndo.add(new Runnable() {
+            @Override
+            public void run() {
+                mIndexes.put(key, index);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Record the state of a table before changing its definition
+     */
+    void beforeSchemaChange(final Table table) {
+        final Table snapshot = table.copy();
+        mUndo.add(new Runnable() {
+            @Override
+            public void run() {
+                table.restore(snapshot);
+            }
+        });
+    }
+}
@@ -0,0 +1,857 @@
+/*
+ * Copyright (C) 2016 Little Robots
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package nl.qbusict.cupboard.internal.memory;
+
+import android.database.SQLException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import nl.qbusict.cupboard.internal.memory.Tokenizer.Token;
+import nl.qbusict.cupboard.internal.memory.Tokenizer.Type;
+
+/**
+ * A recursive descent parser for the subset of sqlite that Cupboard and typical tests use: select on a single table or sub query,
+ * insert, update, delete, create and drop of tables and indexes, alter table add column, pragmas and explain query plan.
+ */
+final class Parser {
+    /**
+     * Words that end an expression and can't be used as a column alias without quotes
+     */
+    private static final Set<String> KEYWORDS = new HashSet<String>(Arrays.asList("from", "where", "group", "having", "order", "limit",
+            "offset", "union", "intersect", "except", "join", "inner", "left", "cross", "natural", "on", "using", "and", "or", "not", "as",
+            "asc", "desc", "collate", "escape", "values", "set", "window"));
+    /**
+     * Words that start a column constraint and end the type of a column
+     */
+    private static final Set<String> CONSTRAINTS = new HashSet<String>(Arrays.asList("constraint", "primary", "not", "null", "unique",
+            "check", "default", "collate", "references", "generated", "as"));
+
+    private final String mSql;
+    private final List<Token> mTokens;
+    private int mPosition;
+    private int mParameters;
+
+    private Parser(String sql) {
+        mSql = sql;
+        mTokens = Tokenizer.tokenize(sql);
+    }
+
+    /**
+     * Parse a single statement, optionally followed by a semicolon
+     */
+    static Statement parse(String sql) {
+        Parser parser = new Parser(sql);
+        Statement statement = parser.statement();
+        parser.accept(";");
+        parser.expectEnd();
+        return statement;
+    }
+
+    /**
+     * @return the unquoted name
+     */
+    static String parseName(String name) {
+        Parser parser = new Parser(name);
+        String result = parser.name();
+        parser.expectEnd();
+        return result;
+    }
+
+    private Statement statement() {
+        if (acceptWord("explain")) {
+            expectWord("query");
+            expectWord("plan");
+            return new Statement.ExplainQueryPlan(select());
+        } else if (peek().is("select")) {
+            return select();
+        } else if (acceptWord("create")) {
+            boolean unique = acceptWord("unique");
+            if (acceptWord("index")) {
+                return createIndex(unique);
+            }
+            if (!unique && !acceptWord("temp")) {
+                acceptWord("temporary");
+            }
+            if (!unique && acceptWord("table")) {
+                return createTable();
+            }
+        } else if (acceptWord("drop")) {
+            boolean index = acceptWord("index");
+            if (!index) {
+                expectWord("table");
+            }
+            boolean ifExists = false;
+            if (acceptWord("if")) {
+                expectWord("exists");
+                ifExists = true;
+            }
+            return new Statement.Drop(qualifiedName(), index, ifExists);
+        } else if (acceptWord("alter")) {
+            expectWord("table");
+            String table = qualifiedName();
+            expectWord("add");
+            acceptWord("column");
+            return new Statement.AddColumn(table, columnDef());
+        } else if (acceptWord("pragma")) {
+            String name = qualifiedName();
+            if (accept("=")) {
+                return new Statement.Pragma(name, null, pragmaValue());
+            } else if (accept("(")) {
+                String argument = pragmaValue().toString();
+                expect(")");
+                return new Statement.Pragma(name, argument, null);
+            }
+            return new Statement.Pragma(name, null, null);
+        } else if (peek().is("insert") || peek().is("replace")) {
+            return insert();
+        } else if (acceptWord("update")) {
+            return update();
+        } else if (acceptWord("delete")) {
+            expectWord("from");
+            Statement.Delete delete = new Statement.Delete(qualifiedName());
+            if (acceptWord("where")) {
+                delete.mWhere = expression();
+            }
+            return delete;
+        }
+        throw error();
+    }
+
+    private Object pragmaValue() {
+        Token token = next();
+        if (token.type == Type.NUMBER) {
+            return number(token.text);
+        } else if (token.type == Type.SYMBOL && token.text.equals("-") && peek().type == Type.NUMBER) {
+            return -((Number) number(next().text)).longValue();
+        } else if (token.type == Type.WORD || token.type == Type.QUOTED || token.type == Type.STRING) {
+            return token.text;
+        }
+        throw error(token);
+    }
+
+    private Statement createTable() {
+        boolean ifNotExists = ifNotExists();
+        int nameStart = mPosition;
+        String name = qualifiedName();
+        Statement.CreateTable create = new Statement.CreateTable(name, ifNotExists, "CREATE TABLE " + normalizedTail(nameStart));
+        expect("(");
+        do {
+            if (isTableConstraint()) {
+                tableConstraint(create);
+            } else {
+                create.mColumns.add(columnDef());
+            }
+        } while (accept(","));
+        expect(")");
+        if (acceptWord("without")) {
+            expectWord("rowid");
+            create.mWithoutRowId = true;
+        }
+        return create;
+    }
+
+    private boolean isTableConstraint() {
+        Token token = peek();
+        return token.is("constraint") || token.is("primary") || token.is("unique") || token.is("check") || token.is("foreign");
+    }
+
+    private void tableConstraint(Statement.CreateTable create) {
+        if (acceptWord("constraint")) {
+            name();
+        }
+        if (acceptWord("primary")) {
+            expectWord("key");
+            create.mPrimaryKey = columnList();
+            conflictClause();
+        } else if (acceptWord("unique")) {
+            create.mUniques.add(columnList());
+            conflictClause();
+        } else {
+            // check and foreign key constraints are not enforced
+            while (!peek().isSymbol(",") && !peek().isSymbol(")") && peek().type != Type.END) {
+                skip();
+            }
+        }
+    }
+
+    /**
+     * A parenthesized list of columns, as used in table constraints, indexes and insert statements
+     */
+    private List<String> columnList() {
+        List<String> columns = new ArrayList<String>();
+        expect("(");
+        do {
+            columns.add(name());
+            if (acceptWord("collate")) {
+                name();
+            }
+            if (!acceptWord("asc")) {
+                acceptWord("desc");
+            }
+        } while (accept(","));
+        expect(")");
+        return columns;
+    }
+
+    private Statement.ColumnDef columnDef() {
+        int start = peek().start;
+        String name = name();
+        StringBuilder type = new StringBuilder();
+        while (peek().type == Type.WORD && !CONSTRAINTS.contains(peek().text.toLowerCase(Locale.US))) {
+            if (type.length() > 0) {
+                type.append(' ');
+            }
+            type.append(next().text);
+        }
+        if (type.length() > 0 && accept("(")) {
+            // the size of a type is ignored
+            while (!accept(")")) {
+                next();
+            }
+        }
+        Statement.ColumnDef column = new Statement.ColumnDef(name, type.toString());
+        while (true) {
+            if (acceptWord("constraint")) {
+                name();
+            } else if (acceptWord("primary")) {
+                expectWord("key");
+                column.mPrimaryKey = true;
+                if (acceptWord("desc")) {
+                    column.mDescending = true;
+                } else {
+                    acceptWord("asc");
+                }
+                conflictClause();
+                column.mAutoIncrement = acceptWord("autoincrement");
+            } else if (acceptWord("not")) {
+                expectWord("null");
+                conflictClause();
+                column.mNotNull = true;
+            } else if (acceptWord("null")) {
+                conflictClause();
+            } else if (acceptWord("unique")) {
+                conflictClause();
+                column.mUnique = true;
+            } else if (acceptWord("default")) {
+                column.mDefault = defaultValue();
+            } else if (acceptWord("collate")) {
+                name();
+            } else if (peek().is("check") || peek().is("references") || peek().is("generated") || peek().is("as")) {
+                // not enforced
+                next();
+                while (!peek().isSymbol(",") && !peek().isSymbol(")") && peek().type != Type.END
+                        && !(peek().type == Type.WORD && CONSTRAINTS.contains(peek().text.toLowerCase(Locale.US)))) {
+                    skip();
+                }
+            } else {
+                break;
+            }
+        }
+        column.mSql = mSql.substring(start, mTokens.get(mPosition - 1).end);
+        return column;
+    }
+
+    private Expression defaultValue() {
+        if (accept("(")) {
+            Expression expression = expression();
+            expect(")");
+            return expression;
+        }
+        Token token = peek();
+        if (token.isSymbol("-") || token.isSymbol("+")) {
+            next();
+            Expression operand = primary();
+            return token.text.equals("-") ? new Expression.Unary("-", operand) : operand;
+        } else if (token.type == Type.NUMBER || token.type == Type.STRING || token.is("null") || token.is("true") || token.is("false")
+                || (token.is("x") && peek(1).type == Type.STRING)) {
+            return primary();
+        }
+        throw new SQLException("default value of column is not constant: " + token.text);
+    }
+
+    private void conflictClause() {
+        if (acceptWord("on")) {
+            expectWord("conflict");
+            next();
+        }
+    }
+
+    /**
+     * Skip a token or a parenthesized group of tokens
+     */
+    private void skip() {
+        if (accept("(")) {
+            int depth = 1;
+            while (depth > 0) {
+                Token token = next();
+                if (token.type == Type.END) {
+                    throw error(token);
+                } else if (token.isSymbol("(")) {
+                    depth++;
+                } else if (token.isSymbol(")")) {
+                    depth--;
+                }
+            }
+        } else {
+            next();
+        }
+    }
+
+    private Statement createIndex(boolean unique) {
+        boolean ifNotExists = ifNotExists();
+        int nameStart = mPosition;
+        String name = qualifiedName();
+        String sql = (unique ? "CREATE UNIQUE INDEX " : "CREATE INDEX ") + normalizedTail(nameStart);
+        expectWord("on");
+        Statement.CreateIndex index = new Statement.CreateIndex(name, name(), unique, ifNotExists, sql);
+        List<String> columns = new ArrayList<String>();
+        expect("(");
+        do {
+            Token token = peek();
+            Token after = peek(1);
+            boolean simple = (token.type == Type.WORD || token.type == Type.QUOTED || token.type == Type.STRING)
+                    && (after.isSymbol(",") || after.isSymbol(")") || after.is("asc") || after.is("desc") || after.is("collate"));
+            if (simple) {
+                columns.add(next().text);
+            } else {
+                expression();
+                columns = null;
+            }
+            if (acceptWord("collate")) {
+                name();
+            }
+            if (!acceptWord("asc")) {
+                acceptWord("desc");
+            }
+        } while (accept(","));
+        expect(")");
+        index.mColumns = columns;
+        if (acceptWord("where")) {
+            index.mWhere = expression();
+        }
+        return index;
+    }
+
+    private boolean ifNotExists() {
+        if (acceptWord("if")) {
+            expectWord("not");
+            expectWord("exists");
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * The sql from a token up to the end of the statement, without a trailing semicolon. Sqlite stores the sql of tables and indexes
+     * with the leading keywords normalized and without "if not exists".
+     */
+    private String normalizedTail(int fromToken) {
+        String tail = mSql.substring(mTokens.get(fromToken).start).trim();
+        while (tail.endsWith(";")) {
+            tail = tail.substring(0, tail.length() - 1).trim();
+        }
+        return tail;
+    }
+
+    private Statement insert() {
+        String conflict = null;
+        if (acceptWord("replace")) {
+            conflict = "replace";
+        } else {
+            expectWord("insert");
+            if (acceptWord("or")) {
+                conflict = next().text.toLowerCase(Locale.US);
+            }
+        }
+        expectWord("into");
+        Statement.Insert insert = new Statement.Insert(qualifiedName(), conflict);
+        if (peek().isSymbol("(")) {
+            insert.mColumns = columnList();
+        }
+        if (acceptWord("default")) {
+            expectWord("values");
+            insert.mValues = new ArrayList<List<Expression>>();
+            insert.mValues.add(new ArrayList<Expression>());
+        } else if (acceptWord("values")) {
+            insert.mValues = new ArrayList<List<Expression>>();
+            do {
+                expect("(");
+                insert.mValues.add(expressionList());
+                expect(")");
+            } while (accept(","));
+        } else {
+            insert.mSelect = select();
+        }
+        return insert;
+    }
+
+    private Statement update() {
+        String conflict = null;
+        if (acceptWord("or")) {
+            conflict = next().text.toLowerCase(Locale.US);
+        }
+        Statement.Update update = new Statement.Update(qualifiedName(), conflict);
+        expectWord("set");
+        do {
+            update.mColumns.add(name());
+            expect("=");
+            update.mValues.add(expression());
+        } while (accept(","));
+        if (acceptWord("where")) {
+            update.mWhere = expression();
+        }
+        return update;
+    }
+
+    private Select select() {
+        expectWord("select");
+        Select select = new Select(mSql);
+        if (acceptWord("distinct")) {
+            select.mDistinct = true;
+        } else {
+            acceptWord("all");
+        }
+        do {
+            if (accept("*")) {
+                select.mColumns.add(new Select.ResultColumn(null, null));
+            } else if (isName(peek()) && peek(1).isSymbol(".") && peek(2).isSymbol("*")) {
+                mPosition += 3;
+                select.mColumns.add(new Select.ResultColumn(null, null));
+            } else {
+                Expression expression = expression();
+                select.mColumns.add(new Select.ResultColumn(expression, alias()));
+            }
+        } while (accept(","));
+        if (acceptWord("from")) {
+            if (accept("(")) {
+                select.mFrom = select();
+                expect(")");
+            } else {
+                select.mTable = qualifiedName();
+            }
+            select.mAlias = alias();
+            if (peek().isSymbol(",") || peek().is("join") || peek().is("inner") || peek().is("left") || peek().is("cross")
+                    || peek().is("natural")) {
+                throw new SQLException("joins are not supported by the in memory database: " + mSql);
+            }
+        }
+        if (acceptWord("where")) {
+            select.mWhere = expression();
+        }
+        if (acceptWord("group")) {
+            expectWord("by");
+            select.mGroupBy = expressionList();
+            if (acceptWord("having")) {
+                select.mHaving = expression();
+            }
+        }
+        if (peek().is("union") || peek().is("intersect") || peek().is("except")) {
+            throw new SQLException("compound selects are not supported by the in memory database: " + mSql);
+        }
+        if (acceptWord("order")) {
+            expectWord("by");
+            select.mOrderBy = new ArrayList<Select.OrderTerm>();
+            do {
+                Expression expression = expression();
+                if (acceptWord("collate")) {
+                    name();
+                }
+                boolean descending = acceptWord("desc");
+                if (!descending) {
+                    acceptWord("asc");
+                }
+                select.mOrderBy.add(new Select.OrderTerm(expression, descending));
+            } while (accept(","));
+        }
+        if (acceptWord("limit")) {
+            select.mLimit = expression();
+            if (acceptWord("offset")) {
+                select.mOffset = expression();
+            } else if (accept(",")) {
+                // limit offset, count
+                select.mOffset = select.mLimit;
+                select.mLimit = expression();
+            }
+        }
+        return select;
+    }
+
+    private String alias() {
+        if (acceptWord("as")) {
+            return name();
+        }
+        Token token = peek();
+        if (token.type == Type.QUOTED || token.type == Type.STRING
+                || (token.type == Type.WORD && !KEYWORDS.contains(token.text.toLowerCase(Locale.US)))) {
+            return next().text;
+        }
+        return null;
+    }
+
+    private List<Expression> expressionList() {
+        List<Expression> expressions = new ArrayList<Expression>();
+        do {
+            expressions.add(expression());
+        } while (accept(","));
+        return expressions;
+    }
+
+    Expression expression() {
+        int start = mPosition;
+        Expression left = and();
+        while (acceptWord("or")) {
+            left = span(new Expression.Binary("OR", left, and()), start);
+        }
+        return left;
+    }
+
+    private Expression and() {
+        int start = mPosition;
+        Expression left = not();
+        while (acceptWord("and")) {
+            left = span(new Expression.Binary("AND", left, not()), start);
+        }
+        return left;
+    }
+
+    private Expression not() {
+        int start = mPosition;
+        if (acceptWord("not")) {
+            return span(new Expression.Unary("NOT", not()), start);
+        }
+        return equality();
+    }
+
+    private Expression equality() {
+        int start = mPosition;
+        Expression left = comparison();
+        while (true) {
+            Token token = peek();
+            if (token.isSymbol("=") || token.isSymbol("==") || token.isSymbol("!=") || token.isSymbol("<>")) {
+                next();
+                left = new Expression.Binary(token.text, left, comparison());
+            } else if (acceptWord("is")) {
+                boolean not = acceptWord("not");
+                left = new Expression.Binary(not ? "IS NOT" : "IS", left, comparison());
+            } else if (acceptWord("isnull")) {
+                left = new Expression.IsNull(left, false);
+            } else if (acceptWord("notnull")) {
+                left = new Expression.IsNull(left, true);
+            } else if (token.is("not") && peek(1).is("null")) {
+                mPosition += 2;
+                left = new Expression.IsNull(left, true);
+            } else {
+                boolean not = token.is("not") && (peek(1).is("in") || peek(1).is("like") || peek(1).is("between"));
+                if (not) {
+                    next();
+                }
+                if (acceptWord("in")) {
+                    left = in(left, not);
+                } else if (acceptWord("like")) {
+                    Expression pattern = comparison();
+                    Expression escape = acceptWord("escape") ? comparison() : null;
+                    left = new Expression.Like(left, pattern, escape, not);
+                } else if (acceptWord("between")) {
+                    Expression low = comparison();
+                    expectWord("and");
+                    left = new Expression.Between(left, low, comparison(), not);
+                } else if (token.is("glob") || token.is("regexp") || token.is("match")) {
+                    throw new SQLException(token.text + " is not supported by the in memory database: " + mSql);
+                } else {
+                    return left;
+                }
+            }
+            span(left, start);
+        }
+    }
+
+    private Expression in(Expression operand, boolean not) {
+        expect("(");
+        if (peek().is("select")) {
+            Select subquery = select();
+            expect(")");
+            return new Expression.In(operand, null, subquery, not);
+        }
+        List<Expression> values = peek().isSymbol(")") ? new ArrayList<Expression>() : expressionList();
+        expect(")");
+        return new Expression.In(operand, values, null, not);
+    }
+
+    private Expression comparison() {
+        int start = mPosition;
+        Expression left = bitwise();
+        while (peek().isSymbol("<") || peek().isSymbol("<=") || peek().isSymbol(">") || peek().isSymbol(">=")) {
+            String operator = next().text;
+            left = span(new Expression.Binary(operator, left, bitwise()), start);
+        }
+        return left;
+    }
+
+    private Expression bitwise() {
+        int start = mPosition;
+        Expression left = additive();
+        while (peek().isSymbol("<<") || peek().isSymbol(">>") || peek().isSymbol("&") || peek().isSymbol("|")) {
+            String operator = next().text;
+            left = span(new Expression.Binary(operator, left, additive()), start);
+        }
+        return left;
+    }
+
+    private Expression additive() {
+        int start = mPosition;
+        Expression left = multiplicative();
+        while (peek().isSymbol("+") || peek().isSymbol("-")) {
+            String operator = next().text;
+            left = span(new Expression.Binary(operator, left, multiplicative()), start);
+        }
+        return left;
+    }
+
+    private Expression multiplicative() {
+        int start = mPosition;
+        Expression left = concat();
+        while (peek().isSymbol("*") || peek().isSymbol("/") || peek().isSymbol("%")) {
+            String operator = next().text;
+            left = span(new Expression.Binary(operator, left, concat()), start);
+        }
+        return left;
+    }
+
+    private Expression concat() {
+        int start = mPosition;
+        Expression left = unary();
+        while (accept("||")) {
+            left = span(new Expression.Binary("||", left, unary()), start);
+        }
+        return left;
+    }
+
+    private Expression unary() {
+        int start = mPosition;
+        Token token = peek();
+        if (token.isSymbol("-") || token.isSymbol("+") || token.isSymbol("~")) {
+            next();
+            return span(new Expression.Unary(token.text, unary()), start);
+        }
+        Expression expression = primary();
+        if (acceptWord("collate")) {
+            // collations are not supported, comparisons are always binary
+            name();
+        }
+        return span(expression, start);
+    }
+
+    private Expression primary() {
+        int start = mPosition;
+        Token token = next();
+        Expression expression;
+        if (token.type == Type.NUMBER) {
+            expression = new Expression.Literal(number(token.text));
+        } else if (token.type == Type.STRING) {
+            expression = new Expression.Literal(token.text);
+        } else if (token.type == Type.PARAMETER) {
+            int index;
+            if (token.text.length() > 1) {
+                index = Integer.parseInt(token.text.substring(1)) - 1;
+                mParameters = Math.max(mParameters, index + 1);
+            } else {
+                index = mParameters++;
+            }
+            expression = new Expression.Parameter(index);
+        } else if (token.isSymbol("(")) {
+            if (peek().is("select")) {
+                expression = new Expression.ScalarSubquery(select());
+            } else {
+                expression = expression();
+            }
+            expect(")");
+        } else if (token.type == Type.WORD && token.is("x") && peek().type == Type.STRING && peek().start == token.end) {
+            expression = new Expression.Literal(hex(next().text));
+        } else if (token.is("null")) {
+            expression = new Expression.Literal(null);
+        } else if (token.is("true") || token.is("false")) {
+            expression = new Expression.Literal(token.is("true") ? 1L : 0L);
+        } else if (token.is("exists")) {
+            expect("(");
+            expression = new Expression.Exists(select());
+            expect(")");
+        } else if (token.is("cast")) {
+            expect("(");
+            Expression operand = expression();
+            expectWord("as");
+            StringBuilder type = new StringBuilder();
+            while (peek().type == Type.WORD) {
+                type.append(next().text).append(' ');
+            }
+            if (accept("(")) {
+                while (!accept(")")) {
+                    next();
+                }
+            }
+            expect(")");
+            expression = new Expression.Cast(operand, type.toString().trim());
+        } else if (token.type == Type.WORD && peek().isSymbol("(")) {
+            next();
+            boolean distinct = acceptWord("distinct");
+            boolean star = false;
+            List<Expression> args;
+            if (accept("*")) {
+                star = true;
+                args = new ArrayList<Expression>();
+            } else if (peek().isSymbol(")")) {
+                args = new ArrayList<Expression>();
+            } else {
+                args = expressionList();
+            }
+            expect(")");
+            expression = new Expression.Function(token.text, args, distinct, star);
+        } else if (token.type == Type.WORD || token.type == Type.QUOTED) {
+            if (peek().isSymbol(".") && isName(peek(1))) {
+                next();
+                Token column = next();
+                expression = new Expression.ColumnRef(token.text, column.text, column.type == Type.QUOTED);
+            } else {
+                if (token.type == Type.WORD && KEYWORDS.contains(token.text.toLowerCase(Locale.US))) {
+                    throw error(token);
+                }
+                expression = new Expression.ColumnRef(null, token.text, token.type == Type.QUOTED);
+            }
+        } else {
+            throw error(token);
+        }
+        return span(expression, start);
+    }
+
+    private static Object number(String text) {
+        if (text.indexOf('.') < 0 && text.indexOf('e') < 0 && text.indexOf('E') < 0) {
+            try {
+                return Long.parseLong(text);
+            } catch (NumberFormatException e) {
+                // too large for a long
+            }
+        }
+        return Double.parseDouble(text);
+    }
+
+    private static byte[] hex(String text) {
+        if (text.length() % 2 != 0) {
+            throw new SQLException("malformed blob literal: x'" + text + "'");
+        }
+        byte[] bytes = new byte[text.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(text.substring(i * 2, i * 2 + 2), 16);
+        }
+        return bytes;
+    }
+
+    private Expression span(Expression expression, int startToken) {
+        expression.mStart = mTokens.get(startToken).start;
+        expression.mEnd = mTokens.get(mPosition - 1).end;
+        return expression;
+    }
+
+    /**
+     * A name, optionally prefixed with a schema name, which is ignored
+     */
+    private String qualifiedName() {
+        String name = name();
+        if (accept(".")) {
+            return name();
+        }
+        return name;
+    }
+
+    private String name() {
+        Token token = next();
+        if (!isName(token)) {
+            throw error(token);
+        }
+        return token.text;
+    }
+
+    private static boolean isName(Token token) {
+        return token.type == Type.WORD || token.type == Type.QUOTED || token.type == Type.STRING;
+    }
+
+    private Token peek() {
+        return mTokens.get(mPosition);
+    }
+
+    private Token peek(int ahead) {
+        return mTokens.get(Math.min(mPosition + ahead, mTokens.size() - 1));
+    }
+
+    private Token next() {
+        Token token = mTokens.get(mPosition);
+        if (token.type == Type.END) {
+            throw error(token);
+        }
+        mPosition++;
+        return token;
+    }
+
+    private boolean accept(String symbol) {
+        if (peek().isSymbol(symbol)) {
+            mPosition++;
+            return true;
+        }
+        return false;
+    }
+
+    private boolean acceptWord(String word) {
+        if (peek().is(word)) {
+            mPosition++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(String symbol) {
+        if (!accept(symbol)) {
+            throw error();
+        }
+    }
+
+    private void expectWord(String word) {
+        if (!acceptWord(word)) {
+            throw error();
+        }
+    }
+
+    private void expectEnd() {
+        if (peek().type != Type.END) {
+            throw error();
+        }
+    }
+
+    private SQLException error() {
+        return error(peek());
+    }
+
+    private SQLException error(Token token) {
+        if (token.type == Type.END) {
+            return new SQLException("incomplete input: " + mSql);
+        }
+        return new SQLException("near \"" + token.text + "\": syntax error: " + mSql);
+    }
+}
@@ -0,0 +1,347 @@
+/*
+ * Copyright (C) 2016 Little Robots
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package nl.qbusict.cupboard.internal.memory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import nl.qbusict.cupboard.internal.memory.Expression.ColumnRef;
+import nl.qbusict.cupboard.internal.memory.Expression.Execution;
+import nl.qbusict.cupboard.internal.memory.Expression.Key;
+import nl.qbusict.cupboard.internal.memory.Expression.Scope;
+import nl.qbusict.cupboard.internal.memory.Expression.Source;
+
+/**
+ * A select statement on a single table, a sub query or no table at all. Joins are not supported.
+ */
+final class Select extends Statement {
+
+    static final class ResultColumn {
+        final Expression mExpression;
+        final String mAlias;
+
+        /**
+         * @param expression the expression or null for *
+         * @param alias      the alias or null
+         */
+        ResultColumn(Expression expression, String alias) {
+            mExpression = expression;
+            mAlias = alias;
+        }
+    }
+
+    static final class OrderTerm {
+        final Expression mExpression;
+        final boolean mDescending;
+
+        OrderTerm(Expression expression, boolean descending) {
+            mExpression = expression;
+            mDescending = descending;
+        }
+    }
+
+    /**
+     * The result of a query
+     */
+    static final class Result {
+        final String[] mNames;
+        final int[] mAffinities;
+        final List<Object[]> mRows;
+
+        Result(String[] names, int[] affinities, List<Object[]> rows) {
+            mNames = names;
+            mAffinities = affinities;
+            mRows = rows;
+        }
+    }
+
+    private static final class Output {
+        final Object[] mRow;
+        final List<Object[]> mGroup;
+        Object[] mValues;
+        Object[] mSortKeys;
+
+        Output(Object[] row, List<Object[]> group) {
+            mRow = row;
+            mGroup = group;
+        }
+    }
+
+    final String mSql;
+    boolean mDistinct;
+    final List<ResultColumn> mColumns = new ArrayList<ResultColumn>();
+    String mTable;
+    String mAlias;
+    Select mFrom;
+    Expression mWhere;
+    List<Expression> mGroupBy;
+    Expression mHaving;
+    List<OrderTerm> mOrderBy;
+    Expression mLimit;
+    Expression mOffset;
+
+    Select(String sql) {
+        mSql = sql;
+    }
+
+    @Override
+    Result execute(Execution execution) {
+        MemoryDatabase db = execution.mDatabase;
+        Source source;
+        List<Object[]> rows;
+        if (mFrom != null) {
+            Result from = mFrom.execute(execution);
+            source = new Source(mAlias, from.mNames, from.mAffinities, false);
+            rows = from.mRows;
+        } else if (mTable != null) {
+            if (MemoryDatabase.isMaster(mTable)) {
+                Result master = db.master();
+                source = new Source(mAlias != null ? mAlias : mTable, master.mNames, master.mAffinities, false);
+                rows = master.mRows;
+            } else {
+                Table table = db.table(mTable);
+                source = table.source(mAlias);
+                rows = null;
+                if (mWhere != null) {
+                    mWhere.resolve(source);
+                    rows = table.lookup(mWhere, new Scope(execution));
+                }
+                if (rows == null) {
+                    rows = new ArrayList<Object[]>(table.mRows.values());
+                }
+            }
+        } else {
+            source = new Source(null, new String[0], new int[0], false);
+            rows = new ArrayList<Object[]>(1);
+            rows.add(new Object[1]);
+        }
+
+        // resolve the result columns, expanding *
+        List<Expression> expressions = new ArrayList<Expression>();
+        List<String> names = new ArrayList<String>();
+        for (ResultColumn column : mColumns) {
+            if (column.mExpression == null) {
+                for (int i = 0; i < source.mNames.length; i++) {
+                    ColumnRef ref = new ColumnRef(null, source.mNames[i], true);
+                    ref.resolve(source);
+                    expressions.add(ref);
+                    names.add(source.mNames[i]);
+                }
+            } else {
+                column.mExpression.resolve(source);
+                expressions.add(column.mExpression);
+                names.add(column.mAlias != null ? column.mAlias : column.mExpression.columnName(mSql));
+            }
+        }
+        int[] affinities = new int[expressions.size()];
+        boolean aggregate = mGroupBy != null;
+        for (int i = 0; i < affinities.length; i++) {
+            affinities[i] = expressions.get(i).affinity();
+            aggregate |= expressions.get(i).isAggregate();
+        }
+        if (mWhere != null) {
+            mWhere.resolve(source);
+        }
+        if (mGroupBy != null) {
+            for (Expression expression : mGroupBy) {
+                expression.resolve(source);
+            }
+        }
+        if (mHaving != null) {
+            mHaving.resolve(source);
+            aggregate = true;
+        }
+        int[] orderColumns = resolveOrder(source, names);
+        if (mOrderBy != null) {
+            for (OrderTerm term : mOrderBy) {
+                aggregate |= term.mExpression.isAggregate();
+            }
+        }
+
+        Scope scope = new Scope(execution);
+        if (mWhere != null) {
+            List<Object[]> matched = new ArrayList<Object[]>();
+            for (Object[] row : rows) {
+                scope.mRow = row;
+                if (Expression.isTrue(mWhere.evaluate(scope))) {
+                    matched.add(row);
+                }
+            }
+            rows = matched;
+        }
+
+        List<Output> outputs = new ArrayList<Output>();
+        if (aggregate) {
+            Map<Key, List<Object[]>> groups = new LinkedHashMap<Key, List<Object[]>>();
+            if (mGroupBy == null) {
+                groups.put(new Key(new Object[0]), rows);
+            } else {
+                for (Object[] row : rows) {
+                    scope.mRow = row;
+                    Object[] values = new Object[mGroupBy.size()];
+                    for (int i = 0; i < values.length; i++) {
+                        values[i] = mGroupBy.get(i).evaluate(scope);
+                    }
+                    Key key = new Key(values);
+                    List<Object[]> group = groups.get(key);
+                    if (group == null) {
+                        group = new ArrayList<Object[]>();
+                        groups.put(key, group);
+                    }
+                    group.add(row);
+                }
+            }
+            for (List<Object[]> group : groups.values()) {
+                Object[] row = group.isEmpty() ? new Object[source.mNames.length + 1] : group.get(group.size() - 1);
+                scope.mRow = row;
+                scope.mGroup = group;
+                if (mHaving == null || Expression.isTrue(mHaving.evaluate(scope))) {
+                    outputs.add(new Output(row, group));
+                }
+            }
+        } else {
+            for (Object[] row : rows) {
+                outputs.add(new Output(row, null));
+            }
+        }
+
+        for (Output output : outputs) {
+            scope.mRow = output.mRow;
+            scope.mGroup = output.mGroup;
+            Object[] values = new Object[expressions.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = expressions.get(i).evaluate(scope);
+            }
+            output.mValues = values;
+        }
+        if (mDistinct) {
+            Set<Key> seen = new HashSet<Key>();
+            List<Output> distinct = new ArrayList<Output>(outputs.size());
+            for (Output output : outputs) {
+                if (seen.add(new Key(output.mValues))) {
+                    distinct.add(output);
+                }
+            }
+            outputs = distinct;
+        }
+        if (mOrderBy != null) {
+            sort(outputs, scope, orderColumns);
+        }
+
+        long offset = 0;
+        long limit = -1;
+        if (mLimit != null) {
+            scope.mRow = null;
+            scope.mGroup = null;
+            limit = Values.toLong(mLimit.evaluate(scope));
+            if (mOffset != null) {
+                offset = Math.max(0, Values.toLong(mOffset.evaluate(scope)));
+            }
+        }
+        List<Object[]> result = new ArrayList<Object[]>(outputs.size());
+        for (int i = (int) Math.min(offset, outputs.size()); i < outputs.size() && (limit < 0 || result.size() < limit); i++) {
+            result.add(outputs.get(i).mValues);
+        }
+        return new Result(names.toArray(new String[names.size()]), affinities, result);
+    }
+
+    /**
+     * Order terms that are a column number or the alias of a result column refer to that result column
+     *
+     * @return for each order term the index of the result column or -1 if the term is an expression
+     */
+    private int[] resolveOrder(Source source, List<String> names) {
+        if (mOrderBy == null) {
+            return null;
+        }
+        int[] columns = new int[mOrderBy.size()];
+        for (int i = 0; i < columns.length; i++) {
+            Expression expression = mOrderBy.get(i).mExpression;
+            columns[i] = -1;
+            if (expression instanceof Expression.Literal && ((Expression.Literal) expression).mValue instanceof Long) {
+                long column = (Long) ((Expression.Literal) expression).mValue;
+                if (column < 1 || column > names.size()) {
+                    throw new android.database.SQLException("ORDER BY term out of range - should be between 1 and " + names.size());
+                }
+                columns[i] = (int) column - 1;
+            } else if (expression instanceof ColumnRef && ((ColumnRef) expression).mTable == null) {
+                String name = ((ColumnRef) expression).mName;
+                for (int c = 0; c < mColumns.size(); c++) {
+                    if (mColumns.get(c).mAlias != null && mColumns.get(c).mAlias.equalsIgnoreCase(name) && source.indexOf(name) == -1) {
+                        columns[i] = indexOfAlias(names, name);
+                    }
+                }
+            }
+            if (columns[i] == -1) {
+                expression.resolve(source);
+            }
+        }
+        return columns;
+    }
+
+    private static int indexOfAlias(List<String> names, String alias) {
+        for (int i = 0; i < names.size(); i++) {
+            if (names.get(i).equalsIgnoreCase(alias)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void sort(List<Output> outputs, Scope scope, final int[] orderColumns) {
+        for (Output output : outputs) {
+            scope.mRow = output.mRow;
+            scope.mGroup = output.mGroup;
+            Object[] keys = new Object[mOrderBy.size()];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = orderColumns[i] >= 0 ? output.mValues[orderColumns[i]] : mOrderBy.get(i).mExpression.evaluate(scope);
+            }
+            output.mSortKeys = keys;
+        }
+        Collections.sort(outputs, new Comparator<Output>() {
+            @Override
+            public int compare(Output lhs, Output rhs) {
+                for (int i = 0; i < mOrderBy.size(); i++) {
+                    int cmp = Values.compare(lhs.mSortKeys[i], rhs.mSortKeys[i]);
+                    if (cmp != 0) {
+                        return mOrderBy.get(i).mDescending ? -cmp : cmp;
+                    }
+                }
+                return 0;
+            }
+        });
+    }
+
+    /**
+     * @return a description of how the query is executed, for explain query plan
+     */
+    String plan() {
+        if (mFrom != null) {
+            return "SCAN SUBQUERY";
+        } else if (mTable == null) {
+            return "SCAN CONSTANT ROW";
+        }
+        return "SCAN " + mTable;
+    }
+}
@@ -0,0 +1,491 @@
+/*
+ * Copyright (C) 2016 Little Robots
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package nl.qbusict.cupboard.internal.memory;
+
+import android.database.SQLException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import nl.qbusict.cupboard.internal.memory.Expression.Execution;
+
+import static nl.qbusict.cupboard.internal.memory.Values.AFFINITY_INTEGER;
+import static nl.qbusict.cupboard.internal.memory.Values.AFFINITY_NONE;
+import static nl.qbusict.cupboard.internal.memory.Values.AFFINITY_TEXT;
+
+/**
+ * A parsed sql statement. Statements are cached by {@link MemoryDatabase} and executed with different arguments.
+ */
+abstract class Statement {
+
+    /**
+     * @return the result, an empty result for statements that don't return rows
+     */
+    abstract Select.Result execute(Execution execution);
+
+    static Select.Result empty() {
+        return new Select.Result(new String[0], new int[0], Collections.<Object[]>emptyList());
+    }
+
+    /**
+     * A column in a create table or alter table statement
+     */
+    static final class ColumnDef {
+        final String mName;
+        final String mType;
+        boolean mNotNull;
+        boolean mPrimaryKey;
+        boolean mDescending;
+        boolean mAutoIncrement;
+        boolean mUnique;
+        Expression mDefault;
+        String mSql;
+
+        ColumnDef(String name, String type) {
+            mName = name;
+            mType = type;
+        }
+
+        Table.Column toColumn(Execution execution) {
+            Object defaultValue = mDefault == null ? null : mDefault.evaluate(new Expression.Scope(execution));
+            return new Table.Column(mName, mType, mNotNull, defaultValue);
+        }
+    }
+
+    static final class CreateTable extends Statement {
+        final String mName;
+        final boolean mIfNotExists;
+        final String mSql;
+        final List<ColumnDef> mColumns = new ArrayList<ColumnDef>();
+        /**
+         * Primary key and unique constraints in the table definition, as column names
+         */
+        List<String> mPrimaryKey;
+        final List<List<String>> mUniques = new ArrayList<List<String>>();
+        boolean mWithoutRowId;
+
+        CreateTable(String name, boolean ifNotExists, String sql) {
+            mName = name;
+            mIfNotExists = ifNotExists;
+            mSql = sql;
+        }
+
+        @Override
+        Select.Result execute(Execution execution) {
+            MemoryDatabase db = execution.mDatabase;
+            if (db.findTable(mName) != null || db.findIndex(mName) != null) {
+                if (mIfNotExists) {
+                    return empty();
+                }
+                throw new SQLException("table " + mName + " already exists");
+            }
+            Table table = new Table(mName);
+            table.mSql = mSql;
+            List<Table.Column> columns = new ArrayList<Table.Column>(mColumns.size());
+            List<String> primaryKey = mPrimaryKey;
+            for (ColumnDef def : mColumns) {
+                columns.add(def.toColumn(execution));
+                if (def.mPrimaryKey) {
+                    if (primaryKey != null) {
+                        throw new SQLException("table \"" + mName + "\" has more than one primary key");
+                    }
+                    primaryKey = Collections.singletonList(def.mName);
+                    if (!def.mDescending && "INTEGER".equalsIgnoreCase(def.mType)) {
+                        table.mRowIdAlias = columns.size() - 1;
+                    }
+                    table.mAutoIncrement = def.mAutoIncrement;
+                }
+            }
+            table.mColumns = columns;
+            if (mPrimaryKey != null && mPrimaryKey.size() == 1) {
+                int index = table.indexOf(mPrimaryKey.get(0));
+                if (index >= 0 && "INTEGER".equalsIgnoreCase(mColumns.get(index).mType)) {
+                    table.mRowIdAlias = index;
+                }
+            }
+            if (table.mAutoIncrement && table.mRowIdAlias < 0) {
+                throw new SQLException("AUTOINCREMENT is only allowed on an INTEGER PRIMARY KEY");
+            }
+            table.mWithoutRowId = mWithoutRowId;
+            if (mWithoutRowId) {
+                if (primaryKey == null) {
+                    throw new SQLException("PRIMARY KEY missing on table " + mName);
+                }
+                table.mRowIdAlias = -1;
+                table.mPrimaryKey = columnIndexes(table, primaryKey);
+                List<Table.Column> notNull = new ArrayList<Table.Column>(columns.size());
+                for (int i = 0; i < columns.size(); i++) {
+                    Table.Column column = columns.get(i);
+                    boolean key = false;
+                    for (int index : table.mPrimaryKey) {
+                        key |= index == i;
+                    }
+                    notNull.add(key && !column.mNotNull ? new Table.Column(column.mName, column.mType, true, column.mDefault) : column);
+                }
+                table.mColumns = notNull;
+            } else if (primaryKey != null && table.mRowIdAlias < 0) {
+                table.addUnique(new Table.Unique(null, columnIndexes(table, primaryKey)));
+            }
+            for (ColumnDef def : mColumns) {
+                if (def.mUnique) {
+                    table.addUnique(new Table.Unique(null, columnIndexes(table, Collections.singletonList(def.mName))));
+                }
+            }
+            for (List<String> unique : mUniques) {
+                table.addUnique(new Table.Unique(null, columnIndexes(table, unique)));
+            }
+            db.addTable(table);
+            return empty();
+        }
+    }
+
+    static int[] columnIndexes(Table table, List<String> names) {
+        int[] indexes = new int[names.size()];
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = table.indexOf(names.get(i));
+            if (indexes[i] < 0) {
+                throw new SQLException("no such column: " + names.get(i));
+            }
+        }
+        return indexes;
+    }
+
+    static final class CreateIndex extends Statement {
+        final String mName;
+        final String mTable;
+        final boolean mUnique;
+        final boolean mIfNotExists;
+        final String mSql;
+        /**
+         * The indexed columns, null for an index on expressions
+         */
+        List<String> mColumns;
+        /**
+         * The condition of a partial index or null
+         */
+        Expression mWhere;
+
+        CreateIndex(String name, String table, boolean unique, boolean ifNotExists, String sql) {
+            mName = name;
+            mTable = table;
+            mUnique = unique;
+            mIfNotExists = ifNotExists;
+            mSql = sql;
+        }
+
+        @Override
+        Select.Result execute(Execution execution) {
+            MemoryDatabase db = execution.mDatabase;
+            if (db.findIndex(mName) != null || db.findTable(mName) != null) {
+                if (mIfNotExists) {
+                    return empty();
+                }
+                throw new SQLException("index " + mName + " already exists");
+            }
+            Table table = db.table(mTable);
+            if (mColumns != null) {
+                int[] columns = columnIndexes(table, mColumns);
+                // unique indexes on expressions and partial unique indexes are not enforced
+                if (mUnique && mWhere == null) {
+                    db.beforeSchemaChange(table);
+                    table.addUnique(new Table.Unique(mName, columns));
+                }
+            }
+            db.addIndex(new MemoryDatabase.Index(mName, table.mName, mSql));
+            return empty();
+        }
+    }
+
+    static final class Drop extends Statement {
+        final String mName;
+        final boolean mIndex;
+        final boolean mIfExists;
+
+        Drop(String name, boolean index, boolean ifExists) {
+            mName = name;
+            mIndex = index;
+            mIfExists = ifExists;
+        }
+
+        @Override
+        Select.Result execute(Execution execution) {
+            MemoryDatabase db = execution.mDatabase;
+            boolean dropped = mIndex ? db.dropIndex(mName) : db.dropTable(mName);
+            if (!dropped && !mIfExists) {
+                throw new SQLException("no such " + (mIndex ? "index" : "table") + ": " + mName);
+            }
+            return empty();
+        }
+    }
+
+    static final class AddColumn extends Statement {
+        final String mTable;
+        final ColumnDef mColumn;
+
+        AddColumn(String table, ColumnDef column) {
+            mTable = table;
+            mColumn = column;
+        }
+
+        @Override
+        Select.Result execute(Execution execution) {
+            MemoryDatabase db = execution.mDatabase;
+            Table table = db.table(mTable);
+            if (table.indexOf(mColumn.mName) >= 0) {
+                throw new SQLException("duplicate column name: " + mColumn.mName);
+            }
+            if (mColumn.mPrimaryKey || mColumn.mUnique) {
+                throw new SQLException("Cannot add a PRIMARY KEY or UNIQUE column");
+            }
+            Table.Column column = mColumn.toColumn(execution);
+            if (column.mNotNull && column.mDefault == null) {
+                throw new SQLException("Cannot add a NOT NULL column with default value NULL");
+            }
+            db.beforeSchemaChange(table);
+            table.addColumn(column);
+            int end = table.mSql.lastIndexOf(')');
+            table.mSql = table.mSql.substring(0, end) + ", " + mColumn.mSql + table.mSql.substring(end);
+            return empty();
+        }
+    }
+
+    static final class Pragma extends Statement {
+        final String mName;
+        final String mArgument;
+        final Object mValue;
+
+        Pragma(String name, String argument, Object value) {
+            mName = name;
+            mArgument = argument;
+            mValue = value;
+        }
+
+        @Override
+        Select.Result execute(Execution execution) {
+            MemoryDatabase db = execution.mDatabase;
+            if ("table_info".equalsIgnoreCase(mName)) {
+                List<Object[]> rows = new ArrayList<Object[]>();
+                Table table = db.findTable(mArgument);
+                if (table != null) {
+                    for (int i = 0; i < table.mColumns.size(); i++) {
+                        Table.Column column = table.mColumns.get(i);
+                        long pk = 0;
+                        if (table.mPrimaryKey != null) {
+                            for (int k = 0; k < table.mPrimaryKey.length; k++) {
+                                if (table.mPrimaryKey[k] == i) {
+                                    pk = k + 1;
+                                }
+                            }
+                        } else if (table.mRowIdAlias == i) {
+                            pk = 1;
+                        }
+                        rows.add(new Object[]{(long) i, column.mName, column.mType, column.mNotNull ? 1L : 0L,
+                                column.mDefault == null ? null : literal(column.mDefault), pk});
+                    }
+                }
+                return new Select.Result(new String[]{"cid", "name", "type", "notnull", "dflt_value", "pk"},
+                        new int[]{AFFINITY_INTEGER, AFFINITY_TEXT, AFFINITY_TEXT, AFFINITY_INTEGER, AFFINITY_NONE, AFFINITY_INTEGER}, rows);
+            } else if ("user_version".equalsIgnoreCase(mName)) {
+                if (mValue != null) {
+                    db.mUserVersion = Values.toLong(mValue);
+                    return empty();
+                }
+                List<Object[]> rows = new ArrayList<Object[]>(1);
+                rows.add(new Object[]{db.mUserVersion});
+                return new Select.Result(new String[]{"user_version"}, new int[]{AFFINITY_INTEGER}, rows);
+            }
+            // other pragmas don't apply to an in memory database
+            return empty();
+        }
+
+        private static String literal(Object value) {
+            if (value instanceof String) {
+                return "'" + ((String) value).replace("'", "''") + "'";
+            }
+            return Values.toText(value);
+        }
+    }
+
+    static final class Insert extends Statement {
+        final String mTable;
+        /**
+         * The conflict resolution, "replace", "ignore" or null to fail on a conflict
+         */
+        final String mConflict;
+        List<String> mColumns;
+        List<List<Expression>> mValues;
+        Select mSelect;
+
+        Insert(String table, String conflict) {
+            mTable = table;
+            mConflict = conflict;
+        }
+
+        @Override
+        Select.Result execute(Execution execution) {
+            MemoryDatabase db = execution.mDatabase;
+            Table table = db.table(mTable);
+            List<Object[]> rows;
+            if (mSelect != null) {
+                rows = mSelect.execute(execution).mRows;
+            } else {
+                Expression.Scope scope = new Expression.Scope(execution);
+                rows = new ArrayList<Object[]>(mValues.size());
+                for (List<Expression> expressions : mValues) {
+                    Object[] values = new Object[expressions.size()];
+                    for (int i = 0; i < values.length; i++) {
+                        Expression expression = expressions.get(i);
+                        expression.resolve(null);
+                        values[i] = expression.evaluate(scope);
+                    }
+                    rows.add(values);
+                }
+            }
+            int[] columns;
+            if (mColumns != null) {
+                columns = columnIndexes(table, mColumns);
+            } else {
+                columns = new int[table.mColumns.size()];
+                for (int i = 0; i < columns.length; i++) {
+                    columns[i] = i;
+                }
+            }
+            for (Object[] values : rows) {
+                // default values inserts no values at all
+                if (values.length != columns.length && values.length > 0) {
+                    throw new SQLException("table " + table.mName + " has " + columns.length + " columns but " + values.length + " values were supplied");
+                }
+                Object[] row = table.newRow();
+                for (int i = 0; i < values.length; i++) {
+                    table.set(row, columns[i], values[i]);
+                }
+                try {
+                    table.insert(row, "replace".equals(mConflict), db.undoLog());
+                } catch (SQLException e) {
+                    if ("ignore".equals(mConflict)) {
+                        continue;
+                    }
+                    throw e;
+                }
+                if (!table.mWithoutRowId) {
+                    db.mLastInsertRowId = (Long) row[row.length - 1];
+                }
+                db.mChanges++;
+            }
+            return empty();
+        }
+    }
+
+    static final class Update extends Statement {
+        final String mTable;
+        final String mConflict;
+        final List<String> mColumns = new ArrayList<String>();
+        final List<Expression> mValues = new ArrayList<Expression>();
+        Expression mWhere;
+
+        Update(String table, String conflict) {
+            mTable = table;
+            mConflict = conflict;
+        }
+
+        @Override
+        Select.Result execute(Execution execution) {
+            MemoryDatabase db = execution.mDatabase;
+            Table table = db.table(mTable);
+            Expression.Source source = table.source(null);
+            int[] columns = columnIndexes(table, mColumns);
+            for (Expression value : mValues) {
+                value.resolve(source);
+            }
+            Expression.Scope scope = new Expression.Scope(execution);
+            for (Object[] row : matchingRows(table, mWhere, scope)) {
+                scope.mRow = row;
+                Object[] updated = row.clone();
+                for (int i = 0; i < columns.length; i++) {
+                    table.set(updated, columns[i], mValues.get(i).evaluate(scope));
+                }
+                try {
+                    table.update(table.keyOf(row), updated, db.undoLog());
+                } catch (SQLException e) {
+                    if ("ignore".equals(mConflict)) {
+                        continue;
+                    }
+                    throw e;
+                }
+                db.mChanges++;
+            }
+            return empty();
+        }
+    }
+
+    static final class Delete extends Statement {
+        final String mTable;
+        Expression mWhere;
+
+        Delete(String table) {
+            mTable = table;
+        }
+
+        @Override
+        Select.Result execute(Execution execution) {
+            MemoryDatabase db = execution.mDatabase;
+            Table table = db.table(mTable);
+            for (Object[] row : matchingRows(table, mWhere, new Expression.Scope(execution))) {
+                table.remove(table.keyOf(row), db.undoLog());
+                db.mChanges++;
+            }
+            return empty();
+        }
+    }
+
+    /**
+     * @return a copy of the rows of the table that match the condition, so that the table can be changed while iterating
+     */
+    static List<Object[]> matchingRows(Table table, Expression where, Expression.Scope scope) {
+        if (where == null) {
+            return new ArrayList<Object[]>(table.mRows.values());
+        }
+        where.resolve(table.source(null));
+        List<Object[]> rows = table.lookup(where, scope);
+        List<Object[]> matched = new ArrayList<Object[]>();
+        for (Object[] row : rows != null ? rows : table.mRows.values()) {
+            scope.mRow = row;
+            if (Expression.isTrue(where.evaluate(scope))) {
+                matched.add(row);
+            }
+        }
+        return matched;
+    }
+
+    static final class ExplainQueryPlan extends Statement {
+        final Select mSelect;
+
+        ExplainQueryPlan(Select select) {
+            mSelect = select;
+        }
+
+        @Override
+        Select.Result execute(Execution execution) {
+            List<Object[]> rows = new ArrayList<Object[]>(1);
+            rows.add(new Object[]{2L, 0L, 0L, mSelect.plan()});
+            return new Select.Result(new String[]{"id", "parent", "notused", "detail"},
+                    new int[]{AFFINITY_INTEGER, AFFINITY_INTEGER, AFFINITY_INTEGER, AFFINITY_TEXT}, rows);
+        }
+    }
+}
@@ -0,0 +1,428 @@
+/*
+ * Copyright (C) 2016 Little Robots
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package nl.qbusict.cupboard.internal.memory;
+
+import android.database.SQLException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import nl.qbusict.cupboard.internal.memory.Expression.Key;
+import nl.qbusict.cupboard.internal.memory.Expression.Scope;
+import nl.qbusict.cupboard.internal.memory.Expression.Source;
+
+/**
+ * The rows of a table, ordered by rowid or, for a table without rowid, by primary key. A row holds the values of the columns
+ * followed by the rowid. Unique constraints and unique indexes on columns are enforced using hash indexes.
+ */
+final class Table {
+
+    static final class Column {
+        final String mName;
+        final String mType;
+        final int mAffinity;
+        final boolean mNotNull;
+        final Object mDefault;
+
+        Column(String name, String type, boolean notNull, Object defaultValue) {
+            mName = name;
+            mType = type;
+            mAffinity = Values.affinity(type);
+            mNotNull = notNull;
+            mDefault = defaultValue;
+        }
+    }
+
+    static final class Unique {
+        /**
+         * The name of the unique index or null for a constraint in the table definition
+         */
+        final String mIndexName;
+        final int[] mColumns;
+        final Map<Key, Object> mEntries = new HashMap<Key, Object>();
+
+        Unique(String indexName, int[] columns) {
+            mIndexName = indexName;
+            mColumns = columns;
+        }
+
+        /**
+         * @return the key of the row in this index or null if one of the values is null
+         */
+        Key keyOf(Object[] row) {
+            Object[] values = new Object[mColumns.length];
+            for (int i = 0; i < mColumns.length; i++) {
+                values[i] = row[mColumns[i]];
+                if (values[i] == null) {
+                    return null;
+                }
+            }
+            return new Key(values);
+        }
+    }
+
+    private static final Comparator<Object> KEY_ORDER = new Comparator<Object>() {
+        @Override
+        public int compare(Object lhs, Object rhs) {
+            if (lhs instanceof Long) {
+                long x = (Long) lhs;
+                long y = (Long) rhs;
+                return x < y ? -1 : x == y ? 0 : 1;
+            }
+            Object[] x = ((Key) lhs).mValues;
+            Object[] y = ((Key) rhs).mValues;
+            for (int i = 0; i < x.length; i++) {
+                int cmp = Values.compare(x[i], y[i]);
+                if (cmp != 0) {
+                    return cmp;
+                }
+            }
+            return 0;
+        }
+    };
+
+    final String mName;
+    String mSql;
+    List<Column> mColumns;
+    int mRowIdAlias = -1;
+    boolean mAutoIncrement;
+    boolean mWithoutRowId;
+    int[] mPrimaryKey;
+    long mSequence;
+    TreeMap<Object, Object[]> mRows = new TreeMap<Object, Object[]>(KEY_ORDER);
+    List<Unique> mUniques = new ArrayList<Unique>();
+
+    Table(String name) {
+        mName = name;
+    }
+
+    Source source(String alias) {
+        String[] names = new String[mColumns.size()];
+        int[] affinities = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = mColumns.get(i).mName;
+            affinities[i] = mColumns.get(i).mAffinity;
+        }
+        return new Source(alias != null ? alias : mName, names, affinities, !mWithoutRowId);
+    }
+
+    int indexOf(String column) {
+        for (int i = 0; i < mColumns.size(); i++) {
+            if (mColumns.get(i).mName.equalsIgnoreCase(column)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return a new row with the default values
+     */
+    Object[] newRow() {
+        Object[] row = new Object[mColumns.size() + 1];
+        for (int i = 0; i < mColumns.size(); i++) {
+            row[i] = mColumns.get(i).mDefault;
+        }
+        return row;
+    }
+
+    void set(Object[] row, int column, Object value) {
+        if (value instanceof byte[]) {
+            // like sqlite, store a copy that the caller can't change
+            value = ((byte[]) value).clone();
+        }
+        row[column] = Values.applyAffinity(Values.normalize(value), mColumns.get(column).mAffinity);
+    }
+
+    /**
+     * Find the rows matching a condition on the rowid without scanning the table
+     *
+     * @return the matching rows or null if the condition can't be evaluated using the rowid
+     */
+    List<Object[]> lookup(Expression where, Scope scope) {
+        if (mWithoutRowId || !(where instanceof Expression.Binary)) {
+            return null;
+        }
+        Expression.Binary binary = (Expression.Binary) where;
+        if (!binary.mOperator.equals("=") && !binary.mOperator.equals("==")) {
+            return null;
+        }
+        Expression column = binary.mLeft;
+        Expression value = binary.mRight;
+        if (!isRowId(column)) {
+            column = binary.mRight;
+            value = binary.mLeft;
+        }
+        if (!isRowId(column) || !(value instanceof Expression.Parameter || value instanceof Expression.Literal)) {
+            return null;
+        }
+        Object id = Values.applyAffinity(value.evaluate(scope), Values.AFFINITY_INTEGER);
+        if (!(id instanceof Long)) {
+            return Collections.emptyList();
+        }
+        Object[] row = mRows.get(id);
+        return row == null ? Collections.<Object[]>emptyList() : Collections.singletonList(row);
+    }
+
+    private boolean isRowId(Expression expression) {
+        if (!(expression instanceof Expression.ColumnRef)) {
+            return false;
+        }
+        String name = ((Expression.ColumnRef) expression).mName;
+        int index = indexOf(name);
+        return (index != -1 && index == mRowIdAlias)
+                || (index == -1 && ("rowid".equalsIgnoreCase(name) || "_rowid_".equalsIgnoreCase(name) || "oid".equalsIgnoreCase(name)));
+    }
+
+    /**
+     * Insert a row
+     *
+     * @param row     the row, with affinity applied
+     * @param replace true to replace rows with the same key or unique values, false to fail
+     * @param undo    the undo log or null
+     * @return the key of the row
+     */
+    Object insert(Object[] row, boolean replace, List<Runnable> undo) {
+        Object key;
+        if (mWithoutRowId) {
+            key = primaryKey(row);
+        } else {
+            Object id = mRowIdAlias >= 0 ? row[mRowIdAlias] : null;
+            if (id == null) {
+                long last = mRows.isEmpty() ? 0 : (Long) mRows.lastKey();
+                id = (mAutoIncrement ? Math.max(last, mSequence) : last) + 1;
+            } else if (!(id instanceof Long)) {
+                throw new SQLException("datatype mismatch");
+            }
+            if (mRowIdAlias >= 0) {
+                row[mRowIdAlias] = id;
+            }
+            row[row.length - 1] = id;
+            key = id;
+        }
+        checkNotNull(row);
+        Object[] existing = mRows.get(key);
+        if (existing != null) {
+            if (!replace) {
+                throw new SQLException("UNIQUE constraint failed: " + mName + " primary key");
+            }
+            remove(key, undo);
+        }
+        for (Unique unique : mUniques) {
+            Key uniqueKey = unique.keyOf(row);
+            Object conflict = uniqueKey == null ? null : unique.mEntries.get(uniqueKey);
+            if (conflict != null) {
+                if (!replace) {
+                    throw new SQLException("UNIQUE constraint failed: " + describe(unique));
+                }
+                remove(conflict, undo);
+            }
+        }
+        put(key, row, undo);
+        if (mAutoIncrement && (Long) key > mSequence) {
+            final long sequence = mSequence;
+            mSequence = (Long) key;
+            if (undo != null) {
+                undo.add(new Runnable() {
+                    @Override
+                    public void run() {
+                        mSequence = sequence;
+                    }
+                });
+            }
+        }
+        return key;
+    }
+
+    /**
+     * Replace a row
+     *
+     * @param key    the key of the row
+     * @param row    the new row, with affinity applied
+     * @param undo   the undo log or null
+     */
+    void update(Object key, Object[] row, List<Runnable> undo) {
+        Object newKey;
+        if (mWithoutRowId) {
+            newKey = primaryKey(row);
+        } else {
+            Object id = mRowIdAlias >= 0 ? row[mRowIdAlias] : key;
+            if (!(id instanceof Long)) {
+                throw new SQLException("datatype mismatch");
+            }
+            row[row.length - 1] = id;
+            newKey = id;
+        }
+        checkNotNull(row);
+        if (KEY_ORDER.compare(key, newKey) != 0 && mRows.containsKey(newKey)) {
+            throw new SQLException("UNIQUE constraint failed: " + mName + " primary key");
+        }
+        for (Unique unique : mUniques) {
+            Key uniqueKey = unique.keyOf(row);
+            Object conflict = uniqueKey == null ? null : unique.mEntries.get(uniqueKey);
+            if (conflict != null && KEY_ORDER.compare(conflict, key) != 0) {
+                throw new SQLException("UNIQUE constraint failed: " + describe(unique));
+            }
+        }
+        remove(key, undo);
+        put(newKey, row, undo);
+    }
+
+    void remove(final Object key, List<Runnable> undo) {
+        final Object[] row = mRows.remove(key);
+        if (row == null) {
+            return;
+        }
+        for (Unique unique : mUniques) {
+            Key uniqueKey = unique.keyOf(row);
+            if (uniqueKey != null) {
+                unique.mEntries.remove(uniqueKey);
+            }
+        }
+        if (undo != null) {
+            undo.add(new Runnable() {
+                @Override
+                public void run() {
+                    put(key, row, null);
+                }
+            });
+        }
+    }
+
+    private void put(final Object key, Object[] row, List<Runnable> undo) {
+        mRows.put(key, row);
+        for (Unique unique : mUniques) {
+            Key uniqueKey = unique.keyOf(row);
+            if (uniqueKey != null) {
+                unique.mEntries.put(uniqueKey, key);
+            }
+        }
+        if (undo != null) {
+            undo.add(new Runnable() {
+                @Override
+                public void run() {
+                    remove(key, null);
+                }
+            });
+        }
+    }
+
+    /**
+     * @return the key of a row in this table
+     */
+    Object keyOf(Object[] row) {
+        return mWithoutRowId ? primaryKey(row) : row[row.length - 1];
+    }
+
+    private Key primaryKey(Object[] row) {
+        Object[] values = new Object[mPrimaryKey.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = row[mPrimaryKey[i]];
+            if (values[i] == null) {
+                throw new SQLException("NOT NULL constraint failed: " + mName + "." + mColumns.get(mPrimaryKey[i]).mName);
+            }
+        }
+        return new Key(values);
+    }
+
+    private void checkNotNull(Object[] row) {
+        for (int i = 0; i < mColumns.size(); i++) {
+            if (row[i] == null && mColumns.get(i).mNotNull) {
+                throw new SQLException("NOT NULL constraint failed: " + mName + "." + mColumns.get(i).mName);
+            }
+        }
+    }
+
+    private String describe(Unique unique) {
+        StringBuilder sb = new StringBuilder();
+        for (int column : unique.mColumns) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(mName).append('.').append(mColumns.get(column).mName);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Add a unique constraint, indexing the existing rows
+     *
+     * @throws SQLException if the existing rows aren't unique
+     */
+    void addUnique(Unique unique) {
+        for (Map.Entry<Object, Object[]> entry : mRows.entrySet()) {
+            Key key = unique.keyOf(entry.getValue());
+            if (key != null && unique.mEntries.put(key, entry.getKey()) != null) {
+                throw new SQLException("UNIQUE constraint failed: " + describe(unique));
+            }
+        }
+        mUniques.add(unique);
+    }
+
+    /**
+     * Add a column, setting its default value in the existing rows
+     */
+    void addColumn(Column column) {
+        List<Column> columns = new ArrayList<Column>(mColumns);
+        columns.add(column);
+        mColumns = columns;
+        for (Map.Entry<Object, Object[]> entry : mRows.entrySet()) {
+            Object[] row = entry.getValue();
+            Object[] extended = new Object[row.length + 1];
+            System.arraycopy(row, 0, extended, 0, row.length - 1);
+            extended[row.length - 1] = column.mDefault;
+            extended[row.length] = row[row.length - 1];
+            entry.setValue(extended);
+        }
+        // the unique indexes refer to the rows by key, so they remain valid
+    }
+
+    /**
+     * @return a copy of this table, to restore after a failed transaction
+     */
+    Table copy() {
+        Table copy = new Table(mName);
+        copy.restore(this);
+        return copy;
+    }
+
+    /**
+     * Restore the state of this table from a copy
+     */
+    void restore(Table table) {
+        mSql = table.mSql;
+        mColumns = new ArrayList<Column>(table.mColumns);
+        mRowIdAlias = table.mRowIdAlias;
+        mAutoIncrement = table.mAutoIncrement;
+        mWithoutRowId = table.mWithoutRowId;
+        mPrimaryKey = table.mPrimaryKey;
+        mSequence = table.mSequence;
+        mRows = new TreeMap<Object, Object[]>(table.mRows);
+        mUniques = new ArrayList<Unique>(table.mUniques.size());
+        for (Unique unique : table.mUniques) {
+            Unique copy = new Unique(unique.mIndexName, unique.mColumns);
+            copy.mEntries.putAll(unique.mEntries);
+            mUniques.add(copy);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2016 Little Robots
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package nl.qbusict.cupboard.internal.memory;
+
+import android.database.SQLException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits sql into tokens
+ */
+final class Tokenizer {
+
+    enum Type {
+        /**
+         * A keyword or unquoted identifier
+         */
+        WORD,
+        /**
+         * An identifier quoted with double quotes, back ticks or square brackets
+         */
+        QUOTED,
+        /**
+         * A string literal in single quotes
+         */
+        STRING,
+        NUMBER,
+        PARAMETER,
+        SYMBOL,
+        END
+    }
+
+    static final class Token {
+        final Type type;
+        /**
+         * The text, without quotes for quoted identifiers and strings
+         */
+        final String text;
+        /**
+         * The start and end offset in the sql
+         */
+        final int start;
+        final int end;
+
+        Token(Type type, String text, int start, int end) {
+            this.type = type;
+            this.text = text;
+            this.start = start;
+            this.end = end;
+        }
+
+        boolean is(String word) {
+            return type == Type.WORD && text.equalsIgnoreCase(word);
+        }
+
+        boolean isSymbol(String symbol) {
+            return type == Type.SYMBOL && text.equals(symbol);
+        }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+    }
+
+    private static final String[] SYMBOLS = {"||", "<=", ">=", "==", "!=", "<>", "<<", ">>", "(", ")", ",", ".", ";", "*", "/", "%", "+", "-",
+            "<", ">", "=", "&", "|", "~"};
+
+    private Tokenizer() {
+    }
+
+    static List<Token> tokenize(String sql) {
+        List<Token> tokens = new ArrayList<Token>();
+        int i = 0;
+        int length = sql.length();
+        while (i < length) {
+            char c = sql.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '-' && i + 1 < length && sql.charAt(i + 1) == '-') {
+                while (i < length && sql.charAt(i) != '\n') {
+                    i++;
+                }
+            } else if (c == '/' && i + 1 < length && sql.charAt(i + 1) == '*') {
+                int end = sql.indexOf("*/", i + 2);
+                i = end < 0 ? length : end + 2;
+            } else if (c == '\'' || c == '"' || c == '`') {
+                StringBuilder text = new StringBuilder();
+                int start = i++;
+                while (true) {
+                    if (i >= length) {
+                        throw new SQLException("unrecognized token: " + sql.substring(start));
+                    }
+                    char q = sql.charAt(i++);
+                    if (q == c) {
+                        if (i < length && sql.charAt(i) == c) {
+                            text.append(c);
+                            i++;
+                        } else {
+                            break;
+                        }
+                    } else {
+                        text.append(q);
+                    }
+                }
+                tokens.add(new Token(c == '\'' ? Type.STRING : Type.QUOTED, text.toString(), start, i));
+            } else if (c == '[') {
+                int end = sql.indexOf(']', i);
+                if (end < 0) {
+                    throw new SQLException("unrecognized token: " + sql.substring(i));
+                }
+                tokens.add(new Token(Type.QUOTED, sql.substring(i + 1, end), i, end + 1));
+                i = end + 1;
+            } else if (Character.isDigit(c) || (c == '.' && i + 1 < length && Character.isDigit(sql.charAt(i + 1)))) {
+                int start = i;
+                while (i < length && (Character.isDigit(sql.charAt(i)) || sql.charAt(i) == '.')) {
+                    i++;
+                }
+                if (i < length && (sql.charAt(i) == 'e' || sql.charAt(i) == 'E')) {
+                    int exponent = i + 1;
+                    if (exponent < length && (sql.charAt(exponent) == '+' || sql.charAt(exponent) == '-')) {
+                        exponent++;
+                    }
+                    if (exponent < length && Character.isDigit(sql.charAt(exponent))) {
+                        i = exponent;
+                        while (i < length && Character.isDigit(sql.charAt(i))) {
+                            i++;
+                        }
+                    }
+                }
+                tokens.add(new Token(Type.NUMBER, sql.substring(start, i), start, i));
+            } else if (c == '?') {
+                int start = i++;
+                while (i < length && Character.isDigit(sql.charAt(i))) {
+                    i++;
+                }
+                tokens.add(new Token(Type.PARAMETER, sql.substring(start, i), start, i));
+            } else if (Character.isLetter(c) || c == '_' || c == '$') {
+                int start = i;
+                while (i < length && (Character.isLetterOrDigit(sql.charAt(i)) || sql.charAt(i) == '_' || sql.charAt(i) == '$')) {
+                    i++;
+                }
+                tokens.add(new Token(Type.WORD, sql.substring(start, i), start, i));
+            } else {
+                String symbol = null;
+                for (String s : SYMBOLS) {
+                    if (sql.startsWith(s, i)) {
+                        symbol = s;
+                        break;
+                    }
+                }
+                if (symbol == null) {
+                    throw new SQLException("unrecognized token: \"" + c + "\" in " + sql);
+                }
+                tokens.add(new Token(Type.SYMBOL, symbol, i, i + symbol.length()));
+                i += symbol.length();
+            }
+        }
+        tokens.add(new Token(Type.END, "", length, length));
+        return tokens;
+    }
+}
@@ -0,0 +1,361 @@
+/*
+ * Copyright (C) 2016 Little Robots
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package nl.qbusict.cupboard.internal.memory;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Sqlite value semantics for the in memory database. Values are null, {@link Long}, {@link Double}, {@link String} or byte[].
+ */
+public final class Values {
+    public static final int AFFINITY_NONE = 0;
+    public static final int AFFINITY_TEXT = 1;
+    public static final int AFFINITY_NUMERIC = 2;
+    public static final int AFFINITY_INTEGER = 3;
+    public static final int AFFINITY_REAL = 4;
+
+    private Values() {
+    }
+
+    /**
+     * Determine the affinity of a declared column type, following the sqlite rules
+     */
+    public static int affinity(String declaredType) {
+        String type = declaredType == null ? "" : declaredType.toUpperCase(Locale.US);
+        if (type.contains("INT")) {
+            return AFFINITY_INTEGER;
+        } else if (type.contains("CHAR") || type.contains("CLOB") || type.contains("TEXT")) {
+            return AFFINITY_TEXT;
+        } else if (type.length() == 0 || type.contains("BLOB")) {
+            return AFFINITY_NONE;
+        } else if (type.contains("REAL") || type.contains("FLOA") || type.contains("DOUB")) {
+            return AFFINITY_REAL;
+        }
+        return AFFINITY_NUMERIC;
+    }
+
+    /**
+     * Convert a java value, as found in content values or bind arguments, to a sqlite value
+     */
+    public static Object normalize(Object value) {
+        if (value == null || value instanceof Long || value instanceof Double || value instanceof String || value instanceof byte[]) {
+            return value;
+        } else if (value instanceof Float) {
+            return ((Float) value).doubleValue();
+        } else if (value instanceof Number) {
+            return ((Number) value).longValue();
+        } else if (value instanceof Boolean) {
+            return ((Boolean) value) ? 1L : 0L;
+        }
+        return value.toString();
+    }
+
+    /**
+     * Apply a column affinity to a value that is stored in or compared to the column
+     */
+    public static Object applyAffinity(Object value, int affinity) {
+        switch (affinity) {
+            case AFFINITY_TEXT:
+                if (value instanceof Long || value instanceof Double) {
+                    return toText(value);
+                }
+                return value;
+            case AFFINITY_NUMERIC:
+            case AFFINITY_INTEGER:
+                if (value instanceof String) {
+                    Object number = parseNumber((String) value);
+                    return number == null ? value : integral(number);
+                } else if (value instanceof Double) {
+                    return integral(value);
+                }
+                return value;
+            case AFFINITY_REAL:
+                if (value instanceof String) {
+                    Object number = parseNumber((String) value);
+                    return number == null ? value : toDouble(number);
+                } else if (value instanceof Long) {
+                    return ((Long) value).doubleValue();
+                }
+                return value;
+            default:
+                return value;
+        }
+    }
+
+    private static Object integral(Object number) {
+        if (number instanceof Double) {
+            double d = (Double) number;
+            if (d == Math.rint(d) && Math.abs(d) < 9.2e18) {
+                return (long) d;
+            }
+        }
+        return number;
+    }
+
+    /**
+     * Parse a string that is entirely a number, surrounding spaces allowed
+     *
+     * @return a {@link Long} or {@link Double}, or null if the string is not a well formed number
+     */
+    public static Object parseNumber(String value) {
+        String s = value.trim();
+        if (s.length() == 0) {
+            return null;
+        }
+        boolean integer = true;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= '0' && c <= '9') {
+                continue;
+            }
+            if ((c == '-' || c == '+') && (i == 0 || s.charAt(i - 1) == 'e' || s.charAt(i - 1) == 'E')) {
+                continue;
+            }
+            if (c == '.' || c == 'e' || c == 'E') {
+                integer = false;
+                continue;
+            }
+            return null;
+        }
+        try {
+            if (integer) {
+                return Long.parseLong(s.charAt(0) == '+' ? s.substring(1) : s);
+            }
+            return Double.parseDouble(s);
+        } catch (NumberFormatException e) {
+            try {
+                return Double.parseDouble(s);
+            } catch (NumberFormatException e2) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Convert a value to a number the way sqlite does for arithmetic, using the longest numeric prefix of text
+     */
+    public static Object toNumber(Object value) {
+        if (value == null || value instanceof Long || value instanceof Double) {
+            return value;
+        }
+        String s = value instanceof byte[] ? utf8((byte[]) value) : (String) value;
+        s = s.trim();
+        int end = 0;
+        boolean integer = true;
+        if (end < s.length() && (s.charAt(end) == '-' || s.charAt(end) == '+')) {
+            end++;
+        }
+        while (end < s.length() && Character.isDigit(s.charAt(end))) {
+            end++;
+        }
+        if (end < s.length() && s.charAt(end) == '.') {
+            integer = false;
+            end++;
+            while (end < s.length() && Character.isDigit(s.charAt(end))) {
+                end++;
+            }
+        }
+        if (end < s.length() && (s.charAt(end) == 'e' || s.charAt(end) == 'E')) {
+            int exponent = end + 1;
+            if (exponent < s.length() && (s.charAt(exponent) == '-' || s.charAt(exponent) == '+')) {
+                exponent++;
+            }
+            if (exponent < s.length() && Character.isDigit(s.charAt(exponent))) {
+                integer = false;
+                end = exponent;
+                while (end < s.length() && Character.isDigit(s.charAt(end))) {
+                    end++;
+                }
+            }
+        }
+        Object number = parseNumber(s.substring(0, end));
+        if (number == null) {
+            return 0L;
+        }
+        return integer ? number : toDouble(number);
+    }
+
+    public static long toLong(Object value) {
+        Object number = toNumber(value);
+        if (number == null) {
+            return 0;
+        }
+        if (number instanceof Double) {
+            return (long) ((Double) number).doubleValue();
+        }
+        return (Long) number;
+    }
+
+    public static double toDouble(Object value) {
+        Object number = toNumber(value);
+        if (number == null) {
+            return 0;
+        }
+        return ((Number) number).doubleValue();
+    }
+
+    public static String toText(Object value) {
+        if (value == null) {
+            return null;
+        } else if (value instanceof String) {
+            return (String) value;
+        } else if (value instanceof Double) {
+            return formatReal((Double) value);
+        } else if (value instanceof byte[]) {
+            return utf8((byte[]) value);
+        }
+        return value.toString();
+    }
+
+    public static byte[] toBlob(Object value) {
+        if (value == null || value instanceof byte[]) {
+            return (byte[]) value;
+        }
+        try {
+            return toText(value).getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String utf8(byte[] value) {
+        try {
+            return new String(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Format a real the way sqlite converts it to text, with 15 significant digits
+     */
+    static String formatReal(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return value > 0 ? "Inf" : value < 0 ? "-Inf" : "NaN";
+        }
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return (long) value + ".0";
+        }
+        String formatted = String.format(Locale.US, "%.15g", value);
+        int exponent = formatted.indexOf('e');
+        String mantissa = exponent < 0 ? formatted : formatted.substring(0, exponent);
+        if (mantissa.indexOf('.') >= 0) {
+            int end = mantissa.length();
+            while (mantissa.charAt(end - 1) == '0' && mantissa.charAt(end - 2) != '.') {
+                end--;
+            }
+            mantissa = mantissa.substring(0, end);
+        }
+        return exponent < 0 ? mantissa : mantissa + formatted.substring(exponent);
+    }
+
+    /**
+     * @return the truth value of a value, or null for null
+     */
+    public static Boolean truth(Object value) {
+        if (value == null) {
+            return null;
+        }
+        return toDouble(value) != 0;
+    }
+
+    private static int storageClass(Object value) {
+        if (value == null) {
+            return 0;
+        } else if (value instanceof Long || value instanceof Double) {
+            return 1;
+        } else if (value instanceof String) {
+            return 2;
+        }
+        return 3;
+    }
+
+    /**
+     * Compare two values using the sqlite sort order: null, numbers, text, blobs
+     */
+    public static int compare(Object a, Object b) {
+        int classA = storageClass(a);
+        int classB = storageClass(b);
+        if (classA != classB) {
+            return classA < classB ? -1 : 1;
+        }
+        switch (classA) {
+            case 0:
+                return 0;
+            case 1:
+                if (a instanceof Long && b instanceof Long) {
+                    long x = (Long) a;
+                    long y = (Long) b;
+                    return x < y ? -1 : x == y ? 0 : 1;
+                }
+                return Double.compare(((Number) a).doubleValue(), ((Number) b).doubleValue());
+            case 2:
+                return ((String) a).compareTo((String) b);
+            default:
+                byte[] x = (byte[]) a;
+                byte[] y = (byte[]) b;
+                for (int i = 0; i < x.length && i < y.length; i++) {
+                    int cmp = (x[i] & 0xff) - (y[i] & 0xff);
+                    if (cmp != 0) {
+                        return cmp;
+                    }
+                }
+                return x.length - y.length;
+        }
+    }
+
+    /**
+     * @return true if the values are equal and not null
+     */
+    public static boolean equal(Object a, Object b) {
+        return a != null && b != null && compare(a, b) == 0;
+    }
+
+    /**
+     * A hash code consistent with {@link #compare(Object, Object)}
+     */
+    public static int hash(Object value) {
+        if (value == null) {
+            return 0;
+        } else if (value instanceof Long || value instanceof Double) {
+            long bits = Double.doubleToLongBits(((Number) value).doubleValue() + 0.0);
+            return (int) (bits ^ (bits >>> 32));
+        } else if (value instanceof byte[]) {
+            return Arrays.hashCode((byte[]) value);
+        }
+        return value.hashCode();
+    }
+
+    /**
+     * @return the name of the storage class as returned by typeof()
+     */
+    public static String typeName(Object value) {
+        if (value == null) {
+            return "null";
+        } else if (value instanceof Long) {
+            return "integer";
+        } else if (value instanceof Double) {
+            return "real";
+        } else if (value instanceof String) {
+            return "text";
+        }
+        return "blob";
+    }
+}
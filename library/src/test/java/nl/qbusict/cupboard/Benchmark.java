@@ -0,0 +1,95 @@
+package nl.qbusict.cupboard;
+
+import org.junit.Assume;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+
+/**
+ * A minimal benchmark harness for the jvm. Each benchmark is warmed up and then measured in a number of rounds of fixed duration,
+ * reporting the time and the bytes allocated per operation. Benchmarks only run when the system property
+ * {@code cupboard.benchmark} is set to true, e.g. <pre>./gradlew :library:test -Dcupboard.benchmark=true</pre>
+ */
+final class Benchmark {
+    static final boolean ENABLED = Boolean.getBoolean("cupboard.benchmark");
+    private static final long ROUND_NANOS = 250 * 1000 * 1000L;
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int ROUNDS = 5;
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    interface Body {
+        /**
+         * Perform the benchmarked operation a number of times
+         *
+         * @param invocations the number of times to perform the operation
+         */
+        void run(int invocations);
+    }
+
+    private Benchmark() {
+    }
+
+    /**
+     * Skip the calling test unless benchmarks are enabled
+     */
+    static void assumeEnabled() {
+        Assume.assumeTrue("benchmarks are disabled, set -Dcupboard.benchmark=true", ENABLED);
+    }
+
+    /**
+     * Run a benchmark and print the result
+     *
+     * @param name             the name of the benchmark
+     * @param opsPerInvocation the number of operations performed by a single invocation, e.g. the number of rows read
+     * @param body             the benchmark
+     * @return the time per operation in nanoseconds
+     */
+    static double run(String name, int opsPerInvocation, Body body) {
+        int invocations = calibrate(body);
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            body.run(invocations);
+        }
+        double best = Double.MAX_VALUE;
+        long totalNanos = 0;
+        long totalBytes = 0;
+        for (int i = 0; i < ROUNDS; i++) {
+            long bytes = allocatedBytes();
+            long start = System.nanoTime();
+            body.run(invocations);
+            long nanos = System.nanoTime() - start;
+            totalBytes += allocatedBytes() - bytes;
+            totalNanos += nanos;
+            best = Math.min(best, (double) nanos / invocations / opsPerInvocation);
+        }
+        long ops = (long) invocations * opsPerInvocation * ROUNDS;
+        double mean = (double) totalNanos / ops;
+        String allocation = allocatedBytes() < 0 ? "n/a" : String.format(Locale.US, "%.1f", (double) totalBytes / ops);
+        System.out.println(String.format(Locale.US, "%-40s %12.1f ns/op (best %.1f) %10s B/op %14.0f ops/s", name, mean, best, allocation,
+                1e9 / mean));
+        return mean;
+    }
+
+    /**
+     * Find the number of invocations that takes about the duration of a round
+     */
+    private static int calibrate(Body body) {
+        int invocations = 1;
+        while (true) {
+            long start = System.nanoTime();
+            body.run(invocations);
+            long nanos = System.nanoTime() - start;
+            if (nanos >= ROUND_NANOS / 10 || invocations >= Integer.MAX_VALUE / 20) {
+                return (int) Math.max(1, Math.min(Integer.MAX_VALUE, invocations * ROUND_NANOS / Math.max(nanos, 1)));
+            }
+            invocations *= 2;
+        }
+    }
+
+    private static long allocatedBytes() {
+        if (THREADS instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) THREADS).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,191 @@
+package nl.qbusict.cupboard;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import nl.qbusict.cupboard.convert.EntityConverter;
+import nl.qbusict.cupboard.convert.EntityConverter.Column;
+
+/**
+ * Benchmarks of the conversion between entities and cursors, running on the jvm against a {@link FakeCursor}, so that only the
+ * overhead of Cupboard is measured. {@link ContentValues} and {@link android.database.CursorWrapper} are the jvm implementations of
+ * the test fixtures, not the framework classes. See {@link Benchmark} for how to run these.
+ */
+public class ConverterBenchmark {
+    private static final int ROWS = 100;
+
+    // results are stored here so that the benchmarked code can't be optimized away
+    static volatile Object sSink;
+
+    private Cupboard mCupboard;
+    private EntityConverter<BenchmarkEntity> mConverter;
+    private String[] mColumns;
+    private List<Object[]> mRows;
+
+    @Before
+    public void setUp() {
+        mCupboard = new Cupboard();
+        mCupboard.register(BenchmarkEntity.class);
+        mConverter = mCupboard.getEntityConverter(BenchmarkEntity.class);
+        List<Column> columns = mConverter.getColumns();
+        mColumns = new String[columns.size()];
+        for (int i = 0; i < mColumns.length; i++) {
+            mColumns[i] = columns.get(i).name;
+        }
+        mRows = new ArrayList<Object[]>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            Object[] row = new Object[mColumns.length];
+            for (int c = 0; c < mColumns.length; c++) {
+                row[c] = value(mColumns[c], i);
+            }
+            mRows.add(row);
+        }
+    }
+
+    private static Object value(String column, int row) {
+        if ("_id".equals(column) || "count".equals(column)) {
+            return (long) row;
+        } else if ("timestamp".equals(column) || "created".equals(column)) {
+            return 1400000000000L + row;
+        } else if ("score".equals(column)) {
+            return row / 3d;
+        } else if ("enabled".equals(column)) {
+            return (long) (row % 2);
+        } else if ("state".equals(column)) {
+            return State.values()[row % State.values().length].name();
+        }
+        return column + " " + row;
+    }
+
+    @Test
+    public void fromCursor() {
+        Benchmark.assumeEnabled();
+        final Cursor cursor = new FakeCursor(mColumns, mRows);
+        Benchmark.run("ReflectiveEntityConverter.fromCursor", 1, new Benchmark.Body() {
+            @Override
+            public void run(int invocations) {
+                Object result = null;
+                for (int i = 0; i < invocations; i++) {
+                    cursor.moveToPosition(i % ROWS);
+                    result = mConverter.fromCursor(cursor);
+                }
+                sSink = result;
+            }
+        });
+    }
+
+    @Test
+    public void toValues() {
+        Benchmark.assumeEnabled();
+        final List<BenchmarkEntity> entities = new QueryResultIterable<BenchmarkEntity>(new FakeCursor(mColumns, mRows), mConverter).list();
+        Benchmark.run("ReflectiveEntityConverter.toValues", 1, new Benchmark.Body() {
+            @Override
+            public void run(int invocations) {
+                ContentValues values = null;
+                for (int i = 0; i < invocations; i++) {
+                    values = new ContentValues(mColumns.length);
+                    mConverter.toValues(entities.get(i % ROWS), values);
+                }
+                sSink = values;
+            }
+        });
+    }
+
+    @Test
+    public void preferredColumnOrderCursorWrapper() {
+        Benchmark.assumeEnabled();
+        // the cursor returns the columns in reverse order, so that every access is remapped
+        String[] reversed = new String[mColumns.length];
+        List<Object[]> rows = new ArrayList<Object[]>(ROWS);
+        for (Object[] row : mRows) {
+            Object[] reversedRow = new Object[row.length];
+            for (int c = 0; c < row.length; c++) {
+                reversed[row.length - 1 - c] = mColumns[c];
+                reversedRow[row.length - 1 - c] = row[c];
+            }
+            rows.add(reversedRow);
+        }
+        final Cursor cursor = new PreferredColumnOrderCursorWrapper(new FakeCursor(reversed, rows), mColumns);
+        final int columnCount = mColumns.length;
+        Benchmark.run("PreferredColumnOrderCursorWrapper.get*", columnCount, new Benchmark.Body() {
+            @Override
+            public void run(int invocations) {
+                long sum = 0;
+                for (int i = 0; i < invocations; i++) {
+                    cursor.moveToPosition(i % ROWS);
+                    for (int c = 0; c < columnCount; c++) {
+                        if (cursor.getType(c) == Cursor.FIELD_TYPE_STRING) {
+                            sum += cursor.getString(c).length();
+                        } else {
+                            sum += cursor.getLong(c);
+                        }
+                    }
+                }
+                sSink = sum;
+            }
+        });
+    }
+
+    @Test
+    public void converterRegistryLookup() {
+        Benchmark.assumeEnabled();
+        Benchmark.run("Cupboard.getEntityConverter", 1, new Benchmark.Body() {
+            @Override
+            public void run(int invocations) {
+                Object result = null;
+                for (int i = 0; i < invocations; i++) {
+                    result = mCupboard.getEntityConverter(BenchmarkEntity.class);
+                }
+                sSink = result;
+            }
+        });
+        Benchmark.run("Cupboard.getFieldConverter", 1, new Benchmark.Body() {
+            @Override
+            public void run(int invocations) {
+                Object result = null;
+                for (int i = 0; i < invocations; i++) {
+                    result = mCupboard.getFieldConverter((i & 1) == 0 ? String.class : Date.class);
+                }
+                sSink = result;
+            }
+        });
+    }
+
+    @Test
+    public void queryResultIterableList() {
+        Benchmark.assumeEnabled();
+        Benchmark.run("QueryResultIterable.list (per row)", ROWS, new Benchmark.Body() {
+            @Override
+            public void run(int invocations) {
+                Object result = null;
+                for (int i = 0; i < invocations; i++) {
+                    result = new QueryResultIterable<BenchmarkEntity>(new FakeCursor(mColumns, mRows), mConverter).list();
+                }
+                sSink = result;
+            }
+        });
+    }
+
+    public enum State {
+        NEW, ACTIVE, DONE
+    }
+
+    public static class BenchmarkEntity {
+        public Long _id;
+        public String name;
+        public String description;
+        public int count;
+        public long timestamp;
+        public double score;
+        public boolean enabled;
+        public Date created;
+        public State state;
+    }
+}
@@ -0,0 +1,61 @@
+package nl.qbusict.cupboard;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+public class CriteriaTest {
+
+    @Test
+    public void comparisonBindsNativeTypes() {
+        Criteria criteria = Criteria.eq("count", 5);
+        assertEquals("\"count\" = ?", criteria.getSql());
+        assertEquals(5L, criteria.getArgs()[0]);
+        assertEquals(1.5d, Criteria.lt("price", 1.5f).getArgs()[0]);
+        assertEquals(1L, Criteria.eq("enabled", true).getArgs()[0]);
+        assertEquals(1000L, Criteria.ge("created", new Date(1000)).getArgs()[0]);
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(2000);
+        assertEquals(2000L, Criteria.ge("created", calendar).getArgs()[0]);
+        assertEquals("TEST1", Criteria.ne("type", TestEnum.TEST1).getArgs()[0]);
+    }
+
+    @Test
+    public void sqlDoesNotDependOnValues() {
+        assertEquals(Criteria.between("year", 1900, 1950).getSql(), Criteria.between("year", 2000, 2010).getSql());
+        assertEquals("\"year\" BETWEEN ? AND ?", Criteria.between("year", 1900, 1950).getSql());
+        assertEquals("\"_id\" IN (?,?,?)", Criteria.in("_id", 1L, 2L, 3L).getSql());
+        assertEquals("\"_id\" IN (?,?)", Criteria.in("_id", Arrays.asList(1, 2)).getSql());
+    }
+
+    @Test
+    public void combine() {
+        Criteria criteria = Criteria.or(Criteria.and(Criteria.eq("a", "x"), Criteria.gt("b", 2)), Criteria.isNull("c"));
+        assertEquals("((\"a\" = ?) AND (\"b\" > ?)) OR (\"c\" IS NULL)", criteria.getSql());
+        assertTrue(Arrays.equals(new Object[]{"x", 2L}, criteria.getArgs()));
+        assertEquals(Arrays.asList("a", "b", "c"), criteria.getColumns());
+        assertEquals("NOT (\"c\" IS NOT NULL)", Criteria.not(Criteria.isNotNull("c")).getSql());
+    }
+
+    @Test
+    public void nullValueIsRejected() {
+        try {
+            Criteria.eq("a", null);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            Criteria.eq("a", new Object());
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    private enum TestEnum {TEST1}
+}
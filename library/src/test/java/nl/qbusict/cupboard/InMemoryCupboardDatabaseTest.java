@@ -0,0 +1,154 @@
+package nl.qbusict.cupboard;
+
+import android.database.SQLException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import nl.qbusict.cupboard.annotation.Index;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+public class InMemoryCupboardDatabaseTest {
+
+    private Cupboard mCupboard;
+    private InMemoryCupboardDatabase mDatabase;
+    private DatabaseCompartment mCompartment;
+
+    @Before
+    public void setUp() {
+        mCupboard = new CupboardBuilder().useAnnotations().build();
+        mCupboard.register(MemoryEntity.class);
+        mDatabase = new InMemoryCupboardDatabase();
+        mCompartment = mCupboard.withDatabase(mDatabase);
+        mCompartment.createTables();
+    }
+
+    private MemoryEntity entity(String name, int value) {
+        MemoryEntity entity = new MemoryEntity();
+        entity.name = name;
+        entity.value = value;
+        entity.data = new byte[]{1, 2, (byte) value};
+        return entity;
+    }
+
+    @Test
+    public void putGetQuery() {
+        long id = mCompartment.put(entity("a", 1));
+        mCompartment.put(entity("b", 2));
+        mCompartment.put(entity("c", 3));
+        MemoryEntity entity = mCompartment.get(MemoryEntity.class, id);
+        assertEquals("a", entity.name);
+        assertEquals(1, entity.value);
+        assertEquals(3, entity.data.length);
+        List<MemoryEntity> list = mCompartment.query(MemoryEntity.class).withSelection("value > ?", "1").orderBy("value desc").list();
+        assertEquals(2, list.size());
+        assertEquals("c", list.get(0).name);
+        assertEquals(3, mCompartment.query(MemoryEntity.class).count());
+        assertEquals(1, mCompartment.delete(MemoryEntity.class, "name = ?", "b"));
+        assertEquals(2, mCompartment.query(MemoryEntity.class).count());
+    }
+
+    @Test
+    public void uniqueIndex() {
+        mCompartment.put(entity("a", 1));
+        try {
+            mCompartment.put(entity("a", 2));
+            fail("expected a unique constraint violation");
+        } catch (SQLException expected) {
+        }
+    }
+
+    @Test
+    public void upgradeIsNoOp() {
+        assertTrue(mCompartment.getUpgradeStatements().isEmpty());
+        mCompartment.upgradeTables();
+        mCompartment.dropAllTables();
+        assertFalse(mCompartment.getUpgradeStatements().isEmpty());
+        mCompartment.upgradeTables();
+        assertTrue(mCompartment.getUpgradeStatements().isEmpty());
+    }
+
+    @Test
+    public void createTablesAfterDropTable() {
+        mDatabase.execSQL("drop table MemoryEntity");
+        mCompartment.createTables();
+        mCompartment.put(entity("a", 1));
+        assertEquals(1, mCompartment.query(MemoryEntity.class).count());
+    }
+
+    @Test
+    public void nestedTransactionRollsBack() {
+        mDatabase.beginTransaction();
+        try {
+            mCompartment.put(entity("a", 1));
+            mDatabase.beginTransaction();
+            try {
+                mCompartment.put(entity("b", 2));
+            } finally {
+                // not successful
+                mDatabase.endTransaction();
+            }
+            mDatabase.setTransactionSuccessful();
+        } finally {
+            mDatabase.endTransaction();
+        }
+        assertFalse(mDatabase.inTransaction());
+        assertEquals(0, mCompartment.query(MemoryEntity.class).count());
+
+        mDatabase.beginTransaction();
+        try {
+            mCompartment.put(entity("c", 3));
+            mDatabase.setTransactionSuccessful();
+        } finally {
+            mDatabase.endTransaction();
+        }
+        assertEquals(1, mCompartment.query(MemoryEntity.class).count());
+    }
+
+    @Test
+    public void criteriaAndProjection() {
+        mCompartment.put(entity("a", 1));
+        mCompartment.put(entity("b", 2));
+        mCompartment.put(entity("c", 3));
+        List<MemoryEntity> list = mCompartment.query(MemoryEntity.class).where(Criteria.or(Criteria.lt("value", 2),
+                Criteria.eq("name", "c"))).orderBy("value").list();
+        assertEquals(2, list.size());
+        assertEquals("a", list.get(0).name);
+        assertEquals("c", list.get(1).name);
+        // columns that aren't projected are left alone
+        MemoryEntity entity = mCompartment.query(MemoryEntity.class).withProjection("value", "name").where(Criteria.eq("value", 2)).get();
+        assertEquals("b", entity.name);
+        assertNull(entity._id);
+        assertNull(entity.data);
+    }
+
+    @Test
+    public void updateAndDeleteEntity() {
+        MemoryEntity entity = entity("a", 1);
+        mCompartment.put(entity);
+        entity.value = 5;
+        entity.data = null;
+        mCompartment.put(entity);
+        MemoryEntity stored = mCompartment.get(MemoryEntity.class, entity._id);
+        assertEquals(5, stored.value);
+        assertNull(stored.data);
+        assertEquals(1, mCompartment.query(MemoryEntity.class).count());
+        assertTrue(mCompartment.delete(stored));
+        assertNull(mCompartment.get(MemoryEntity.class, entity._id));
+    }
+
+    public static class MemoryEntity {
+        public Long _id;
+        @Index(unique = true)
+        public String name;
+        public int value;
+        public byte[] data;
+    }
+}
@@ -0,0 +1,320 @@
+package nl.qbusict.cupboard;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.SQLException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import nl.qbusict.cupboard.internal.memory.MemoryDatabase;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+public class JdbcCupboardDatabaseTest {
+    private MemoryDatabase mMemory;
+    private FakeConnection mConnection;
+
+    @Before
+    public void setUp() {
+        mMemory = new MemoryDatabase();
+        mConnection = new FakeConnection(mMemory);
+    }
+
+    @Test
+    public void queryIsRandomAccessAndStatementsAreCached() {
+        JdbcCupboardDatabase db = new JdbcCupboardDatabase(mConnection.proxy());
+        db.execSQL("create table 'Entity' (_id integer primary key, name text, price real)");
+        db.execSQL("insert into Entity (name, price) values ('a', 1.5), ('b', null)");
+        for (int i = 0; i < 2; i++) {
+            Cursor cursor = db.rawQuery("select _id, name as title, price from Entity where _id > ? order by _id", new String[]{"0"});
+            assertEquals(2, cursor.getCount());
+            assertEquals("title", cursor.getColumnName(1));
+            assertTrue(cursor.moveToLast());
+            assertEquals("b", cursor.getString(1));
+            assertTrue(cursor.isNull(2));
+            assertTrue(cursor.moveToFirst());
+            assertEquals(1, cursor.getLong(0));
+            assertEquals(1.5, cursor.getDouble(2), 0);
+            cursor.close();
+        }
+        assertEquals(2, db.longForQuery("select count(*) from Entity", null));
+        assertEquals(0, db.longForQuery("select _id from Entity where name = ?", new Object[]{"x"}));
+        assertEquals(Arrays.asList("select _id, name as title, price from Entity where _id > ? order by _id", "select count(*) from Entity",
+                "select _id from Entity where name = ?"), mConnection.mPrepared);
+    }
+
+    @Test
+    public void leastRecentlyUsedStatementIsClosed() {
+        JdbcCupboardDatabase db = new JdbcCupboardDatabase(mConnection.proxy(), 2);
+        db.longForQuery("select 1", null);
+        db.longForQuery("select 2", null);
+        db.longForQuery("select 1", null);
+        db.longForQuery("select 3", null);
+        assertEquals(Arrays.asList("select 2"), mConnection.mClosed);
+        db.longForQuery("select 2", null);
+        assertEquals(4, mConnection.mPrepared.size());
+        db.close();
+        assertEquals(4, mConnection.mClosed.size());
+    }
+
+    @Test
+    public void insertBatchReadsTheIdOfEachRow() {
+        JdbcCupboardDatabase db = new JdbcCupboardDatabase(mConnection.proxy());
+        db.execSQL("create table 'Entity' (_id integer primary key autoincrement, name text)");
+        db.execSQL("insert into Entity (name) values ('a')");
+        // another row takes the next row id before each insert, so the row ids of the batch aren't consecutive
+        mConnection.mBeforeInsert = "insert into Entity (name) values ('gap')";
+        List<ContentValues> rows = Arrays.asList(null, null, row(100, "b"), row(200, "c"), null);
+        db.beginTransaction();
+        try {
+            long[] ids = db.insertBatch("'Entity'", "_id", rows, false);
+            assertEquals(3, ids[0]);
+            assertEquals(5, ids[1]);
+            assertEquals(100, ids[2]);
+            assertEquals(200, ids[3]);
+            assertEquals(202, ids[4]);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        assertEquals(1, mConnection.mBatches);
+        assertEquals(3, db.longForQuery("select count(*) from Entity where _id in (3, 5, 202) and name is null", null));
+        assertEquals(11, db.longForQuery("select count(*) from Entity", null));
+    }
+
+    @Test
+    public void errorKeepsTheJdbcException() {
+        JdbcCupboardDatabase db = new JdbcCupboardDatabase(mConnection.proxy());
+        try {
+            db.longForQuery("select * from Missing", null);
+            fail("Expected SQLException");
+        } catch (SQLException expected) {
+            assertTrue(expected.getCause() instanceof java.sql.SQLException);
+            assertTrue(expected.getMessage().contains("error code 1"));
+        }
+    }
+
+    private static ContentValues row(long id, String name) {
+        ContentValues values = new ContentValues();
+        values.put("_id", id);
+        values.put("name", name);
+        return values;
+    }
+
+    @Test
+    public void nestedTransactionRollsBack() {
+        JdbcCupboardDatabase db = new JdbcCupboardDatabase(mConnection.proxy());
+        db.execSQL("create table t (id integer primary key)");
+        db.beginTransaction();
+        try {
+            db.execSQL("insert into t (id) values (1)");
+            db.beginTransaction();
+            try {
+                db.execSQL("insert into t (id) values (2)");
+            } finally {
+                db.endTransaction();
+            }
+            assertTrue(db.inTransaction());
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        assertFalse(db.inTransaction());
+        assertTrue(mConnection.mAutoCommit);
+        assertEquals(0, db.longForQuery("select count(*) from t", null));
+
+        db.beginTransaction();
+        try {
+            db.execSQL("insert into t (id) values (3)");
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        assertEquals(1, db.longForQuery("select count(*) from t", null));
+    }
+
+    /**
+     * A jdbc connection on a {@link MemoryDatabase}, implementing just what {@link JdbcCupboardDatabase} uses
+     */
+    private static class FakeConnection implements InvocationHandler {
+        final MemoryDatabase mDatabase;
+        final List<String> mPrepared = new ArrayList<String>();
+        final List<String> mClosed = new ArrayList<String>();
+        boolean mAutoCommit = true;
+        int mBatches;
+        /**
+         * Sql that is executed before each insert, like an insert from another connection
+         */
+        String mBeforeInsert;
+
+        FakeConnection(MemoryDatabase database) {
+            mDatabase = database;
+        }
+
+        Connection proxy() {
+            return proxy(Connection.class, this);
+        }
+
+        @SuppressWarnings("unchecked")
+        static <T> T proxy(Class<T> type, InvocationHandler handler) {
+            return (T) Proxy.newProxyInstance(FakeConnection.class.getClassLoader(), new Class<?>[]{type}, handler);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("prepareStatement")) {
+                mPrepared.add((String) args[0]);
+                return proxy(PreparedStatement.class, new FakeStatement((String) args[0]));
+            } else if (name.equals("createStatement")) {
+                return proxy(Statement.class, new FakeStatement(null));
+            } else if (name.equals("getAutoCommit")) {
+                return mAutoCommit;
+            } else if (name.equals("setAutoCommit")) {
+                boolean autoCommit = (Boolean) args[0];
+                if (autoCommit && mDatabase.inTransaction()) {
+                    mDatabase.commit();
+                } else if (!autoCommit && !mDatabase.inTransaction()) {
+                    mDatabase.beginTransaction();
+                }
+                mAutoCommit = autoCommit;
+                return null;
+            } else if (name.equals("commit") || name.equals("rollback")) {
+                if (name.equals("commit")) {
+                    mDatabase.commit();
+                } else {
+                    mDatabase.rollback();
+                }
+                mDatabase.beginTransaction();
+                return null;
+            }
+            throw new UnsupportedOperationException(name);
+        }
+
+        private class FakeStatement implements InvocationHandler {
+            final String mSql;
+            final List<Object> mArgs = new ArrayList<Object>();
+            final List<Object[]> mBatch = new ArrayList<Object[]>();
+
+            FakeStatement(String sql) {
+                mSql = sql;
+            }
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                try {
+                    return execute(method.getName(), args);
+                } catch (android.database.SQLException e) {
+                    // like a driver reporting SQLITE_ERROR
+                    throw new java.sql.SQLException(e.getMessage(), null, 1);
+                }
+            }
+
+            private Object execute(String name, Object[] args) {
+                if (name.startsWith("set")) {
+                    int index = (Integer) args[0] - 1;
+                    while (mArgs.size() <= index) {
+                        mArgs.add(null);
+                    }
+                    mArgs.set(index, name.equals("setNull") ? null : args[1]);
+                    return null;
+                } else if (name.equals("clearParameters")) {
+                    mArgs.clear();
+                    return null;
+                } else if (name.equals("execute")) {
+                    mDatabase.execute((String) args[0], null);
+                    return false;
+                } else if (name.equals("executeUpdate")) {
+                    beforeExecute();
+                    return mDatabase.execute(mSql, mArgs.toArray());
+                } else if (name.equals("addBatch")) {
+                    mBatch.add(mArgs.toArray());
+                    return null;
+                } else if (name.equals("executeBatch")) {
+                    mBatches++;
+                    int[] counts = new int[mBatch.size()];
+                    for (int i = 0; i < counts.length; i++) {
+                        beforeExecute();
+                        counts[i] = mDatabase.execute(mSql, mBatch.get(i));
+                    }
+                    return counts;
+                } else if (name.equals("clearBatch")) {
+                    mBatch.clear();
+                    return null;
+                } else if (name.equals("executeQuery")) {
+                    return proxy(ResultSet.class, new FakeResultSet(mDatabase.query(mSql, mArgs.toArray())));
+                } else if (name.equals("close")) {
+                    if (mSql != null) {
+                        mClosed.add(mSql);
+                    }
+                    return null;
+                }
+                throw new UnsupportedOperationException(name);
+            }
+
+            private void beforeExecute() {
+                if (mBeforeInsert != null && mSql.startsWith("INSERT")) {
+                    mDatabase.execute(mBeforeInsert, null);
+                }
+            }
+        }
+    }
+
+    private static class FakeResultSet implements InvocationHandler {
+        final Cursor mCursor;
+
+        FakeResultSet(Cursor cursor) {
+            mCursor = cursor;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("next")) {
+                return mCursor.moveToNext();
+            } else if (name.equals("getMetaData")) {
+                return FakeConnection.proxy(ResultSetMetaData.class, this);
+            } else if (name.equals("getColumnCount")) {
+                return mCursor.getColumnCount();
+            } else if (name.equals("getColumnLabel")) {
+                return mCursor.getColumnName((Integer) args[0] - 1);
+            } else if (name.equals("getLong")) {
+                return mCursor.getLong((Integer) args[0] - 1);
+            } else if (name.equals("getObject")) {
+                int column = (Integer) args[0] - 1;
+                switch (mCursor.getType(column)) {
+                    case Cursor.FIELD_TYPE_NULL:
+                        return null;
+                    case Cursor.FIELD_TYPE_INTEGER:
+                        return mCursor.getLong(column);
+                    case Cursor.FIELD_TYPE_FLOAT:
+                        return mCursor.getDouble(column);
+                    case Cursor.FIELD_TYPE_BLOB:
+                        return mCursor.getBlob(column);
+                    default:
+                        return mCursor.getString(column);
+                }
+            } else if (name.equals("close")) {
+                mCursor.close();
+                return null;
+            }
+            throw new UnsupportedOperationException(name);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package nl.qbusict.cupboard;
+
+import org.junit.Test;
+
+import nl.qbusict.cupboard.OperationListener.Operation;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+public class OperationHistogramTest {
+
+    @Test
+    public void countsPerEntityAndOperation() {
+        OperationHistogram histogram = new OperationHistogram();
+        histogram.onOperation(String.class, Operation.PUT, 1000, 500, 1, 10);
+        histogram.onOperation(String.class, Operation.PUT, 3000, 500, 1, 10);
+        histogram.onOperation(String.class, Operation.QUERY, 5000, 2000, 20, 0);
+        histogram.onOperation(Integer.class, Operation.DELETE, 100, 0, 3, 8);
+        assertEquals(2, histogram.getCount(String.class, Operation.PUT));
+        assertEquals(2, histogram.getRows(String.class, Operation.PUT));
+        assertEquals(20, histogram.getRows(String.class, Operation.QUERY));
+        assertEquals(0, histogram.getCount(String.class, Operation.DELETE));
+        assertEquals(3, histogram.getRows(Integer.class, Operation.DELETE));
+        histogram.reset();
+        assertEquals(0, histogram.getCount(String.class, Operation.PUT));
+    }
+
+    @Test
+    public void dumpReportsPercentiles() {
+        OperationHistogram histogram = new OperationHistogram();
+        for (int i = 0; i < 99; i++) {
+            histogram.onOperation(String.class, Operation.GET, 3000, 0, 1, 8);
+        }
+        histogram.onOperation(String.class, Operation.GET, 100000, 0, 1, 8);
+        String dump = histogram.dump();
+        assertTrue(dump, dump.startsWith("String GET count=100 rows=100 bytes=800 sql(avg=3 p50=4 p99=4) conversion(avg=0 p50=1 p99=1)"));
+        histogram.onOperation(String.class, Operation.GET, 100000, 0, 1, 8);
+        dump = histogram.dump();
+        assertTrue(dump, dump.contains("p99=128"));
+    }
+}
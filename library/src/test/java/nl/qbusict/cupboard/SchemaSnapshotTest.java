@@ -0,0 +1,31 @@
+package nl.qbusict.cupboard;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+
+public class SchemaSnapshotTest {
+
+    @Test
+    public void parseCupboardTable() {
+        assertEquals(new HashSet<String>(Arrays.asList("_id", "name", "value", "added")),
+                SchemaSnapshot.parseColumns("CREATE TABLE 'Entity' (_id integer primary key autoincrement, 'name' TEXT, 'Value' INTEGER, 'added' REAL)"));
+    }
+
+    @Test
+    public void parseConstraintsAndQuotes() {
+        assertEquals(new HashSet<String>(Arrays.asList("id", "price", "group", "a,b", "it's")),
+                SchemaSnapshot.parseColumns("create table t (id integer not null, price numeric(10, 2) check (price > 0), \"group\" text default 'a,b'," +
+                        " [a,b] blob, 'it''s' text, primary key (id), constraint c unique (price, \"group\"))"));
+    }
+
+    @Test
+    public void unparseableTable() {
+        assertNull(SchemaSnapshot.parseColumns("CREATE VIRTUAL TABLE t USING fts4(content)"));
+        assertNull(SchemaSnapshot.parseColumns("CREATE TABLE t AS SELECT 1"));
+    }
+}
@@ -0,0 +1,50 @@
+package nl.qbusict.cupboard.internal;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import nl.qbusict.cupboard.convert.IndexBuilder;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.fail;
+
+public class IndexStatementTest {
+
+    @Test
+    public void plainIndex() {
+        IndexStatement.Builder builder = new IndexStatement.Builder();
+        builder.addIndexedColumn("Entity", "name", new IndexBuilder().build());
+        List<IndexStatement> statements = builder.build();
+        assertEquals(1, statements.size());
+        assertEquals("create index if not exists _cbEntity_name on Entity ('name' ASC)", statements.get(0).getCreationSql("Entity"));
+    }
+
+    @Test
+    public void partialExpressionIndex() {
+        IndexStatement.Builder builder = new IndexStatement.Builder();
+        builder.addIndexedColumn("Entity", "email", new IndexBuilder().unique().expression("lower(email)").where("deleted = 0").build());
+        assertEquals("create unique index _cbEntity_email on Entity (lower(email) ASC) where deleted = 0",
+                builder.build().get(0).getCreationSql("Entity", false));
+    }
+
+    @Test
+    public void compositePartialIndex() {
+        IndexStatement.Builder builder = new IndexStatement.Builder();
+        builder.addIndexedColumn("Entity", "status", new IndexBuilder().named("by_status").order(1).ascending().where("deleted = 0").build());
+        builder.addIndexedColumn("Entity", "name", new IndexBuilder().named("by_status").order(2).descending().expression("lower(name)").build());
+        assertEquals("create index _cbby_status on Entity ('status' ASC, lower(name) DESC) where deleted = 0",
+                builder.build().get(0).getCreationSql("Entity", false));
+    }
+
+    @Test
+    public void conflictingConditions() {
+        IndexStatement.Builder builder = new IndexStatement.Builder();
+        builder.addIndexedColumn("Entity", "status", new IndexBuilder().named("by_status").order(1).where("deleted = 0").build());
+        try {
+            builder.addIndexedColumn("Entity", "name", new IndexBuilder().named("by_status").order(2).where("deleted = 1").build());
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package nl.qbusict.cupboard.internal.convert;
+
+import org.junit.Test;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import nl.qbusict.cupboard.Cupboard;
+import nl.qbusict.cupboard.CupboardBuilder;
+import nl.qbusict.cupboard.FakeCursor;
+import nl.qbusict.cupboard.annotation.EnumStorage;
+import nl.qbusict.cupboard.convert.EntityConverter.ColumnType;
+import nl.qbusict.cupboard.convert.FieldConverter;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+public class CollectionFieldConverterFactoryTest {
+
+    public enum Color {
+        RED, GREEN, BLUE
+    }
+
+    public static class Tag {
+        public Long _id;
+    }
+
+    public List<String> strings;
+    public Map<String, List<Integer>> nested;
+    public Set<Color> colors;
+    public ArrayList<Double> doubles;
+    public TreeMap<Long, byte[]> treeMap;
+    public List<Tag> tags;
+    public List<Object> objects;
+    public List rawList;
+
+    private static Type type(String field) throws NoSuchFieldException {
+        return CollectionFieldConverterFactoryTest.class.getField(field).getGenericType();
+    }
+
+    private static CollectionFieldConverterFactory.CollectionConverter converter(Cupboard cupboard, String field) throws NoSuchFieldException {
+        return (CollectionFieldConverterFactory.CollectionConverter) new CollectionFieldConverterFactory().create(cupboard, type(field));
+    }
+
+    private static Object roundTrip(CollectionFieldConverterFactory.CollectionConverter converter, Object value) {
+        FakeCursor cursor = new FakeCursor(new String[]{"value"}, Collections.singletonList(new Object[]{converter.encode(value)}));
+        cursor.moveToFirst();
+        return converter.fromCursorValue(cursor, 0);
+    }
+
+    @Test
+    public void listIsDecodedOnAccess() throws NoSuchFieldException {
+        CollectionFieldConverterFactory.CollectionConverter converter = converter(new Cupboard(), "strings");
+        assertEquals(ColumnType.BLOB, converter.getColumnType());
+        byte[] blob = converter.encode(Arrays.asList("a", null, "\u00e9\u20ac\ud83d\ude00", ""));
+        FakeCursor cursor = new FakeCursor(new String[]{"value"}, Collections.singletonList(new Object[]{blob}));
+        cursor.moveToFirst();
+        List<?> list = (List<?>) converter.fromCursorValue(cursor, 0);
+        // not accessed, written back as is
+        assertSame(blob, converter.encode(list));
+        assertEquals(Arrays.asList("a", null, "\u00e9\u20ac\ud83d\ude00", ""), list);
+        ((List<Object>) list).add("b");
+        assertEquals(5, ((List<?>) roundTrip(converter, list)).size());
+    }
+
+    @Test
+    public void nestedCollections() throws NoSuchFieldException {
+        CollectionFieldConverterFactory.CollectionConverter converter = converter(new Cupboard(), "nested");
+        Map<String, List<Integer>> map = new LinkedHashMap<String, List<Integer>>();
+        map.put("small", Arrays.asList(0, -1, 1, 127, -128));
+        map.put("large", Arrays.asList(Integer.MAX_VALUE, Integer.MIN_VALUE));
+        map.put("empty", new ArrayList<Integer>());
+        map.put(null, null);
+        Map<?, ?> result = (Map<?, ?>) roundTrip(converter, map);
+        assertEquals(map, result);
+        assertEquals(Arrays.asList("small", "large", "empty", null), new ArrayList<Object>(result.keySet()));
+    }
+
+    @Test
+    public void concreteTypesAreDecodedEagerly() throws NoSuchFieldException {
+        Cupboard cupboard = new Cupboard();
+        Object doubles = roundTrip(converter(cupboard, "doubles"), new ArrayList<Double>(Arrays.asList(1.5, -0.0, Double.NaN)));
+        assertEquals(ArrayList.class, doubles.getClass());
+        assertEquals(Arrays.asList(1.5, -0.0, Double.NaN), doubles);
+        TreeMap<Long, byte[]> map = new TreeMap<Long, byte[]>();
+        map.put(Long.MIN_VALUE, new byte[]{1, 2});
+        map.put(3L, new byte[0]);
+        TreeMap<?, ?> result = (TreeMap<?, ?>) roundTrip(converter(cupboard, "treeMap"), map);
+        assertEquals(2, ((byte[]) result.get(Long.MIN_VALUE)).length);
+        assertEquals(0, ((byte[]) result.get(3L)).length);
+    }
+
+    @Test
+    public void enumsFollowRegisteredStorage() throws NoSuchFieldException {
+        Set<Color> colors = new LinkedHashSet<Color>(Arrays.asList(Color.BLUE, Color.RED));
+        CollectionFieldConverterFactory.CollectionConverter byName = converter(new Cupboard(), "colors");
+        Cupboard cupboard = new CupboardBuilder().registerEnumStorage(Color.class, EnumStorage.Mode.ORDINAL).build();
+        CollectionFieldConverterFactory.CollectionConverter byOrdinal = converter(cupboard, "colors");
+        assertEquals(colors, roundTrip(byName, colors));
+        assertEquals(colors, roundTrip(byOrdinal, colors));
+        assertTrue(byOrdinal.encode(colors).length < byName.encode(colors).length);
+    }
+
+    @Test
+    public void entitiesAreStoredById() throws NoSuchFieldException {
+        Cupboard cupboard = new Cupboard();
+        cupboard.register(Tag.class);
+        Tag tag = new Tag();
+        tag._id = 42L;
+        List<?> tags = (List<?>) roundTrip(converter(cupboard, "tags"), Arrays.asList(tag, null));
+        assertEquals(Long.valueOf(42), ((Tag) tags.get(0))._id);
+        assertNull(tags.get(1));
+    }
+
+    @Test
+    public void unsupportedTypes() throws NoSuchFieldException {
+        CollectionFieldConverterFactory factory = new CollectionFieldConverterFactory();
+        assertNull(factory.create(new Cupboard(), type("objects")));
+        assertNull(factory.create(new Cupboard(), type("rawList")));
+        assertNull(factory.create(new Cupboard(), String.class));
+    }
+
+    @Test
+    public void corruptData() throws NoSuchFieldException {
+        FieldConverter<?> converter = converter(new Cupboard(), "strings");
+        FakeCursor cursor = new FakeCursor(new String[]{"value"}, Collections.singletonList(new Object[]{new byte[]{1, 100, 1}}));
+        cursor.moveToFirst();
+        List<?> list = (List<?>) converter.fromCursorValue(cursor, 0);
+        try {
+            list.size();
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void negativeOrdinal() throws NoSuchFieldException {
+        Cupboard cupboard = new CupboardBuilder().registerEnumStorage(Color.class, EnumStorage.Mode.ORDINAL).build();
+        FieldConverter<?> converter = converter(cupboard, "colors");
+        BlobWriter out = new BlobWriter(16);
+        out.writeByte(1);
+        out.writeVarLong(1);
+        out.writeByte(1);
+        out.writeVarLong(-1);
+        FakeCursor cursor = new FakeCursor(new String[]{"value"}, Collections.singletonList(new Object[]{out.toByteArray()}));
+        cursor.moveToFirst();
+        Set<?> set = (Set<?>) converter.fromCursorValue(cursor, 0);
+        try {
+            set.size();
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
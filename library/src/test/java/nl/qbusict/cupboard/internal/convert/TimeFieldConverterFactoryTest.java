@@ -0,0 +1,128 @@
+package nl.qbusict.cupboard.internal.convert;
+
+import org.junit.Test;
+
+import java.sql.Timestamp;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+
+import nl.qbusict.cupboard.FakeCursor;
+import nl.qbusict.cupboard.annotation.TimeStorage.Mode;
+import nl.qbusict.cupboard.convert.EntityConverter.ColumnType;
+import nl.qbusict.cupboard.convert.FieldConverter;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+public class TimeFieldConverterFactoryTest {
+
+    // 2016-03-01T12:30:15.250Z
+    private static final long TIME = 1456835415250L;
+
+    private static long parse(String text) {
+        return TimeFieldConverterFactory.parseIso(text.toCharArray(), text.length());
+    }
+
+    private static Object read(Mode mode, Class<?> type, Object value) {
+        FieldConverter<?> converter = TimeFieldConverterFactory.create(type, mode);
+        FakeCursor cursor = new FakeCursor(new String[]{"value"}, Collections.singletonList(new Object[]{value}));
+        cursor.moveToFirst();
+        return converter.fromCursorValue(cursor, 0);
+    }
+
+    @Test
+    public void formatIso() {
+        assertEquals("2016-03-01T12:30:15.250Z", TimeFieldConverterFactory.formatIso(TIME));
+        assertEquals("1970-01-01T00:00:00.000Z", TimeFieldConverterFactory.formatIso(0));
+        assertEquals("1969-12-31T23:59:59.999Z", TimeFieldConverterFactory.formatIso(-1));
+        assertEquals("2000-02-29T00:00:00.000Z", TimeFieldConverterFactory.formatIso(951782400000L));
+        try {
+            TimeFieldConverterFactory.formatIso(Long.MAX_VALUE);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void parseIso() {
+        assertEquals(TIME * 1000, parse("2016-03-01T12:30:15.250Z"));
+        assertEquals(TIME * 1000, parse("2016-03-01T12:30:15.25"));
+        assertEquals(TIME * 1000 + 1, parse("2016-03-01T12:30:15.250001999Z"));
+        assertEquals((TIME - 250) * 1000, parse("2016-03-01 12:30:15"));
+        assertEquals((TIME - 15250) * 1000, parse("2016-03-01T12:30Z"));
+        assertEquals((TIME - 250) * 1000, parse("2016-03-01T14:30:15+02:00"));
+        assertEquals((TIME - 250) * 1000, parse("2016-03-01T07:00:15-0530"));
+        assertEquals(-1000000, parse("1969-12-31T23:59:59Z"));
+        assertEquals(0, parse("1970-01-01"));
+        for (String invalid : new String[]{"", "2016", "2016-13-01", "2016/03/01", "2016-03-01T12", "2016-03-01T12:30:15.",
+                "2016-03-01T12:30:15X", "2016-03-01T12:30:15+02", "2016-03-01T12:30:15Z "}) {
+            try {
+                parse(invalid);
+                fail("Expected IllegalArgumentException for " + invalid);
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void isoRoundTripSortsChronologically() {
+        String previous = null;
+        for (long millis = -86400000L * 366; millis < 86400000L * 366 * 40; millis += 86400000L * 7 + 3601001) {
+            String text = TimeFieldConverterFactory.formatIso(millis);
+            assertEquals(millis * 1000, parse(text));
+            assertTrue(previous == null || previous.compareTo(text) < 0);
+            previous = text;
+        }
+    }
+
+    @Test
+    public void readIntegerModes() {
+        assertEquals(new Date(TIME - 250), read(Mode.SECONDS, Date.class, TIME / 1000));
+        assertEquals(new Date(TIME), read(Mode.MILLIS, Date.class, TIME));
+        assertEquals(new Date(TIME), read(Mode.MICROS, Date.class, TIME * 1000 + 999));
+        Timestamp timestamp = (Timestamp) read(Mode.MICROS, Timestamp.class, TIME * 1000 + 7);
+        assertEquals(TIME, timestamp.getTime());
+        assertEquals(250007000, timestamp.getNanos());
+        timestamp = (Timestamp) read(Mode.MICROS, Timestamp.class, -1);
+        assertEquals(-1, timestamp.getTime());
+        assertEquals(999999000, timestamp.getNanos());
+        assertEquals(TIME, ((Calendar) read(Mode.MILLIS, Calendar.class, TIME)).getTimeInMillis());
+    }
+
+    @Test
+    public void extremeMillisRoundTrip() {
+        for (long millis : new long[]{Long.MAX_VALUE, Long.MIN_VALUE}) {
+            assertEquals(new Date(millis), read(Mode.MILLIS, Date.class, millis));
+            assertEquals(millis, ((Timestamp) read(Mode.MILLIS, Timestamp.class, millis)).getTime());
+            assertEquals(String.valueOf(millis), Mode.MILLIS.toSelectionArg(new Date(millis)));
+        }
+        assertEquals(String.valueOf(Long.MAX_VALUE / 1000), Mode.SECONDS.toSelectionArg(new Date(Long.MAX_VALUE)));
+        try {
+            Mode.MICROS.toSelectionArg(new Date(Long.MAX_VALUE));
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void selectionArgs() {
+        Timestamp timestamp = new Timestamp(TIME);
+        timestamp.setNanos(250001000);
+        assertEquals(String.valueOf(TIME / 1000), Mode.SECONDS.toSelectionArg(new Date(TIME)));
+        assertEquals(String.valueOf(TIME), Mode.MILLIS.toSelectionArg(timestamp));
+        assertEquals(String.valueOf(TIME * 1000 + 1), Mode.MICROS.toSelectionArg(timestamp));
+        assertEquals("1969-12-31T23:59:59.999Z", Mode.ISO_TEXT.toSelectionArg(new Date(-1)));
+        assertEquals("2016-03-01T12:30:15.250Z", Mode.ISO_TEXT.toSelectionArg(timestamp));
+        assertEquals("-1", Mode.SECONDS.toSelectionArg(new Date(-1)));
+    }
+
+    @Test
+    public void columnTypes() {
+        assertEquals(ColumnType.INTEGER, TimeFieldConverterFactory.create(Date.class, Mode.MICROS).getColumnType());
+        assertEquals(ColumnType.TEXT, TimeFieldConverterFactory.create(Calendar.class, Mode.ISO_TEXT).getColumnType());
+        assertNull(TimeFieldConverterFactory.create(Long.class, Mode.MILLIS));
+    }
+}
@@ -0,0 +1,307 @@
+package nl.qbusict.cupboard.internal.memory;
+
+import android.database.Cursor;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+public class MemoryDatabaseTest {
+    private MemoryDatabase mDatabase;
+
+    @Before
+    public void setUp() {
+        mDatabase = new MemoryDatabase();
+        mDatabase.execute("create table 'Entity' (_id integer primary key autoincrement, 'name' TEXT, 'value' INTEGER, 'price' REAL)", null);
+    }
+
+    private long insert(String name, Object value, Object price) {
+        mDatabase.execute("insert into 'Entity' (name, value, price) values (?, ?, ?)", new Object[]{name, value, price});
+        return mDatabase.getLastInsertRowId();
+    }
+
+    private List<String> column(String sql, Object... args) {
+        Cursor cursor = mDatabase.query(sql, args);
+        try {
+            List<String> values = new ArrayList<String>();
+            while (cursor.moveToNext()) {
+                values.add(cursor.getString(0));
+            }
+            return values;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private long longForQuery(String sql, Object... args) {
+        Cursor cursor = mDatabase.query(sql, args);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void insertAndQuery() {
+        assertEquals(1, insert("a", 1, 1.5));
+        assertEquals(2, insert("b", 2, null));
+        Cursor cursor = mDatabase.query("SELECT * FROM 'Entity' WHERE _id = ?", new Object[]{"2"});
+        assertEquals(1, cursor.getCount());
+        assertEquals(4, cursor.getColumnCount());
+        assertTrue(cursor.moveToFirst());
+        assertEquals(2, cursor.getLong(cursor.getColumnIndex("_id")));
+        assertEquals("b", cursor.getString(cursor.getColumnIndex("name")));
+        assertTrue(cursor.isNull(cursor.getColumnIndex("price")));
+        assertEquals(Cursor.FIELD_TYPE_INTEGER, cursor.getType(cursor.getColumnIndex("value")));
+        cursor.close();
+    }
+
+    @Test
+    public void typeAffinity() {
+        insert("a", "12", "3");
+        Cursor cursor = mDatabase.query("select value, typeof(value), price, typeof(price), name from Entity", null);
+        assertTrue(cursor.moveToFirst());
+        assertEquals(12, cursor.getLong(0));
+        assertEquals("integer", cursor.getString(1));
+        assertEquals("3.0", cursor.getString(2));
+        assertEquals("real", cursor.getString(3));
+        cursor.close();
+        // a text argument is compared to an integer column as a number
+        assertEquals(1, longForQuery("select count(*) from Entity where value = ?", "12"));
+        assertEquals(1, longForQuery("select count(*) from Entity where value > ?", "9"));
+    }
+
+    @Test
+    public void whereOrderLimit() {
+        insert("c", 3, null);
+        insert("a", 1, null);
+        insert("b", 2, null);
+        insert("d", null, null);
+        assertEquals(list("a", "b", "c"), column("select name from Entity where value is not null order by value"));
+        assertEquals(list("c", "b"), column("select name from Entity where value between 2 and 3 order by name desc"));
+        assertEquals(list("b", "c"), column("select name from Entity where value not null order by 1 limit 1, 2"));
+        assertEquals(list("c"), column("select name from Entity order by name limit 1 offset 2"));
+        assertEquals(list("a", "c"), column("select name from Entity where name in ('a', 'c', 'x') order by _id desc"));
+        assertEquals(list("b", "d"), column("select name from Entity where name like 'B%' or value is null order by name"));
+        assertEquals(list("c", "d"), column("select name from Entity where value = (select max(value) from Entity) or value isnull and _id > 3 order by name"));
+    }
+
+    @Test
+    public void aggregates() {
+        insert("a", 1, 1.0);
+        insert("a", 2, 2.0);
+        insert("b", 5, null);
+        assertEquals(3, longForQuery("select count(*) from Entity"));
+        assertEquals(2, longForQuery("select count(price) from Entity"));
+        assertEquals(8, longForQuery("select sum(value) from Entity"));
+        assertEquals(list("a:2:3", "b:1:5"), column("select name || ':' || count(*) || ':' || sum(value) from Entity group by name order by name"));
+        assertEquals(list("a"), column("select name from Entity group by name having count(*) > 1"));
+        assertEquals(list("1.5"), column("select avg(price) from Entity"));
+        assertEquals(list((String) null), column("select max(value) from Entity where name = 'x'"));
+        assertEquals(list("a", "b"), column("select distinct name from Entity order by name"));
+        assertEquals(list("a,b"), column("select group_concat(distinct name) from Entity"));
+    }
+
+    @Test
+    public void updateAndDelete() {
+        insert("a", 1, null);
+        insert("b", 2, null);
+        insert("c", 3, null);
+        assertEquals(2, mDatabase.execute("update Entity set value = value * 10, name = upper(name) where value > ?", new Object[]{1L}));
+        assertEquals(list("a", "B", "C"), column("select name from Entity order by _id"));
+        assertEquals(list("1", "20", "30"), column("select value from Entity order by _id"));
+        assertEquals(1, mDatabase.execute("delete from Entity where _id = ?", new Object[]{"2"}));
+        assertEquals(2, mDatabase.execute("delete from Entity", null));
+        assertEquals(0, longForQuery("select count(*) from Entity"));
+    }
+
+    @Test
+    public void autoIncrementDoesNotReuseIds() {
+        insert("a", 1, null);
+        long id = insert("b", 2, null);
+        mDatabase.execute("delete from Entity where _id = ?", new Object[]{id});
+        assertEquals(id + 1, insert("c", 3, null));
+
+        mDatabase.execute("create table plain (_id integer primary key, name text)", null);
+        mDatabase.execute("insert into plain (name) values ('a'), ('b')", null);
+        mDatabase.execute("delete from plain where _id = 2", null);
+        mDatabase.execute("insert into plain (name) values ('c')", null);
+        assertEquals(2, mDatabase.getLastInsertRowId());
+    }
+
+    @Test
+    public void uniqueConstraints() {
+        mDatabase.execute("create table meta (name text primary key, value text)", null);
+        mDatabase.execute("insert into meta (name, value) values ('a', '1')", null);
+        try {
+            mDatabase.execute("insert into meta (name, value) values ('a', '2')", null);
+            fail("expected a constraint violation");
+        } catch (RuntimeException expected) {
+        }
+        mDatabase.execute("insert or replace into meta (name, value) values ('a', '3')", null);
+        assertEquals(list("3"), column("select value from meta where name = 'a'"));
+        assertEquals(1, longForQuery("select count(*) from meta"));
+
+        mDatabase.execute("create unique index if not exists cb_Entity_name on Entity ('name' ASC)", null);
+        insert("x", 1, null);
+        try {
+            insert("x", 2, null);
+            fail("expected a constraint violation");
+        } catch (RuntimeException expected) {
+        }
+        // null values are distinct
+        insert(null, 1, null);
+        insert(null, 2, null);
+        mDatabase.execute("drop index cb_Entity_name", null);
+        insert("x", 3, null);
+        assertEquals(2, longForQuery("select count(*) from Entity where name = 'x'"));
+    }
+
+    @Test
+    public void withoutRowId() {
+        mDatabase.execute("create table link (_id integer, 'a' INTEGER, 'b' INTEGER, primary key ('a', 'b')) without rowid;", null);
+        mDatabase.execute("insert into link (a, b) values (1, 2)", null);
+        mDatabase.execute("insert or replace into link (_id, a, b) values (5, 1, 2)", null);
+        mDatabase.execute("insert into link (a, b) values (1, 1)", null);
+        assertEquals(list("1", "2"), column("select b from link order by b"));
+        assertEquals(list("5"), column("select _id from link where a = 1 and b = 2"));
+        try {
+            mDatabase.query("select rowid from link", null);
+            fail("a table without rowid has no rowid column");
+        } catch (RuntimeException expected) {
+        }
+    }
+
+    @Test
+    public void statementIsAtomic() {
+        mDatabase.execute("create table t (id integer primary key, name text not null)", null);
+        try {
+            mDatabase.execute("insert into t (id, name) values (1, 'a'), (2, null)", null);
+            fail("expected a not null violation");
+        } catch (RuntimeException expected) {
+        }
+        assertEquals(0, longForQuery("select count(*) from t"));
+    }
+
+    @Test
+    public void transactions() {
+        insert("a", 1, null);
+        mDatabase.beginTransaction();
+        insert("b", 2, null);
+        mDatabase.execute("update Entity set value = 10 where name = 'a'", null);
+        mDatabase.execute("create table t (id integer primary key)", null);
+        mDatabase.execute("alter table Entity add column extra text default 'x'", null);
+        assertEquals(2, longForQuery("select count(*) from Entity where extra = 'x'"));
+        mDatabase.rollback();
+        assertFalse(mDatabase.inTransaction());
+        assertEquals(list("a:1"), column("select name || ':' || value from Entity"));
+        assertEquals(list("Entity"), column("select name from sqlite_master where type = 'table'"));
+        try {
+            mDatabase.query("select extra from Entity", null);
+            fail("the column should have been rolled back");
+        } catch (RuntimeException expected) {
+        }
+
+        mDatabase.beginTransaction();
+        insert("c", 3, null);
+        mDatabase.commit();
+        assertEquals(2, longForQuery("select count(*) from Entity"));
+    }
+
+    @Test
+    public void schema() {
+        mDatabase.execute("create index if not exists cb_Entity_value on Entity ('value' ASC) where value > 0", null);
+        mDatabase.execute("alter table 'Entity' add column 'added' INTEGER", null);
+        Cursor cursor = mDatabase.query("select type, name, tbl_name, sql from sqlite_master where type in ('table', 'index')", null);
+        assertEquals(2, cursor.getCount());
+        assertTrue(cursor.moveToFirst());
+        assertEquals("CREATE TABLE 'Entity' (_id integer primary key autoincrement, 'name' TEXT, 'value' INTEGER, 'price' REAL, 'added' INTEGER)",
+                cursor.getString(3));
+        assertTrue(cursor.moveToNext());
+        assertEquals("cb_Entity_value", cursor.getString(1));
+        assertEquals("Entity", cursor.getString(2));
+        assertEquals("CREATE INDEX cb_Entity_value on Entity ('value' ASC) where value > 0", cursor.getString(3));
+        cursor.close();
+
+        cursor = mDatabase.query("pragma table_info('Entity')", null);
+        assertEquals(5, cursor.getCount());
+        assertTrue(cursor.moveToPosition(4));
+        assertEquals("added", cursor.getString(cursor.getColumnIndex("name")));
+        assertEquals("INTEGER", cursor.getString(cursor.getColumnIndex("type")));
+        assertTrue(cursor.moveToFirst());
+        assertEquals(1, cursor.getInt(cursor.getColumnIndex("pk")));
+        cursor.close();
+
+        mDatabase.execute("drop table if exists 'Entity'", null);
+        assertEquals(0, longForQuery("select count(*) from sqlite_master"));
+    }
+
+    @Test
+    public void explainQueryPlan() {
+        Cursor cursor = mDatabase.query("EXPLAIN QUERY PLAN SELECT * FROM 'Entity' WHERE name = ?", new Object[]{"a"});
+        assertTrue(cursor.moveToFirst());
+        assertEquals("SCAN Entity", cursor.getString(cursor.getColumnIndex("detail")));
+        cursor.close();
+    }
+
+    @Test
+    public void expressions() {
+        assertEquals(list("7"), column("select 1 + 2 * 3"));
+        assertEquals(list("2"), column("select 7 / 3"));
+        assertEquals(list("2.5"), column("select 5 / 2.0"));
+        assertEquals(list("1"), column("select 'abc' like 'A_C'"));
+        assertEquals(list("bc"), column("select substr('abc', 2)"));
+        assertEquals(list("x"), column("select coalesce(null, ?, 'y')", "x"));
+        assertEquals(list((String) null), column("select 1 + null"));
+        assertEquals(list("1"), column("select exists (select 1 from Entity) = 0"));
+        assertEquals(list("12"), column("select cast('12abc' as integer)"));
+    }
+
+    @Test
+    public void blobsAreCopied() {
+        mDatabase.execute("create table Data (value BLOB)", null);
+        byte[] value = new byte[]{1, 2};
+        mDatabase.execute("insert into Data (value) values (?)", new Object[]{value});
+        value[0] = 3;
+        Cursor cursor = mDatabase.query("select value from Data", null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            byte[] stored = cursor.getBlob(0);
+            assertEquals(1, stored[0]);
+            stored[1] = 3;
+            assertEquals(2, cursor.getBlob(0)[1]);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void syntaxErrors() {
+        String[] statements = {"select from", "select * from Entity where", "select * from missing", "select missing from Entity",
+                "select * from Entity e, Entity f"};
+        for (String sql : statements) {
+            try {
+                mDatabase.query(sql, null);
+                fail("expected an error for " + sql);
+            } catch (RuntimeException expected) {
+            }
+        }
+    }
+
+    private static List<String> list(String... values) {
+        List<String> list = new ArrayList<String>(values.length);
+        for (String value : values) {
+            list.add(value);
+        }
+        return list;
+    }
+}
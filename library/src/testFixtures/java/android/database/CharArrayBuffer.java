@@ -0,0 +1,17 @@
+package android.database;
+
+/**
+ * A jvm implementation of the framework class for the unit tests, see {@link android.content.ContentValues}.
+ */
+public final class CharArrayBuffer {
+    public char[] data;
+    public int sizeCopied;
+
+    public CharArrayBuffer(int size) {
+        data = new char[size];
+    }
+
+    public CharArrayBuffer(char[] buf) {
+        data = buf;
+    }
+}
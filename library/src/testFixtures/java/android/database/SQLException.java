@@ -0,0 +1,17 @@
+package android.database;
+
+/**
+ * A jvm implementation of the framework class for the unit tests, see {@link android.content.ContentValues}.
+ */
+public class SQLException extends RuntimeException {
+    public SQLException() {
+    }
+
+    public SQLException(String error) {
+        super(error);
+    }
+
+    public SQLException(String error, Throwable cause) {
+        super(error, cause);
+    }
+}